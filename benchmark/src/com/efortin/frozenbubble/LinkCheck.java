@@ -0,0 +1,194 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble;
+
+/**
+ * Plays a network game between two network game managers in one
+ * process, over an emulated link that loses, duplicates, delays and
+ * reorders datagrams, to verify that every player action is delivered
+ * in order despite the impairments.
+ * <p>Once both managers are ready, player 1 sends a sequence of bubble
+ * launch actions, waiting for player 2 to receive each one before
+ * sending the next.  The action latencies, the estimated round trip
+ * times, and the link statistics are reported.
+ * <p>Usage:
+ * <pre><code>
+ * LinkCheck [loss [actions [seed]]]
+ * </code></pre>
+ * <p>The exit status is non-zero if the game does not start, or if an
+ * action is not delivered within the timeout.
+ */
+public final class LinkCheck {
+  private static final long READY_TIMEOUT  = 20000L;
+  private static final long ACTION_TIMEOUT = 10000L;
+  private static final long ACTION_PERIOD  = 30L;
+
+  /*
+   * A player input that is never used, as the actions are sent directly
+   * via the network game manager.
+   */
+  private static class IdleInput extends VirtualInput {
+    public IdleInput(int id) {
+      configure(id, false, false);
+    }
+
+    public boolean actionCenter() { return false; }
+
+    public boolean actionDown() { return false; }
+
+    public boolean actionLeft() { return false; }
+
+    public boolean actionRight() { return false; }
+
+    public boolean actionUp() { return false; }
+
+    public boolean checkNewActionKeyPress(int keyCode) { return false; }
+
+    public boolean setKeyDown(int keyCode) { return false; }
+
+    public boolean setKeyUp(int keyCode) { return false; }
+
+    public boolean setTouchEvent(int event, double x, double y) {
+      return false;
+    }
+
+    public void setTrackBallDx(double trackBallDX) {}
+  }
+
+  private LinkCheck() {
+  }
+
+  private static long elapsedMillis(long start) {
+    return (System.nanoTime() - start) / 1000000L;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    double loss    = (args.length > 0) ? Double.parseDouble(args[0]) : 0.1;
+    int    actions = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+    long   seed    = (args.length > 2) ? Long.parseLong(args[2]) : 42L;
+
+    EmulatedLink link = new EmulatedLink(seed);
+    link.setLatency(20, 10);
+    link.setLoss(loss);
+    link.setDuplication(0.05);
+    link.setReordering(0.05, 60);
+
+    NetworkManager manager1 =
+      new NetworkManager(link.getEndpoint(0), new IdleInput(1),
+                         new IdleInput(2), new Preferences());
+    NetworkManager manager2 =
+      new NetworkManager(link.getEndpoint(1), new IdleInput(2),
+                         new IdleInput(1), new Preferences());
+    link.getEndpoint(0).setTransportListener(manager1);
+    link.getEndpoint(1).setTransportListener(manager2);
+
+    boolean passed = true;
+    try {
+      manager1.newGame();
+      manager2.newGame();
+      long start = System.nanoTime();
+      while (!manager1.gameIsReadyForAction() ||
+             !manager2.gameIsReadyForAction()) {
+        if (elapsedMillis(start) > READY_TIMEOUT) {
+          System.out.println("The game did not start.");
+          System.exit(1);
+        }
+        Thread.sleep(5);
+      }
+      System.out.println("Ready after " + elapsedMillis(start) + " ms.");
+
+      long maxLatency   = 0;
+      long totalLatency = 0;
+      int  delivered    = 0;
+      for (int index = 1; (index <= actions) && passed; index++) {
+        start = System.nanoTime();
+        manager1.sendLocalPlayerAction(VirtualInput.PLAYER1, false, true,
+                                       false, 0, 1, 2, 3, 0, new byte[15],
+                                       0.5);
+        while (!manager2.getRemoteAction()) {
+          if (elapsedMillis(start) > ACTION_TIMEOUT) {
+            System.out.println("Action " + index + " was not delivered.");
+            passed = false;
+            break;
+          }
+          Thread.sleep(1);
+        }
+        if (passed) {
+          long latency = elapsedMillis(start);
+          maxLatency    = Math.max(maxLatency, latency);
+          totalLatency += latency;
+          delivered++;
+          Thread.sleep(ACTION_PERIOD);
+        }
+      }
+
+      if (delivered > 0) {
+        System.out.println(delivered + " actions, latency avg " +
+                           (totalLatency / delivered) + " ms, max " +
+                           maxLatency + " ms.");
+      }
+      System.out.println("Round trip time " + manager1.getRoundTripTime() +
+                         " ms, " + manager2.getRoundTripTime() + " ms.");
+      System.out.println("Datagrams sent " + link.getSent() + ", lost " +
+                         link.getLost() + ", duplicated " +
+                         link.getDuplicated() + ", reordered " +
+                         link.getReordered() + ", delivered " +
+                         link.getDelivered() + ".");
+    } finally {
+      manager1.cleanUp();
+      manager2.cleanUp();
+      link.close();
+    }
+    System.exit(passed ? 0 : 1);
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.efortin.frozenbubble.NetworkManager.GameFieldData;
+import com.efortin.frozenbubble.NetworkManager.PlayerAction;
+
+/**
+ * Benchmarks the conversion of network game messages to and from their
+ * datagram representation, and the checksum used to detect
+ * desynchronized game fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NetworkManagerBenchmark {
+  private PlayerAction  action;
+  private ByteBuffer    actionBuffer;
+  private GameFieldData base;
+  private CRC16         crc;
+  private ByteBuffer    deltaBuffer;
+  private int           deltaLength;
+  private GameFieldData field;
+  private ByteBuffer    fieldBuffer;
+  private int           fieldLength;
+  private DatagramPool  pool;
+  private GameFieldData receiver;
+
+  @Setup
+  public void setup() {
+    action       = new PlayerAction(null);
+    actionBuffer = ByteBuffer.allocate(NetworkManager.ACTION_BYTES);
+    action.playerID          = 1;
+    action.localActionID     = 1234;
+    action.remoteActionID    = 1233;
+    action.launchBubble      = true;
+    action.launchBubbleColor = 3;
+    action.nextBubbleColor   = 5;
+    action.attackBarBubbles  = 7;
+    action.aimPosition       = 21.5;
+    action.copyToBuffer(actionBuffer, 0);
+
+    field       = new GameFieldData(null);
+    fieldBuffer = ByteBuffer.allocate(NetworkManager.FIELD_BYTES);
+    field.playerID          = 1;
+    field.localActionID     = 1234;
+    field.launchBubbleColor = 3;
+    field.nextBubbleColor   = 5;
+    for (int x = 0; x < 8; x++) {
+      for (int y = 0; y < 8; y++) {
+        field.gameField[x][y] = (byte) ((x + y) % 8);
+      }
+    }
+    fieldLength = field.copyToBuffer(fieldBuffer, 0);
+
+    /*
+     * The delta base differs from the field by one launched bubble that
+     * stuck, and a pair of bubbles that fell.
+     */
+    base = new GameFieldData(field);
+    base.gameField[2][8] = 1;
+    base.gameField[5][1] = -1;
+    base.gameField[6][1] = -1;
+    deltaBuffer = ByteBuffer.allocate(NetworkManager.FIELD_BYTES);
+    deltaLength = field.copyToBuffer(deltaBuffer, 0, base);
+    receiver    = new GameFieldData(base);
+
+    crc  = new CRC16(0);
+    pool = new DatagramPool();
+  }
+
+  @Benchmark
+  public PlayerAction actionFromBuffer() {
+    action.copyFromBuffer(actionBuffer, 0);
+    return action;
+  }
+
+  @Benchmark
+  public ByteBuffer actionToBuffer() {
+    action.copyToBuffer(actionBuffer, 0);
+    return actionBuffer;
+  }
+
+  /**
+   * Encode an action into a pooled datagram and return it to the pool,
+   * as is done for every action sent to the remote player.
+   */
+  @Benchmark
+  public byte[] actionToDatagram() {
+    ByteBuffer buffer = pool.obtain(NetworkManager.ACTION_BYTES + 1);
+    buffer.put(0, NetworkManager.MSG_ID_ACTION);
+    action.copyToBuffer(buffer, 1);
+    pool.recycle(buffer.array());
+    return buffer.array();
+  }
+
+  /**
+   * Apply a game field delta.  The receiver is restored to the base
+   * field first, since the delta only applies to its base field.
+   */
+  @Benchmark
+  public GameFieldData fieldDeltaFromBuffer() {
+    receiver.copyFromFieldData(base);
+    receiver.copyFromBuffer(deltaBuffer, 0, deltaLength);
+    return receiver;
+  }
+
+  @Benchmark
+  public int fieldDeltaToBuffer() {
+    return field.copyToBuffer(deltaBuffer, 0, base);
+  }
+
+  @Benchmark
+  public GameFieldData fieldFromBuffer() {
+    field.copyFromBuffer(fieldBuffer, 0, fieldLength);
+    return field;
+  }
+
+  @Benchmark
+  public ByteBuffer fieldToBuffer() {
+    field.copyToBuffer(fieldBuffer, 0);
+    return fieldBuffer;
+  }
+
+  /**
+   * Checksum a game field one bubble at a time, as is done to verify
+   * that the local and remote game fields match.
+   */
+  @Benchmark
+  public long gridChecksum() {
+    crc.reset();
+    for (int x = 0; x < 8; x++) {
+      for (int y = 0; y < 12; y++) {
+        if (field.gameField[x][y] != -1) {
+          crc.update(field.gameField[x][y]);
+        }
+      }
+    }
+    return crc.getValue();
+  }
+
+  @Benchmark
+  public long bufferChecksum() {
+    crc.reset();
+    crc.update(fieldBuffer.array(), 0, fieldBuffer.capacity());
+    return crc.getValue();
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.gsanson.frozenbubble;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jfedor.frozenbubble.BenchmarkFixtures;
+import org.jfedor.frozenbubble.BubbleSprite;
+import org.jfedor.frozenbubble.LevelManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the collision detection and bubble state evaluation used
+ * by the computer opponent to evaluate every launch direction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CollisionHelperBenchmark {
+  @Param({"0", "20", "60"})
+  public int level;
+
+  private BubbleSprite[][] grid;
+  private int[][]          landings;
+  private int[][]          outGrid;
+  private int[][]          toCheck;
+  private int[]            minCoords;
+
+  @Setup
+  public void setup() throws Exception {
+    grid      = BenchmarkFixtures.newGame(BenchmarkFixtures.readLevels(),
+                                          level).getGrid();
+    outGrid   = new int[LevelManager.NUM_COLS][LevelManager.NUM_ROWS];
+    toCheck   = new int[4][2];
+    minCoords = new int[2];
+    /*
+     * A launched bubble may only land in an empty cell of the top row,
+     * or in an empty cell adjacent to a fixed bubble.  Each landing is
+     * stored as {column, row, color of the adjacent bubble}.
+     */
+    int count = 0;
+    int[][] cells = new int[LevelManager.NUM_COLS * LevelManager.NUM_ROWS][];
+    for (int j = 0; j < (LevelManager.NUM_ROWS - 1); j++) {
+      for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+        if (grid[i][j] == null) {
+          int color = neighborColor(i, j);
+          if ((color != -1) || (j == 0)) {
+            cells[count++] = new int[] { i, j, (color == -1) ? 0 : color };
+          }
+        }
+      }
+    }
+    landings = new int[count][];
+    System.arraycopy(cells, 0, landings, 0, count);
+  }
+
+  private int neighborColor(int x, int y) {
+    int offset = y % 2;
+    int[][] neighbors = {{x - 1, y}, {x + 1, y},
+                         {x - 1 + offset, y - 1}, {x + offset, y - 1},
+                         {x - 1 + offset, y + 1}, {x + offset, y + 1}};
+    for (int[] n : neighbors) {
+      if ((n[0] >= 0) && (n[0] < LevelManager.NUM_COLS) &&
+          (n[1] >= 0) && (n[1] < LevelManager.NUM_ROWS) &&
+          (grid[n[0]][n[1]] != null)) {
+        return grid[n[0]][n[1]].getColor();
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Evaluate the bubble states resulting from every possible landing.
+   */
+  @Benchmark
+  public void checkState(Blackhole bh) {
+    for (int[] landing : landings) {
+      CollisionHelper.checkState(landing[0], landing[1], landing[2], grid,
+                                 outGrid);
+      bh.consume(outGrid[landing[0]][landing[1]]);
+    }
+  }
+
+  /**
+   * Sweep straight up trajectories across the playfield, checking for a
+   * collision every 3 pixels as the opponent does.
+   */
+  @Benchmark
+  public void collide(Blackhole bh) {
+    for (int x = 0; x <= 224; x += 16) {
+      int y = 350;
+      while ((y >= 0) && !CollisionHelper.collide(x, y, grid, toCheck,
+                                                  minCoords)) {
+        y -= 3;
+      }
+      bh.consume(y);
+      bh.consume(minCoords[0]);
+    }
+  }
+}
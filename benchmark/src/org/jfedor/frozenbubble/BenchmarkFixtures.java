@@ -0,0 +1,178 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.graphics.Bitmap;
+
+/**
+ * Shared fixtures for the game benchmarks.
+ * <p>Games are built headless - without graphics or sound - in the same
+ * manner as a headless replay, from the levels in the application
+ * assets.  The levels file location may be overridden via the
+ * <code>levels.file</code> system property.
+ */
+public final class BenchmarkFixtures {
+  public static final String LEVELS_FILE =
+    "../frozenbubbleplus/assets/levels.txt";
+
+  private static final BmpWrap PLACEHOLDER = new BmpWrap(0);
+
+  private BenchmarkFixtures() {
+  }
+
+  /**
+   * Build a headless single player puzzle game.
+   * @param levels - the contents of the levels file.
+   * @param level - the index of the level to play.
+   * @return the new game, with a fixed random number generator seed so
+   * that every benchmark run plays the same launch bubbles.
+   */
+  public static FrozenGame newGame(byte[] levels, int level) {
+    /*
+     * Bubble colors are identified by their image, so each bubble image
+     * must be a unique placeholder.
+     */
+    return new FrozenGame(PLACEHOLDER, newPlaceholders(8),
+                          newPlaceholders(8), newPlaceholders(8),
+                          newPlaceholders(6), PLACEHOLDER, PLACEHOLDER,
+                          PLACEHOLDER, PLACEHOLDER, PLACEHOLDER,
+                          null, null, PLACEHOLDER, PLACEHOLDER,
+                          PLACEHOLDER, null, null, new SoundManager(),
+                          new LevelManager(levels, level), null, null,
+                          null, 0);
+  }
+
+  /**
+   * Build a headless single player puzzle game that can be painted.
+   * Every image is a synthetic bubble sized bitmap of a distinct color,
+   * and the launcher is omitted.
+   * @param levels - the contents of the levels file.
+   * @param level - the index of the level to play.
+   * @return the new game.
+   */
+  public static FrozenGame newPaintedGame(byte[] levels, int level) {
+    return new FrozenGame(newImage(0), newImages(8), newImages(8),
+                          newImages(8), newImages(6), newImage(0),
+                          newImage(0), newImage(0), newImage(0),
+                          newImage(0), null, null, newImage(0),
+                          newImage(0), newImage(0), null, null,
+                          new SoundManager(),
+                          new LevelManager(levels, level), null, null,
+                          null, 0);
+  }
+
+  private static BmpWrap[] newPlaceholders(int count) {
+    BmpWrap[] images = new BmpWrap[count];
+    for (int index = 0; index < count; index++) {
+      images[index] = new BmpWrap(index);
+    }
+    return images;
+  }
+
+  /*
+   * Create a 32x32 image whose opaque color is derived from its id, with
+   * transparent corners like a bubble image.
+   */
+  private static BmpWrap newImage(int id) {
+    int size = 32;
+    int[] pixels = new int[size * size];
+    int color = 0xFF000000 | ((id * 0x3F1D57) & 0xFFFFFF);
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        int cx = 2 * x + 1 - size;
+        int cy = 2 * y + 1 - size;
+        if (cx * cx + cy * cy <= size * size) {
+          pixels[y * size + x] = color;
+        }
+      }
+    }
+    BmpWrap image = new BmpWrap(id);
+    image.bmp = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    image.bmp.setPixels(pixels, 0, size, 0, 0, size, size);
+    return image;
+  }
+
+  private static BmpWrap[] newImages(int count) {
+    BmpWrap[] images = new BmpWrap[count];
+    for (int index = 0; index < count; index++) {
+      images[index] = newImage(index + 1);
+    }
+    return images;
+  }
+
+  /**
+   * Read the contents of the levels file.
+   * @return the levels file contents.
+   * @throws IOException if the levels file can not be read.
+   */
+  public static byte[] readLevels() throws IOException {
+    InputStream in = new FileInputStream(System.getProperty("levels.file",
+                                                            LEVELS_FILE));
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}
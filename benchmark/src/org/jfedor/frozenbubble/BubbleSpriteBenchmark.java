@@ -0,0 +1,135 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.graphics.Rect;
+
+/**
+ * Benchmarks the flight of a launched bubble from the launcher until it
+ * becomes fixed in the bubble grid, which exercises the per frame
+ * movement, rebound and collision code.
+ * <p>The launched bubble color is absent from the level, so it never
+ * causes any bubbles to jump or fall, and the bubble grid can be
+ * restored after each flight.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BubbleSpriteBenchmark {
+  /*
+   * Launch directions, where 20 is straight up and values farther from
+   * 20 rebound more often off of the playfield walls.
+   */
+  @Param({"5", "20", "35"})
+  public int direction;
+
+  private int        color;
+  private FrozenGame game;
+
+  @Setup
+  public void setup() throws Exception {
+    game  = BenchmarkFixtures.newGame(BenchmarkFixtures.readLevels(), 0);
+    color = -1;
+    for (int index = 0; index < game.bubbles.length; index++) {
+      if (game.bubbleManager.countBubbles[index] == 0) {
+        color = index;
+        break;
+      }
+    }
+    if (color == -1) {
+      throw new IllegalStateException("Every bubble color is in use.");
+    }
+  }
+
+  @Benchmark
+  public int launch() {
+    BubbleSprite bubble = new BubbleSprite(new Rect(302, 390, 32, 32),
+                                           direction, color,
+                                           game.bubbles[color],
+                                           game.bubblesBlind[color],
+                                           game.frozenBubbles[color],
+                                           game.targetedBubbles,
+                                           game.bubbleBlink,
+                                           game.bubbleManager,
+                                           game.soundManager, game);
+    int frames = 0;
+    while (!bubble.fixed()) {
+      bubble.move();
+      frames++;
+    }
+    /*
+     * Remove the bubble from the grid to restore the level.
+     */
+    BubbleSprite[][] grid = game.getGrid();
+    for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+      for (int j = 0; j < LevelManager.NUM_ROWS; j++) {
+        if (grid[i][j] == bubble) {
+          grid[i][j] = null;
+          bubble.removeFromManager();
+        }
+      }
+    }
+    return frames;
+  }
+}
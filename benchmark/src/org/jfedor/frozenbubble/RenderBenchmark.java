@@ -0,0 +1,111 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks painting a game frame off device - recording the frame into
+ * a snapshot, and replaying the snapshot into the software renderer.
+ * <p>The game is painted without its static layer, so every sprite of
+ * the bubble grid is recorded and rendered individually, which is the
+ * cost of a frame in which the grid changed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RenderBenchmark {
+  /*
+   * Display scale factors, where 1 paints the game at its original
+   * 640x480 resolution.
+   */
+  @Param({"1.0", "2.0"})
+  public double scale;
+
+  private FrozenGame     game;
+  private RenderSnapshot snapshot;
+  private SoftwareTarget target;
+
+  @Setup
+  public void setup() throws Exception {
+    game     = BenchmarkFixtures.newPaintedGame(
+      BenchmarkFixtures.readLevels(), 0);
+    snapshot = new RenderSnapshot();
+    target   = new SoftwareTarget((int)(640 * scale), (int)(480 * scale));
+    game.paint(snapshot, scale, 0, 0);
+  }
+
+  @Benchmark
+  public RenderSnapshot record() {
+    snapshot.clear();
+    game.paint(snapshot, scale, 0, 0);
+    return snapshot;
+  }
+
+  @Benchmark
+  public int[] replay() {
+    target.reset();
+    target.drawRGB(0, 0, 0);
+    snapshot.replay(target);
+    return target.getPixels();
+  }
+}
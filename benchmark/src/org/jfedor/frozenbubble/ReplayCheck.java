@@ -0,0 +1,228 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.gsanson.frozenbubble.MalusBar;
+import org.jfedor.frozenbubble.GameScreen.gameEnum;
+
+import com.efortin.frozenbubble.VirtualInput;
+
+/**
+ * Verifies that recorded games replay deterministically.
+ * <p>When input log files are supplied on the command line - such as
+ * the <code>lastgame.log</code> file saved by the application - each
+ * log is replayed headless and its checksum errors are reported.
+ * Otherwise two player games are recorded with seeded random inputs,
+ * with a bubble grid checksum logged periodically, then serialized,
+ * read back and replayed.  The replay must reproduce every checksum
+ * and the final bubble grid of both games.
+ * <p>The exit status is non-zero if any replay diverges.
+ */
+public final class ReplayCheck {
+  private static final int NUM_GAMES       = 8;
+  private static final int MAX_TICKS       = 8000;
+  private static final int CHECKSUM_PERIOD = 10;
+
+  private static final BmpWrap PLACEHOLDER = new BmpWrap(0);
+
+  private ReplayCheck() {
+  }
+
+  /**
+   * Record a two player game with random inputs.
+   * @param seed - the seed for the level, the games, and the inputs.
+   * @param games - receives the two recorded games.
+   * @return the input log of the recorded game.
+   */
+  private static InputLog record(long seed, FrozenGame[] games) {
+    Random random = new Random(seed);
+    LevelManager levelManager = new LevelManager(seed,
+      FrozenBubble.getDifficulty());
+    InputLog log = new InputLog(2, levelManager);
+    MalusBar malusBar1 = new MalusBar(GameView.GAMEFIELD_WIDTH - 164, 40,
+                                      PLACEHOLDER, PLACEHOLDER);
+    MalusBar malusBar2 = new MalusBar(GameView.GAMEFIELD_WIDTH + 134, 40,
+                                      PLACEHOLDER, PLACEHOLDER);
+    games[0] = newGame(VirtualInput.PLAYER1, levelManager, malusBar2,
+                       random.nextLong());
+    games[1] = newGame(VirtualInput.PLAYER2, levelManager, malusBar1,
+                       random.nextLong());
+    log.addGame(games[0]);
+    log.addGame(games[1]);
+
+    int[] direction = new int[2];
+    for (int tick = 0; tick < MAX_TICKS; tick++) {
+      for (int index = 0; index < 2; index++) {
+        /*
+         * Hold each aiming direction for a random number of ticks, and
+         * fire and swap bubbles at random.
+         */
+        if (random.nextInt(16) == 0) {
+          direction[index] = random.nextInt(3) - 1;
+        }
+        games[index].play(direction[index] < 0, direction[index] > 0,
+                          random.nextInt(24) == 0, random.nextInt(96) == 0,
+                          0, false, 0, 0, false, 0);
+      }
+      GameReplay.resolveMultiplayer(games[0], games[1],
+                                    malusBar1, malusBar2);
+      if ((tick % CHECKSUM_PERIOD) == 0) {
+        for (FrozenGame game : games) {
+          game.calculateGridChecksum();
+          log.logChecksum(game.player, game.gridChecksum);
+        }
+      }
+      if ((games[0].getGameResult() != gameEnum.PLAYING) ||
+          (games[1].getGameResult() != gameEnum.PLAYING)) {
+        break;
+      }
+    }
+    return log;
+  }
+
+  private static FrozenGame newGame(int player, LevelManager levelManager,
+                                    MalusBar malusBar, long seed) {
+    return new FrozenGame(PLACEHOLDER, newPlaceholders(8),
+                          newPlaceholders(8), newPlaceholders(8),
+                          newPlaceholders(6), PLACEHOLDER, PLACEHOLDER,
+                          PLACEHOLDER, PLACEHOLDER, PLACEHOLDER,
+                          null, null, PLACEHOLDER, PLACEHOLDER,
+                          PLACEHOLDER, malusBar, null, new SoundManager(),
+                          levelManager, null, null,
+                          new GameReplay.ReplayInput(player, false), seed);
+  }
+
+  private static BmpWrap[] newPlaceholders(int count) {
+    BmpWrap[] images = new BmpWrap[count];
+    for (int index = 0; index < count; index++) {
+      images[index] = new BmpWrap(index);
+    }
+    return images;
+  }
+
+  private static boolean report(String name, GameReplay replay) {
+    System.out.println(name + ": " + replay.getTicks() + " ticks, " +
+                       replay.getChecksumErrors() + " checksum errors" +
+                       ((replay.getChecksumErrors() > 0) ?
+                        ", first at tick " +
+                        replay.getFirstChecksumErrorTick() : ""));
+    return replay.getChecksumErrors() == 0;
+  }
+
+  /**
+   * Record, serialize and replay a game, then compare the outcome.
+   * @param seed - the seed of the recorded game.
+   * @return <code>true</code> if the replay matched the recording.
+   */
+  private static boolean checkRecorded(long seed) throws IOException {
+    FrozenGame[] games = new FrozenGame[2];
+    InputLog log = record(seed, games);
+    if (log.isTruncated()) {
+      System.out.println("seed " + seed + ": input log truncated");
+      return false;
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    log.writeTo(out);
+    InputLog copy = InputLog.readFrom(new ByteArrayInputStream(
+      out.toByteArray()));
+    GameReplay replay = GameReplay.runHeadless(copy);
+
+    boolean matched = report("seed " + seed, replay);
+    for (int index = 0; index < 2; index++) {
+      games[index].calculateGridChecksum();
+      replay.getGame(index + 1).calculateGridChecksum();
+      if (games[index].gridChecksum !=
+          replay.getGame(index + 1).gridChecksum) {
+        System.out.println("seed " + seed + ": player " + (index + 1) +
+                           " final grid differs");
+        matched = false;
+      }
+    }
+    return matched;
+  }
+
+  private static boolean checkFile(String fileName) throws IOException {
+    InputStream in = new FileInputStream(fileName);
+    try {
+      return report(fileName, GameReplay.runHeadless(InputLog.readFrom(in)));
+    } finally {
+      in.close();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean matched = true;
+    if (args.length > 0) {
+      for (String fileName : args) {
+        matched &= checkFile(fileName);
+      }
+    }
+    else {
+      for (int seed = 1; seed <= NUM_GAMES; seed++) {
+        matched &= checkRecorded(seed);
+      }
+    }
+    if (!matched) {
+      System.out.println("Replay diverged from the recorded game.");
+      System.exit(1);
+    }
+  }
+}
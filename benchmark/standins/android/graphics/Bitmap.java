@@ -0,0 +1,120 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package android.graphics;
+
+/**
+ * Stand-in for the Android <code>Bitmap</code> class, so that frames can
+ * be rendered on a desktop JVM.  The pixels are held in an array, in the
+ * same ARGB format used by the Android class.
+ */
+public final class Bitmap {
+  public enum Config {
+    ALPHA_8,
+    RGB_565,
+    ARGB_4444,
+    ARGB_8888
+  }
+
+  private final int width;
+  private final int height;
+  private int[]     pixels;
+
+  private Bitmap(int width, int height) {
+    this.width  = width;
+    this.height = height;
+    this.pixels = new int[width * height];
+  }
+
+  public static Bitmap createBitmap(int width, int height, Config config) {
+    if ((width <= 0) || (height <= 0)) {
+      throw new IllegalArgumentException("width and height must be > 0");
+    }
+    return new Bitmap(width, height);
+  }
+
+  public void eraseColor(int color) {
+    java.util.Arrays.fill(pixels, color);
+  }
+
+  public final int getHeight() {
+    return height;
+  }
+
+  public void getPixels(int[] pixels, int offset, int stride,
+                        int x, int y, int width, int height) {
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(this.pixels, (y + row) * this.width + x,
+                       pixels, offset + row * stride, width);
+    }
+  }
+
+  public final int getWidth() {
+    return width;
+  }
+
+  public final boolean isRecycled() {
+    return pixels == null;
+  }
+
+  public void recycle() {
+    pixels = null;
+  }
+
+  public void setPixels(int[] pixels, int offset, int stride,
+                        int x, int y, int width, int height) {
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(pixels, offset + row * stride,
+                       this.pixels, (y + row) * this.width + x, width);
+    }
+  }
+}
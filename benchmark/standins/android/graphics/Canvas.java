@@ -0,0 +1,136 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package android.graphics;
+
+/**
+ * Stand-in for the Android <code>Canvas</code> class, so that frames can
+ * be recorded into a <code>RenderSnapshot</code> on a desktop JVM.  Only
+ * the operations used by the game are declared, and none of them paint
+ * anything - the snapshot overrides them to record the frame.
+ */
+public class Canvas {
+  public static final int MATRIX_SAVE_FLAG = 0x01;
+  public static final int CLIP_SAVE_FLAG   = 0x02;
+
+  private int saveCount = 1;
+
+  public Canvas() {
+  }
+
+  public boolean clipRect(float left, float top, float right, float bottom) {
+    return true;
+  }
+
+  public boolean clipRect(float left, float top, float right, float bottom,
+                          Region.Op op) {
+    return true;
+  }
+
+  public boolean clipRect(int left, int top, int right, int bottom) {
+    return true;
+  }
+
+  public boolean clipRect(Rect rect) {
+    return true;
+  }
+
+  public boolean clipRect(RectF rect) {
+    return true;
+  }
+
+  public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+  }
+
+  public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+  }
+
+  public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+  }
+
+  public void drawRGB(int r, int g, int b) {
+  }
+
+  public int getSaveCount() {
+    return saveCount;
+  }
+
+  public void restore() {
+    if (saveCount > 1) {
+      saveCount--;
+    }
+  }
+
+  public void restoreToCount(int count) {
+    saveCount = Math.max(1, Math.min(saveCount, count));
+  }
+
+  public void rotate(float degrees) {
+  }
+
+  public final void rotate(float degrees, float px, float py) {
+    translate(px, py);
+    rotate(degrees);
+    translate(-px, -py);
+  }
+
+  public int save() {
+    return saveCount++;
+  }
+
+  public int save(int saveFlags) {
+    return save();
+  }
+
+  public void translate(float dx, float dy) {
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package android.graphics;
+
+/**
+ * Stand-in for the Android <code>Point</code> class, so that game code
+ * can be benchmarked on a desktop JVM.  The <code>android.jar</code>
+ * provided by the SDK only contains method stubs that throw an
+ * exception when called.
+ */
+public class Point {
+  public int x;
+  public int y;
+
+  public Point() {
+  }
+
+  public Point(int x, int y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  public Point(Point src) {
+    this.x = src.x;
+    this.y = src.y;
+  }
+
+  public final boolean equals(int x, int y) {
+    return (this.x == x) && (this.y == y);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Point)) {
+      return false;
+    }
+    Point p = (Point) o;
+    return (x == p.x) && (y == p.y);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * x + y;
+  }
+
+  public final void negate() {
+    x = -x;
+    y = -y;
+  }
+
+  public final void offset(int dx, int dy) {
+    x += dx;
+    y += dy;
+  }
+
+  public void set(int x, int y) {
+    this.x = x;
+    this.y = y;
+  }
+
+  @Override
+  public String toString() {
+    return "Point(" + x + ", " + y + ")";
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package android.graphics;
+
+/**
+ * Stand-in for the Android <code>Rect</code> class, so that game code
+ * can be benchmarked on a desktop JVM.  The <code>android.jar</code>
+ * provided by the SDK only contains method stubs that throw an
+ * exception when called.
+ */
+public final class Rect {
+  public int left;
+  public int top;
+  public int right;
+  public int bottom;
+
+  public Rect() {
+  }
+
+  public Rect(int left, int top, int right, int bottom) {
+    this.left   = left;
+    this.top    = top;
+    this.right  = right;
+    this.bottom = bottom;
+  }
+
+  public Rect(Rect r) {
+    if (r != null) {
+      left   = r.left;
+      top    = r.top;
+      right  = r.right;
+      bottom = r.bottom;
+    }
+  }
+
+  public final int centerX() {
+    return (left + right) >> 1;
+  }
+
+  public final int centerY() {
+    return (top + bottom) >> 1;
+  }
+
+  public boolean contains(int x, int y) {
+    return (left < right) && (top < bottom) &&
+           (x >= left) && (x < right) && (y >= top) && (y < bottom);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof Rect)) {
+      return false;
+    }
+    Rect r = (Rect) o;
+    return (left == r.left) && (top == r.top) &&
+           (right == r.right) && (bottom == r.bottom);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * (31 * (31 * left + top) + right) + bottom;
+  }
+
+  public final int height() {
+    return bottom - top;
+  }
+
+  public boolean intersect(Rect r) {
+    if ((left < r.right) && (r.left < right) &&
+        (top < r.bottom) && (r.top < bottom)) {
+      if (left < r.left) left = r.left;
+      if (top < r.top) top = r.top;
+      if (right > r.right) right = r.right;
+      if (bottom > r.bottom) bottom = r.bottom;
+      return true;
+    }
+    return false;
+  }
+
+  public boolean intersects(int left, int top, int right, int bottom) {
+    return (this.left < right) && (left < this.right) &&
+           (this.top < bottom) && (top < this.bottom);
+  }
+
+  public final boolean isEmpty() {
+    return (left >= right) || (top >= bottom);
+  }
+
+  public void offset(int dx, int dy) {
+    left   += dx;
+    top    += dy;
+    right  += dx;
+    bottom += dy;
+  }
+
+  public void offsetTo(int newLeft, int newTop) {
+    right  += newLeft - left;
+    bottom += newTop - top;
+    left    = newLeft;
+    top     = newTop;
+  }
+
+  public void set(int left, int top, int right, int bottom) {
+    this.left   = left;
+    this.top    = top;
+    this.right  = right;
+    this.bottom = bottom;
+  }
+
+  public void set(Rect src) {
+    left   = src.left;
+    top    = src.top;
+    right  = src.right;
+    bottom = src.bottom;
+  }
+
+  public void setEmpty() {
+    left = right = top = bottom = 0;
+  }
+
+  @Override
+  public String toString() {
+    return "Rect(" + left + ", " + top + " - " + right + ", " + bottom + ")";
+  }
+
+  public void union(Rect r) {
+    if (r.isEmpty()) {
+      return;
+    }
+    if (isEmpty()) {
+      set(r);
+      return;
+    }
+    if (r.left < left) left = r.left;
+    if (r.top < top) top = r.top;
+    if (r.right > right) right = r.right;
+    if (r.bottom > bottom) bottom = r.bottom;
+  }
+
+  public final int width() {
+    return right - left;
+  }
+}
@@ -76,7 +76,7 @@ import android.util.Log;
  * <code>BLUETOOTH_ADMIN</code>
  * @author Eric Fortin, Wednesday, May 8, 2013
  */
-public class BluetoothManager {
+public class BluetoothManager implements NetworkTransport {
   private static final String LOG_TAG  = UDPSocket.class.getSimpleName();
   private static final UUID   SPP_UUID = UUID.
       fromString("00001101-0000-1000-8000-00805F9B34FB");
@@ -89,6 +89,7 @@ public class BluetoothManager {
   private boolean                      running;
   private int                          deviceIndex;
   private ArrayList<byte[]>            txList         = null;
+  private DatagramPool                 txPool         = null;
   private ArrayList<BluetoothListener> listenerList   = null;
   private BluetoothAdapter             myAdapter      = null;
   private BluetoothSocket              mySocket       = null;
@@ -184,6 +185,11 @@ public class BluetoothManager {
     }
     myOutputStream = null;
     if (txList != null) {
+      if (txPool != null) {
+        for (int index = 0; index < txList.size(); index++) {
+          txPool.recycle(txList.get(index));
+        }
+      }
       txList.clear();
     }
     txList = null;
@@ -433,7 +439,11 @@ public class BluetoothManager {
       if (!paused && running) try {
         if (myInputStream != null) {
           myInputStream.read(rxBuffer, 0, rxBuffer.length);
-          byte[] buffer  = rxBuffer.clone();
+          /*
+           * The listeners process the message before the next read, so
+           * they may be passed the receive buffer itself.
+           */
+          byte[] buffer  = rxBuffer;
           int    length  = rxBuffer.length;
   
           if (!paused && running && (length != 0) && (listenerList != null)) {
@@ -441,8 +451,10 @@ public class BluetoothManager {
             while (--size >= 0) {
               listenerList.get(size).onBluetoothEvent(buffer, length);
             }
-            Log.d(LOG_TAG, "received "+length+" bytes: 0x" +
-                bytesToHex(buffer, length));
+            if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+              Log.d(LOG_TAG, "received "+length+" bytes: 0x" +
+                  bytesToHex(buffer, length));
+            }
           }
         }
       } catch (NullPointerException npe) {
@@ -528,11 +540,16 @@ public class BluetoothManager {
         }
         if (myOutputStream != null) {
           myOutputStream.write(bytes, 0, bytes.length);
-          Log.d(LOG_TAG, "transmitted "+bytes.length+" bytes: 0x" +
-              bytesToHex(bytes, bytes.length));
+          if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+            Log.d(LOG_TAG, "transmitted "+bytes.length+" bytes: 0x" +
+                bytesToHex(bytes, bytes.length));
+          }
           synchronized(txList) {
             txList.remove(0);
           }
+          if (txPool != null) {
+            txPool.recycle(bytes);
+          }
         }
       } catch (NullPointerException npe) {
         npe.printStackTrace();
@@ -548,6 +565,14 @@ public class BluetoothManager {
     }
   }
 
+  /**
+   * Set the pool that transmitted buffers are returned to.
+   * @param pool - the pool the transmitted buffers were obtained from.
+   */
+  public void setDatagramPool(DatagramPool pool) {
+    txPool = pool;
+  }
+
   /**
    * Stop and <code>join()</code> the Bluetooth RX and TX threads.
    */
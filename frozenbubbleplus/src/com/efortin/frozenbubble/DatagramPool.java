@@ -0,0 +1,132 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * This class keeps a pool of datagram buffers, so that transmitting a
+ * network game message does not allocate a new byte array each time.
+ * <p>A buffer is obtained for a message of a given size, filled in
+ * using absolute puts, and its backing array is queued by the transport
+ * layer.  Since the transport layer sends the queued arrays from its
+ * own thread, it returns each array to the pool once it has been sent.
+ * <p>The contents of an obtained buffer are undefined, so every byte of
+ * the message must be written.
+ */
+public class DatagramPool {
+  /*
+   * The maximum number of free buffers kept for reuse.  Buffers
+   * returned to the pool beyond this are discarded.
+   */
+  private static final int MAX_FREE = 32;
+
+  private final ArrayList<ByteBuffer> freeList;
+  private final ArrayList<ByteBuffer> usedList;
+  private int allocations;
+
+  public DatagramPool() {
+    freeList    = new ArrayList<ByteBuffer>();
+    usedList    = new ArrayList<ByteBuffer>();
+    allocations = 0;
+  }
+
+  /**
+   * Obtain the number of buffers the pool has allocated.  Once every
+   * message type has been sent, this no longer increases unless the
+   * transmit queue grows.
+   * @return the number of buffers allocated.
+   */
+  public synchronized int getAllocations() {
+    return allocations;
+  }
+
+  /**
+   * Obtain a datagram buffer of exactly the requested size.
+   * @param size - the datagram size in bytes.
+   * @return a buffer backed by an array of the requested size.
+   */
+  public synchronized ByteBuffer obtain(int size) {
+    ByteBuffer buffer = null;
+    for (int index = freeList.size() - 1; index >= 0; index--) {
+      if (freeList.get(index).capacity() == size) {
+        buffer = freeList.remove(index);
+        break;
+      }
+    }
+    if (buffer == null) {
+      buffer = ByteBuffer.wrap(new byte[size]);
+      allocations++;
+    }
+    usedList.add(buffer);
+    return buffer;
+  }
+
+  /**
+   * Return a datagram buffer to the pool.  Arrays that were not
+   * obtained from this pool are ignored.
+   * @param bytes - the backing array of the buffer to return.
+   */
+  public synchronized void recycle(byte[] bytes) {
+    for (int index = usedList.size() - 1; index >= 0; index--) {
+      if (usedList.get(index).array() == bytes) {
+        ByteBuffer buffer = usedList.remove(index);
+        if (freeList.size() < MAX_FREE) {
+          freeList.add(buffer);
+        }
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,429 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * This class emulates a network link between two players in memory, so
+ * that two network game managers may play against each other in a
+ * single process, without any network hardware.
+ * <p>Each of the two link endpoints is a <code>NetworkTransport</code>.
+ * A datagram transmitted by one endpoint is delivered to the listeners
+ * of the other endpoint by the link thread, after the configured
+ * latency plus a random jitter.  A datagram may also be lost,
+ * duplicated, or held back so that later datagrams overtake it, each
+ * with a configured probability.
+ * <p>A typical implementation looks like this:
+ * <pre><code>
+ * EmulatedLink link = new EmulatedLink(seed);
+ * link.setLatency(40, 15);
+ * link.setLoss(0.05);
+ * NetworkManager manager1 =
+ *     new NetworkManager(link.getEndpoint(0), player1, player2, prefs);
+ * link.getEndpoint(0).setTransportListener(manager1);
+ * </code></pre>
+ * <p>The random number generator is seeded by the caller, so that a
+ * given sequence of transmissions is always subjected to the same
+ * impairments.  The link keeps counts of the datagrams it sent, lost,
+ * duplicated, reordered and delivered.
+ */
+public class EmulatedLink {
+  /*
+   * The size of the endpoint receive buffers, which matches the
+   * receive buffer size of the other transports.
+   */
+  private static final int RX_BUFFER_SIZE = 256;
+
+  /*
+   * EmulatedLink class member variables.
+   */
+  private boolean running;
+  private double  duplication;
+  private double  loss;
+  private double  reordering;
+  private long    jitter;
+  private long    latency;
+  private long    reorderDelay;
+  private long    sequence;
+  private int     delivered;
+  private int     duplicated;
+  private int     lost;
+  private int     reordered;
+  private int     sent;
+  private final Endpoint[]            endpoints;
+  private final PriorityQueue<Packet> packets;
+  private final Random                random;
+  private final Thread                thread;
+
+  /**
+   * This class is one end of the emulated link.
+   */
+  public class Endpoint implements NetworkTransport {
+    private volatile boolean closed;
+    private volatile boolean paused;
+    private DatagramPool txPool;
+    private final byte[] rxBuffer;
+    private final ArrayList<TransportListener> listenerList;
+
+    private Endpoint() {
+      closed       = false;
+      paused       = false;
+      txPool       = null;
+      rxBuffer     = new byte[RX_BUFFER_SIZE];
+      listenerList = new ArrayList<TransportListener>();
+    }
+
+    /**
+     * Stop this endpoint.  Datagrams are no longer delivered to it, and
+     * the link thread is stopped once both endpoints are stopped.
+     */
+    public void cleanUp() {
+      synchronized(listenerList) {
+        closed = true;
+        listenerList.clear();
+      }
+      if (endpoints[0].closed && endpoints[1].closed) {
+        close();
+      }
+    }
+
+    /**
+     * Deliver a datagram to the listeners of this endpoint.  Datagrams
+     * that arrive while the endpoint is paused are discarded.
+     * @param data - the datagram contents.
+     */
+    private void deliver(byte[] data) {
+      synchronized(listenerList) {
+        if (closed || paused) {
+          return;
+        }
+        int length = Math.min(data.length, rxBuffer.length);
+        System.arraycopy(data, 0, rxBuffer, 0, length);
+        for (int index = 0; index < listenerList.size(); index++) {
+          listenerList.get(index).onTransportEvent(rxBuffer, length);
+        }
+      }
+    }
+
+    public void pause() {
+      paused = true;
+    }
+
+    public void setDatagramPool(DatagramPool pool) {
+      txPool = pool;
+    }
+
+    public void setTransportListener(TransportListener listener) {
+      synchronized(listenerList) {
+        listenerList.add(listener);
+      }
+    }
+
+    /**
+     * Send a datagram to the other endpoint.  The datagram is copied,
+     * so it is returned to the datagram pool immediately.
+     * @param buffer - the datagram to transmit.
+     * @return <code>true</code> if the datagram was accepted, even if
+     * the link then loses it.
+     */
+    public boolean transmit(byte[] buffer) {
+      if (closed) {
+        return false;
+      }
+      Endpoint destination = (this == endpoints[0]) ? endpoints[1] :
+                                                      endpoints[0];
+      byte[] data = buffer.clone();
+      if (txPool != null) {
+        txPool.recycle(buffer);
+      }
+      schedule(destination, data);
+      return true;
+    }
+
+    public void unPause() {
+      paused = false;
+    }
+  }
+
+  /*
+   * A datagram in transit, ordered by delivery time, then by the order
+   * it was scheduled in.
+   */
+  private static class Packet {
+    public final Endpoint destination;
+    public final byte[]   data;
+    public final long     order;
+    public final long     time;
+
+    public Packet(Endpoint destination, byte[] data, long time, long order) {
+      this.destination = destination;
+      this.data        = data;
+      this.time        = time;
+      this.order       = order;
+    }
+  }
+
+  /**
+   * Emulated link class constructor.  The link initially delivers every
+   * datagram immediately and in order.
+   * @param seed - the seed of the random number generator that decides
+   * the impairments applied to each datagram.
+   */
+  public EmulatedLink(long seed) {
+    duplication  = 0.0;
+    loss         = 0.0;
+    reordering   = 0.0;
+    jitter       = 0L;
+    latency      = 0L;
+    reorderDelay = 0L;
+    sequence     = 0L;
+    endpoints    = new Endpoint[] { new Endpoint(), new Endpoint() };
+    packets      = new PriorityQueue<Packet>(16, new Comparator<Packet>() {
+      public int compare(Packet a, Packet b) {
+        if (a.time != b.time) {
+          return (a.time < b.time) ? -1 : 1;
+        }
+        return (a.order < b.order) ? -1 : ((a.order > b.order) ? 1 : 0);
+      }
+    });
+    random       = new Random(seed);
+    running      = true;
+    thread       = new Thread(new Runnable() {
+      public void run() {
+        deliverPackets();
+      }
+    }, "EmulatedLink");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Stop the link thread.  Datagrams still in transit are discarded.
+   */
+  public void close() {
+    synchronized(packets) {
+      running = false;
+      packets.clear();
+      packets.notifyAll();
+    }
+  }
+
+  /**
+   * This is the link thread loop.  It waits for the datagram with the
+   * earliest delivery time to become due, and delivers it.  Datagrams
+   * are delivered outside the lock, so listeners may transmit.
+   */
+  private void deliverPackets() {
+    while (true) {
+      Packet packet = null;
+      synchronized(packets) {
+        while (running && (packet == null)) {
+          long wait = 0L;
+          if (!packets.isEmpty()) {
+            wait = packets.peek().time - System.currentTimeMillis();
+            if (wait <= 0) {
+              packet = packets.poll();
+              delivered++;
+              break;
+            }
+          }
+          try {
+            packets.wait(wait);
+          } catch (InterruptedException ie) {
+            running = false;
+          }
+        }
+        if (!running) {
+          return;
+        }
+      }
+      packet.destination.deliver(packet.data);
+    }
+  }
+
+  public int getDelivered() {
+    synchronized(packets) {
+      return delivered;
+    }
+  }
+
+  public int getDuplicated() {
+    synchronized(packets) {
+      return duplicated;
+    }
+  }
+
+  /**
+   * Obtain an endpoint of the link.
+   * @param index - the endpoint index, either 0 or 1.
+   * @return the link endpoint.
+   */
+  public Endpoint getEndpoint(int index) {
+    return endpoints[index];
+  }
+
+  public int getLost() {
+    synchronized(packets) {
+      return lost;
+    }
+  }
+
+  public int getReordered() {
+    synchronized(packets) {
+      return reordered;
+    }
+  }
+
+  public int getSent() {
+    synchronized(packets) {
+      return sent;
+    }
+  }
+
+  /**
+   * Obtain the delay of one copy of a datagram, which is the latency
+   * plus a uniformly distributed jitter, plus the reordering delay if
+   * the datagram is to be overtaken.
+   */
+  private long getTransitTime() {
+    long time = latency;
+    if (jitter > 0) {
+      time += (long) (random.nextDouble() * (jitter + 1));
+    }
+    if ((reordering > 0) && (random.nextDouble() < reordering)) {
+      time += reorderDelay;
+      reordered++;
+    }
+    return time;
+  }
+
+  /**
+   * Apply the link impairments to a datagram, and queue the copies
+   * that survive for delivery.
+   * @param destination - the endpoint to deliver the datagram to.
+   * @param data - the datagram contents.
+   */
+  private void schedule(Endpoint destination, byte[] data) {
+    synchronized(packets) {
+      if (!running) {
+        return;
+      }
+      sent++;
+      if ((loss > 0) && (random.nextDouble() < loss)) {
+        lost++;
+        return;
+      }
+      long now = System.currentTimeMillis();
+      packets.add(new Packet(destination, data,
+                             now + getTransitTime(), sequence++));
+      if ((duplication > 0) && (random.nextDouble() < duplication)) {
+        duplicated++;
+        packets.add(new Packet(destination, data,
+                               now + getTransitTime(), sequence++));
+      }
+      packets.notifyAll();
+    }
+  }
+
+  /**
+   * Set the probability that a datagram is delivered twice.  Each copy
+   * is subjected to its own latency and jitter.
+   * @param probability - the duplication probability, from 0 to 1.
+   */
+  public void setDuplication(double probability) {
+    synchronized(packets) {
+      duplication = probability;
+    }
+  }
+
+  /**
+   * Set the one way delay of the link.
+   * @param latency - the minimum delay in msec.
+   * @param jitter - the maximum random delay added to the latency, in
+   * msec.  Jitter alone may reorder datagrams sent close together.
+   */
+  public void setLatency(long latency, long jitter) {
+    synchronized(packets) {
+      this.latency = Math.max(0L, latency);
+      this.jitter  = Math.max(0L, jitter);
+    }
+  }
+
+  /**
+   * Set the probability that a datagram is lost.
+   * @param probability - the loss probability, from 0 to 1.
+   */
+  public void setLoss(double probability) {
+    synchronized(packets) {
+      loss = probability;
+    }
+  }
+
+  /**
+   * Set the probability that a datagram is held back, so that the
+   * datagrams sent after it are delivered first.
+   * @param probability - the reordering probability, from 0 to 1.
+   * @param delay - the additional delay of a reordered datagram, in
+   * msec.
+   */
+  public void setReordering(double probability, long delay) {
+    synchronized(packets) {
+      reordering   = probability;
+      reorderDelay = Math.max(0L, delay);
+    }
+  }
+}
@@ -52,15 +52,20 @@
 
 package com.efortin.frozenbubble;
 
+import org.jfedor.frozenbubble.BitmapBudget;
+import org.jfedor.frozenbubble.BitmapCache;
 import org.jfedor.frozenbubble.FrozenBubble;
 import org.jfedor.frozenbubble.R;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.graphics.Typeface;
 import android.os.Bundle;
+import android.preference.PreferenceManager;
 import android.util.TypedValue;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
@@ -68,6 +73,7 @@ import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.RelativeLayout;
 import android.widget.RelativeLayout.LayoutParams;
@@ -93,6 +99,7 @@ public class HomeScreen extends Activity {
   private final static int BTN7_ID   = 108;
   private final static int BTN8_ID   = 109;
   private final static int BTN9_ID   = 110;
+  private final static int BTN10_ID  = 111;
 
   private static int buttonSelected = BTN1_ID;
   private static int buttonSelPage1 = BTN1_ID;
@@ -472,6 +479,49 @@ public class HomeScreen extends Activity {
      * Add view to layout.
      */
     myLayout.addView(startBluetoothGameButton, myParams3);
+    /*
+     * Construct the internet network game button, which plays via a
+     * relay server.
+     */
+    Button startInternetGameButton = new Button(this);
+    startInternetGameButton.setOnClickListener(new Button.OnClickListener(){
+      public void onClick(View v){
+        buttonSelected = BTN10_ID;
+        buttonSelPage2 = BTN10_ID;
+        /*
+         * Display the player ID buttons page, once the relay server
+         * address is known.
+         */
+        promptRelayHost();
+      }
+    });
+    startInternetGameButton.setOnTouchListener(new Button.OnTouchListener(){
+      public boolean onTouch(View v, MotionEvent event){
+        if (event.getAction() == MotionEvent.ACTION_DOWN)
+          v.requestFocus();
+        return false;
+      }
+    });
+    startInternetGameButton.setText("Internet");
+    startInternetGameButton.setTextSize(TypedValue.COMPLEX_UNIT_DIP, 18);
+    startInternetGameButton.setWidth((int) (startInternetGameButton.getTextSize() * 9));
+    startInternetGameButton.setTypeface(null, Typeface.BOLD);
+    startInternetGameButton.setHorizontalFadingEdgeEnabled(true);
+    startInternetGameButton.setFadingEdgeLength(5);
+    startInternetGameButton.setShadowLayer(5, 5, 5, R.color.black);
+    startInternetGameButton.setId(BTN10_ID);
+    startInternetGameButton.setFocusable(true);
+    startInternetGameButton.setFocusableInTouchMode(true);
+    LayoutParams myParams4 = new LayoutParams(LayoutParams.WRAP_CONTENT,
+                                              LayoutParams.WRAP_CONTENT);
+    myParams4.addRule(RelativeLayout.CENTER_IN_PARENT);
+    myParams4.addRule(RelativeLayout.BELOW, startBluetoothGameButton.getId());
+    myParams4.topMargin = 15;
+    myParams4.bottomMargin = 15;
+    /*
+     * Add view to layout.
+     */
+    myLayout.addView(startInternetGameButton, myParams4);
   }
 
   /**
@@ -500,6 +550,11 @@ public class HomeScreen extends Activity {
                             FrozenBubble.HUMAN,
                             FrozenBubble.LOCALE_BLUETOOTH, false);
         }
+        else if (buttonSelPage2 == BTN10_ID) {
+          startFrozenBubble(VirtualInput.PLAYER2, 2,
+                            FrozenBubble.HUMAN,
+                            FrozenBubble.LOCALE_INTERNET, false);
+        }
         else {
           startFrozenBubble(VirtualInput.PLAYER2, 2,
                             FrozenBubble.HUMAN,
@@ -549,6 +604,11 @@ public class HomeScreen extends Activity {
                             FrozenBubble.HUMAN,
                             FrozenBubble.LOCALE_BLUETOOTH, false);
         }
+        else if (buttonSelPage2 == BTN10_ID) {
+          startFrozenBubble(VirtualInput.PLAYER1, 2,
+                            FrozenBubble.HUMAN,
+                            FrozenBubble.LOCALE_INTERNET, false);
+        }
         else {
           startFrozenBubble(VirtualInput.PLAYER1, 2,
                             FrozenBubble.HUMAN,
@@ -597,7 +657,8 @@ public class HomeScreen extends Activity {
      */
     if ((buttonSelected == BTN5_ID) ||
         (buttonSelected == BTN6_ID) ||
-        (buttonSelected == BTN7_ID)) {
+        (buttonSelected == BTN7_ID) ||
+        (buttonSelected == BTN10_ID)) {
       displayButtonPage(1);
     }
     else if ((buttonSelected == BTN8_ID) ||
@@ -633,6 +694,7 @@ public class HomeScreen extends Activity {
       removeViewByID(BTN7_ID);
       removeViewByID(BTN8_ID);
       removeViewByID(BTN9_ID);
+      removeViewByID(BTN10_ID);
       addHomeButtons();
       selectInitialButton();
     }
@@ -656,6 +718,7 @@ public class HomeScreen extends Activity {
       removeViewByID(BTN5_ID);
       removeViewByID(BTN6_ID);
       removeViewByID(BTN7_ID);
+      removeViewByID(BTN10_ID);
       addPlayerSelectButtons();
       selectInitialButton();
     }
@@ -743,6 +806,13 @@ public class HomeScreen extends Activity {
     }
   }
 
+  @Override
+  public void onLowMemory() {
+    super.onLowMemory();
+    BitmapCache.trimMemory(BitmapCache.TRIM_MEMORY_COMPLETE);
+    BitmapBudget.trimMemory(BitmapCache.TRIM_MEMORY_COMPLETE);
+  }
+
   @Override
   public void onPause() {
     super.onPause();
@@ -761,6 +831,18 @@ public class HomeScreen extends Activity {
     }
   }
 
+  /**
+   * Release the cached game images when the system asks the application
+   * to trim its memory usage.  Activity.onTrimMemory() is only available
+   * starting at API 14, so this method does not use the Override
+   * annotation, and is simply never called on older versions.
+   * @param level - the trim level.
+   */
+  public void onTrimMemory(int level) {
+    BitmapCache.trimMemory(level);
+    BitmapBudget.trimMemory(level);
+  }
+
   /*
    * (non-Javadoc)
    * @see android.app.Activity#onTouchEvent(android.view.MotionEvent)
@@ -778,6 +860,40 @@ public class HomeScreen extends Activity {
     return true;
   }
 
+  /**
+   * Prompt the player to enter the relay server address if it has not
+   * been set in the preferences, then display the player ID buttons
+   * page.  There is no default relay server, so an internet game can
+   * not start until an address is entered.
+   */
+  private void promptRelayHost() {
+    final SharedPreferences sp =
+      PreferenceManager.getDefaultSharedPreferences(this);
+    if (sp.getString("relay_host", "").trim().length() > 0) {
+      displayButtonPage(3);
+      return;
+    }
+    final EditText input = new EditText(this);
+    input.setSingleLine(true);
+    AlertDialog.Builder builder = new AlertDialog.Builder(this);
+    builder.setTitle("Relay Server");
+    builder.setMessage("Enter the relay server address for internet games:");
+    builder.setView(input);
+    builder.setPositiveButton("Ok", new DialogInterface.OnClickListener() {
+      public void onClick(DialogInterface dialog, int whichButton) {
+        String host = input.getText().toString().trim();
+        if (host.length() > 0) {
+          SharedPreferences.Editor editor = sp.edit();
+          editor.putString("relay_host", host);
+          editor.commit();
+          displayButtonPage(3);
+        }
+      }
+    });
+    builder.setNegativeButton("Cancel", null);
+    builder.show();
+  }
+
   private void removeViewByID(int id) {
     if (myLayout != null) {
       myLayout.removeView(myLayout.findViewById(id));
@@ -893,7 +1009,8 @@ public class HomeScreen extends Activity {
         addHomeButtons();
       else if ((buttonSelected == BTN5_ID) ||
                (buttonSelected == BTN6_ID) ||
-               (buttonSelected == BTN7_ID))
+               (buttonSelected == BTN7_ID) ||
+               (buttonSelected == BTN10_ID))
         addMultiplayerButtons();
       else
         addPlayerSelectButtons();
@@ -76,6 +76,7 @@ import android.preference.PreferenceManager;
 import android.text.format.Formatter;
 
 import com.efortin.frozenbubble.BluetoothManager.BluetoothListener;
+import com.efortin.frozenbubble.NetworkTransport.TransportListener;
 import com.efortin.frozenbubble.UDPSocket.UDPListener;
 
 /**
@@ -90,13 +91,19 @@ import com.efortin.frozenbubble.UDPSocket.UDPListener;
  *
  */
 public class NetworkManager extends Thread
-  implements BluetoothListener, UDPListener, NetGameInterface {
+  implements BluetoothListener, TransportListener, UDPListener,
+             NetGameInterface {
 
   /*
-   * UDP unicast and multicast connection type enumeration. 
+   * Connection type enumeration.  A custom connection uses a caller
+   * supplied point-to-point transport, such as an emulated link.  A
+   * relay connection exchanges unicast datagrams with the opponent via
+   * a relay server, for players that cannot reach each other directly.
    */
   public static enum connectEnum {
     BLUETOOTH,
+    CUSTOM,
+    UDP_RELAY,
     UDP_UNICAST,
     UDP_MULTICAST;
   }
@@ -104,6 +111,13 @@ public class NetworkManager extends Thread
   private static final String HOST = "225.0.0.15";
   private static final int    PORT = 5500;
 
+  /*
+   * There is no default relay server host.  The relay host and match ID
+   * are read from the relay_host and relay_match preferences, and the
+   * home screen prompts for the host before an internet game starts.
+   */
+  private static final String RELAY_HOST = "";
+
   private static boolean hasBluetooth = false;
 
   /*
@@ -114,42 +128,96 @@ public class NetworkManager extends Thread
   public static final byte MSG_ID_PREFS  = 2;
   public static final byte MSG_ID_ACTION = 3;
   public static final byte MSG_ID_FIELD  = 4;
+  public static final byte MSG_ID_JOIN   = 5;
+
+  /*
+   * Spectator stream message identifier definitions.
+   */
+  public static final byte MSG_ID_MATCH    = 6;
+  public static final byte MSG_ID_KEYFRAME = 7;
 
   /*
    * Datagram size definitions.
    */
   public static final int  ACTION_BYTES = 37;
-  public static final int  FIELD_BYTES  = 112;
+  public static final int  FIELD_BYTES  = GameFieldData.MAX_BYTES;
   public static final int  HELLO_BYTES  = 6;
+  public static final int  JOIN_BYTES   = 6;
   public static final int  PREFS_BYTES  = Preferences.PREFS_BYTES;
-  public static final int  STATUS_BYTES = 14;
+  public static final int  STATUS_BYTES = 26;
+
+  /*
+   * Each action datagram also carries up to this many of the most
+   * recent unacknowledged local actions, so that a lost datagram is
+   * recovered by the next one instead of by a retransmission timeout.
+   * The maximum keeps the largest action datagram within the receive
+   * buffer.
+   */
+  public static final int  MAX_REDUNDANT_ACTIONS = 5;
+  public static final int  REDUNDANT_ACTIONS     = 3;
 
   /*
    * Network game management definitions.
    */
-  private static final long ACTION_TIMEOUT   = 521L;
-  private static final long STATUS_TIMEOUT   = 503L;
-  private static final byte PROTOCOL_VERSION = 1;
+  private static final byte PROTOCOL_VERSION = 3;
 
+  /*
+   * Network timer definitions, in msec.  The action retransmission
+   * timeout is derived from the estimated round trip time, and the
+   * status transmission interval is twice that, but no longer than
+   * STATUS_TIMEOUT.  Until the round trip time has been measured, the
+   * initial timeouts are ACTION_TIMEOUT and STATUS_TIMEOUT.  Both are
+   * doubled on each retransmission without progress, up to MAX_TIMEOUT.
+   * In a relay game, the relay join message is sent again whenever no
+   * remote player status has arrived for RELAY_TIMEOUT, which exceeds
+   * the longest status transmission interval.
+   */
+  private static final long ACTION_TIMEOUT     = 521L;
+  private static final long MAX_TIMEOUT        = 4001L;
+  private static final long MAX_WAIT           = 100L;
+  private static final long MIN_ACTION_TIMEOUT = 23L;
+  private static final long MIN_STATUS_TIMEOUT = 53L;
+  private static final long RELAY_TIMEOUT      = 5003L;
+  private static final long STATUS_TIMEOUT     = 503L;
+
+  private boolean          castSpectators;
+  private boolean          fieldAcked;
+  private boolean          fieldPending;
   private boolean          gameFinished;
   private boolean          missedAction;
   private boolean          newGameStarted;
   private boolean          paused;
   private boolean          running;           
+  private int              fieldResyncs;
+  private short            missedActionID;
+  private int              redundantCount;
+  private int              relayMatch;
+  private int              remoteTimestamp;
   private long             actionTxTime;
+  private long             remoteTimestampTime;
   private long             statusTxTime;
   private connectEnum      mode;
   private BluetoothManager sessionBluetooth    = null;
+  private ByteBuffer       fieldBuffer         = null;
+  private ByteBuffer       rxBuffer            = null;
   private Context          myContext           = null;
+  private DatagramPool     datagramPool        = null;
+  private NetworkTransport transport           = null;
+  private GameFieldData    ackedGameFieldData  = null;
+  private GameFieldData    localGameFieldData  = null;
   private GameFieldData    remoteGameFieldData = null;
+  private GameFieldData    sentGameFieldData   = null;
   private InetAddress      localIpAddress      = null;
   private InetAddress      opponentAddress     = null;
+  private PlayerAction     receivedAction      = null;
+  private PlayerAction[]   redundantActions    = null;
   private PlayerAction     remotePlayerAction  = null;
   private PlayerStatus     localStatus         = null;
   private PlayerStatus     remoteStatus        = null;
   private Preferences      localPrefs          = null;
   private Preferences      remotePrefs         = null;
   private RemoteInterface  remoteInterface     = null;
+  private RoundTripEstimator roundTrip         = null;
   private String           remoteIpAddress     = null;
   private UDPSocket        session             = null;
   private VirtualInput     localPlayer         = null;
@@ -162,6 +230,12 @@ public class NetworkManager extends Thread
   private ArrayList<PlayerAction> localActionList  = null;
   private ArrayList<PlayerAction> remoteActionList = null;
 
+  /*
+   * The spectator stream of a local network game, which is broadcast
+   * to any spectators on the local network.
+   */
+  private SpectatorCaster  caster              = null;
+
   /**
    * Class constructor.
    * @param myContext - the context from which to obtain the application
@@ -177,33 +251,99 @@ public class NetworkManager extends Thread
                         VirtualInput remotePlayer) {
     this.myContext      = myContext.getApplicationContext();
     this.mode           = mode;
+    localIpAddress      = getLocalIPaddress();
+    /*
+     * Determine if the local device has bluetooth hardware.
+     */
+    hasBluetooth = hasBluetooth();
+    /*
+     * Obtain a copy of the local game preferences.
+     */
+    SharedPreferences sp =
+        PreferenceManager.getDefaultSharedPreferences(myContext);
+    init(localPlayer, remotePlayer, PreferencesActivity.getDefaultPrefs(sp));
+    /*
+     * A relay game is played via the relay server, and the match ID
+     * selects the opponent amongst the players joining the relay.
+     */
+    castSpectators = sp.getBoolean("spectators_option", false);
+    if (mode == connectEnum.UDP_RELAY) {
+      remoteIpAddress = sp.getString("relay_host", RELAY_HOST).trim();
+      try {
+        relayMatch = Integer.parseInt(sp.getString("relay_match", "0"));
+      } catch (NumberFormatException nfe) {
+        relayMatch = 0;
+      }
+    }
+  }
+
+  /**
+   * Class constructor for a network game over a caller supplied
+   * point-to-point transport.  No Android context is required, so two
+   * managers may be connected by an <code>EmulatedLink</code> and run
+   * in a single process.
+   * <p>The caller must register this manager as the transport
+   * listener, so that it receives the remote player datagrams.
+   * @param transport - the transport to the remote player.
+   * @param localPlayer - reference to the local player input object.
+   * @param remotePlayer - reference to the remote player input object.
+   * @param prefs - the local game preferences.
+   */
+  public NetworkManager(NetworkTransport transport,
+                        VirtualInput     localPlayer,
+                        VirtualInput     remotePlayer,
+                        Preferences      prefs) {
+    this.myContext      = null;
+    this.mode           = connectEnum.CUSTOM;
+    localIpAddress      = null;
+    init(localPlayer, remotePlayer, prefs);
+    this.transport      = transport;
+    transport.setDatagramPool(datagramPool);
+  }
+
+  /**
+   * Initialize the state shared by all connection types.
+   * @param localPlayer - reference to the local player input object.
+   * @param remotePlayer - reference to the remote player input object.
+   * @param prefs - the local game preferences.
+   */
+  private void init(VirtualInput localPlayer,
+                    VirtualInput remotePlayer,
+                    Preferences  prefs) {
     this.localPlayer    = localPlayer;
     this.remotePlayer   = remotePlayer;
     missedAction        = false;
+    missedActionID      = 0;
     newGameStarted      = false;
-    localIpAddress      = getLocalIPaddress();
     opponentAddress     = null;
     remoteIpAddress     = HOST;
-    localPrefs          = new Preferences();
+    localPrefs          = prefs;
     remotePrefs         = new Preferences();
     localStatus         = null;
     remoteStatus        = null;
+    datagramPool        = new DatagramPool();
+    fieldAcked          = false;
+    fieldPending        = false;
+    fieldBuffer         = ByteBuffer.allocate(FIELD_BYTES);
+    ackedGameFieldData  = new GameFieldData(null);
+    localGameFieldData  = new GameFieldData(null);
     remoteGameFieldData = new GameFieldData(null);
+    sentGameFieldData   = new GameFieldData(null);
+    receivedAction      = new PlayerAction (null);
+    redundantActions    = new PlayerAction[MAX_REDUNDANT_ACTIONS];
+    fieldResyncs        = 0;
+    redundantCount      = REDUNDANT_ACTIONS;
+    remoteTimestamp     = 0;
+    remoteTimestampTime = 0L;
+    roundTrip           = new RoundTripEstimator(ACTION_TIMEOUT,
+                                                 MIN_ACTION_TIMEOUT,
+                                                 MAX_TIMEOUT);
     remotePlayerAction  = new PlayerAction (null);
     remoteInterface     = new RemoteInterface(remotePlayerAction,
                                               remoteGameFieldData);
     session             = null;
     sessionBluetooth    = null;
-    /*
-     * Determine if the local device has bluetooth hardware.
-     */
-    hasBluetooth = hasBluetooth();
-    /*
-     * Obtain a copy of the local game preferences.
-     */
-    SharedPreferences sp =
-        PreferenceManager.getDefaultSharedPreferences(myContext);
-    localPrefs = PreferencesActivity.getDefaultPrefs(sp);
+    transport           = null;
     /*
      * Create the player action arrays.  The actions are inserted
      * chronologically based on message receipt order, but are extracted
@@ -253,10 +393,41 @@ public class NetworkManager extends Thread
    * This class represents the current state of an individual player
    * game field.  The game field consists of the launcher bubbles, the
    * bubbles fixed to the game field, and the the attack bar.
+   * <p>The bubbles are transmitted bit-packed.  A keyframe consists of
+   * a mask of the occupied cells followed by the 3-bit color of each
+   * occupied cell.  A delta consists of a mask of the cells that differ
+   * from a base field the receiver already holds, followed by a 0 bit
+   * for each changed cell that became empty, or a 1 bit and the 3-bit
+   * color for each changed cell that holds a bubble.  A delta carries
+   * the checksum of its base field, and is only applied to a field
+   * with the same checksum.
    * @author Eric Fortin
    *
    */
-  public class GameFieldData {
+  public static class GameFieldData {
+    /*
+     * Game field encodings.
+     */
+    public static final byte ENCODING_KEYFRAME = 0;
+    public static final byte ENCODING_DELTA    = 1;
+
+    /*
+     * Encoded game field layout.  The header holds the player and
+     * launcher state, the encoding, and the base field checksum.  It is
+     * followed by a mask with one bit per cell, then the cell codes.
+     */
+    public static final int HEADER_BYTES = 11;
+    public static final int NUM_CELLS    =
+      LevelManager.NUM_COLS * LevelManager.NUM_ROWS;
+    public static final int MASK_BYTES   = (NUM_CELLS + 7) / 8;
+    public static final int MAX_BYTES    =
+      HEADER_BYTES + MASK_BYTES + ((NUM_CELLS * 4) + 7) / 8;
+    public static final int MIN_BYTES    = HEADER_BYTES + MASK_BYTES;
+
+    private final CRC16 checksum = new CRC16(0);
+    private final byte[][] scratchField =
+      new byte[LevelManager.NUM_COLS][LevelManager.NUM_ROWS];
+
     public byte  playerID          = 0;
     public short localActionID     = 0;
     public byte  compressorSteps   = 0;
@@ -289,9 +460,11 @@ public class NetworkManager extends Thread
     /**
      * Class constructor.
      * @param buffer - buffer contents to copy to this instance.
+     * @param startIndex - the start of the data to convert.
+     * @param length - the number of bytes of data to convert.
      */
-    public GameFieldData(byte[] buffer, int startIndex) {
-      copyFromBuffer(buffer, startIndex);
+    public GameFieldData(ByteBuffer buffer, int startIndex, int length) {
+      copyFromBuffer(buffer, startIndex, length);
     }
 
     /**
@@ -316,59 +489,250 @@ public class NetworkManager extends Thread
     }
 
     /**
-     * Copy the contents of the buffer to this field data.
+     * Copy the launcher, attack bar and bubble grid state of the
+     * supplied game to this field data.  The player and action IDs are
+     * not modified.
+     * @param game - the game to copy.
+     */
+    public void copyFromGame(FrozenGame game) {
+      this.compressorSteps   = (byte)  game.getCompressorSteps();
+      this.launchBubbleColor = (byte)  game.getCurrentColor();
+      this.nextBubbleColor   = (byte)  game.getNextColor();
+      this.attackBarBubbles  = (short) game.getAttackBarBubbles();
+
+      BubbleSprite[][] bubbleGrid = game.getGrid();
+      for (int x = 0; x < LevelManager.NUM_COLS; x++) {
+        for (int y = 0; y < LevelManager.NUM_ROWS; y++) {
+          if (bubbleGrid[x][y] != null) {
+            this.gameField[x][y] = (byte) bubbleGrid[x][y].getColor();
+          }
+          else {
+            this.gameField[x][y] = -1;
+          }
+        }
+      }
+    }
+
+    /**
+     * Copy the contents of the buffer to this field data.  The buffer
+     * is read with absolute gets, so its position is not modified.
+     * <p>A delta is only applied if this field data holds its base
+     * field.  Nothing is modified if the data is not applied.
      * @param buffer - the buffer to convert and copy
      * @param startIndex - the start of the data to convert
+     * @param length - the number of bytes of data to convert
+     * @return <code>true</code> if the data was applied, or
+     * <code>false</code> if it is truncated, or is a delta against a
+     * different base field.
      */
-    public void copyFromBuffer(byte[] buffer, int startIndex) {
-      byte[] shortBytes  = new byte[2];
+    public boolean copyFromBuffer(ByteBuffer buffer, int startIndex,
+                                  int length) {
+      if ((buffer == null) || (length < MIN_BYTES)) {
+        return false;
+      }
 
-      if (buffer != null) {
-        this.playerID          = buffer[startIndex++];
-        shortBytes[0]          = buffer[startIndex++];
-        shortBytes[1]          = buffer[startIndex++];
-        this.localActionID     = toShort(shortBytes);
-        this.compressorSteps   = buffer[startIndex++];
-        this.launchBubbleColor = buffer[startIndex++];
-        this.nextBubbleColor   = buffer[startIndex++];
-        shortBytes[0]          = buffer[startIndex++];
-        shortBytes[1]          = buffer[startIndex++];
-        this.attackBarBubbles  = toShort(shortBytes);
+      byte encoding = buffer.get(startIndex + 8);
+      if (encoding == ENCODING_DELTA) {
+        if (buffer.getShort(startIndex + 9) != getChecksum()) {
+          return false;
+        }
+      }
+      else if (encoding != ENCODING_KEYFRAME) {
+        return false;
+      }
 
-        for (int x = 0; x < LevelManager.NUM_COLS; x++) {
-          for (int y = 0; y < LevelManager.NUM_ROWS; y++) {
-            this.gameField[x][y] = buffer[startIndex++];
+      int maskIndex = startIndex + HEADER_BYTES;
+      int codeIndex = maskIndex + MASK_BYTES;
+      int codeBits  = (length - MIN_BYTES) * 8;
+      int bit       = 0;
+      int cell      = 0;
+      for (int x = 0; x < LevelManager.NUM_COLS; x++) {
+        for (int y = 0; y < LevelManager.NUM_ROWS; y++, cell++) {
+          byte color = (encoding == ENCODING_DELTA) ? gameField[x][y] : -1;
+          if (getBits(buffer, maskIndex, cell, 1) != 0) {
+            boolean occupied = true;
+            if (encoding == ENCODING_DELTA) {
+              if (bit + 1 > codeBits) {
+                return false;
+              }
+              occupied = getBits(buffer, codeIndex, bit++, 1) != 0;
+              color    = -1;
+            }
+            if (occupied) {
+              if (bit + 3 > codeBits) {
+                return false;
+              }
+              color = (byte) getBits(buffer, codeIndex, bit, 3);
+              bit  += 3;
+            }
           }
+          scratchField[x][y] = color;
         }
       }
+
+      this.playerID          = buffer.get     (startIndex     );
+      this.localActionID     = buffer.getShort(startIndex +  1);
+      this.compressorSteps   = buffer.get     (startIndex +  3);
+      this.launchBubbleColor = buffer.get     (startIndex +  4);
+      this.nextBubbleColor   = buffer.get     (startIndex +  5);
+      this.attackBarBubbles  = buffer.getShort(startIndex +  6);
+
+      for (int x = 0; x < LevelManager.NUM_COLS; x++) {
+        System.arraycopy(scratchField[x], 0, gameField[x], 0,
+                         LevelManager.NUM_ROWS);
+      }
+      return true;
     }
 
     /**
-     * Copy the contents of this field data to the buffer.
+     * Copy the contents of this field data to the buffer as a keyframe.
+     * The buffer is written with absolute puts, so its position is not
+     * modified.
      * @param buffer - the buffer to copy to
      * @param startIndex - the start location to copy to
+     * @return the number of bytes written.
      */
-    public void copyToBuffer(byte[] buffer, int startIndex) {
-      byte[] shortBytes  = new byte[2];
+    public int copyToBuffer(ByteBuffer buffer, int startIndex) {
+      return copyToBuffer(buffer, startIndex, null);
+    }
 
-      if (buffer != null) {
-        buffer[startIndex++] = this.playerID;
-        toByteArray(this.localActionID, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
-        buffer[startIndex++] = this.compressorSteps;
-        buffer[startIndex++] = this.launchBubbleColor;
-        buffer[startIndex++] = this.nextBubbleColor;
-        toByteArray(this.attackBarBubbles, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
+    /**
+     * Copy the contents of this field data to the buffer, as a delta
+     * against the supplied base field if that is smaller than a
+     * keyframe.  The buffer is written with absolute puts, so its
+     * position is not modified.
+     * @param buffer - the buffer to copy to, which must have room for
+     * <code>MAX_BYTES</code> bytes.
+     * @param startIndex - the start location to copy to
+     * @param base - the field data the receiver holds, or
+     * <code>null</code> to write a keyframe.
+     * @return the number of bytes written.
+     */
+    public int copyToBuffer(ByteBuffer buffer, int startIndex,
+                            GameFieldData base) {
+      if (buffer == null) {
+        return 0;
+      }
 
-        for (int x = 0; x < LevelManager.NUM_COLS; x++) {
-          for (int y = 0; y < LevelManager.NUM_ROWS; y++) {
-            buffer[startIndex++] = this.gameField[x][y];
+      /*
+       * Determine which encoding is smaller.
+       */
+      int keyframeBits = 0;
+      int deltaBits    = 0;
+      for (int x = 0; x < LevelManager.NUM_COLS; x++) {
+        for (int y = 0; y < LevelManager.NUM_ROWS; y++) {
+          if (gameField[x][y] != -1) {
+            keyframeBits += 3;
           }
+          if ((base != null) && (gameField[x][y] != base.gameField[x][y])) {
+            deltaBits += (gameField[x][y] != -1) ? 4 : 1;
+          }
+        }
+      }
+      byte encoding = ENCODING_KEYFRAME;
+      if ((base != null) && (deltaBits < keyframeBits)) {
+        encoding = ENCODING_DELTA;
+      }
+
+      buffer.put     (startIndex     , this.playerID);
+      buffer.putShort(startIndex +  1, this.localActionID);
+      buffer.put     (startIndex +  3, this.compressorSteps);
+      buffer.put     (startIndex +  4, this.launchBubbleColor);
+      buffer.put     (startIndex +  5, this.nextBubbleColor);
+      buffer.putShort(startIndex +  6, this.attackBarBubbles);
+      buffer.put     (startIndex +  8, encoding);
+      buffer.putShort(startIndex +  9, (encoding == ENCODING_DELTA) ?
+                                       base.getChecksum() : 0);
+
+      int maskIndex = startIndex + HEADER_BYTES;
+      int codeIndex = maskIndex + MASK_BYTES;
+      int bit       = 0;
+      int cell      = 0;
+      for (int x = 0; x < LevelManager.NUM_COLS; x++) {
+        for (int y = 0; y < LevelManager.NUM_ROWS; y++, cell++) {
+          byte    color = gameField[x][y];
+          boolean coded;
+          if (encoding == ENCODING_DELTA) {
+            coded = color != base.gameField[x][y];
+            if (coded) {
+              putBits(buffer, codeIndex, bit++, (color != -1) ? 1 : 0, 1);
+            }
+          }
+          else {
+            coded = color != -1;
+          }
+          putBits(buffer, maskIndex, cell, coded ? 1 : 0, 1);
+          if (coded && (color != -1)) {
+            putBits(buffer, codeIndex, bit, color, 3);
+            bit += 3;
+          }
+        }
+      }
+
+      /*
+       * Clear the unused bits of the last byte.
+       */
+      if ((bit & 7) != 0) {
+        putBits(buffer, codeIndex, bit, 0, 8 - (bit & 7));
+      }
+      return MIN_BYTES + ((bit + 7) / 8);
+    }
+
+    /**
+     * Extract an unsigned value from a bit-packed buffer.
+     * @param buffer - the buffer to read from.
+     * @param index - the index of the first byte of the packed bits.
+     * @param bit - the position of the most significant bit to read.
+     * @param count - the number of bits to read.
+     * @return the extracted value.
+     */
+    private static int getBits(ByteBuffer buffer, int index, int bit,
+                               int count) {
+      int value = 0;
+      for (int end = bit + count; bit < end; bit++) {
+        int b = buffer.get(index + (bit >> 3));
+        value = (value << 1) | ((b >> (7 - (bit & 7))) & 1);
+      }
+      return value;
+    }
+
+    /**
+     * Calculate the CRC16 checksum of the bubble grid, which identifies
+     * the base field of a delta.
+     * @return the checksum of the bubble grid.
+     */
+    public short getChecksum() {
+      checksum.reset();
+      for (int x = 0; x < LevelManager.NUM_COLS; x++) {
+        for (int y = 0; y < LevelManager.NUM_ROWS; y++) {
+          checksum.update(gameField[x][y]);
         }
       }
+      return (short) checksum.getValue();
+    }
+
+    /**
+     * Insert an unsigned value into a bit-packed buffer.
+     * @param buffer - the buffer to write to.
+     * @param index - the index of the first byte of the packed bits.
+     * @param bit - the position of the most significant bit to write.
+     * @param value - the value to write.
+     * @param count - the number of bits to write.
+     */
+    private static void putBits(ByteBuffer buffer, int index, int bit,
+                                int value, int count) {
+      for (int shift = count - 1; shift >= 0; shift--, bit++) {
+        int offset = index + (bit >> 3);
+        int mask   = 0x80 >>> (bit & 7);
+        int b      = buffer.get(offset);
+        if (((value >> shift) & 1) != 0) {
+          b |= mask;
+        }
+        else {
+          b &= ~mask;
+        }
+        buffer.put(offset, (byte) b);
+      }
     }
   };
 
@@ -378,7 +742,7 @@ public class NetworkManager extends Thread
    * @author Eric Fortin
    *
    */
-  public class PlayerAction {
+  public static class PlayerAction {
     public byte  playerID;        // player ID associated with this action
     public short localActionID;   // ID of this particular action
     public short remoteActionID;  // ID of expected remote player action
@@ -426,7 +790,7 @@ public class NetworkManager extends Thread
      * Class constructor.
      * @param buffer - buffer contents to copy to this instance.
      */
-    public PlayerAction(byte[] buffer, int startIndex) {
+    public PlayerAction(ByteBuffer buffer, int startIndex) {
       copyFromBuffer(buffer, startIndex);
     }
 
@@ -457,82 +821,58 @@ public class NetworkManager extends Thread
     }
 
     /**
-     * Copy the contents of the buffer to this action.
+     * Copy the contents of the buffer to this action.  The buffer is
+     * read with absolute gets, so its position is not modified.
      * @param buffer - the buffer to convert and copy.
      * @param startIndex - the start of the data to convert.
      */
-    public void copyFromBuffer(byte[] buffer, int startIndex) {
-      byte[] shortBytes  = new byte[2];
-      byte[] doubleBytes = new byte[8];
-
+    public void copyFromBuffer(ByteBuffer buffer, int startIndex) {
       if (buffer != null) {
-        this.playerID           = buffer[startIndex++];
-        shortBytes[0]           = buffer[startIndex++];
-        shortBytes[1]           = buffer[startIndex++];
-        this.localActionID      = toShort(shortBytes);
-        shortBytes[0]           = buffer[startIndex++];
-        shortBytes[1]           = buffer[startIndex++];
-        this.remoteActionID     = toShort(shortBytes);
-        this.compress           = buffer[startIndex++] == 1;
-        this.launchBubble       = buffer[startIndex++] == 1;
-        this.swapBubble         = buffer[startIndex++] == 1;
-        this.keyCode            = buffer[startIndex++];
-        this.launchBubbleColor  = buffer[startIndex++];
-        this.nextBubbleColor    = buffer[startIndex++];
-        this.newNextBubbleColor = buffer[startIndex++];
-        shortBytes[0]           = buffer[startIndex++];
-        shortBytes[1]           = buffer[startIndex++];
-        this.attackBarBubbles   = toShort(shortBytes);
+        this.playerID           = buffer.get     (startIndex     );
+        this.localActionID      = buffer.getShort(startIndex +  1);
+        this.remoteActionID     = buffer.getShort(startIndex +  3);
+        this.compress           = buffer.get     (startIndex +  5) == 1;
+        this.launchBubble       = buffer.get     (startIndex +  6) == 1;
+        this.swapBubble         = buffer.get     (startIndex +  7) == 1;
+        this.keyCode            = buffer.get     (startIndex +  8);
+        this.launchBubbleColor  = buffer.get     (startIndex +  9);
+        this.nextBubbleColor    = buffer.get     (startIndex + 10);
+        this.newNextBubbleColor = buffer.get     (startIndex + 11);
+        this.attackBarBubbles   = buffer.getShort(startIndex + 12);
 
         for (int index = 0; index < 15; index++) {
-          this.attackBubbles[index] = buffer[startIndex++];
-        }
-
-        for (int index = 0; index < 8; index++) {
-          doubleBytes[index] = buffer[startIndex++];
+          this.attackBubbles[index] = buffer.get(startIndex + 14 + index);
         }
 
-        this.aimPosition = toDouble(doubleBytes);
+        this.aimPosition = buffer.getDouble(startIndex + 29);
       }
     }
 
     /**
-     * Copy the contents of this action to the buffer.
+     * Copy the contents of this action to the buffer.  The buffer is
+     * written with absolute puts, so its position is not modified.
      * @param buffer - the buffer to copy to.
      * @param startIndex - the start location to copy to.
      */
-    public void copyToBuffer(byte[] buffer, int startIndex) {
-      byte[] shortBytes  = new byte[2];
-      byte[] doubleBytes = new byte[8];
-
+    public void copyToBuffer(ByteBuffer buffer, int startIndex) {
       if (buffer != null) {
-        buffer[startIndex++] = this.playerID;
-        toByteArray(this.localActionID, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
-        toByteArray(this.remoteActionID, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
-        buffer[startIndex++] = (byte) ((this.compress == true)?1:0);
-        buffer[startIndex++] = (byte) ((this.launchBubble == true)?1:0);
-        buffer[startIndex++] = (byte) ((this.swapBubble == true)?1:0);
-        buffer[startIndex++] = this.keyCode;
-        buffer[startIndex++] = this.launchBubbleColor;
-        buffer[startIndex++] = this.nextBubbleColor;
-        buffer[startIndex++] = this.newNextBubbleColor;
-        toByteArray(this.attackBarBubbles, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
+        buffer.put     (startIndex     , this.playerID);
+        buffer.putShort(startIndex +  1, this.localActionID);
+        buffer.putShort(startIndex +  3, this.remoteActionID);
+        buffer.put     (startIndex +  5, (byte) (this.compress     ? 1 : 0));
+        buffer.put     (startIndex +  6, (byte) (this.launchBubble ? 1 : 0));
+        buffer.put     (startIndex +  7, (byte) (this.swapBubble   ? 1 : 0));
+        buffer.put     (startIndex +  8, this.keyCode);
+        buffer.put     (startIndex +  9, this.launchBubbleColor);
+        buffer.put     (startIndex + 10, this.nextBubbleColor);
+        buffer.put     (startIndex + 11, this.newNextBubbleColor);
+        buffer.putShort(startIndex + 12, this.attackBarBubbles);
 
         for (int index = 0; index < 15; index++) {
-          buffer[startIndex++] = this.attackBubbles[index];
+          buffer.put(startIndex + 14 + index, this.attackBubbles[index]);
         }
 
-        toByteArray(this.aimPosition, doubleBytes);
-
-        for (int index = 0; index < 8; index++) {
-          buffer[startIndex++] = doubleBytes[index];
-        }
+        buffer.putDouble(startIndex + 29, this.aimPosition);
       }
     }
   };
@@ -551,7 +891,7 @@ public class NetworkManager extends Thread
    * @author Eric Fortin
    *
    */
-  public class PlayerStatus {
+  public static class PlayerStatus {
     /*
      * The following ID is the player associated with this status.
      */
@@ -592,6 +932,19 @@ public class NetworkManager extends Thread
      */
     public short localChecksum;
     public short remoteChecksum;
+    /*
+     * The following values are used to measure the round trip time.
+     * The timestamp is the low 32 bits of the sender's clock when the
+     * status was transmitted.  The echo timestamp is the last timestamp
+     * received from the other player, and the echo delay is how long
+     * the sender held it before transmitting this status, which is
+     * subtracted from the measured round trip time.  When the echo
+     * timestamp is zero, no timestamp has been received yet (or
+     * improbably, it is zero).
+     */
+    public int timestamp;
+    public int echoTimestamp;
+    public int echoDelay;
 
     /**
      * Class constructor.
@@ -630,7 +983,7 @@ public class NetworkManager extends Thread
      * Class constructor.
      * @param buffer - buffer contents to copy to this instance.
      */
-    public PlayerStatus(byte[] buffer, int startIndex) {
+    public PlayerStatus(ByteBuffer buffer, int startIndex) {
       copyFromBuffer(buffer, startIndex);
     }
 
@@ -650,66 +1003,57 @@ public class NetworkManager extends Thread
         this.prefsRequest    = status.prefsRequest;
         this.localChecksum   = status.localChecksum;
         this.remoteChecksum  = status.remoteChecksum;
+        this.timestamp       = status.timestamp;
+        this.echoTimestamp   = status.echoTimestamp;
+        this.echoDelay       = status.echoDelay;
       }
     }
 
     /**
-     * Copy the contents of the buffer to this status.
+     * Copy the contents of the buffer to this status.  The buffer is
+     * read with absolute gets, so its position is not modified.
      * @param buffer - the buffer to convert and copy.
      * @param startIndex - the start of the data to convert.
      */
-    public void copyFromBuffer(byte[] buffer, int startIndex) {
-      byte[] shortBytes  = new byte[2];
-
+    public void copyFromBuffer(ByteBuffer buffer, int startIndex) {
       if (buffer != null) {
-        this.playerID        = buffer[startIndex++];
-        this.protocolVersion = buffer[startIndex++];
-        shortBytes[0]        = buffer[startIndex++];
-        shortBytes[1]        = buffer[startIndex++];
-        this.localActionID   = toShort(shortBytes);
-        shortBytes[0]        = buffer[startIndex++];
-        shortBytes[1]        = buffer[startIndex++];
-        this.remoteActionID  = toShort(shortBytes);
-        this.readyToPlay     = buffer[startIndex++] == 1;
-        this.gameWonLost     = buffer[startIndex++] == 1;
-        this.fieldRequest    = buffer[startIndex++] == 1;
-        this.prefsRequest    = buffer[startIndex++] == 1;
-        shortBytes[0]        = buffer[startIndex++];
-        shortBytes[1]        = buffer[startIndex++];
-        this.localChecksum   = toShort(shortBytes);
-        shortBytes[0]        = buffer[startIndex++];
-        shortBytes[1]        = buffer[startIndex++];
-        this.remoteChecksum  = toShort(shortBytes);
+        this.playerID        = buffer.get     (startIndex     );
+        this.protocolVersion = buffer.get     (startIndex +  1);
+        this.localActionID   = buffer.getShort(startIndex +  2);
+        this.remoteActionID  = buffer.getShort(startIndex +  4);
+        this.readyToPlay     = buffer.get     (startIndex +  6) == 1;
+        this.gameWonLost     = buffer.get     (startIndex +  7) == 1;
+        this.fieldRequest    = buffer.get     (startIndex +  8) == 1;
+        this.prefsRequest    = buffer.get     (startIndex +  9) == 1;
+        this.localChecksum   = buffer.getShort(startIndex + 10);
+        this.remoteChecksum  = buffer.getShort(startIndex + 12);
+        this.timestamp       = buffer.getInt  (startIndex + 14);
+        this.echoTimestamp   = buffer.getInt  (startIndex + 18);
+        this.echoDelay       = buffer.getInt  (startIndex + 22);
       }
     }
 
     /**
-     * Copy the contents of this status to the buffer.
+     * Copy the contents of this status to the buffer.  The buffer is
+     * written with absolute puts, so its position is not modified.
      * @param buffer - the buffer to copy to.
      * @param startIndex - the start location to copy to.
      */
-    public void copyToBuffer(byte[] buffer, int startIndex) {
-      byte[] shortBytes  = new byte[2];
-
+    public void copyToBuffer(ByteBuffer buffer, int startIndex) {
       if (buffer != null) {
-        buffer[startIndex++] = this.playerID;
-        buffer[startIndex++] = this.protocolVersion;
-        toByteArray(this.localActionID, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
-        toByteArray(this.remoteActionID, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
-        buffer[startIndex++] = (byte) ((this.readyToPlay == true)?1:0);
-        buffer[startIndex++] = (byte) ((this.gameWonLost == true)?1:0);
-        buffer[startIndex++] = (byte) ((this.fieldRequest == true)?1:0);
-        buffer[startIndex++] = (byte) ((this.prefsRequest == true)?1:0);
-        toByteArray(this.localChecksum, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
-        toByteArray(this.remoteChecksum, shortBytes);
-        buffer[startIndex++] = shortBytes[0];
-        buffer[startIndex++] = shortBytes[1];
+        buffer.put     (startIndex     , this.playerID);
+        buffer.put     (startIndex +  1, this.protocolVersion);
+        buffer.putShort(startIndex +  2, this.localActionID);
+        buffer.putShort(startIndex +  4, this.remoteActionID);
+        buffer.put     (startIndex +  6, (byte) (this.readyToPlay  ? 1 : 0));
+        buffer.put     (startIndex +  7, (byte) (this.gameWonLost  ? 1 : 0));
+        buffer.put     (startIndex +  8, (byte) (this.fieldRequest ? 1 : 0));
+        buffer.put     (startIndex +  9, (byte) (this.prefsRequest ? 1 : 0));
+        buffer.putShort(startIndex + 10, this.localChecksum);
+        buffer.putShort(startIndex + 12, this.remoteChecksum);
+        buffer.putInt  (startIndex + 14, this.timestamp);
+        buffer.putInt  (startIndex + 18, this.echoTimestamp);
+        buffer.putInt  (startIndex + 22, this.echoDelay);
       }
     }
 
@@ -744,11 +1088,14 @@ public class NetworkManager extends Thread
       this.prefsRequest    = prefs;
       this.localChecksum   = localCRC;
       this.remoteChecksum  = remoteCRC;
+      this.timestamp       = 0;
+      this.echoTimestamp   = 0;
+      this.echoDelay       = 0;
     }
   };
 
   private boolean actionTimerExpired() {
-    return System.currentTimeMillis() >= actionTxTime;
+    return getTime() >= actionTxTime;
   }
 
   /**
@@ -797,6 +1144,14 @@ public class NetworkManager extends Thread
               localStatus.localActionID + 1) {
             remoteStatus.remoteActionID = newAction.remoteActionID;
           }
+
+          /*
+           * Discard an action that was already executed, which is
+           * received again as a redundant copy in a later datagram.
+           */
+          if (newAction.localActionID < localStatus.remoteActionID) {
+            return;
+          }
   
           for (int index = 0; index < listSize; index++) {
             /*
@@ -809,13 +1164,10 @@ public class NetworkManager extends Thread
             }
           }
           /*
-           * Clear the list when the first action is received to remove
-           * spurious entries.
+           * Remote actions are decoded into a reused action object, so
+           * only an action that is actually kept is copied.
            */
-          if (newAction.localActionID == 1) {
-            remoteActionList.clear();
-          }
-          remoteActionList.add(newAction);
+          remoteActionList.add(new PlayerAction(newAction));
         }
       }
     }
@@ -827,6 +1179,9 @@ public class NetworkManager extends Thread
           (localStatus.remoteChecksum != 0) &&
           (remoteStatus.localChecksum != 0) &&
           (localStatus.remoteChecksum != remoteStatus.localChecksum)) {
+        if (!localStatus.fieldRequest) {
+          fieldResyncs++;
+        }
         localStatus.fieldRequest = true;
       }
     }
@@ -865,21 +1220,19 @@ public class NetworkManager extends Thread
   public void cleanUp() {
     stopThread();
 
-    if (session != null) {
-      session.cleanUp();
-    }
-    session = null;
-
-    if (sessionBluetooth != null) {
-      sessionBluetooth.cleanUp();
+    if (transport != null) {
+      transport.cleanUp();
     }
+    session          = null;
     sessionBluetooth = null;
+    transport        = null;
 
     /*
      * Restore the local game preferences in the event that they were
-     * overwritten by the remote player's preferences.
+     * overwritten by the remote player's preferences.  A manager
+     * without a context does not modify the application preferences.
      */
-    if (localPrefs != null) {
+    if ((localPrefs != null) && (myContext != null)) {
       FrozenBubble.setPrefs(localPrefs);
     }
 
@@ -887,8 +1240,18 @@ public class NetworkManager extends Thread
     remotePrefs         = null;
     localPlayer         = null;
     remotePlayer        = null;
+    ackedGameFieldData  = null;
+    localGameFieldData  = null;
     remoteGameFieldData = null;
+    sentGameFieldData   = null;
+    fieldBuffer         = null;
+    receivedAction      = null;
     remotePlayerAction  = null;
+    rxBuffer            = null;
+
+    if (caster != null)
+      caster.cleanUp();
+    caster = null;
 
     if (remoteInterface != null)
       remoteInterface.cleanUp();
@@ -912,9 +1275,30 @@ public class NetworkManager extends Thread
       ioe.printStackTrace();
     }
     if (session != null) {
+      session.setDatagramPool(datagramPool);
       session.setUDPListener(this);
       session.setLocalIPaddress(getLocalIPaddress());
     }
+    transport = session;
+
+    /*
+     * The spectator stream is only broadcast on the local network,
+     * since a relay game has no local network peers to watch it.
+     */
+    if (castSpectators && (caster == null) &&
+        ((mode == connectEnum.UDP_MULTICAST) ||
+         (mode == connectEnum.UDP_UNICAST  ))) {
+      try {
+        caster = new SpectatorCaster(new UDPSocket(myContext,
+                                                   connectEnum.UDP_MULTICAST,
+                                                   SpectatorCaster.HOST,
+                                                   SpectatorCaster.PORT));
+      } catch (UnknownHostException uhe) {
+        uhe.printStackTrace();
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+      }
+    }
   }
 
   /**
@@ -923,36 +1307,18 @@ public class NetworkManager extends Thread
    * @param startIndex - the start of the data to convert.
    */
   private void copyPrefsFromBuffer(Preferences prefs,
-                                   byte[] buffer,
+                                   ByteBuffer buffer,
                                    int startIndex) {
-    byte[] intBytes = new byte[4];
-
     if (buffer != null) {
-      intBytes[0]      = buffer[startIndex++];
-      intBytes[1]      = buffer[startIndex++];
-      intBytes[2]      = buffer[startIndex++];
-      intBytes[3]      = buffer[startIndex++];
-      prefs.collision  = toInt(intBytes);
-      prefs.compressor = buffer[startIndex++] == 1;
-      intBytes[0]      = buffer[startIndex++];
-      intBytes[1]      = buffer[startIndex++];
-      intBytes[2]      = buffer[startIndex++];
-      intBytes[3]      = buffer[startIndex++];
-      prefs.difficulty = toInt(intBytes);
-      prefs.dontRushMe = buffer[startIndex++] == 1;
-      prefs.fullscreen = buffer[startIndex++] == 1;
-      intBytes[0]      = buffer[startIndex++];
-      intBytes[1]      = buffer[startIndex++];
-      intBytes[2]      = buffer[startIndex++];
-      intBytes[3]      = buffer[startIndex++];
-      prefs.gameMode   = toInt(intBytes);
-      prefs.musicOn    = buffer[startIndex++] == 1;
-      prefs.soundOn    = buffer[startIndex++] == 1;
-      intBytes[0]      = buffer[startIndex++];
-      intBytes[1]      = buffer[startIndex++];
-      intBytes[2]      = buffer[startIndex++];
-      intBytes[3]      = buffer[startIndex++];
-      prefs.targetMode = toInt(intBytes);
+      prefs.collision  = buffer.getInt(startIndex     );
+      prefs.compressor = buffer.get   (startIndex +  4) == 1;
+      prefs.difficulty = buffer.getInt(startIndex +  5);
+      prefs.dontRushMe = buffer.get   (startIndex +  9) == 1;
+      prefs.fullscreen = buffer.get   (startIndex + 10) == 1;
+      prefs.gameMode   = buffer.getInt(startIndex + 11);
+      prefs.musicOn    = buffer.get   (startIndex + 15) == 1;
+      prefs.soundOn    = buffer.get   (startIndex + 16) == 1;
+      prefs.targetMode = buffer.getInt(startIndex + 17);
     }
   }
 
@@ -962,39 +1328,30 @@ public class NetworkManager extends Thread
    * @param startIndex - the start location to copy to.
    */
   private void copyPrefsToBuffer(Preferences prefs,
-                                 byte[] buffer,
+                                 ByteBuffer buffer,
                                  int startIndex) {
-    byte[] intBytes = new byte[4];
-
     if (buffer != null) {
-      toByteArray(prefs.collision, intBytes);
-      buffer[startIndex++] = intBytes[0];
-      buffer[startIndex++] = intBytes[1];
-      buffer[startIndex++] = intBytes[2];
-      buffer[startIndex++] = intBytes[3];
-      buffer[startIndex++] = (byte) ((prefs.compressor == true)?1:0);
-      toByteArray(prefs.difficulty, intBytes);
-      buffer[startIndex++] = intBytes[0];
-      buffer[startIndex++] = intBytes[1];
-      buffer[startIndex++] = intBytes[2];
-      buffer[startIndex++] = intBytes[3];
-      buffer[startIndex++] = (byte) ((prefs.dontRushMe == true)?1:0);
-      buffer[startIndex++] = (byte) ((prefs.fullscreen == true)?1:0);
-      toByteArray(prefs.gameMode, intBytes);
-      buffer[startIndex++] = intBytes[0];
-      buffer[startIndex++] = intBytes[1];
-      buffer[startIndex++] = intBytes[2];
-      buffer[startIndex++] = intBytes[3];
-      buffer[startIndex++] = (byte) ((prefs.musicOn == true)?1:0);
-      buffer[startIndex++] = (byte) ((prefs.soundOn == true)?1:0);
-      toByteArray(prefs.targetMode, intBytes);
-      buffer[startIndex++] = intBytes[0];
-      buffer[startIndex++] = intBytes[1];
-      buffer[startIndex++] = intBytes[2];
-      buffer[startIndex++] = intBytes[3];
+      buffer.putInt(startIndex     , prefs.collision);
+      buffer.put   (startIndex +  4, (byte) (prefs.compressor ? 1 : 0));
+      buffer.putInt(startIndex +  5, prefs.difficulty);
+      buffer.put   (startIndex +  9, (byte) (prefs.dontRushMe ? 1 : 0));
+      buffer.put   (startIndex + 10, (byte) (prefs.fullscreen ? 1 : 0));
+      buffer.putInt(startIndex + 11, prefs.gameMode);
+      buffer.put   (startIndex + 15, (byte) (prefs.musicOn    ? 1 : 0));
+      buffer.put   (startIndex + 16, (byte) (prefs.soundOn    ? 1 : 0));
+      buffer.putInt(startIndex + 17, prefs.targetMode);
     }
   }
 
+  /**
+   * Obtain the number of times the remote player game field was
+   * requested because its checksum did not match the local copy.
+   * @return the number of game field resynchronizations.
+   */
+  public int getFieldResyncs() {
+    return fieldResyncs;
+  }
+
   /**
    * Check if the network game is finished.  The game is finished when
    * both players have either won or lost the game.
@@ -1026,24 +1383,28 @@ public class NetworkManager extends Thread
   private void getGameFieldData(GameFieldData gameData) {
     FrozenGame gameRef = localPlayer.mGameRef;
 
-    gameData.playerID           = (byte)  localPlayer.playerID;
-    gameData.localActionID      =         localStatus.localActionID;
-    gameData.compressorSteps    = (byte)  gameRef.getCompressorSteps();
-    gameData.launchBubbleColor  = (byte)  gameRef.getCurrentColor();
-    gameData.nextBubbleColor    = (byte)  gameRef.getNextColor();
-    gameData.attackBarBubbles   = (short) gameRef.getAttackBarBubbles();
-
-    BubbleSprite[][] bubbleGrid = gameRef.getGrid();
-    for (int i = 0; i < LevelManager.NUM_COLS; i++) {
-      for (int j = 0; j < LevelManager.NUM_ROWS; j++) {
-        if (bubbleGrid[i][j] != null) {
-          gameData.gameField[i][j] = (byte) bubbleGrid[i][j].getColor();
-        }
-        else {
+    /*
+     * A player without a game, such as a headless player connected by
+     * an emulated link, reports an empty game field.
+     */
+    if (gameRef == null) {
+      gameData.playerID          = (byte) localPlayer.playerID;
+      gameData.localActionID     =        localStatus.localActionID;
+      gameData.compressorSteps   = 0;
+      gameData.launchBubbleColor = 0;
+      gameData.nextBubbleColor   = 0;
+      gameData.attackBarBubbles  = 0;
+      for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+        for (int j = 0; j < LevelManager.NUM_ROWS; j++) {
           gameData.gameField[i][j] = -1;
         }
       }
+      return;
     }
+
+    gameData.playerID           = (byte)  localPlayer.playerID;
+    gameData.localActionID      =         localStatus.localActionID;
+    gameData.copyFromGame(gameRef);
   }
 
   public short getLatestRemoteActionId() {
@@ -1130,6 +1491,9 @@ public class NetworkManager extends Thread
         if (remoteActionList.get(index).localActionID ==
             localStatus.remoteActionID) {
           remoteInterface.playerAction.copyFromAction(remoteActionList.get(index));
+          if (caster != null) {
+            caster.castAction(remoteInterface.playerAction);
+          }
           try {
               remoteActionList.remove(index);
           } catch (IndexOutOfBoundsException ioobe) {
@@ -1164,6 +1528,63 @@ public class NetworkManager extends Thread
     return remoteInterface;
   }
 
+  /**
+   * Obtain the smoothed round trip time to the remote player.
+   * @return the round trip time in msec, or -1 if it has not been
+   * measured yet.
+   */
+  public long getRoundTripTime() {
+    return roundTrip.getRoundTripTime();
+  }
+
+  /**
+   * Obtain the spectator stream of this game.
+   * @return the spectator stream, or <code>null</code> if the game is
+   * not being broadcast to spectators.
+   */
+  public SpectatorCaster getSpectatorCaster() {
+    return caster;
+  }
+
+  /**
+   * Obtain the status transmission interval.  This is twice the action
+   * retransmission timeout derived from the estimated round trip time,
+   * limited to between <code>MIN_STATUS_TIMEOUT</code> and
+   * <code>STATUS_TIMEOUT</code>, and is backed off along with the
+   * action retransmission timeout.
+   * @return the status transmission interval in msec.
+   */
+  private long getStatusTimeout() {
+    long timeout = Math.min(Math.max(2 * roundTrip.getBaseTimeout(),
+                                     MIN_STATUS_TIMEOUT), STATUS_TIMEOUT);
+    return roundTrip.applyBackoff(timeout);
+  }
+
+  /**
+   * Obtain the current time for the network timers and round trip time
+   * measurements.  This is a monotonic clock, so that the timers are
+   * not disturbed when the wall clock time is set.
+   * @return the current time in msec, from an arbitrary origin.
+   */
+  private static long getTime() {
+    return System.nanoTime() / 1000000L;
+  }
+
+  /**
+   * Obtain the time until the next network timer expires, so that the
+   * network game manager thread wakes up in time for timeouts shorter
+   * than its polling interval.
+   * @return the time to wait, from 1 to <code>MAX_WAIT</code> msec.
+   */
+  private long getWaitTime() {
+    long txTime = statusTxTime;
+    if (missedAction) {
+      txTime = Math.min(txTime, actionTxTime);
+    }
+    return Math.max(1L, Math.min(txTime - getTime(),
+                                 MAX_WAIT));
+  }
+
   /**
    * Check if Bluetooth is available and enabled on this device.
    * <p>The following <code>uses</code> permission must be added to the
@@ -1235,17 +1656,30 @@ public class NetworkManager extends Thread
        * expected by the remote player.
        */
       if (localStatus.localActionID >= remoteStatus.remoteActionID) {
-        if (!missedAction) {
-          missedAction = true;
-          setActionTimeout(ACTION_TIMEOUT);
+        /*
+         * Restart the timer from the round trip estimate when an
+         * action becomes outstanding, or when the remote player
+         * acknowledged some of the outstanding actions.
+         */
+        if (!missedAction || (missedActionID != remoteStatus.remoteActionID)) {
+          missedAction   = true;
+          missedActionID = remoteStatus.remoteActionID;
+          roundTrip.resetBackoff();
+          setActionTimeout(roundTrip.getTimeout());
         }
         else if (actionTimerExpired()) {
+          /*
+           * Back off while the remote player does not acknowledge the
+           * retransmitted action, so a lossy link is not flooded.
+           */
           sendLocalPlayerAction(remoteStatus.remoteActionID);
-          setActionTimeout(ACTION_TIMEOUT);
+          roundTrip.backOff();
+          setActionTimeout(roundTrip.getTimeout());
         }
       }
       else {
         missedAction = false;
+        roundTrip.resetBackoff();
       }
 
       cleanLocalActionList();
@@ -1261,12 +1695,26 @@ public class NetworkManager extends Thread
        * opponent has been identified.  Until then, transmit the network
        * peer discovery message.
        */
-      if (mode != connectEnum.BLUETOOTH) {
+      if ((mode == connectEnum.UDP_MULTICAST) ||
+          (mode == connectEnum.UDP_UNICAST  )) {
         if ((mode == connectEnum.UDP_MULTICAST) ||
             (remoteStatus == null)) {
           transmitHello();
         }
       }
+      /*
+       * Until the opponent's datagrams arrive via the relay server,
+       * transmit the relay join message.  Join again if they stop
+       * arriving, in case the relay server dropped the local player or
+       * restarted.  The relay ignores a join from a player that is
+       * still paired.
+       */
+      else if ((mode == connectEnum.UDP_RELAY) &&
+               ((remoteStatus == null) ||
+                ((getTime() - remoteTimestampTime) >
+                 RELAY_TIMEOUT))) {
+        transmitJoin();
+      }
 
       if (remoteStatus != null) {
         if (remoteStatus.prefsRequest) {
@@ -1290,9 +1738,8 @@ public class NetworkManager extends Thread
          */
         if (remoteStatus.fieldRequest &&
             ((localStatus.localActionID + 1) == remoteStatus.remoteActionID)) {
-          GameFieldData tempField = new GameFieldData(null);
-          getGameFieldData (tempField);
-          transmitGameField(tempField);
+          getGameFieldData (localGameFieldData);
+          transmitGameField(localGameFieldData);
           /*
            * Clear the remote request flag to potentially reduce network
            * overhead.  If the remote player does not receive the data,
@@ -1302,8 +1749,8 @@ public class NetworkManager extends Thread
         }
       }
 
-      transmitStatus  (localStatus   );
-      setStatusTimeout(STATUS_TIMEOUT);
+      transmitStatus  (localStatus        );
+      setStatusTimeout(getStatusTimeout());
     }
   }
 
@@ -1338,6 +1785,7 @@ public class NetworkManager extends Thread
      * start the <code>NetworkGameManager</code> thread.
      */
     if (((mode == connectEnum.UDP_MULTICAST) ||
+         (mode == connectEnum.UDP_RELAY    ) ||
          (mode == connectEnum.UDP_UNICAST  )) &&
         (session == null)) {
       createUDPsocketSession();
@@ -1358,7 +1806,9 @@ public class NetworkManager extends Thread
       sessionBluetooth = new BluetoothManager(localPlayer.playerID ==
                                               VirtualInput.PLAYER1,
                                               FrozenBubble.getBluetooth());
+      sessionBluetooth.setDatagramPool(datagramPool);
       sessionBluetooth.setBluetoothListener(this);
+      transport = sessionBluetooth;
 
       /*
        * Start the network manager thread.
@@ -1372,6 +1822,13 @@ public class NetworkManager extends Thread
         itse.printStackTrace();
       }
     }
+    else if ((mode == connectEnum.CUSTOM) && (getState() == State.NEW)) {
+      /*
+       * The supplied transport is already connected, so just start the
+       * network manager thread.
+       */
+      start();
+    }
     else {
       /*
        * Wake up the thread.
@@ -1392,7 +1849,16 @@ public class NetworkManager extends Thread
   @Override
   public void onBluetoothEvent(byte[] buffer, int length) {
     /*
-     * Process the Bluetooth message if it possesses a payload.
+     * A Bluetooth connection is point-to-point, like any other
+     * transport that does not identify the sender.
+     */
+    onTransportEvent(buffer, length);
+  }
+
+  @Override
+  public void onTransportEvent(byte[] buffer, int length) {
+    /*
+     * Process the message if it possesses a payload.
      */
     if ((buffer != null) && (buffer.length > 2)) {
       /*
@@ -1489,16 +1955,22 @@ public class NetworkManager extends Thread
           processEventData(buffer, length);
         }
       }
+      /*
+       * The socket only receives datagrams from the relay server, which
+       * only forwards the datagrams of the paired opponent.
+       */
+      else if (mode == connectEnum.UDP_RELAY) {
+        if (playerId == remotePlayer.playerID) {
+          processEventData(buffer, length);
+        }
+      }
     }
   }
 
   public void pause() {
     if (running) {
-      if (session != null) {
-        session.pause();
-      }
-      if (sessionBluetooth != null) {
-        sessionBluetooth.pause();
+      if (transport != null) {
+        transport.pause();
       }
       paused = true;
     }
@@ -1508,6 +1980,14 @@ public class NetworkManager extends Thread
     byte msgId    = buffer[0];
     byte playerId = buffer[1];
 
+    /*
+     * The transport layer receives every datagram into the same array,
+     * so the buffer used to decode it is only wrapped once.
+     */
+    if ((rxBuffer == null) || (rxBuffer.array() != buffer)) {
+      rxBuffer = ByteBuffer.wrap(buffer);
+    }
+
     /*
      * If the message contains the remote player status, copy it to
      * the remote player status object.  The remote player status
@@ -1522,10 +2002,32 @@ public class NetworkManager extends Thread
        * Process the remote player status.
        */
       if (remoteStatus == null) {
-        remoteStatus = new PlayerStatus(buffer, 1);
+        remoteStatus = new PlayerStatus(rxBuffer, 1);
       }
       else {
-        remoteStatus.copyFromBuffer(buffer, 1);
+        remoteStatus.copyFromBuffer(rxBuffer, 1);
+      }
+      /*
+       * Measure the round trip time from the echoed local timestamp,
+       * excluding the time the remote player held it, and keep the
+       * remote timestamp to echo in the next local status.
+       */
+      long now = getTime();
+      if (remoteStatus.echoTimestamp != 0) {
+        roundTrip.addSample((int) now - remoteStatus.echoTimestamp -
+                            remoteStatus.echoDelay);
+      }
+      remoteTimestamp     = remoteStatus.timestamp;
+      remoteTimestampTime = now;
+      /*
+       * Once the remote player no longer requests the game field that
+       * was sent, it has received it, so the field becomes the base of
+       * the next game field delta.
+       */
+      if (fieldPending && !remoteStatus.fieldRequest) {
+        ackedGameFieldData.copyFromFieldData(sentGameFieldData);
+        fieldAcked   = true;
+        fieldPending = false;
       }
     }
 
@@ -1536,7 +2038,7 @@ public class NetworkManager extends Thread
      */
     if ((msgId == MSG_ID_PREFS) && (length >= (PREFS_BYTES + 2))) {
       if ((playerId == VirtualInput.PLAYER1) && localStatus.prefsRequest) {
-        copyPrefsFromBuffer(remotePrefs, buffer, 2);
+        copyPrefsFromBuffer(remotePrefs, rxBuffer, 2);
         /*
          * In a network game, do not override any of the local game
          * options that can be configuring during game play.  Only 
@@ -1546,9 +2048,15 @@ public class NetworkManager extends Thread
          * necessary for distributed game behavior synchronization.
          * All the other options are purely cosmetic, or may cause
          * confusion if they are changed without notification.
+         *
+         * A manager without a context, such as a headless player
+         * connected by an emulated link, has no application
+         * preferences to set.
          */
-        FrozenBubble.setCollision (remotePrefs.collision );
-        FrozenBubble.setCompressor(remotePrefs.compressor);
+        if (myContext != null) {
+          FrozenBubble.setCollision (remotePrefs.collision );
+          FrozenBubble.setCompressor(remotePrefs.compressor);
+        }
         /*
          * If all new game data synchronization requests have been
          * fulfilled, then the network game is ready to begin.
@@ -1579,18 +2087,53 @@ public class NetworkManager extends Thread
      */
     if ((msgId == MSG_ID_ACTION) && (length >= (ACTION_BYTES + 1))) {
       if (localStatus.readyToPlay && (playerId == remotePlayer.playerID)) {
-        addAction(new PlayerAction(buffer, 1));
+        /*
+         * Add the redundant copies of the preceding remote actions
+         * that follow the action, if any, before the action itself.
+         * They are stored newest first, so add them in reverse to add
+         * the actions in the order they occurred.  Actions that were
+         * already received are discarded when they are added.
+         */
+        if (length >= (ACTION_BYTES + 2)) {
+          int count = Math.min(rxBuffer.get(ACTION_BYTES + 1),
+                               (length - ACTION_BYTES - 2) / ACTION_BYTES);
+          for (int index = count - 1; index >= 0; index--) {
+            receivedAction.copyFromBuffer(rxBuffer, ACTION_BYTES + 2 +
+                                          (index * ACTION_BYTES));
+            if (receivedAction.playerID == remotePlayer.playerID) {
+              addAction(receivedAction);
+            }
+          }
+        }
+        receivedAction.copyFromBuffer(rxBuffer, 1);
+        /*
+         * If the action was already executed, it was retransmitted
+         * because the local player status that acknowledged it was
+         * lost.  Acknowledge it again immediately.
+         */
+        if (receivedAction.localActionID < localStatus.remoteActionID) {
+          setStatusTimeout(0L);
+          synchronized(this) {
+            notify();
+          }
+        }
+        addAction(receivedAction);
       }
     }
 
     /*
      * If the message contains the remote player game field, update
-     * the remote player interface game field object.
+     * the remote player interface game field object.  A delta that
+     * does not apply to the game field held by the remote player
+     * interface is ignored, and the field request remains pending
+     * until the remote player sends a keyframe.
      */
-    if ((msgId == MSG_ID_FIELD) && (length >= (FIELD_BYTES + 1))) {
+    if ((msgId == MSG_ID_FIELD) &&
+        (length >= (GameFieldData.MIN_BYTES + 1))) {
       if ((playerId == remotePlayer.playerID) &&
-          localStatus.fieldRequest) {
-        remoteInterface.gameFieldData.copyFromBuffer(buffer, 1);
+          localStatus.fieldRequest &&
+          remoteInterface.gameFieldData.copyFromBuffer(rxBuffer, 1,
+                                                       length - 1)) {
         remoteInterface.gotFieldData = true;
         localStatus    .fieldRequest = false;
         /*
@@ -1636,7 +2179,7 @@ public class NetworkManager extends Thread
 
       if (!paused && running) try {
         synchronized(this) {
-          wait(100);
+          wait(getWaitTime());
         }
       } catch (InterruptedException ie) {
         /*
@@ -1719,6 +2262,9 @@ public class NetworkManager extends Thread
     tempAction.aimPosition = aimPosition;
     addAction(tempAction);
     transmitAction(tempAction);
+    if (caster != null) {
+      caster.castAction(tempAction);
+    }
     /*
      * The most current action IDs are being transmitted with this
      * action.  Postpone the player status message as it will be mostly
@@ -1727,7 +2273,7 @@ public class NetworkManager extends Thread
      * significant game synchronization discrepancy if one is currently
      * present.
      */
-    setStatusTimeout(STATUS_TIMEOUT);
+    setStatusTimeout(getStatusTimeout());
   }
 
   /**
@@ -1735,7 +2281,7 @@ public class NetworkManager extends Thread
    * @param timeout - the timeout expiration interval.
    */
   public void setActionTimeout(long timeout) {
-    actionTxTime = System.currentTimeMillis() + timeout;
+    actionTxTime = getTime() + timeout;
   }
 
   /**
@@ -1770,6 +2316,17 @@ public class NetworkManager extends Thread
     localStatus.localChecksum = checksum;
   }
 
+  /**
+   * Set the number of preceding unacknowledged local actions that are
+   * sent along with each action datagram.
+   * @param count - the number of redundant actions, from 0 to
+   * <code>MAX_REDUNDANT_ACTIONS</code>.  Set 0 to send each action in a
+   * datagram of its own.
+   */
+  public void setRedundantActions(int count) {
+    redundantCount = Math.max(0, Math.min(count, MAX_REDUNDANT_ACTIONS));
+  }
+
   /**
    * Set the local player remote game field checksum.  The checksum is
    * set to zero immediately after every remote player action, and must
@@ -1786,11 +2343,11 @@ public class NetworkManager extends Thread
    * @param timeout - the timeout expiration interval.
    */
   public void setStatusTimeout(long timeout) {
-    statusTxTime = System.currentTimeMillis() + timeout;
+    statusTxTime = getTime() + timeout;
   }
 
   private boolean statusTimerExpired() {
-    return System.currentTimeMillis() >= statusTxTime;
+    return getTime() >= statusTxTime;
   }
 
   /**
@@ -1819,60 +2376,26 @@ public class NetworkManager extends Thread
   }
 
   /**
-   * Populate a byte array with the byte representation of a short.
-   * The byte array must consist of at least 2 bytes.
-   * @param value - the short to convert to a byte array.
-   * @param array - the byte array where the converted short is placed.
-   */
-  public static void toByteArray(short value, byte[] array) {
-    ByteBuffer.wrap(array).putShort(value);
-  }
-
-  /**
-   * Populate a byte array with the byte representation of an integer.
-   * The byte array must consist of at least 4 bytes.
-   * @param value - the integer to convert to a byte array.
-   * @param array - the byte array where the converted int is placed.
-   */
-  public static void toByteArray(int value, byte[] array) {
-    ByteBuffer.wrap(array).putInt(value);
-  }
-
-  /**
-   * Populate a byte array with the byte representation of a double.
-   * The byte array must consist of at least 8 bytes.
-   * @param value - the double to convert to a byte array.
-   * @param array - the byte array where the converted double is placed.
-   */
-  public static void toByteArray(double value, byte[] array) {
-    ByteBuffer.wrap(array).putDouble(value);
-  }
-
-  /**
-   * Convert a byte array into a double value.
-   * @param bytes - the byte array to convert into a double.
-   * @return The double representation of the supplied byte array.
-   */
-  public static double toDouble(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).getDouble();
-  }
-
-  /**
-   * Convert a byte array into an integer value.
-   * @param bytes - the byte array to convert into an integer.
-   * @return The double representation of the supplied byte array.
-   */
-  public static int toInt(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).getInt();
-  }
-
-  /**
-   * Convert a byte array into a short value.
-   * @param bytes - the byte array to convert into a short.
-   * @return The short representation of the supplied byte array.
+   * Queue a datagram for transmission via the network interface.  The
+   * buffer must have been obtained from the datagram pool, and is
+   * returned to the pool by the transport layer once it is sent, or
+   * immediately if it could not be queued.
+   * @param buffer - the datagram to transmit.
+   * @return <code>true</code> if the transmission was successful.
    */
-  public static short toShort(byte[] bytes) {
-    return ByteBuffer.wrap(bytes).getShort();
+  private boolean transmit(ByteBuffer buffer) {
+    boolean queued = false;
+    /*
+     * Send the datagram via UDP socket, Bluetooth, or the supplied
+     * transport.
+     */
+    if (transport != null) {
+      queued = transport.transmit(buffer.array());
+    }
+    if (!queued) {
+      datagramPool.recycle(buffer.array());
+    }
+    return queued;
   }
 
   /**
@@ -1882,21 +2405,39 @@ public class NetworkManager extends Thread
    * @return <code>true</code> if the transmission was successful.
    */
   private boolean transmitAction(PlayerAction action) {
-    byte[] buffer = new byte[ACTION_BYTES + 1];
-    buffer[0] = MSG_ID_ACTION;
-    action.copyToBuffer(buffer, 1);
-    /*
-     * Send the datagram via UDP socket.
-     */
-    if (session != null) {
-      return session.transmit(buffer);
-    }
-    else if (sessionBluetooth != null) {
-      return sessionBluetooth.transmit(buffer);
-    }
-    else {
-      return false;
+    ByteBuffer buffer;
+    synchronized(localActionList) {
+      /*
+       * Collect the most recent local actions that the remote player
+       * has not acknowledged, newest first, to be sent after the action.
+       */
+      int count = 0;
+      for (int index = localActionList.size() - 1;
+           (index >= 0) && (count < redundantCount); index--) {
+        PlayerAction pending = localActionList.get(index);
+        if ((pending.localActionID != action.localActionID) &&
+            ((remoteStatus == null) ||
+             (pending.localActionID >= remoteStatus.remoteActionID))) {
+          redundantActions[count++] = pending;
+        }
+      }
+
+      /*
+       * The action is first, so a receiver that does not expect
+       * redundant actions simply ignores them.
+       */
+      buffer = datagramPool.obtain(ACTION_BYTES + 2 +
+                                   (count * ACTION_BYTES));
+      buffer.put(0, MSG_ID_ACTION);
+      action.copyToBuffer(buffer, 1);
+      buffer.put(ACTION_BYTES + 1, (byte) count);
+      for (int index = 0; index < count; index++) {
+        redundantActions[index].copyToBuffer(buffer, ACTION_BYTES + 2 +
+                                             (index * ACTION_BYTES));
+        redundantActions[index] = null;
+      }
     }
+    return transmit(buffer);
   }
 
   /**
@@ -1906,21 +2447,24 @@ public class NetworkManager extends Thread
    * @return <code>true</code> if the transmission was successful.
    */
   private boolean transmitGameField(GameFieldData gameField) {
-    byte[] buffer = new byte[FIELD_BYTES + 1];
-    buffer[0] = MSG_ID_FIELD;
-    gameField.copyToBuffer(buffer, 1);
     /*
-     * Send the datagram via UDP socket.
+     * Send a delta against the last game field the remote player is
+     * known to hold.  If the previous game field sent has not been
+     * acknowledged, the remote player may not hold that base field, so
+     * send a keyframe instead.
      */
-    if (session != null) {
-      return session.transmit(buffer);
-    }
-    else if (sessionBluetooth != null) {
-      return sessionBluetooth.transmit(buffer);
-    }
-    else {
-      return false;
-    }
+    GameFieldData base = null;
+    if (fieldAcked && !fieldPending) {
+      base = ackedGameFieldData;
+    }
+    int length = gameField.copyToBuffer(fieldBuffer, 0, base);
+    sentGameFieldData.copyFromFieldData(gameField);
+    fieldPending = true;
+
+    ByteBuffer buffer = datagramPool.obtain(length + 1);
+    buffer.put(0, MSG_ID_FIELD);
+    System.arraycopy(fieldBuffer.array(), 0, buffer.array(), 1, length);
+    return transmit(buffer);
   }
 
   /**
@@ -1929,27 +2473,35 @@ public class NetworkManager extends Thread
    * @return <code>true</code> if the transmission was successful.
    */
   private boolean transmitHello() {
-    byte[] buffer = new byte[HELLO_BYTES];
-    buffer[0] = MSG_ID_HELLO;
-    buffer[1] = (byte) localPlayer.playerID;
+    ByteBuffer buffer = datagramPool.obtain(HELLO_BYTES);
+    buffer.put(0, MSG_ID_HELLO);
+    buffer.put(1, (byte) localPlayer.playerID);
     if (opponentAddress != null) {
       byte[] address = opponentAddress.getAddress();
       for (int index = 0; index < 4; index++) {
-        buffer[index + 2] = address[index];
+        buffer.put(index + 2, address[index]);
       }
     }
-    /*
-     * Send the datagram via UDP socket.
-     */
-    if (session != null) {
-      return session.transmit(buffer);
-    }
-    else if (sessionBluetooth != null) {
-      return sessionBluetooth.transmit(buffer);
-    }
     else {
-      return false;
+      for (int index = 0; index < 4; index++) {
+        buffer.put(index + 2, (byte) 0);
+      }
     }
+    return transmit(buffer);
+  }
+
+  /**
+   * Transmit the relay join datagram, which asks the relay server to
+   * pair the local player with an opponent that joined with the same
+   * match ID.
+   * @return <code>true</code> if the transmission was successful.
+   */
+  private boolean transmitJoin() {
+    ByteBuffer buffer = datagramPool.obtain(JOIN_BYTES);
+    buffer.put(0, MSG_ID_JOIN);
+    buffer.put(1, (byte) localPlayer.playerID);
+    buffer.putInt(2, relayMatch);
+    return transmit(buffer);
   }
 
   /**
@@ -1957,21 +2509,14 @@ public class NetworkManager extends Thread
    * @return <code>true</code> if the transmission was successful.
    */
   private boolean transmitStatus(PlayerStatus status) {
-    byte[] buffer = new byte[STATUS_BYTES + 1];
-    buffer[0] = MSG_ID_STATUS;
+    long now = getTime();
+    status.timestamp     = (int) now;
+    status.echoTimestamp = remoteTimestamp;
+    status.echoDelay     = (int) (now - remoteTimestampTime);
+    ByteBuffer buffer = datagramPool.obtain(STATUS_BYTES + 1);
+    buffer.put(0, MSG_ID_STATUS);
     status.copyToBuffer(buffer, 1);
-    /*
-     * Send the datagram via the UDP socket.
-     */
-    if (session != null) {
-      return session.transmit(buffer);
-    }
-    else if (sessionBluetooth != null) {
-      return sessionBluetooth.transmit(buffer);
-    }
-    else {
-      return false;
-    }
+    return transmit(buffer);
   }
 
   /**
@@ -1980,22 +2525,11 @@ public class NetworkManager extends Thread
    * @return <code>true</code> if the transmission was successful.
    */
   private boolean transmitPrefs() {
-    byte[] buffer = new byte[Preferences.PREFS_BYTES + 2];
-    buffer[0] = MSG_ID_PREFS;
-    buffer[1] = (byte) localPlayer.playerID;
+    ByteBuffer buffer = datagramPool.obtain(PREFS_BYTES + 2);
+    buffer.put(0, MSG_ID_PREFS);
+    buffer.put(1, (byte) localPlayer.playerID);
     copyPrefsToBuffer(localPrefs, buffer, 2);
-    /*
-     * Send the datagram via UDP socket.
-     */
-    if (session != null) {
-      return session.transmit(buffer);
-    }
-    else if (sessionBluetooth != null) {
-      return sessionBluetooth.transmit(buffer);
-    }
-    else {
-      return false;
-    }
+    return transmit(buffer);
   }
 
   public void unPause() {
@@ -2003,16 +2537,13 @@ public class NetworkManager extends Thread
     synchronized(this) {
       interrupt();
     }
-    if (session != null) {
-      session.unPause();
-    }
-    if (sessionBluetooth != null) {
-      sessionBluetooth.unPause();
+    if (transport != null) {
+      transport.unPause();
     }
   }
 
   public void updateNetworkStatus(NetworkStatus status) {
-    if (localIpAddress == null) {
+    if ((localIpAddress == null) && (myContext != null)) {
       localIpAddress = getLocalIPaddress();
       if (session != null) {
         session.setLocalIPaddress(localIpAddress);
@@ -2026,12 +2557,23 @@ public class NetworkManager extends Thread
       status.remoteIpAddress = remoteIpAddress;
       status.playerJoined    = opponentAddress != null;
     }
+    else if (mode == connectEnum.UDP_RELAY) {
+      status.isConnected     = hasInternetConnection();
+      status.localIpAddress  = (localIpAddress != null) ?
+                               localIpAddress.getHostAddress() : "";
+      status.remoteIpAddress = remoteIpAddress;
+      status.playerJoined    = remoteStatus != null;
+    }
     else if (mode == connectEnum.BLUETOOTH) {
       status.isConnected     = hasBluetooth;
       status.localIpAddress  = sessionBluetooth.getLocalName   ().toLowerCase();
       status.remoteIpAddress = sessionBluetooth.getRemoteName  ().toLowerCase();
       status.playerJoined    = sessionBluetooth.getIsConnected();
     }
+    else if (mode == connectEnum.CUSTOM) {
+      status.isConnected     = transport != null;
+      status.playerJoined    = remoteStatus != null;
+    }
     if (localStatus != null) {
       status.gotFieldData = remoteInterface.gotFieldData;
       status.gotPrefsData = remoteInterface.gotPrefsData;
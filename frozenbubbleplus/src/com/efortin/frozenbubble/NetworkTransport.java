@@ -0,0 +1,101 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble;
+
+/**
+ * This interface is implemented by the transport layers that carry the
+ * network game datagrams between the players, so that the network game
+ * manager does not depend on a particular transport.
+ * <p>Each datagram passed to <code>transmit()</code> is obtained from
+ * the datagram pool supplied via <code>setDatagramPool()</code>.  Once
+ * a datagram is queued, the transport layer owns its array, and must
+ * return it to the pool once it has been sent or discarded.
+ */
+public interface NetworkTransport {
+  /*
+   * Listener interface for datagrams received by a point-to-point
+   * transport, which has no need to identify the sender.
+   */
+  public interface TransportListener {
+    public abstract void onTransportEvent(byte[] buffer, int length);
+  }
+
+  /**
+   * Stop the transport and release all of its resources.
+   */
+  public abstract void cleanUp();
+
+  /**
+   * Stop receiving datagrams until <code>unPause()</code> is called.
+   */
+  public abstract void pause();
+
+  /**
+   * Set the pool that transmitted datagrams are returned to.
+   * @param pool - the datagram pool.
+   */
+  public abstract void setDatagramPool(DatagramPool pool);
+
+  /**
+   * Queue a datagram for transmission.
+   * @param buffer - the datagram to transmit.
+   * @return <code>true</code> if the datagram was queued, in which case
+   * the transport returns it to the datagram pool.
+   */
+  public abstract boolean transmit(byte[] buffer);
+
+  /**
+   * Resume receiving datagrams.
+   */
+  public abstract void unPause();
+}
@@ -0,0 +1,184 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble;
+
+/**
+ * This class estimates the network round trip time, and derives the
+ * retransmission timeout from the estimate.
+ * <p>The smoothed round trip time and round trip time variation are
+ * updated from each sample as specified by RFC 6298, and the timeout is
+ * the smoothed round trip time plus four times its variation.  Until
+ * the first sample is obtained, the initial timeout is used.
+ * <p>Each time a timeout expires without any progress, the timeout is
+ * doubled, up to the maximum timeout, so that a lossy link is not
+ * flooded with retransmissions.  The timeout returns to the estimate
+ * once progress is made.
+ * <p>Refer to:
+ * <a href="url">http://tools.ietf.org/html/rfc6298</a>
+ */
+public class RoundTripEstimator {
+  /*
+   * The maximum number of times the timeout is doubled.
+   */
+  private static final int MAX_BACKOFF = 5;
+
+  private final long initialTimeout;
+  private final long maxTimeout;
+  private final long minTimeout;
+  private boolean    gotSample;
+  private int        backoff;
+  private long       roundTripTime;
+  private long       roundTripVar;
+
+  /**
+   * Class constructor.
+   * @param initial - the timeout used until a sample is obtained, in
+   * msec.
+   * @param min - the minimum timeout, in msec.
+   * @param max - the maximum timeout, including the backoff, in msec.
+   */
+  public RoundTripEstimator(long initial, long min, long max) {
+    initialTimeout = initial;
+    minTimeout     = min;
+    maxTimeout     = max;
+    reset();
+  }
+
+  /**
+   * Add a round trip time sample to the estimate.  Samples that are
+   * negative or exceed the maximum timeout are discarded, since they
+   * result from clock changes or stale timestamps.
+   * @param sample - the measured round trip time, in msec.
+   */
+  public synchronized void addSample(long sample) {
+    if ((sample < 0) || (sample > maxTimeout)) {
+      return;
+    }
+    if (!gotSample) {
+      roundTripTime = sample;
+      roundTripVar  = sample / 2;
+      gotSample     = true;
+    }
+    else {
+      roundTripVar  = ((3 * roundTripVar) +
+                       Math.abs(roundTripTime - sample)) / 4;
+      roundTripTime = ((7 * roundTripTime) + sample) / 8;
+    }
+  }
+
+  /**
+   * Apply the backoff to a timeout derived from the estimate.
+   * @param timeout - the timeout without the backoff, in msec.
+   * @return the timeout doubled once per backoff, up to the maximum
+   * timeout.
+   */
+  public synchronized long applyBackoff(long timeout) {
+    return Math.min(timeout << backoff, maxTimeout);
+  }
+
+  /**
+   * Double the timeout, because it expired without any progress.
+   */
+  public synchronized void backOff() {
+    if (backoff < MAX_BACKOFF) {
+      backoff++;
+    }
+  }
+
+  /**
+   * Obtain the retransmission timeout derived from the estimate,
+   * excluding the backoff.
+   * @return the timeout in msec.
+   */
+  public synchronized long getBaseTimeout() {
+    if (!gotSample) {
+      return initialTimeout;
+    }
+    return Math.min(Math.max(roundTripTime + (4 * roundTripVar),
+                             minTimeout), maxTimeout);
+  }
+
+  /**
+   * Obtain the smoothed round trip time.
+   * @return the smoothed round trip time in msec, or -1 if no sample
+   * has been obtained.
+   */
+  public synchronized long getRoundTripTime() {
+    return gotSample ? roundTripTime : -1;
+  }
+
+  /**
+   * Obtain the retransmission timeout, including the backoff.
+   * @return the timeout in msec.
+   */
+  public synchronized long getTimeout() {
+    return applyBackoff(getBaseTimeout());
+  }
+
+  /**
+   * Discard the estimate and the backoff.
+   */
+  public synchronized void reset() {
+    gotSample     = false;
+    backoff       = 0;
+    roundTripTime = 0;
+    roundTripVar  = 0;
+  }
+
+  /**
+   * Return the timeout to the estimate, because progress was made.
+   */
+  public synchronized void resetBackoff() {
+    backoff = 0;
+  }
+}
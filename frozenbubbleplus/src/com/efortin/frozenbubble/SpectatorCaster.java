@@ -0,0 +1,280 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.jfedor.frozenbubble.FrozenGame;
+import org.jfedor.frozenbubble.InputLog;
+
+import com.efortin.frozenbubble.NetworkManager.GameFieldData;
+import com.efortin.frozenbubble.NetworkManager.PlayerAction;
+
+/**
+ * This class broadcasts a network game in progress to any number of
+ * passive spectators.
+ * <p>Rather than the rendered game, the stream carries what is needed
+ * to reconstruct it: the player actions in the order they are
+ * executed, and periodically a match header and a keyframe.  The match
+ * header is the input log header of the game, from which a spectator
+ * creates both players' games.  The keyframe holds the bubble grid,
+ * launcher, attack bar and compressor state of both games, so that a
+ * spectator that joins late or misses an action can resynchronize.
+ * <p>Each datagram is sent once to a multicast group, so the cost to
+ * the players does not depend on the number of spectators.  Every
+ * action datagram also carries the most recent preceding actions, so
+ * a lost datagram is usually recovered by the next one.
+ * <p>The datagram layouts are:
+ * <pre>
+ * [MSG_ID_MATCH][input log header]
+ * [MSG_ID_ACTION][action][count][count x preceding action]
+ * [MSG_ID_KEYFRAME][count][count x game]
+ * </pre>
+ * where each game of a keyframe consists of its length, the launcher
+ * aim position, the new next bubble color, a flag that is set if the
+ * game is ready to launch a bubble, and the game field keyframe.
+ * @see GameSpectator
+ */
+public class SpectatorCaster {
+  /*
+   * The spectator stream multicast group, which is distinct from the
+   * network game peer discovery group.
+   */
+  public static final String HOST = "225.0.0.16";
+  public static final int    PORT = 5501;
+
+  /*
+   * The interval between match headers and keyframes, in msec.
+   */
+  public static final long KEYFRAME_INTERVAL = 1000L;
+
+  /*
+   * The number of preceding actions carried by each action datagram.
+   */
+  public static final int REDUNDANT_ACTIONS = 3;
+
+  /*
+   * The size of the game portion of a keyframe, excluding the game
+   * field.
+   */
+  public static final int GAME_BYTES = 11;
+
+  private long             keyframeTime;
+  private int              recentCount;
+  private byte[]           matchHeader;
+  private ByteBuffer       keyframeBuffer;
+  private DatagramPool     datagramPool;
+  private GameFieldData    fieldData;
+  private NetworkTransport transport;
+  private PlayerAction[]   recentActions;
+  private short[]          lastActionID;
+
+  /**
+   * Class constructor.
+   * @param transport - the transport to the spectators, normally a
+   * <code>UDPSocket</code> connected to the spectator multicast group.
+   */
+  public SpectatorCaster(NetworkTransport transport) {
+    this.transport = transport;
+    datagramPool   = new DatagramPool();
+    fieldData      = new GameFieldData(null);
+    keyframeBuffer = ByteBuffer.allocate(2 + 2 * (GAME_BYTES +
+                                         GameFieldData.MAX_BYTES));
+    keyframeTime   = 0;
+    lastActionID   = new short[2];
+    matchHeader    = null;
+    recentActions  = new PlayerAction[REDUNDANT_ACTIONS];
+    recentCount    = 0;
+    for (int index = 0; index < REDUNDANT_ACTIONS; index++) {
+      recentActions[index] = new PlayerAction(null);
+    }
+    transport.setDatagramPool(datagramPool);
+  }
+
+  /**
+   * Broadcast an action of either player.  This must be called when the
+   * action is executed, in the order the actions are executed.
+   * @param action - the action to broadcast.
+   */
+  public synchronized void castAction(PlayerAction action) {
+    if ((transport == null) || (action.playerID < VirtualInput.PLAYER1) ||
+        (action.playerID > VirtualInput.PLAYER2)) {
+      return;
+    }
+
+    int actionBytes = NetworkManager.ACTION_BYTES;
+    ByteBuffer buffer = datagramPool.obtain(actionBytes + 2 +
+                                            (recentCount * actionBytes));
+    buffer.put(0, NetworkManager.MSG_ID_ACTION);
+    action.copyToBuffer(buffer, 1);
+    buffer.put(actionBytes + 1, (byte) recentCount);
+    for (int index = 0; index < recentCount; index++) {
+      recentActions[index].copyToBuffer(buffer, actionBytes + 2 +
+                                        (index * actionBytes));
+    }
+    transmit(buffer);
+
+    /*
+     * Keep the most recent actions, newest first.
+     */
+    PlayerAction oldest = recentActions[REDUNDANT_ACTIONS - 1];
+    for (int index = REDUNDANT_ACTIONS - 1; index > 0; index--) {
+      recentActions[index] = recentActions[index - 1];
+    }
+    oldest.copyFromAction(action);
+    recentActions[0] = oldest;
+    recentCount = Math.min(recentCount + 1, REDUNDANT_ACTIONS);
+    lastActionID[action.playerID - 1] = action.localActionID;
+  }
+
+  /**
+   * Broadcast the keyframe of both games.
+   */
+  private void castKeyframe(FrozenGame game1, FrozenGame game2) {
+    ByteBuffer keyframe = keyframeBuffer;
+    FrozenGame[] games = { game1, game2 };
+    int offset = 2;
+    keyframe.put(0, NetworkManager.MSG_ID_KEYFRAME);
+    keyframe.put(1, (byte) games.length);
+    for (int index = 0; index < games.length; index++) {
+      FrozenGame game = games[index];
+      fieldData.playerID      = (byte) (index + 1);
+      fieldData.localActionID = lastActionID[index];
+      fieldData.copyFromGame(game);
+      int length = fieldData.copyToBuffer(keyframe, offset + GAME_BYTES);
+      keyframe.put      (offset     , (byte) (GAME_BYTES + length));
+      keyframe.putDouble(offset +  1, game.getPosition());
+      keyframe.put      (offset +  9, (byte) game.getNewNextColor());
+      keyframe.put      (offset + 10, (byte) (game.getOkToFire() ? 1 : 0));
+      offset += GAME_BYTES + length;
+    }
+
+    ByteBuffer buffer = datagramPool.obtain(offset);
+    System.arraycopy(keyframe.array(), 0, buffer.array(), 0, offset);
+    transmit(buffer);
+  }
+
+  /**
+   * Broadcast the match header.
+   */
+  private void castMatch() {
+    ByteBuffer buffer = datagramPool.obtain(matchHeader.length + 1);
+    buffer.put(0, NetworkManager.MSG_ID_MATCH);
+    System.arraycopy(matchHeader, 0, buffer.array(), 1, matchHeader.length);
+    transmit(buffer);
+  }
+
+  /**
+   * Stop broadcasting, and release the transport.
+   */
+  public synchronized void cleanUp() {
+    if (transport != null) {
+      transport.cleanUp();
+    }
+    transport   = null;
+    matchHeader = null;
+  }
+
+  /**
+   * Begin broadcasting a new match.  This must be called after both
+   * players' games have been added to the input log, and before the
+   * first action of the match.
+   * @param log - the input log of the new match.
+   */
+  public synchronized void newMatch(InputLog log) {
+    ByteArrayOutputStream header = new ByteArrayOutputStream(256);
+    try {
+      log.writeHeader(new DataOutputStream(header));
+      matchHeader = header.toByteArray();
+    } catch (IOException ioe) {
+      matchHeader = null;
+    }
+    keyframeTime    = 0;
+    recentCount     = 0;
+    lastActionID[0] = 0;
+    lastActionID[1] = 0;
+  }
+
+  private boolean transmit(ByteBuffer buffer) {
+    boolean queued = transport.transmit(buffer.array());
+    if (!queued) {
+      datagramPool.recycle(buffer.array());
+    }
+    return queued;
+  }
+
+  /**
+   * Broadcast the match header and a keyframe if they are due.  This
+   * must be called by the game thread after both games have played,
+   * so that the keyframe is consistent with the actions broadcast so
+   * far.
+   * @param game1 - the player 1 game.
+   * @param game2 - the player 2 game.
+   */
+  public synchronized void update(FrozenGame game1, FrozenGame game2) {
+    if ((transport == null) || (matchHeader == null) ||
+        (game1 == null) || (game2 == null)) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    if (now >= keyframeTime) {
+      castMatch();
+      castKeyframe(game1, game2);
+      keyframeTime = now + KEYFRAME_INTERVAL;
+    }
+  }
+}
@@ -59,9 +59,16 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.ArrayList;
+import java.util.Enumeration;
 
 import com.efortin.frozenbubble.NetworkManager.connectEnum;
 
@@ -104,24 +111,51 @@ import android.util.Log;
  * ACCESS_WIFI_STATE<br>
  * CHANGE_WIFI_MULTICAST_STATE<br>
  * INTERNET</code>
+ * <p>Datagrams are sent and received through a non-blocking
+ * <code>DatagramChannel</code> serviced by a <code>Selector</code>, so
+ * a transmitted datagram is sent immediately instead of waiting for the
+ * next receive timeout, and received datagrams are dispatched as soon
+ * as they arrive.  Joining a multicast group with a channel requires
+ * <code>DatagramChannel.join()</code>, which older platforms lack.  On
+ * those, multicast sessions fall back to a blocking
+ * <code>MulticastSocket</code> polled with a receive timeout.
  * @author Eric Fortin, Wednesday, May 8, 2013
  */
-public class UDPSocket {
+public class UDPSocket implements NetworkTransport {
   private static final String LOG_TAG = UDPSocket.class.getSimpleName();
 
+  /*
+   * The maximum time in milliseconds to block waiting for a datagram,
+   * after which the thread checks whether it was paused or stopped.
+   */
+  private static final int SELECT_TIMEOUT = 101;
+
+  /*
+   * The maximum number of datagrams waiting to be sent.
+   */
+  private static final int TX_QUEUE_SIZE = 32;
+
   /*
    * MulticastManager class member variables.
    */
-  private boolean     paused;
-  private boolean     running;
+  private volatile boolean paused;
+  private volatile boolean running;
   private int         mPort;
   private connectEnum mType;
-  private ArrayList<byte[]>         txList        = null;
+  private int         txCount;
+  private int         txHead;
+  private final byte[][]            txQueue       = new byte[TX_QUEUE_SIZE][];
+  private DatagramPool              txPool        = null;
   private ArrayList<UDPListener>    listenerList  = null;
   private Context                   mContext      = null;
   private InetAddress               remoteAddress = null;
   private InetAddress               localAddress  = null;
   private MulticastSocket           mSocket       = null;
+  private DatagramChannel           mChannel      = null;
+  private InetSocketAddress         mTarget       = null;
+  private SelectionKey              mKey          = null;
+  private Selector                  mSelector     = null;
+  private UDPThread                 mRunnable     = null;
   private Thread                    mThread       = null;
   private WifiManager.MulticastLock mLock         = null;
 
@@ -195,10 +229,8 @@ public class UDPSocket {
     mPort    = port;
     mLock    = null;
     mThread  = null;
-    txList   = null;
     mType    = mode;
     configureUDPSocket(hostName, port);
-    txList       = new ArrayList<byte[]>();
     listenerList = new ArrayList<UDPListener>();
     if (mode == connectEnum.UDP_MULTICAST) {
       WifiManager wm =
@@ -207,7 +239,8 @@ public class UDPSocket {
       mLock.setReferenceCounted(true);
       mLock.acquire();
     }
-    mThread = new Thread(new UDPThread(), "mThread");
+    mRunnable = new UDPThread();
+    mThread   = new Thread(mRunnable, "mThread");
     mThread.start();
   }
 
@@ -251,16 +284,34 @@ public class UDPSocket {
       mSocket.close();
     }
     mSocket = null;
+    if (mChannel != null) {
+      try {
+        mChannel.close();
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+      }
+    }
+    mChannel = null;
+    if (mSelector != null) {
+      try {
+        mSelector.close();
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+      }
+    }
+    mSelector = null;
+    mKey      = null;
     if (mLock != null) {
       if (mLock.isHeld()) {
         mLock.release();
       }
     }
     mLock = null;
-    if (txList != null) {
-      txList.clear();
+    synchronized(txQueue) {
+      while (txCount > 0) {
+        removeDatagram();
+      }
     }
-    txList = null;
   }
 
   /**
@@ -275,8 +326,30 @@ public class UDPSocket {
   private void configureUDPSocket(String hostName, int port) throws
       UnknownHostException, IOException{
     remoteAddress = null;
+    mChannel      = null;
     mSocket       = null;
     remoteAddress = InetAddress.getByName(hostName);
+    mTarget       = new InetSocketAddress(remoteAddress, port);
+    if (mType == connectEnum.UDP_MULTICAST) {
+      mChannel = openMulticastChannel(port);
+    }
+    else {
+      mChannel = DatagramChannel.open();
+      try {
+        mChannel.socket().setReuseAddress(true);
+        mChannel.socket().bind(new InetSocketAddress(port));
+        mChannel.connect(mTarget);
+      } catch (IOException ioe) {
+        mChannel.close();
+        throw ioe;
+      }
+    }
+    if (mChannel != null) {
+      mChannel.configureBlocking(false);
+      mSelector = Selector.open();
+      mKey      = mChannel.register(mSelector, SelectionKey.OP_READ);
+      return;
+    }
     mSocket       = new MulticastSocket(port);
     mSocket.setSoTimeout(101);
     mSocket.setBroadcast(false);
@@ -287,10 +360,108 @@ public class UDPSocket {
     }
   }
 
+  /**
+   * Obtain a network interface on which to join the multicast group.
+   * @return the first active, multicast capable interface that is not
+   * the loopback interface, or <code>null</code> if there is none.
+   * @throws SocketException the interfaces could not be listed.
+   */
+  private static NetworkInterface getMulticastInterface()
+      throws SocketException {
+    Enumeration<NetworkInterface> interfaces =
+        NetworkInterface.getNetworkInterfaces();
+    while ((interfaces != null) && interfaces.hasMoreElements()) {
+      NetworkInterface ni = interfaces.nextElement();
+      if (ni.isUp() && !ni.isLoopback() && ni.supportsMulticast()) {
+        return ni;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Open a datagram channel that has joined the multicast group.
+   * <p>The multicast channel methods are accessed by reflection, as
+   * they were only added in Java 7.
+   * @param port - the port number to use for the UDP socket.
+   * @return the multicast channel, or <code>null</code> if multicast
+   * channels are not supported, in which case a
+   * <code>MulticastSocket</code> must be used instead.
+   */
+  private DatagramChannel openMulticastChannel(int port) {
+    DatagramChannel channel = null;
+    try {
+      NetworkInterface ni = getMulticastInterface();
+      if (ni == null) {
+        return null;
+      }
+      Class<?> familyClass = Class.forName("java.net.ProtocolFamily");
+      Class<?> optionClass = Class.forName("java.net.SocketOption");
+      Object inet = Class.forName("java.net.StandardProtocolFamily").
+          getField("INET").get(null);
+      Object loop = Class.forName("java.net.StandardSocketOptions").
+          getField("IP_MULTICAST_LOOP").get(null);
+      channel = (DatagramChannel) DatagramChannel.class.
+          getMethod("open", familyClass).invoke(null, inet);
+      channel.socket().setReuseAddress(true);
+      channel.socket().bind(new InetSocketAddress(port));
+      DatagramChannel.class.getMethod("setOption", optionClass,
+          Object.class).invoke(channel, loop, Boolean.FALSE);
+      DatagramChannel.class.getMethod("join", InetAddress.class,
+          NetworkInterface.class).invoke(channel, remoteAddress, ni);
+      return channel;
+    } catch (Exception e) {
+      /*
+       * Multicast channels are unsupported.  This is expected behavior
+       * on older platforms.
+       */
+      if (channel != null) try {
+        channel.close();
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Obtain the next datagram in the transmit queue.
+   * @return the next datagram to send, or <code>null</code> if the
+   * transmit queue is empty.
+   */
+  private byte[] peekDatagram() {
+    synchronized(txQueue) {
+      return (txCount > 0) ? txQueue[txHead] : null;
+    }
+  }
+
+  /**
+   * Remove the next datagram from the transmit queue, and return it to
+   * the datagram pool.
+   */
+  private void removeDatagram() {
+    byte[] bytes;
+    synchronized(txQueue) {
+      if (txCount == 0) {
+        return;
+      }
+      bytes           = txQueue[txHead];
+      txQueue[txHead] = null;
+      txHead          = (txHead + 1) % TX_QUEUE_SIZE;
+      txCount--;
+    }
+    if (txPool != null) {
+      txPool.recycle(bytes);
+    }
+  }
+
   /**
    * This is the UDP socket receive and transmit thread declaration.
-   * <p>To support being able to send and receive packets in the same
-   * thread, a nonzero socket read timeout must be set, because
+   * <p>When a datagram channel is used, the thread blocks in the
+   * selector until a datagram is received, the channel can accept a
+   * queued datagram, or a datagram is transmitted.
+   * <p>Otherwise, to support being able to send and receive packets in
+   * the same thread, a nonzero socket read timeout must be set, because
    * <code>MulticastSocket.receive()</code> blocks until a packet is
    * received or the socket times out.  Thus, if a timeout of zero is
    * set (which is the default, and denotes that the socket will never
@@ -300,7 +471,46 @@ public class UDPSocket {
    * @see <code>configureUDPSocket()</code>
    */
   private class UDPThread implements Runnable {
-    private byte[] rxBuffer = new byte[256];
+    private byte[]         rxBuffer  = new byte[256];
+    private ByteBuffer     rxWrapper = ByteBuffer.wrap(rxBuffer);
+    private ByteBuffer     txBuffer  = ByteBuffer.allocate(256);
+    private DatagramPacket rxPacket  = null;
+    private DatagramPacket txPacket  = null;
+
+    /**
+     * Pass a received datagram to the registered listeners.
+     * @param address - the address of the datagram sender.
+     * @param buffer - the datagram contents.
+     * @param length - the datagram length.
+     */
+    private void dispatchDatagram(InetAddress address, byte[] buffer,
+                                  int length) {
+      if (!paused && running && (length != 0) && (address != localAddress) &&
+          (listenerList != null)) {
+        int size = listenerList.size();
+        while (--size >= 0) {
+          listenerList.get(size).onUDPEvent(address, buffer, length);
+        }
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+          Log.d(LOG_TAG, "received "+length+" bytes from "+ address +
+              ": 0x" + bytesToHex(buffer, length));
+        }
+      }
+    }
+
+    /**
+     * Receive every datagram pending on the channel.
+     * @throws IOException the channel could not be read.
+     */
+    private void receiveChannel() throws IOException {
+      SocketAddress source;
+      rxWrapper.clear();
+      while ((source = mChannel.receive(rxWrapper)) != null) {
+        dispatchDatagram(((InetSocketAddress) source).getAddress(),
+                         rxBuffer, rxWrapper.position());
+        rxWrapper.clear();
+      }
+    }
 
     /**
      * Receive a UDP datagram.
@@ -311,22 +521,20 @@ public class UDPSocket {
      */
     private void receiveDatagram() {
       if (!paused && running) try {
-        DatagramPacket dpRX = new DatagramPacket(rxBuffer, rxBuffer.length,
-                                                 remoteAddress, mPort);
-        mSocket.receive(dpRX);
-        byte[]      buffer  = dpRX.getData();
-        int         length  = dpRX.getLength();
-        InetAddress address = dpRX.getAddress();
-
-        if (!paused && running && (length != 0) && (address != localAddress) &&
-            (listenerList != null)) {
-          int size = listenerList.size();
-          while (--size >= 0) {
-            listenerList.get(size).onUDPEvent(address, buffer, length);
-          }
-          Log.d(LOG_TAG, "received "+length+" bytes from "+ remoteAddress +
-              ": 0x" + bytesToHex(buffer, length));
+        /*
+         * The same packet is reused for every datagram, so its length
+         * must be reset to the full receive buffer size.
+         */
+        if (rxPacket == null) {
+          rxPacket = new DatagramPacket(rxBuffer, rxBuffer.length,
+                                        remoteAddress, mPort);
+        }
+        else {
+          rxPacket.setData(rxBuffer, 0, rxBuffer.length);
         }
+        DatagramPacket dpRX = rxPacket;
+        mSocket.receive(dpRX);
+        dispatchDatagram(dpRX.getAddress(), dpRX.getData(), dpRX.getLength());
       } catch (NullPointerException npe) {
         npe.printStackTrace();
       } catch (InterruptedIOException iioe) {
@@ -341,16 +549,10 @@ public class UDPSocket {
     /**
      * This is the thread's <code>run()</code> call.
      * <p>Send and receive UDP datagrams.
-     * <p>To support being able to send and receive packets in the same
-     * thread, a nonzero socket read timeout must be set, because
-     * <code>MulticastSocket.receive()</code> blocks until a packet is
-     * received or the socket times out.  Thus, if a timeout of zero is
-     * set (which is the default, and denotes that the socket will never
-     * time out), a datagram will never be sent unless one has just been
-     * received.
-     * <p>Thus the maximum time between datagram transmissions is the
-     * socket timeout if no datagrams are being recieved.  If messages
-     * are being received, available TX throughput will be increased.
+     * <p>With a multicast socket, the maximum time between datagram
+     * transmissions is the socket timeout if no datagrams are being
+     * received.  If messages are being received, available TX
+     * throughput will be increased.
      */
     @Override
     public void run() {
@@ -360,7 +562,9 @@ public class UDPSocket {
       while (running) {
         if (paused) try {
           synchronized(this) {
-            wait();
+            while (paused && running) {
+              wait();
+            }
           }
         } catch (InterruptedException ie) {
           /*
@@ -369,9 +573,50 @@ public class UDPSocket {
         }
 
         if (!paused && running) {
-          sendDatagram();
-          receiveDatagram();
+          if (mChannel != null) {
+            serviceChannel();
+          }
+          else {
+            sendDatagram();
+            receiveDatagram();
+          }
+        }
+      }
+    }
+
+    /**
+     * Send the queued datagrams until the transmit queue is empty, or
+     * the channel cannot accept another datagram without blocking.
+     * @throws IOException the channel could not be written.
+     */
+    private void sendChannel() throws IOException {
+      byte[] bytes;
+      while ((bytes = peekDatagram()) != null) {
+        txBuffer.clear();
+        txBuffer.put(bytes, 0, Math.min(bytes.length, txBuffer.capacity()));
+        txBuffer.flip();
+        try {
+          if (mChannel.send(txBuffer, mTarget) == 0) {
+            /*
+             * The socket send buffer is full.  Send the datagram when
+             * the selector reports that the channel is writable.
+             */
+            return;
+          }
+        } catch (IOException ioe) {
+          /*
+           * Discard the datagram, as datagram delivery is unreliable
+           * anyways, rather than attempting to send it indefinitely.
+           */
+          removeDatagram();
+          throw ioe;
         }
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+          Log.d(LOG_TAG, "transmitted "+bytes.length+" bytes to "+
+              remoteAddress.getHostAddress() + ": 0x" +
+              bytesToHex(bytes, bytes.length));
+        }
+        removeDatagram();
       }
     }
 
@@ -380,31 +625,64 @@ public class UDPSocket {
      * as a UDP datagram packet.
      */
     private void sendDatagram() {
-      if (!paused && running && txList.size() > 0) try {
-        byte[] bytes;
-        synchronized(txList) {
-          bytes = txList.get(0);
+      byte[] bytes = peekDatagram();
+      if (!paused && running && (bytes != null)) try {
+        if (txPacket == null) {
+          txPacket =
+              new DatagramPacket(bytes, bytes.length, remoteAddress, mPort);
+        }
+        else {
+          txPacket.setData(bytes, 0, bytes.length);
+          txPacket.setAddress(remoteAddress);
+          txPacket.setPort(mPort);
         }
-        mSocket.send(
-            new DatagramPacket(bytes, bytes.length, remoteAddress, mPort));
-        Log.d(LOG_TAG, "transmitted "+bytes.length+" bytes to "+
-            remoteAddress.getHostAddress() + ": 0x" +
-            bytesToHex(bytes, bytes.length));
-        synchronized(txList) {
-          txList.remove(0);
+        mSocket.send(txPacket);
+        if (Log.isLoggable(LOG_TAG, Log.DEBUG)) {
+          Log.d(LOG_TAG, "transmitted "+bytes.length+" bytes to "+
+              remoteAddress.getHostAddress() + ": 0x" +
+              bytesToHex(bytes, bytes.length));
         }
+        removeDatagram();
       } catch (NullPointerException npe) {
         npe.printStackTrace();
       } catch (IOException ioe) {
         ioe.printStackTrace();
       }
     }
+
+    /**
+     * Wait until the channel has received a datagram or can send a
+     * queued datagram, then service it.  The wait ends early when a
+     * datagram is transmitted, or the thread is paused or stopped.
+     */
+    private void serviceChannel() {
+      try {
+        if (peekDatagram() != null) {
+          mKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+        else {
+          mKey.interestOps(SelectionKey.OP_READ);
+        }
+        int selected = mSelector.select(SELECT_TIMEOUT);
+        if (!paused && running && (selected > 0)) {
+          if (mKey.isReadable()) {
+            receiveChannel();
+          }
+          mSelector.selectedKeys().clear();
+        }
+        if (!paused && running) {
+          sendChannel();
+        }
+      } catch (IOException ioe) {
+        ioe.printStackTrace();
+      }
+    }
   }
 
   public void pause() {
     if (running) {
       paused = true;
-      if (mSocket.isConnected()) {
+      if ((mSocket != null) && mSocket.isConnected()) {
         if (mType == connectEnum.UDP_MULTICAST) {
           try {
             mSocket.leaveGroup(remoteAddress);
@@ -427,6 +705,14 @@ public class UDPSocket {
     }
   }
 
+  /**
+   * Set the pool that transmitted buffers are returned to.
+   * @param pool - the pool the transmitted buffers were obtained from.
+   */
+  public void setDatagramPool(DatagramPool pool) {
+    txPool = pool;
+  }
+
   public void setLocalIPaddress(InetAddress address) {
     localAddress = address;
   }
@@ -437,11 +723,7 @@ public class UDPSocket {
   private void stopThread() {
     paused  = false;
     running = false;
-    if (mThread != null) {
-      synchronized(mThread) {
-        mThread.interrupt();
-      }
-    }
+    wakeThread();
     /*
      * Close and join() the UDP thread.
      */
@@ -463,12 +745,24 @@ public class UDPSocket {
    * @param buffer - the byte buffer to transmit.
    * @return <code>true</code> if the buffer was successfully added to
    * the outgoing datagram transmit list, <code>false</code> if the the
-   * buffer was unable to be added to the transmit list.
+   * buffer was unable to be added to the transmit list because the
+   * thread is not running or the transmit list is full.
    */
   public boolean transmit(byte[] buffer) {
     if ((mThread != null) && running) {
-      synchronized(txList) {
-        txList.add(buffer);
+      synchronized(txQueue) {
+        if (txCount == TX_QUEUE_SIZE) {
+          return false;
+        }
+        txQueue[(txHead + txCount) % TX_QUEUE_SIZE] = buffer;
+        txCount++;
+      }
+      /*
+       * Wake the selector so that the datagram is sent immediately.
+       */
+      Selector selector = mSelector;
+      if (selector != null) {
+        selector.wakeup();
       }
       return true;
     }
@@ -483,7 +777,13 @@ public class UDPSocket {
           mLock.acquire();
         }
       }
-      if (mType == connectEnum.UDP_MULTICAST) {
+      if (mSocket == null) {
+        /*
+         * The datagram channel remains bound and connected, or a
+         * member of the multicast group, while paused.
+         */
+      }
+      else if (mType == connectEnum.UDP_MULTICAST) {
         try {
           mSocket.joinGroup(remoteAddress);
         } catch (SocketException se) {
@@ -513,7 +813,24 @@ public class UDPSocket {
     } catch (IOException ioe) {
       ioe.printStackTrace();
     }
-    if (mThread != null) {
+    wakeThread();
+  }
+
+  /**
+   * Wake the UDP thread if it is paused or waiting for a datagram.
+   * <p>A thread using a datagram channel must not be interrupted, as
+   * interrupting a thread performing channel I/O closes the channel.
+   */
+  private void wakeThread() {
+    if (mRunnable != null) {
+      synchronized(mRunnable) {
+        mRunnable.notifyAll();
+      }
+    }
+    if (mSelector != null) {
+      mSelector.wakeup();
+    }
+    else if (mThread != null) {
       synchronized(mThread) {
         mThread.interrupt();
       }
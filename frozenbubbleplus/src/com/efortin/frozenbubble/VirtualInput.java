@@ -160,6 +160,21 @@ public abstract class VirtualInput {
     }
   }
 
+  /**
+   * Process a touch event that occurred at the supplied time.  By
+   * default the event time is ignored.
+   * @param event - the touch event action, e.g.,
+   * <code>MotionEvent.ACTION_DOWN</code>.
+   * @param x - the horizontal touch position.
+   * @param y - the vertical touch position.
+   * @param time - the event time, in the
+   * <code>SystemClock.uptimeMillis()</code> time base.
+   * @return <code>true</code> if the touch event was processed.
+   */
+  public boolean setTouchEvent(int event, double x, double y, long time) {
+    return setTouchEvent(event, x, y);
+  }
+
   /**
    * Set the game reference for this player.
    * @param gameRef - the reference to this player's game object.
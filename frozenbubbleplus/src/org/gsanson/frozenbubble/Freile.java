@@ -156,6 +156,22 @@ public class Freile implements Opponent, Runnable {
     }
   }
 
+  /**
+   * Compute the best launch direction in the calling thread, rather
+   * than in the opponent thread.  This must not be called while the
+   * opponent thread is computing, but may be called once the thread
+   * is stopped via <code>stopThread()</code>.
+   * @param currentColor - the launch bubble color.
+   * @param nextColor - the next launch bubble color.
+   * @param compressor - the number of compressor steps.
+   */
+  public void computeNow(int currentColor, int nextColor, int compressor) {
+    this.color      = currentColor;
+    this.nextColor  = nextColor;
+    this.compressor = compressor;
+    findBestOption();
+  }
+
   private int computeOption(int posX, int posY, int color,
                             int[][] gridOptions, int[][] outGrid) {
     if (gridOptions[posX][posY] == 0) {
@@ -187,6 +203,89 @@ public class Freile implements Opponent, Runnable {
     return gridOptions[posX][posY];
   }
 
+  /**
+   * Search every launch direction for both the current and the next
+   * launch bubble colors for the best option.
+   */
+  private void findBestOption() {
+    /*
+     * Initialize grid options.
+     */
+    for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+      for (int j = 0; j < LevelManager.NUM_ROWS; j++) {
+        gridOptions[i][j] = 0;
+      }
+    }
+
+    /*
+     * Check for best option.
+     */
+    int bestOption = -1;
+    int newOption;
+    int[] position = {0, 0};
+
+    bestDirection   = 0.;
+    bestLocation[0] = 0;
+    bestLocation[1] = 0;
+    colorSwap       = false;
+    for (double direction = 0.;
+         direction < MAX_LAUNCHER;
+         direction += LAUNCHER_ROTATION) {
+      getCollision(direction, position);
+      newOption = computeOption(position[0], position[1],
+                                color, gridOptions, outGrid);
+      if (newOption > bestOption) {
+        bestOption      = newOption;
+        bestDirection   = direction;
+        bestLocation[0] = position[0];
+        bestLocation[1] = position[1];
+      }        
+    }
+    for (double direction = -LAUNCHER_ROTATION;
+         direction > MIN_LAUNCHER;
+         direction -= LAUNCHER_ROTATION) {
+      getCollision(direction, position);
+      newOption = computeOption(position[0], position[1],
+                                color, gridOptions, outGrid);
+      if (newOption > bestOption) {
+        bestOption      = newOption;
+        bestDirection   = direction;
+        bestLocation[0] = position[0];
+        bestLocation[1] = position[1];
+      }
+    }
+    if (color != nextColor) {
+      for (double direction = 0.;
+           direction < MAX_LAUNCHER;
+           direction += LAUNCHER_ROTATION) {
+        getCollision(direction, position);
+        newOption = computeOption(position[0], position[1],
+                                  nextColor, gridOptions, outGrid);
+        if (newOption > bestOption) {
+          bestOption      = newOption;
+          bestDirection   = direction;
+          bestLocation[0] = position[0];
+          bestLocation[1] = position[1];
+          colorSwap       = true;
+        }       
+      }
+      for (double direction = -LAUNCHER_ROTATION;
+           direction > MIN_LAUNCHER;
+           direction -= LAUNCHER_ROTATION) {
+        getCollision(direction, position);
+        newOption = computeOption(position[0], position[1],
+                                  nextColor, gridOptions, outGrid);
+        if (newOption > bestOption) {
+          bestOption      = newOption;
+          bestDirection   = direction;
+          bestLocation[0] = position[0];
+          bestLocation[1] = position[1];
+          colorSwap       = true;
+        }
+      }
+    }
+  }
+
   public int getAction(double currentDirection) {
     int direction = 0;
 
@@ -299,86 +398,13 @@ public class Freile implements Opponent, Runnable {
       }
 
       if (running) {
-        /*
-         * Initialize grid options.
-         */
-        for (int i = 0; i < LevelManager.NUM_COLS; i++) {
-          for (int j = 0; j < LevelManager.NUM_ROWS; j++) {
-            gridOptions[i][j] = 0;
-          }
-        }
-
-        /*
-         * Check for best option.
-         */
-        int bestOption = -1;
-        int newOption;
-        int[] position = {0, 0};
-
-        bestDirection   = 0.;
-        bestLocation[0] = 0;
-        bestLocation[1] = 0;
-        colorSwap       = false;
-        for (double direction = 0.;
-             direction < MAX_LAUNCHER;
-             direction += LAUNCHER_ROTATION) {
-          getCollision(direction, position);
-          newOption = computeOption(position[0], position[1],
-                                    color, gridOptions, outGrid);
-          if (newOption > bestOption) {
-            bestOption      = newOption;
-            bestDirection   = direction;
-            bestLocation[0] = position[0];
-            bestLocation[1] = position[1];
-          }        
-        }
-        for (double direction = -LAUNCHER_ROTATION;
-             direction > MIN_LAUNCHER;
-             direction -= LAUNCHER_ROTATION) {
-          getCollision(direction, position);
-          newOption = computeOption(position[0], position[1],
-                                    color, gridOptions, outGrid);
-          if (newOption > bestOption) {
-            bestOption      = newOption;
-            bestDirection   = direction;
-            bestLocation[0] = position[0];
-            bestLocation[1] = position[1];
-          }
-        }
-        if (color != nextColor) {
-          for (double direction = 0.;
-               direction < MAX_LAUNCHER;
-               direction += LAUNCHER_ROTATION) {
-            getCollision(direction, position);
-            newOption = computeOption(position[0], position[1],
-                                      nextColor, gridOptions, outGrid);
-            if (newOption > bestOption) {
-              bestOption      = newOption;
-              bestDirection   = direction;
-              bestLocation[0] = position[0];
-              bestLocation[1] = position[1];
-              colorSwap       = true;
-            }       
-          }
-          for (double direction = -LAUNCHER_ROTATION;
-               direction > MIN_LAUNCHER;
-               direction -= LAUNCHER_ROTATION) {
-            getCollision(direction, position);
-            newOption = computeOption(position[0], position[1],
-                                      nextColor, gridOptions, outGrid);
-            if (newOption > bestOption) {
-              bestOption      = newOption;
-              bestDirection   = direction;
-              bestLocation[0] = position[0];
-              bestLocation[1] = position[1];
-              colorSwap       = true;
-            }
-          }
-        }
+        findBestOption();
       }
     }
-    gridOptions = null;
-    outGrid     = null;
+    /*
+     * The work grids are kept once the thread stops, as they are also
+     * used by computeNow().
+     */
   }
 
   /**
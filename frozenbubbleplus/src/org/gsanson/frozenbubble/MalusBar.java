@@ -97,6 +97,19 @@ public class MalusBar extends Sprite {
     this.tomato = tomato;
   }
 
+  @Override
+  public void getPaintBounds(Rect bounds, double scale, int dx, int dy) {
+    int top = maxY - ((nbMalus / MAX_ATTACK) * 13) -
+              ((nbMalus % MAX_ATTACK) * 11);
+    getAreaBounds(minX, Math.min(top, getSpriteArea().top),
+                  minX + 33, maxY + 3, bounds, scale, dx, dy);
+  }
+
+  @Override
+  public long getPaintState() {
+    return nbMalus;
+  }
+
   @Override
   public final void paint(Canvas c, double scale, int dx, int dy) {
     int count = nbMalus;
@@ -0,0 +1,363 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * This class accounts for the memory used by the game bitmaps, and
+ * recycles the bitmap allocations that are no longer needed.
+ * <p>Every bitmap the game keeps is tracked in one of the categories
+ * below, and the current and peak number of bytes of each category are
+ * recorded for diagnostics.
+ * <p>Mutable bitmaps that are no longer needed are released to a pool
+ * rather than recycled.  A request for a bitmap with the same
+ * dimensions and pixel format is satisfied from the pool, so that, for
+ * instance, rescaling back to a previous display size, or starting a new
+ * game, reuses the existing allocations.  The pool is limited in size,
+ * and emptied when the system asks the application to trim its memory
+ * usage.
+ */
+public class BitmapBudget {
+  /*
+   * The bitmap categories.
+   */
+  public static final int CATEGORY_ORIGINAL    = 0;
+  public static final int CATEGORY_SCALED      = 1;
+  public static final int CATEGORY_LAYER       = 2;
+  public static final int CATEGORY_PRERENDERED = 3;
+  public static final int NUM_CATEGORIES       = 4;
+
+  private static final String[] CATEGORY_NAMES = {
+    "original", "scaled", "layer", "prerendered" };
+
+  private static final long maxPoolBytes =
+    Runtime.getRuntime().maxMemory() / 16;
+
+  private static final long[] bytes     = new long[NUM_CATEGORIES];
+  private static final long[] peakBytes = new long[NUM_CATEGORIES];
+  private static long totalBytes     = 0;
+  private static long peakTotalBytes = 0;
+
+  /*
+   * The pooled bitmaps, least recently released first.
+   */
+  private static final LinkedList<Bitmap> pool = new LinkedList<Bitmap>();
+  private static long poolBytes     = 0;
+  private static long peakPoolBytes = 0;
+
+  private static long getByteCount(Bitmap bitmap) {
+    return (long)bitmap.getRowBytes() * bitmap.getHeight();
+  }
+
+  /**
+   * Obtain a mutable bitmap, reusing a pooled bitmap with the same
+   * dimensions and pixel format if there is one.  A reused bitmap is
+   * cleared to transparent black.
+   * @param category - the category to account the bitmap in.
+   * @param width - the bitmap width.
+   * @param height - the bitmap height.
+   * @param config - the bitmap pixel format.
+   * @return the bitmap.
+   * @throws OutOfMemoryError if the bitmap can't be allocated, even
+   * after the pool is emptied.
+   */
+  public static Bitmap createBitmap(int category, int width, int height,
+                                    Bitmap.Config config) {
+    Bitmap bitmap = takePooled(width, height, config);
+    if (bitmap != null) {
+      bitmap.eraseColor(0);
+    }
+    else {
+      try {
+        bitmap = Bitmap.createBitmap(width, height, config);
+      } catch (OutOfMemoryError oome) {
+        trimToSize(0);
+        bitmap = Bitmap.createBitmap(width, height, config);
+      }
+    }
+    track(category, bitmap);
+    return bitmap;
+  }
+
+  /**
+   * Decode an image file, reusing the allocation of a pooled bitmap with
+   * the expected dimensions and pixel format if the platform supports
+   * it.  The decoded bitmap is mutable where possible, so that it may be
+   * pooled in turn once it is released.
+   * @param category - the category to account the bitmap in.
+   * @param path - the image file path.
+   * @param width - the expected image width.
+   * @param height - the expected image height.
+   * @param config - the preferred pixel format.
+   * @return the decoded image, or <code>null</code> if it could not be
+   * decoded.
+   */
+  public static Bitmap decodeFile(int category, String path, int width,
+                                  int height, Bitmap.Config config) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inPreferredConfig = config;
+    Bitmap reuse = null;
+
+    /*
+     * The Options.inMutable and Options.inBitmap fields are only
+     * available starting at API 11.
+     */
+    try {
+      Field mutable = options.getClass().getField("inMutable");
+      mutable.set(options, Boolean.TRUE);
+      reuse = takePooled(width, height, config);
+      if (reuse != null) {
+        options.getClass().getField("inBitmap").set(options, reuse);
+      }
+    } catch (Exception ignore) {}
+
+    Bitmap bitmap = null;
+    try {
+      bitmap = BitmapFactory.decodeFile(path, options);
+    } catch (IllegalArgumentException iae) {
+      /*
+       * The pooled bitmap could not be reused for this image.
+       */
+      if (reuse != null) {
+        reuse.recycle();
+        reuse = null;
+        try {
+          options.getClass().getField("inBitmap").set(options, null);
+        } catch (Exception ignore) {}
+        bitmap = BitmapFactory.decodeFile(path, options);
+      }
+    } catch (OutOfMemoryError oome) {
+      trimToSize(0);
+    }
+    if ((reuse != null) && (bitmap != reuse)) {
+      reuse.recycle();
+    }
+    if (bitmap != null) {
+      track(category, bitmap);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Obtain the number of bytes of the bitmaps in a category.
+   */
+  public static synchronized long getBytes(int category) {
+    return bytes[category];
+  }
+
+  /**
+   * Obtain the highest number of bytes of the bitmaps in a category.
+   */
+  public static synchronized long getPeakBytes(int category) {
+    return peakBytes[category];
+  }
+
+  /**
+   * Obtain the highest number of bytes of every tracked bitmap.
+   */
+  public static synchronized long getPeakTotalBytes() {
+    return peakTotalBytes;
+  }
+
+  /**
+   * Obtain the number of bytes of the pooled bitmaps, which are not
+   * included in any category.
+   */
+  public static synchronized long getPooledBytes() {
+    return poolBytes;
+  }
+
+  /**
+   * Obtain the number of bytes of every tracked bitmap.
+   */
+  public static synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  /**
+   * Stop tracking a bitmap that is no longer needed, and pool it so that
+   * its allocation may be reused.  Immutable bitmaps can't be reused,
+   * and are recycled instead.
+   * @param category - the category the bitmap is accounted in.
+   * @param bitmap - the bitmap, which must no longer be referenced.
+   */
+  public static synchronized void release(int category, Bitmap bitmap) {
+    if (bitmap == null) {
+      return;
+    }
+    untrack(category, bitmap);
+    if (bitmap.isRecycled() || pool.contains(bitmap)) {
+      return;
+    }
+    if (!bitmap.isMutable() || (getByteCount(bitmap) > maxPoolBytes)) {
+      bitmap.recycle();
+      return;
+    }
+    pool.addLast(bitmap);
+    poolBytes    += getByteCount(bitmap);
+    peakPoolBytes = Math.max(peakPoolBytes, poolBytes);
+    trimToSize(maxPoolBytes);
+  }
+
+  /**
+   * Stop tracking a bitmap that is no longer needed, and recycle it.
+   * @param category - the category the bitmap is accounted in.
+   * @param bitmap - the bitmap.
+   */
+  public static void recycle(int category, Bitmap bitmap) {
+    if (bitmap != null) {
+      untrack(category, bitmap);
+      bitmap.recycle();
+    }
+  }
+
+  /*
+   * Remove a pooled bitmap with the supplied dimensions and pixel format
+   * from the pool.
+   */
+  private static synchronized Bitmap takePooled(int width, int height,
+                                                Bitmap.Config config) {
+    Iterator<Bitmap> iterator = pool.iterator();
+    while (iterator.hasNext()) {
+      Bitmap bitmap = iterator.next();
+      if ((bitmap.getWidth() == width) && (bitmap.getHeight() == height) &&
+          (bitmap.getConfig() == config)) {
+        iterator.remove();
+        poolBytes -= getByteCount(bitmap);
+        return bitmap;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Account for a bitmap allocated elsewhere.
+   * @param category - the category to account the bitmap in.
+   * @param bitmap - the bitmap.
+   */
+  public static synchronized void track(int category, Bitmap bitmap) {
+    long count = getByteCount(bitmap);
+    bytes[category] += count;
+    totalBytes      += count;
+    peakBytes[category] = Math.max(peakBytes[category], bytes[category]);
+    peakTotalBytes      = Math.max(peakTotalBytes, totalBytes);
+  }
+
+  /**
+   * Empty the pool in response to a memory trim request from the system.
+   * Called along with <code>BitmapCache.trimMemory()</code>.
+   * @param level - the trim level.
+   */
+  public static synchronized void trimMemory(int level) {
+    if (level >= BitmapCache.TRIM_MEMORY_RUNNING_LOW) {
+      trimToSize(0);
+    }
+    else if (level >= BitmapCache.TRIM_MEMORY_RUNNING_MODERATE) {
+      trimToSize(maxPoolBytes / 2);
+    }
+  }
+
+  /*
+   * Recycle pooled bitmaps, least recently released first, until the
+   * pool fits in the supplied size.
+   */
+  private static synchronized void trimToSize(long size) {
+    while ((poolBytes > size) && !pool.isEmpty()) {
+      Bitmap bitmap = pool.removeFirst();
+      poolBytes -= getByteCount(bitmap);
+      bitmap.recycle();
+    }
+  }
+
+  /**
+   * Stop accounting for a bitmap.
+   * @param category - the category the bitmap is accounted in.
+   * @param bitmap - the bitmap.
+   */
+  public static synchronized void untrack(int category, Bitmap bitmap) {
+    long count = getByteCount(bitmap);
+    bytes[category] = Math.max(0, bytes[category] - count);
+    totalBytes      = Math.max(0, totalBytes - count);
+  }
+
+  /**
+   * Write the current and peak memory usage of each category, and of
+   * the pool, in tab-separated text form.
+   * @param out - the writer to write to.
+   * @throws IOException if the writer fails.
+   */
+  public static void writeTo(Writer out) throws IOException {
+    StringBuilder text = new StringBuilder();
+    synchronized(BitmapBudget.class) {
+      text.append("\nbitmaps\ncategory\tkb\tpeak_kb\n");
+      for (int category = 0; category < NUM_CATEGORIES; category++) {
+        text.append(CATEGORY_NAMES[category]).append('\t')
+            .append(bytes[category] / 1024).append('\t')
+            .append(peakBytes[category] / 1024).append('\n');
+      }
+      text.append("total\t").append(totalBytes / 1024).append('\t')
+          .append(peakTotalBytes / 1024).append('\n');
+      text.append("pooled\t").append(poolBytes / 1024).append('\t')
+          .append(peakPoolBytes / 1024).append('\n');
+    }
+    out.write(text.toString());
+  }
+}
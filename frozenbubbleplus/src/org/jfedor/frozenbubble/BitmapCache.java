@@ -0,0 +1,301 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.lang.reflect.Field;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * This class is a process-wide cache of the decoded game images.
+ * <p>The images are decoded by a pool of threads, and kept after the
+ * game view that decoded them is destroyed, so a new game view - for
+ * instance when returning from the home screen - does not have to decode
+ * them again.
+ * <p>Each image is reference counted.  Images in use are never evicted.
+ * Unused images are evicted least recently used first, when the total
+ * size of the cached images exceeds the memory cap, or when the system
+ * asks the application to trim its memory usage.
+ */
+public class BitmapCache {
+  /*
+   * The ComponentCallbacks2 trim levels, which are not defined by the
+   * platform version the game is compiled against.
+   */
+  public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+  public static final int TRIM_MEMORY_RUNNING_LOW      = 10;
+  public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+  public static final int TRIM_MEMORY_UI_HIDDEN        = 20;
+  public static final int TRIM_MEMORY_BACKGROUND       = 40;
+  public static final int TRIM_MEMORY_COMPLETE         = 80;
+
+  private static final int MAX_DECODE_THREADS = 4;
+
+  private static class Entry {
+    Bitmap bitmap;
+    long   bytes;
+    int    refs;
+  }
+
+  /*
+   * The entries are kept in access order, least recently used first.
+   */
+  private static final LinkedHashMap<Integer, Entry> entries =
+    new LinkedHashMap<Integer, Entry>(64, 0.75f, true);
+  private static final long maxBytes = Runtime.getRuntime().maxMemory() / 8;
+  private static long totalBytes = 0;
+  private static ExecutorService decoder = null;
+
+  /**
+   * Obtain the decoded images for the supplied drawable resources.  The
+   * images that are not cached are decoded in parallel.  Every image
+   * obtained must be returned with <code>release()</code>.
+   * @param res - the application resources.
+   * @param ids - the drawable resource ids.  An id of 0 yields a
+   * <code>null</code> image.
+   * @param opaque - flags the images without transparency, which are
+   * decoded in the <code>RGB_565</code> format to halve their size, or
+   * <code>null</code> if every image may be transparent.
+   * @return the decoded images, in the same order as the ids.
+   */
+  public static Bitmap[] acquire(final Resources res, int[] ids,
+                                 boolean[] opaque) {
+    Bitmap[] bitmaps = new Bitmap[ids.length];
+    Vector<Future<Bitmap>> decoding = new Vector<Future<Bitmap>>();
+
+    synchronized(BitmapCache.class) {
+      for (int i = 0; i < ids.length; i++) {
+        Entry entry = entries.get(ids[i]);
+        if (entry != null) {
+          entry.refs++;
+          bitmaps[i] = entry.bitmap;
+        }
+        else if (ids[i] != 0) {
+          final int     id  = ids[i];
+          final boolean rgb = (opaque != null) && opaque[i];
+          decoding.addElement(getDecoder().submit(new Callable<Bitmap>() {
+            public Bitmap call() {
+              return BitmapFactory.decodeResource(res, id, newOptions(rgb));
+            }
+          }));
+        }
+      }
+    }
+
+    int index = 0;
+    for (int i = 0; i < ids.length; i++) {
+      if ((bitmaps[i] == null) && (ids[i] != 0)) {
+        bitmaps[i] = add(ids[i], getDecoded(decoding.elementAt(index++)));
+      }
+    }
+    return bitmaps;
+  }
+
+  /**
+   * Add a newly decoded image to the cache, unless another thread added
+   * the same image meanwhile.
+   * @return the cached image.
+   */
+  private static synchronized Bitmap add(int id, Bitmap bitmap) {
+    Entry entry = entries.get(id);
+    if (entry != null) {
+      if (bitmap != null) {
+        bitmap.recycle();
+      }
+    }
+    else {
+      if (bitmap == null) {
+        return null;
+      }
+      entry        = new Entry();
+      entry.bitmap = bitmap;
+      entry.bytes  = (long)bitmap.getRowBytes() * bitmap.getHeight();
+      entries.put(id, entry);
+      totalBytes  += entry.bytes;
+      BitmapBudget.track(BitmapBudget.CATEGORY_ORIGINAL, bitmap);
+    }
+    entry.refs++;
+    trimToSize(maxBytes);
+    return entry.bitmap;
+  }
+
+  private static Bitmap getDecoded(Future<Bitmap> future) {
+    boolean interrupted = false;
+    Bitmap  bitmap      = null;
+    while (true) {
+      try {
+        bitmap = future.get();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } catch (ExecutionException e) {
+        break;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return bitmap;
+  }
+
+  private static synchronized ExecutorService getDecoder() {
+    if (decoder == null) {
+      int threads = Runtime.getRuntime().availableProcessors();
+      threads = Math.max(2, Math.min(MAX_DECODE_THREADS, threads));
+      decoder = Executors.newFixedThreadPool(threads);
+    }
+    return decoder;
+  }
+
+  private static BitmapFactory.Options newOptions(boolean opaque) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    if (opaque) {
+      options.inPreferredConfig = Bitmap.Config.RGB_565;
+    }
+
+    /*
+     * The Options.inScaled field is only available starting at API 4.
+     */
+    try {
+      Field f = options.getClass().getField("inScaled");
+      f.set(options, Boolean.FALSE);
+    } catch (Exception ignore) {}
+    return options;
+  }
+
+  /**
+   * Return images obtained with <code>acquire()</code>, and evict those
+   * that are no longer in use right away.  Used for images that will
+   * not be needed again soon, such as originals that have been scaled.
+   * @param bitmaps - the images to return.  <code>null</code> entries
+   * are ignored.
+   */
+  public static synchronized void evict(Bitmap[] bitmaps) {
+    release(bitmaps, true);
+  }
+
+  /**
+   * Return images obtained with <code>acquire()</code>.  They remain
+   * cached until they are evicted.
+   * @param bitmaps - the images to return.  <code>null</code> entries
+   * are ignored.
+   */
+  public static synchronized void release(Bitmap[] bitmaps) {
+    release(bitmaps, false);
+  }
+
+  private static void release(Bitmap[] bitmaps, boolean evict) {
+    for (int i = 0; i < bitmaps.length; i++) {
+      if (bitmaps[i] == null) {
+        continue;
+      }
+      Iterator<Entry> iterator = entries.values().iterator();
+      while (iterator.hasNext()) {
+        Entry entry = iterator.next();
+        if ((entry.bitmap == bitmaps[i]) && (entry.refs > 0)) {
+          entry.refs--;
+          if (evict && (entry.refs == 0)) {
+            iterator.remove();
+            BitmapBudget.recycle(BitmapBudget.CATEGORY_ORIGINAL,
+                                 entry.bitmap);
+            totalBytes -= entry.bytes;
+          }
+          break;
+        }
+      }
+    }
+    trimToSize(maxBytes);
+  }
+
+  /**
+   * Evict unused images in response to a memory trim request from the
+   * system.  Called by the activities' <code>onTrimMemory()</code> and
+   * <code>onLowMemory()</code>.
+   * @param level - the trim level.
+   */
+  public static synchronized void trimMemory(int level) {
+    if ((level >= TRIM_MEMORY_BACKGROUND) ||
+        (level == TRIM_MEMORY_RUNNING_CRITICAL)) {
+      trimToSize(0);
+    }
+    else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+      trimToSize(maxBytes / 2);
+    }
+  }
+
+  /**
+   * Evict unused images, least recently used first, until the cached
+   * images fit in the supplied size or only images in use remain.
+   */
+  private static void trimToSize(long size) {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while ((totalBytes > size) && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry.refs == 0) {
+        iterator.remove();
+        BitmapBudget.recycle(BitmapBudget.CATEGORY_ORIGINAL, entry.bitmap);
+        totalBytes -= entry.bytes;
+      }
+    }
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.Log;
+
+/**
+ * This class produces the scaled game images on a pool of background
+ * threads, so that a surface size change does not block the user
+ * interface thread while every image is scaled.
+ * <p>Each image is delivered to the listener as soon as it is ready.
+ * Scaled images are also saved in a disk cache, keyed by the image name
+ * and the display scale, so that later launches at the same resolution
+ * simply decode the pre-scaled images.
+ * <p>The scaled images are allocated through <code>BitmapBudget</code>,
+ * and may reuse the allocations of previously released images.
+ */
+public class BitmapScaler {
+  private static final String LOG_TAG     = "frozen-bubble";
+  private static final int    NUM_THREADS = 2;
+
+  /*
+   * The maximum number of scaled images kept in the disk cache.  The
+   * least recently used images are deleted first.
+   */
+  private static final int MAX_CACHED_FILES = 8;
+
+  /**
+   * Draws the contents of a scaled image.
+   */
+  public interface Renderer {
+    /**
+     * Draw the scaled image contents.  Called from a worker thread.
+     * @param canvas - the canvas of the scaled image.
+     */
+    public abstract void render(Canvas canvas);
+  }
+
+  /**
+   * Receives the scaled images.
+   */
+  public interface Listener {
+    /**
+     * Called from a worker thread when an image has been scaled.  The
+     * listener becomes the owner of the bitmap.
+     * @param generation - the generation supplied with the request.
+     * @param name - the image name.
+     * @param bitmap - the scaled image.
+     */
+    public abstract void onBitmapScaled(int generation, String name,
+                                        Bitmap bitmap);
+  }
+
+  private final File            cacheDir;
+  private final ExecutorService executor;
+  private final Listener        listener;
+
+  /**
+   * Create a bitmap scaler.
+   * @param cacheDir - the directory to cache the scaled images in, or
+   * <code>null</code> to disable the disk cache.
+   * @param listener - the listener that receives the scaled images.
+   */
+  public BitmapScaler(File cacheDir, Listener listener) {
+    this.cacheDir = cacheDir;
+    this.listener = listener;
+    executor      = Executors.newFixedThreadPool(NUM_THREADS);
+  }
+
+  private File getCacheFile(String name, double scale) {
+    if (cacheDir == null) {
+      return null;
+    }
+    return new File(cacheDir, name + "-" +
+                    Long.toHexString(Double.doubleToLongBits(scale)) +
+                    ".png");
+  }
+
+  /**
+   * Delete the least recently used cached images beyond the maximum.
+   */
+  private void pruneCache() {
+    File[] files = cacheDir.listFiles();
+    if ((files == null) || (files.length <= MAX_CACHED_FILES)) {
+      return;
+    }
+    Arrays.sort(files, new Comparator<File>() {
+      public int compare(File a, File b) {
+        long diff = b.lastModified() - a.lastModified();
+        return (diff > 0) ? 1 : ((diff < 0) ? -1 : 0);
+      }
+    });
+    for (int i = MAX_CACHED_FILES; i < files.length; i++) {
+      files[i].delete();
+    }
+  }
+
+  /**
+   * Load a scaled image from the disk cache.
+   * @return the cached image, or <code>null</code> if it is not cached
+   * or does not have the expected dimensions.
+   */
+  private Bitmap readCache(File file, int width, int height,
+                           Bitmap.Config config) {
+    if ((file == null) || !file.exists()) {
+      return null;
+    }
+    Bitmap bitmap = BitmapBudget.decodeFile(BitmapBudget.CATEGORY_SCALED,
+                                            file.getPath(), width, height,
+                                            config);
+    if ((bitmap != null) && ((bitmap.getWidth()  != width) ||
+                             (bitmap.getHeight() != height))) {
+      BitmapBudget.release(BitmapBudget.CATEGORY_SCALED, bitmap);
+      bitmap = null;
+    }
+    if (bitmap == null) {
+      file.delete();
+    }
+    else {
+      file.setLastModified(System.currentTimeMillis());
+    }
+    return bitmap;
+  }
+
+  /**
+   * Request a scaled image.  The image is loaded from the disk cache if
+   * it is present, otherwise it is drawn by the renderer and saved to
+   * the cache.  Either way it is then passed to the listener.
+   * @param generation - a value passed back to the listener, used to
+   * discard images requested before a newer surface size change.
+   * @param name - the image name, which must be unique for the contents.
+   * @param scale - the display scale factor.
+   * @param width - the scaled image width.
+   * @param height - the scaled image height.
+   * @param config - the scaled image pixel format.
+   * @param renderer - draws the scaled image.
+   */
+  public void scale(final int generation, final String name,
+                    final double scale, final int width, final int height,
+                    final Bitmap.Config config, final Renderer renderer) {
+    executor.execute(new Runnable() {
+      public void run() {
+        File file = getCacheFile(name, scale);
+        Bitmap bitmap = readCache(file, width, height, config);
+        if (bitmap == null) {
+          try {
+            bitmap = BitmapBudget.createBitmap(BitmapBudget.CATEGORY_SCALED,
+                                               width, height, config);
+            renderer.render(new Canvas(bitmap));
+          } catch (RuntimeException re) {
+            /*
+             * The source images were recycled or released because the
+             * game is being shut down, or the display scale changed.
+             */
+            if (bitmap != null) {
+              BitmapBudget.release(BitmapBudget.CATEGORY_SCALED, bitmap);
+            }
+            return;
+          }
+          writeCache(file, bitmap);
+        }
+        listener.onBitmapScaled(generation, name, bitmap);
+      }
+    });
+  }
+
+  /**
+   * Stop the worker threads, and wait briefly for the images being
+   * scaled to be finished.  Must not be called while holding a lock the
+   * listener needs.
+   */
+  public void shutdown() {
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void writeCache(File file, Bitmap bitmap) {
+    if (file == null) {
+      return;
+    }
+    FileOutputStream out = null;
+    try {
+      cacheDir.mkdirs();
+      out = new FileOutputStream(file);
+      if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+        file.delete();
+      }
+    } catch (IOException ioe) {
+      Log.e(LOG_TAG, "Unable to cache " + file.getName(), ioe);
+      file.delete();
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException ignore) {}
+      }
+    }
+    pruneCache();
+  }
+}
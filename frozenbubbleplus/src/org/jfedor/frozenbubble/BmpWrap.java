@@ -53,6 +53,7 @@
 package org.jfedor.frozenbubble;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 
 // Various classes take arguments of this type during construction.  We need
 // one level of indirection in case we want to swap the images from under them
@@ -68,4 +69,21 @@ public class BmpWrap {
   public Bitmap bmp;
   // Image id used for saving and restoring the image sprites.
   public int id;
+  // When the image is packed in a sprite atlas, bmp is the shared atlas
+  // bitmap and region is the area of the atlas holding the image.
+  public Rect region;
+
+  public int getWidth() {
+    if (region != null) {
+      return region.width();
+    }
+    return bmp.getWidth();
+  }
+
+  public int getHeight() {
+    if (region != null) {
+      return region.height();
+    }
+    return bmp.getHeight();
+  }
 }
@@ -52,9 +52,29 @@
 
 package org.jfedor.frozenbubble;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.graphics.RectF;
 
+/**
+ * This class paints text using the bubble font image.
+ * <p>Each glyph is drawn by copying its slice of the font image, whose
+ * source rectangle is computed once per display scale, so painting a
+ * glyph requires neither a character search nor a clip.
+ * <p>Strings painted with <code>print(String, ...)</code> are rendered
+ * once into a bitmap of their own, and are subsequently painted with a
+ * single bitmap copy.  The rendered strings are discarded whenever the
+ * display scale or the font image changes.
+ * <p>A recorded frame may still refer to a discarded string, so it is
+ * not recycled until <code>recycleDiscarded()</code> is called once the
+ * frame is no longer referenced.
+ */
 public class BubbleFont {
   private char[] characters = {
     '!', '"', '#', '$', '%', '&', '\'', '(', ')', '*',
@@ -76,16 +96,177 @@ public class BubbleFont {
   public int SEPARATOR_WIDTH  = 1;
   public int SPACE_CHAR_WIDTH = 6;
 
+  private static final int CHAR_HEIGHT = 22;
+  private static final int MAX_CACHED_STRINGS = 32;
+
   private BmpWrap fontMap;
   private Rect clipRect;
 
+  /*
+   * The glyph index of each character code, or -1 if the font has no
+   * glyph for the character.
+   */
+  private final int[] charIndex = new int[128];
+
+  /*
+   * The source rectangle of each glyph within the font image, and the
+   * font image region and display scale they were computed for.
+   */
+  private final Rect[] glyphs;
+  private final RectF  glyphDest = new RectF();
+  private Rect         glyphRegion;
+  private double       glyphScale;
+
+  /*
+   * The rendered strings, least recently used first, and the font image
+   * and display scale they were rendered with.
+   */
+  private final LinkedHashMap<String, Bitmap> strings =
+    new LinkedHashMap<String, Bitmap>(MAX_CACHED_STRINGS, 0.75f, true);
+  private Bitmap stringsSource;
+  private double stringsScale;
+
+  /*
+   * The rendered strings that were discarded, but may still be referred
+   * to by a recorded frame.
+   */
+  private final ArrayList<Bitmap> discarded = new ArrayList<Bitmap>();
+
   public BubbleFont(BmpWrap fontMap) {
     this.fontMap = fontMap;
     clipRect     = new Rect();
+    glyphs       = new Rect[characters.length];
+    for (int i = 0; i < glyphs.length; i++) {
+      glyphs[i] = new Rect();
+    }
+    for (int i = 0; i < charIndex.length; i++) {
+      charIndex[i] = -1;
+    }
+    for (int i = 0; i < characters.length; i++) {
+      charIndex[characters[i]] = i;
+    }
   }
 
+  /**
+   * Compute the source rectangle of each glyph within the region of the
+   * font image in the sprite atlas, if the region or display scale
+   * changed since they were last computed.
+   * @return <code>true</code> if the font image is located in the
+   * sprite atlas, and the glyphs may be copied from it.
+   */
+  private boolean checkGlyphs(double scale) {
+    Rect region = fontMap.region;
+    if (region == null) {
+      glyphRegion = null;
+      return false;
+    }
+    if ((region != glyphRegion) || (scale != glyphScale)) {
+      int bottom = Math.min(region.bottom,
+                            region.top + (int)(CHAR_HEIGHT * scale));
+      for (int i = 0; i < glyphs.length; i++) {
+        glyphs[i].set(region.left + (int)(position[i] * scale),
+                      region.top,
+                      region.left + (int)(position[i+1] * scale),
+                      bottom);
+      }
+      glyphRegion = region;
+      glyphScale  = scale;
+    }
+    return true;
+  }
+
+  private final int getCharIndex(char c) {
+    if (c < charIndex.length) {
+      return charIndex[c];
+    }
+
+    return -1;
+  }
+
+  /**
+   * Obtain the width of a string, excluding any display scaling.
+   * @param s - the string to measure.
+   * @return the width of the string.
+   */
+  public final int getStringWidth(String s) {
+    int width = 0;
+    int len   = s.length();
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c == ' ') {
+        width += SPACE_CHAR_WIDTH + SEPARATOR_WIDTH;
+      }
+      else {
+        int index = getCharIndex(c);
+        if (index != -1) {
+          width += position[index+1] - position[index] + SEPARATOR_WIDTH;
+        }
+      }
+    }
+    return width;
+  }
+
+  /**
+   * Obtain the rendered bitmap of a string, rendering it if it is not
+   * cached.
+   * @return the rendered string, or <code>null</code> if it could not be
+   * rendered.
+   */
+  private Bitmap getString(String s, double scale) {
+    if ((stringsSource != fontMap.bmp) || (stringsScale != scale)) {
+      discarded.addAll(strings.values());
+      strings.clear();
+      stringsSource = fontMap.bmp;
+      stringsScale  = scale;
+    }
+
+    Bitmap bitmap = strings.get(s);
+    if ((bitmap != null) || !checkGlyphs(scale)) {
+      return bitmap;
+    }
+
+    int width  = (int)Math.ceil(getStringWidth(s) * scale);
+    int height = glyphs[0].height();
+    if ((width <= 0) || (height <= 0)) {
+      return null;
+    }
+    try {
+      bitmap = BitmapBudget.createBitmap(BitmapBudget.CATEGORY_PRERENDERED,
+                                         width, height,
+                                         Bitmap.Config.ARGB_8888);
+    } catch (OutOfMemoryError oome) {
+      return null;
+    }
+    Canvas canvas = new Canvas(bitmap);
+    int x = 0;
+    int len = s.length();
+    for (int i = 0; i < len; i++) {
+      x += paintChar(s.charAt(i), x, 0, canvas, scale, 0, 0);
+    }
+
+    if (strings.size() >= MAX_CACHED_STRINGS) {
+      Iterator<Map.Entry<String, Bitmap>> eldest =
+        strings.entrySet().iterator();
+      discarded.add(eldest.next().getValue());
+      eldest.remove();
+    }
+    strings.put(s, bitmap);
+    return bitmap;
+  }
+
+  /**
+   * Paint a string.  The string is rendered into a bitmap the first
+   * time it is painted, so this should be used for text that is painted
+   * repeatedly.
+   */
   public final void print(String s, int x, int y, Canvas canvas,
                          double scale, int dx, int dy) {
+    Bitmap bitmap = getString(s, scale);
+    if (bitmap != null) {
+      canvas.drawBitmap(bitmap, (float)(x * scale + dx),
+                        (float)(y * scale + dy), null);
+      return;
+    }
     int len = s.length();
     for (int i = 0; i < len; i++) {
       char c = s.charAt(i);
@@ -93,6 +274,17 @@ public class BubbleFont {
     }
   }
 
+  /**
+   * Paint the characters of a buffer glyph by glyph.  This is intended
+   * for text that changes frequently, and is not cached.
+   */
+  public final void print(char[] s, int length, int x, int y, Canvas canvas,
+                          double scale, int dx, int dy) {
+    for (int i = 0; i < length; i++) {
+      x += paintChar(s[i], x, y, canvas, scale, dx, dy);
+    }
+  }
+
   public final int paintChar(char c, int x, int y, Canvas canvas,
                              double scale, int dx, int dy) {
     if (c == ' ') {
@@ -104,23 +296,47 @@ public class BubbleFont {
     }
     int imageWidth = position[index+1]-position[index];
 
-    clipRect.left   = x;
-    clipRect.right  = x + imageWidth;
-    clipRect.top    = y;
-    clipRect.bottom = y + 22;
-    Sprite.drawImageClipped(fontMap, x - position[index], y, clipRect,
-                            canvas, scale, dx, dy);
+    if (checkGlyphs(scale)) {
+      Rect glyph = glyphs[index];
+      float left = (float)(x * scale + dx);
+      float top  = (float)(y * scale + dy);
+      glyphDest.set(left, top, left + glyph.width(), top + glyph.height());
+      canvas.drawBitmap(fontMap.bmp, glyph, glyphDest, null);
+    }
+    else {
+      clipRect.left   = x;
+      clipRect.right  = x + imageWidth;
+      clipRect.top    = y;
+      clipRect.bottom = y + CHAR_HEIGHT;
+      Sprite.drawImageClipped(fontMap, x - position[index], y, clipRect,
+                              canvas, scale, dx, dy);
+    }
 
     return imageWidth + SEPARATOR_WIDTH;
   }
 
-  private final int getCharIndex(char c) {
-    for (int i=0 ; i<characters.length ; i++) {
-      if (characters[i] == c) {
-        return i;
-      }
-    }
+  /**
+   * Discard all the rendered strings.  No recorded frame may refer to
+   * them anymore.
+   */
+  public void recycle() {
+    discarded.addAll(strings.values());
+    strings.clear();
+    stringsSource = null;
+    recycleDiscarded();
+  }
 
-    return -1;
+  /**
+   * Recycle the rendered strings that were discarded since the last
+   * call.  This must only be called once no recorded frame refers to
+   * them, such as when the frame recording is cleared.
+   */
+  public void recycleDiscarded() {
+    int size = discarded.size();
+    for (int i = 0; i < size; i++) {
+      BitmapBudget.recycle(BitmapBudget.CATEGORY_PRERENDERED,
+                           discarded.get(i));
+    }
+    discarded.clear();
   }
 }
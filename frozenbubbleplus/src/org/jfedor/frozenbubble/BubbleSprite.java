@@ -183,6 +183,21 @@ public class BubbleSprite extends Sprite {
     bubbleManager.addBubble(bubbleFace);
   }
 
+  /**
+   * Advance the animation shown when this bubble became fixed.  This is
+   * called once per game loop iteration, so the animation runs in game
+   * time however many iterations are performed per painted frame.
+   */
+  void animate() {
+    if (fixedAnim != -1) {
+      fixedAnim++;
+
+      if (fixedAnim == 6) {
+        fixedAnim = -1;
+      }
+    }
+  }
+
   public void blink() {
     blink = true;
   }
@@ -201,6 +216,15 @@ public class BubbleSprite extends Sprite {
     return false;
   }
 
+  /**
+   * Clear the marks left on this bubble by the searches for the bubbles
+   * to pop and the bubbles left hanging.
+   */
+  void clearChecks() {
+    checkJump = false;
+    checkFall = false;
+  }
+
   boolean checkCollision(BubbleSprite sprite) {
     double value =
       (sprite.getSpriteArea().left - this.realX) *
@@ -366,6 +390,7 @@ public class BubbleSprite extends Sprite {
   public void fall() {
     if (fixed) {
       moveY = frozen.getRandom().nextDouble()* 5.;
+      fixedAnim = -1;
     }
 
     fixed = false;
@@ -439,6 +464,7 @@ public class BubbleSprite extends Sprite {
       moveX = -6. + frozen.getRandom().nextDouble() * 12.;
       moveY = -5. - frozen.getRandom().nextDouble() * 10.;
       fixed = false;
+      fixedAnim = -1;
     }
 
     moveY += FALL_SPEED;
@@ -481,6 +507,21 @@ public class BubbleSprite extends Sprite {
       realY = 44.+lastOpenPosition.y*28+frozen.getMoveDown();
       fixed = true;
 
+      /*
+       * Clear the marks left by the searches performed when the
+       * previous bubble became fixed.  They must not be left to be
+       * cleared by paint(), since the game may be played several times
+       * per painted frame, and the fixed bubbles are not necessarily
+       * repainted at all.
+       */
+      for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+        for (int j = 0; j < LevelManager.NUM_ROWS; j++) {
+          if (grid[i][j] != null) {
+            grid[i][j].clearChecks();
+          }
+        }
+      }
+
       Vector<Sprite> checkJump = new Vector<Sprite>();
       this.checkJump(checkJump, neighbors);
 
@@ -550,9 +591,25 @@ public class BubbleSprite extends Sprite {
     super.absoluteMove(new Point((int)realX, (int)realY));
   }
 
+  @Override
+  public void getPaintBounds(Rect bounds, double scale, int dx, int dy) {
+    Rect r = getSpriteArea();
+    getImageBounds(bubbleFace, r.left, r.top, bounds, scale, dx, dy);
+  }
+
+  @Override
+  public long getPaintState() {
+    long state = fixedAnim + 1;
+    if (blink && bubbleFace != frozenFace) {
+      state |= 0x100;
+    }
+    if (bubbleFace == frozenFace) {
+      state |= 0x200;
+    }
+    return state;
+  }
+
   public final void paint(Canvas c, double scale, int dx, int dy) {
-    checkJump = false;
-    checkFall = false;
     Point p = getSpritePosition();
 
     if (blink && bubbleFace != frozenFace) {
@@ -571,11 +628,6 @@ public class BubbleSprite extends Sprite {
 
     if (fixedAnim != -1) {
       drawImage(bubbleFixed[fixedAnim], p.x, p.y, c, scale, dx, dy);
-      fixedAnim++;
-
-      if (fixedAnim == 6) {
-        fixedAnim = -1;
-      }
     }
   }
 
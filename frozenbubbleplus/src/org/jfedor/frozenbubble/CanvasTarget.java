@@ -0,0 +1,116 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * This class paints onto an Android canvas, such as the canvas of the
+ * game surface.  Bitmaps copied to an area of a different size are
+ * filtered.
+ */
+public class CanvasTarget implements RenderTarget {
+  private Canvas      canvas;
+  private final Paint filter = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  /**
+   * Set the canvas to paint onto.
+   * @param canvas - the canvas, or <code>null</code> to release it.
+   */
+  public void setCanvas(Canvas canvas) {
+    this.canvas = canvas;
+  }
+
+  public void clipRect(float left, float top, float right, float bottom) {
+    canvas.clipRect(left, top, right, bottom);
+  }
+
+  public void drawBitmap(Bitmap bitmap, float left, float top) {
+    canvas.drawBitmap(bitmap, left, top, null);
+  }
+
+  public void drawBitmap(Bitmap bitmap, Rect src, RectF dst) {
+    int width  = (src != null) ? src.width()  : bitmap.getWidth();
+    int height = (src != null) ? src.height() : bitmap.getHeight();
+    if ((width == dst.width()) && (height == dst.height())) {
+      canvas.drawBitmap(bitmap, src, dst, null);
+    }
+    else {
+      canvas.drawBitmap(bitmap, src, dst, filter);
+    }
+  }
+
+  public void drawRGB(int r, int g, int b) {
+    canvas.drawRGB(r, g, b);
+  }
+
+  public void restore() {
+    canvas.restore();
+  }
+
+  public void rotate(float degrees) {
+    canvas.rotate(degrees);
+  }
+
+  public void save() {
+    canvas.save();
+  }
+
+  public void translate(float dx, float dy) {
+    canvas.translate(dx, dy);
+  }
+}
@@ -53,6 +53,7 @@
 package org.jfedor.frozenbubble;
 
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.os.Bundle;
 
 public class Compressor {
@@ -64,13 +65,44 @@ public class Compressor {
   private int scroll;
   private int scrollMax;
   private int steps;
+  private int paintedSteps;
+  private Rect paintBounds;
 
   public Compressor(BmpWrap compressorHead, BmpWrap compressor) {
     this.compressorHead = compressorHead;
     this.compressor     = compressor;
+    paintedSteps        = -1;
+    paintBounds         = new Rect();
     init();
   }
 
+  /**
+   * Add the surface area covered by the compressor to the supplied dirty
+   * rectangle if the compressor was lowered since the last time its dirty
+   * area was collected.
+   * @param dirty - the dirty rectangle, in surface coordinates.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset.
+   * @param dy - the vertical display offset.
+   */
+  public void addDirtyArea(Rect dirty, double scale, int dx, int dy) {
+    if (steps != paintedSteps) {
+      int maxSteps = Math.max(steps, paintedSteps);
+      Sprite.getAreaBounds(160, -7, 160 + 321, -7 + 28 * maxSteps + 51,
+                           paintBounds, scale, dx, dy);
+      dirty.union(paintBounds);
+      paintedSteps = steps;
+    }
+  }
+
+  /**
+   * Force the compressor area to be repainted the next time the dirty
+   * area is collected.
+   */
+  public void invalidate() {
+    paintedSteps = -1;
+  }
+
   public boolean checkScroll() {
     if (scroll++ > scrollMax) {
       scroll = 0;
@@ -105,16 +137,10 @@ public class Compressor {
 
   public void paint(Canvas c, double scale, int dx, int dy) {
     for (int i = 0; i < steps; i++) {
-      c.drawBitmap(compressor.bmp,
-                   (float)(235 * scale + dx),
-                   (float)((28 * i - 4) * scale + dy), null);
-      c.drawBitmap(compressor.bmp,
-                   (float)(391 * scale + dx),
-                   (float)((28 * i - 4) * scale + dy), null);
+      Sprite.drawImage(compressor, 235, 28 * i - 4, c, scale, dx, dy);
+      Sprite.drawImage(compressor, 391, 28 * i - 4, c, scale, dx, dy);
     }
-    c.drawBitmap(compressorHead.bmp,
-                 (float)(160 * scale + dx),
-                 (float)((-7 + 28 * steps) * scale + dy), null);
+    Sprite.drawImage(compressorHead, 160, -7 + 28 * steps, c, scale, dx, dy);
   }
 
   public void restoreState(Bundle map, int id) {
@@ -0,0 +1,512 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * This class measures how long each phase of a game loop iteration
+ * takes, in order to find the source of dropped or late frames.
+ * <p>The timings of each phase are accumulated in a fixed size
+ * histogram, so recording a timing never allocates memory.  The
+ * histograms accumulated since the last reset may be saved as text via
+ * <code>writeTo()</code>.  The on-screen overlay painted via
+ * <code>paint()</code> summarizes a second set of histograms that only
+ * covers the latest summary interval, so that it shows recent spikes.
+ * <p>This class is not thread safe, and must only be used by the game
+ * thread.
+ */
+public class FrameStats {
+  /*
+   * Game loop phases.  The frame phase is the interval between the
+   * start of successive game loop iterations, thus it includes the
+   * frame delay.  The draw phase records the frame into a snapshot, and
+   * the render phase paints the snapshot onto the surface.  The touch
+   * phase is not part of the game loop; it is the latency from a screen
+   * touch until the frame showing the bubble launched by the touch is
+   * posted.
+   */
+  public static final int PHASE_FRAME   = 0;
+  public static final int PHASE_LOCK    = 1;
+  public static final int PHASE_NETWORK = 2;
+  public static final int PHASE_UPDATE  = 3;
+  public static final int PHASE_PLAY1   = 4;
+  public static final int PHASE_PLAY2   = 5;
+  public static final int PHASE_DRAW    = 6;
+  public static final int PHASE_RENDER  = 7;
+  public static final int PHASE_POST    = 8;
+  public static final int PHASE_TOUCH   = 9;
+  public static final int NUM_PHASES    = 10;
+
+  public static final String[] PHASE_NAMES = {
+    "frame", "lock", "network", "update", "play1", "play2", "draw", "render",
+    "post", "touch"
+  };
+
+  /*
+   * Each histogram bucket spans 250 microseconds, so the histograms
+   * cover 0 to 100 milliseconds.  Longer timings are counted in the
+   * last bucket.
+   */
+  public static final int BUCKET_MICROS = 250;
+  public static final int NUM_BUCKETS   = 401;
+
+  /*
+   * The overlay summary is refreshed once per second, from the timings
+   * recorded during that second.
+   */
+  private static final long SUMMARY_NANOS = 1000000000L;
+
+  /*
+   * The most recent frame pacing decisions are kept, up to this number.
+   */
+  public static final int MAX_PACING_EVENTS = 32;
+
+  private final int[][] buckets   = new int[NUM_PHASES][NUM_BUCKETS];
+  private final long[]  maxNanos  = new long[NUM_PHASES];
+  private final long[]  startTime = new long[NUM_PHASES];
+  private final long[]  sumNanos  = new long[NUM_PHASES];
+  private final int[]   samples   = new int[NUM_PHASES];
+
+  /*
+   * The timings recorded since the overlay summary was last refreshed.
+   */
+  private final int[][] intervalBuckets = new int[NUM_PHASES][NUM_BUCKETS];
+  private final int[]   intervalSamples = new int[NUM_PHASES];
+
+  private final int[]   pacingFrame  = new int[MAX_PACING_EVENTS];
+  private final int[]   pacingTicks  = new int[MAX_PACING_EVENTS];
+  private final long[]  pacingLoad   = new long[MAX_PACING_EVENTS];
+  private int           pacingEvents;
+
+  private int  framesSinceSummary;
+  private long firstFrameNanos = -1;
+  private long lastFrameStart;
+  private long summaryStart;
+
+  /*
+   * The overlay text is built in place, so painting the overlay does not
+   * allocate memory.
+   */
+  private final char[] line1 = new char[40];
+  private final char[] line2 = new char[40];
+  private final char[] line3 = new char[40];
+  private int          line1Length;
+  private int          line2Length;
+  private int          line3Length;
+  private boolean      summaryChanged;
+  private final Rect   summaryBounds = new Rect();
+
+  public FrameStats() {
+    reset();
+  }
+
+  /**
+   * Add the overlay area to the supplied dirty rectangle if the summary
+   * changed since the last time the dirty area was collected.
+   * @param dirty - the dirty rectangle, in surface coordinates.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset.
+   * @param dy - the vertical display offset.
+   */
+  public void addDirtyArea(Rect dirty, double scale, int dx, int dy) {
+    if (summaryChanged) {
+      Sprite.getAreaBounds(0, 0, 4 + line1.length * 22, 70,
+                           summaryBounds, scale, dx, dy);
+      dirty.union(summaryBounds);
+      summaryChanged = false;
+    }
+  }
+
+  /**
+   * Mark the start of a game loop phase.
+   * @param phase - the phase being started.
+   */
+  public void begin(int phase) {
+    startTime[phase] = System.nanoTime();
+  }
+
+  /**
+   * Mark the end of a game loop phase, and add its duration to the
+   * phase histogram.
+   * @param phase - the phase being ended.
+   */
+  public void end(int phase) {
+    record(phase, System.nanoTime() - startTime[phase]);
+  }
+
+  /**
+   * Mark the start of a game loop iteration, and add the interval since
+   * the start of the previous iteration to the frame histogram.
+   * <p>The overlay summary is refreshed once per second.
+   */
+  public void frame() {
+    long now = System.nanoTime();
+
+    if (lastFrameStart != 0) {
+      record(PHASE_FRAME, now - lastFrameStart);
+    }
+    else {
+      summaryStart = now;
+    }
+    lastFrameStart = now;
+    framesSinceSummary++;
+
+    if ((now - summaryStart) >= SUMMARY_NANOS) {
+      updateSummary(now);
+    }
+  }
+
+  /**
+   * Mark the game loop as idle, so that the interval until the start of
+   * the next iteration is not added to the frame histogram.
+   */
+  public void idle() {
+    lastFrameStart     = 0;
+    framesSinceSummary = 0;
+  }
+
+  /**
+   * Obtain the timing below which the supplied percentage of the phase
+   * timings fall.
+   * @param phase - the phase to query.
+   * @param percent - the percentile to obtain, from 0 to 100.
+   * @return the upper bound of the histogram bucket containing the
+   * percentile, in microseconds, or 0 if the phase has no samples.
+   */
+  public int getPercentile(int phase, int percent) {
+    return getPercentile(buckets[phase], samples[phase], percent);
+  }
+
+  /**
+   * Obtain the timing below which the supplied percentage of the
+   * timings in a histogram fall.
+   * @param histogram - the histogram to query.
+   * @param count - the number of timings in the histogram.
+   * @param percent - the percentile to obtain, from 0 to 100.
+   * @return the upper bound of the histogram bucket containing the
+   * percentile, in microseconds, or 0 if the histogram is empty.
+   */
+  private static int getPercentile(int[] histogram, int count,
+                                   int percent) {
+    if (count == 0) {
+      return 0;
+    }
+
+    /*
+     * Rank of the percentile sample, rounded up.
+     */
+    long rank = (((long) count * percent) + 99) / 100;
+    if (rank < 1) {
+      rank = 1;
+    }
+
+    long total = 0;
+    for (int index = 0; index < NUM_BUCKETS; index++) {
+      total += histogram[index];
+      if (total >= rank) {
+        return (index + 1) * BUCKET_MICROS;
+      }
+    }
+    return NUM_BUCKETS * BUCKET_MICROS;
+  }
+
+  private int getIntervalPercentile(int phase, int percent) {
+    return getPercentile(intervalBuckets[phase], intervalSamples[phase],
+                         percent);
+  }
+
+  /**
+   * Obtain the phase within a game loop iteration with the longest
+   * 99th percentile timing.
+   * @return the slowest phase, excluding the frame interval and the
+   * touch latency.
+   */
+  public int getSlowestPhase() {
+    return getSlowestPhase(buckets, samples);
+  }
+
+  private static int getSlowestPhase(int[][] histograms, int[] counts) {
+    int slowest = PHASE_LOCK;
+    int slowestTime = -1;
+
+    for (int phase = PHASE_LOCK; phase <= PHASE_POST; phase++) {
+      int time = getPercentile(histograms[phase], counts[phase], 99);
+      if (time > slowestTime) {
+        slowest = phase;
+        slowestTime = time;
+      }
+    }
+    return slowest;
+  }
+
+  /**
+   * Paint the overlay summary, which shows the frame rate, the median
+   * and 99th percentile frame intervals, the slowest phase, and the
+   * median and 99th percentile touch latencies.
+   * @param font - the font to paint the summary with.
+   * @param canvas - the canvas to paint on.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset.
+   * @param dy - the vertical display offset.
+   */
+  public void paint(BubbleFont font, Canvas canvas, double scale, int dx,
+                    int dy) {
+    font.print(line1, line1Length, 4, 4, canvas, scale, dx, dy);
+    font.print(line2, line2Length, 4, 26, canvas, scale, dx, dy);
+    font.print(line3, line3Length, 4, 48, canvas, scale, dx, dy);
+  }
+
+  /**
+   * Add a timing to a phase histogram.
+   * @param phase - the phase that was timed.
+   * @param nanos - the duration of the phase, in nanoseconds.
+   */
+  public void record(int phase, long nanos) {
+    int index = (int) ((nanos / 1000) / BUCKET_MICROS);
+
+    if (index >= NUM_BUCKETS) {
+      index = NUM_BUCKETS - 1;
+    }
+    else if (index < 0) {
+      index = 0;
+    }
+
+    buckets[phase][index]++;
+    samples[phase]++;
+    intervalBuckets[phase][index]++;
+    intervalSamples[phase]++;
+    sumNanos[phase] += nanos;
+    if (nanos > maxNanos[phase]) {
+      maxNanos[phase] = nanos;
+    }
+  }
+
+  /**
+   * Record the time to first frame, which is the interval from the
+   * creation of the game until the first frame showing the game is
+   * posted.  Unlike the phase timings, it is not discarded by
+   * <code>reset()</code>.
+   * @param nanos - the time to first frame, in nanoseconds.
+   */
+  public void recordFirstFrame(long nanos) {
+    firstFrameNanos = nanos;
+  }
+
+  /**
+   * Record a frame pacing decision.  The oldest decision is discarded
+   * when the maximum number of decisions is reached.
+   * @param ticks - the new number of game updates per rendered frame.
+   * @param busyNanos - the mean busy time per frame that caused the
+   * decision, in nanoseconds.
+   */
+  public void recordPacing(int ticks, long busyNanos) {
+    int index = pacingEvents % MAX_PACING_EVENTS;
+    pacingFrame[index] = samples[PHASE_FRAME];
+    pacingTicks[index] = ticks;
+    pacingLoad[index]  = busyNanos;
+    pacingEvents++;
+  }
+
+  /**
+   * Discard all the accumulated timings.
+   */
+  public void reset() {
+    for (int phase = 0; phase < NUM_PHASES; phase++) {
+      for (int index = 0; index < NUM_BUCKETS; index++) {
+        buckets[phase][index] = 0;
+      }
+      maxNanos[phase] = 0;
+      sumNanos[phase] = 0;
+      samples[phase]  = 0;
+    }
+    resetInterval();
+    pacingEvents       = 0;
+    framesSinceSummary = 0;
+    lastFrameStart     = 0;
+    summaryStart       = 0;
+    line1Length        = 0;
+    line2Length        = 0;
+    line3Length        = 0;
+    summaryChanged     = true;
+  }
+
+  /**
+   * Discard the timings recorded since the overlay summary was last
+   * refreshed.
+   */
+  private void resetInterval() {
+    for (int phase = 0; phase < NUM_PHASES; phase++) {
+      for (int index = 0; index < NUM_BUCKETS; index++) {
+        intervalBuckets[phase][index] = 0;
+      }
+      intervalSamples[phase] = 0;
+    }
+  }
+
+  /**
+   * Refresh the overlay summary from the timings recorded since it was
+   * last refreshed.  Touches are infrequent, so the touch latencies are
+   * left as they are if there was no touch during the interval.
+   */
+  private void updateSummary(long now) {
+    int fps = (int) ((framesSinceSummary * SUMMARY_NANOS) /
+                     (now - summaryStart));
+    int slowest = getSlowestPhase(intervalBuckets, intervalSamples);
+    int pos;
+
+    pos = putString(line1, 0, "fps ");
+    pos = putInt(line1, pos, fps);
+    pos = putString(line1, pos, "  p50 ");
+    pos = putMillis(line1, pos, getIntervalPercentile(PHASE_FRAME, 50));
+    pos = putString(line1, pos, "  p99 ");
+    pos = putMillis(line1, pos, getIntervalPercentile(PHASE_FRAME, 99));
+    line1Length = pos;
+
+    pos = putString(line2, 0, "slowest ");
+    pos = putString(line2, pos, PHASE_NAMES[slowest]);
+    pos = putString(line2, pos, " p99 ");
+    pos = putMillis(line2, pos, getIntervalPercentile(slowest, 99));
+    line2Length = pos;
+
+    if (intervalSamples[PHASE_TOUCH] > 0) {
+      pos = putString(line3, 0, "touch p50 ");
+      pos = putMillis(line3, pos, getIntervalPercentile(PHASE_TOUCH, 50));
+      pos = putString(line3, pos, "  p99 ");
+      pos = putMillis(line3, pos, getIntervalPercentile(PHASE_TOUCH, 99));
+      line3Length = pos;
+    }
+    summaryChanged = true;
+
+    resetInterval();
+    framesSinceSummary = 0;
+    summaryStart       = now;
+  }
+
+  private static int putInt(char[] buffer, int pos, int value) {
+    if (value >= 10) {
+      pos = putInt(buffer, pos, value / 10);
+    }
+    buffer[pos++] = Character.forDigit(value % 10, 10);
+    return pos;
+  }
+
+  /**
+   * Write a time in microseconds as milliseconds with one decimal.
+   */
+  private static int putMillis(char[] buffer, int pos, int micros) {
+    pos = putInt(buffer, pos, micros / 1000);
+    buffer[pos++] = '.';
+    buffer[pos++] = Character.forDigit((micros % 1000) / 100, 10);
+    return putString(buffer, pos, "ms");
+  }
+
+  private static int putString(char[] buffer, int pos, String s) {
+    int length = s.length();
+    s.getChars(0, length, buffer, pos);
+    return pos + length;
+  }
+
+  /**
+   * Write the accumulated timings as text.  A summary line is written
+   * for each phase, followed by the non-empty histogram buckets of each
+   * phase that has been timed.  The time to first frame, if recorded,
+   * is written first, and the frame pacing decisions last.
+   * @param out - the destination of the timings.
+   * @throws IOException if an error occurs writing the timings.
+   */
+  public void writeTo(Writer out) throws IOException {
+    if (firstFrameNanos >= 0) {
+      out.write("first_frame_us\t" + (firstFrameNanos / 1000) + "\n\n");
+    }
+    out.write("phase\tsamples\tmean_us\tp50_us\tp90_us\tp99_us\tmax_us\n");
+    for (int phase = 0; phase < NUM_PHASES; phase++) {
+      long mean = 0;
+      if (samples[phase] > 0) {
+        mean = (sumNanos[phase] / samples[phase]) / 1000;
+      }
+      out.write(PHASE_NAMES[phase] + "\t" + samples[phase] + "\t" + mean +
+                "\t" + getPercentile(phase, 50) +
+                "\t" + getPercentile(phase, 90) +
+                "\t" + getPercentile(phase, 99) +
+                "\t" + (maxNanos[phase] / 1000) + "\n");
+    }
+
+    for (int phase = 0; phase < NUM_PHASES; phase++) {
+      if (samples[phase] == 0) {
+        continue;
+      }
+      out.write("\n" + PHASE_NAMES[phase] + "\nbucket_us\tcount\n");
+      for (int index = 0; index < NUM_BUCKETS; index++) {
+        if (buckets[phase][index] != 0) {
+          out.write((index * BUCKET_MICROS) + "\t" + buckets[phase][index] +
+                    "\n");
+        }
+      }
+    }
+
+    if (pacingEvents > 0) {
+      out.write("\npacing\nframe\tticks_per_frame\tbusy_us\n");
+      int first = Math.max(0, pacingEvents - MAX_PACING_EVENTS);
+      for (int event = first; event < pacingEvents; event++) {
+        int index = event % MAX_PACING_EVENTS;
+        out.write(pacingFrame[index] + "\t" + pacingTicks[index] + "\t" +
+                  (pacingLoad[index] / 1000) + "\n");
+      }
+    }
+  }
+}
@@ -88,6 +88,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
 import android.hardware.SensorManager;
 import android.media.AudioManager;
 import android.net.Uri;
@@ -150,6 +151,9 @@ public class FrozenBubble extends Activity
   public final static int MENU_ABOUT          = 9;
   public final static int MENU_EDITOR         = 10;
   public final static int MENU_TARGET_MODE    = 11;
+  public final static int MENU_STATS_ON       = 12;
+  public final static int MENU_STATS_OFF      = 13;
+  public final static int MENU_REPLAY         = 14;
 
   public final static int AIM_TO_SHOOT    = 0;
   public final static int POINT_TO_SHOOT  = 1;
@@ -257,6 +261,9 @@ public class FrozenBubble extends Activity
     menu.add(0, MENU_ABOUT,          0, R.string.menu_about);
     menu.add(0, MENU_NEW_GAME,       0, R.string.menu_new_game);
     menu.add(0, MENU_EDITOR,         0, R.string.menu_editor);
+    menu.add(0, MENU_STATS_ON,       0, R.string.menu_stats_on);
+    menu.add(0, MENU_STATS_OFF,      0, R.string.menu_stats_off);
+    menu.add(0, MENU_REPLAY,         0, R.string.menu_replay);
     return true;
   }
 
@@ -290,6 +297,16 @@ public class FrozenBubble extends Activity
     return handled || super.onKeyDown(keyCode, event);
   }
 
+  /* (non-Javadoc)
+   * @see android.app.Activity#onLowMemory()
+   */
+  @Override
+  public void onLowMemory() {
+    super.onLowMemory();
+    BitmapCache.trimMemory(BitmapCache.TRIM_MEMORY_COMPLETE);
+    BitmapBudget.trimMemory(BitmapCache.TRIM_MEMORY_COMPLETE);
+  }
+
   /* (non-Javadoc)
    * @see android.app.Activity#onNewIntent(android.content.Intent)
    */
@@ -360,6 +377,18 @@ public class FrozenBubble extends Activity
       case MENU_EDITOR:
         startEditor();
         return true;
+      case MENU_STATS_ON:
+        setFrameStats(true);
+        return true;
+      case MENU_STATS_OFF:
+        setFrameStats(false);
+        return true;
+      case MENU_REPLAY:
+        if ((mGameThread != null) && !mGameThread.playSavedReplay()) {
+          Toast.makeText(getApplicationContext(),
+                         R.string.replay_failed, Toast.LENGTH_SHORT).show();
+        }
+        return true;
     }
 
     if (prefsUpdated) {
@@ -399,6 +428,10 @@ public class FrozenBubble extends Activity
     menu.findItem(MENU_TARGET_MODE   ).setVisible(true);
     menu.findItem(MENU_DONT_RUSH_ME  ).setVisible(!prefs.dontRushMe);
     menu.findItem(MENU_RUSH_ME       ).setVisible(prefs.dontRushMe);
+    menu.findItem(MENU_STATS_ON      ).setVisible(isDebugBuild() &&
+                                                  !getFrameStats());
+    menu.findItem(MENU_STATS_OFF     ).setVisible(getFrameStats());
+    menu.findItem(MENU_REPLAY        ).setVisible(isDebugBuild());
     return true;
   }
 
@@ -421,6 +454,18 @@ public class FrozenBubble extends Activity
       mGameThread.saveState(outState);
   }
 
+  /**
+   * Release the cached game images not in use when the system asks the
+   * application to trim its memory usage.  Activity.onTrimMemory() is
+   * only available starting at API 14, so this method does not use the
+   * Override annotation, and is simply never called on older versions.
+   * @param level - the trim level.
+   */
+  public void onTrimMemory(int level) {
+    BitmapCache.trimMemory(level);
+    BitmapBudget.trimMemory(level);
+  }
+
   @Override
   public void onWindowFocusChanged (boolean hasFocus) {
     super.onWindowFocusChanged(hasFocus);
@@ -950,6 +995,46 @@ public class FrozenBubble extends Activity
     }
   }
 
+  /**
+   * Check whether the frame timing overlay is enabled.  The overlay is a
+   * developer diagnostic, so it is only available in debug builds.
+   * @return <code>true</code> if the overlay is enabled.
+   */
+  private boolean getFrameStats() {
+    if (!isDebugBuild()) {
+      return false;
+    }
+    SharedPreferences sp = getSharedPreferences(PREFS_NAME,
+                                                Context.MODE_PRIVATE);
+    return sp.getBoolean("showFrameStats", false);
+  }
+
+  /**
+   * Check whether the application was built for debugging.  Developer
+   * diagnostics are only offered in debug builds.
+   * @return <code>true</code> if this is a debug build.
+   */
+  private boolean isDebugBuild() {
+    return (getApplicationInfo().flags &
+            ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+  }
+
+  /**
+   * Enable or disable the frame timing overlay, and save the setting.
+   * @param show - <code>true</code> to show the overlay.
+   */
+  private void setFrameStats(boolean show) {
+    SharedPreferences sp = getSharedPreferences(PREFS_NAME,
+                                                Context.MODE_PRIVATE);
+    SharedPreferences.Editor editor = sp.edit();
+    editor.putBoolean("showFrameStats", show);
+    editor.commit();
+
+    if (mGameThread != null) {
+      mGameThread.setShowFrameStats(show);
+    }
+  }
+
   private void setFullscreen() {
     final int flagFs   = WindowManager.LayoutParams.FLAG_FULLSCREEN;
     final int flagNoFs = WindowManager.LayoutParams.FLAG_FORCE_NOT_FULLSCREEN;
@@ -1100,6 +1185,9 @@ public class FrozenBubble extends Activity
     mGameThread = mGameView.getThread();
     mGameView.requestFocus();
     setFullscreen();
+    if (mGameThread != null) {
+      mGameThread.setShowFrameStats(getFrameStats());
+    }
     playMusic(false);
   }
 
@@ -1174,6 +1262,9 @@ public class FrozenBubble extends Activity
       mGameView.requestFocus();
     }
     setFullscreen();
+    if (mGameThread != null) {
+      mGameThread.setShowFrameStats(getFrameStats());
+    }
     playMusic(false);
   }
 
@@ -67,6 +67,7 @@ import android.util.Log;
 import com.efortin.frozenbubble.CRC16;
 import com.efortin.frozenbubble.HighscoreManager;
 import com.efortin.frozenbubble.NetworkManager;
+import com.efortin.frozenbubble.NetworkManager.PlayerAction;
 import com.efortin.frozenbubble.VirtualInput;
 
 public class FrozenGame extends GameScreen {
@@ -95,6 +96,7 @@ public class FrozenGame extends GameScreen {
   BmpWrap[] frozenBubbles;
   BmpWrap[] targetedBubbles;
   Random random;
+  long   randomSeed;
 
   LaunchBubbleSprite launchBubble;
   double launchBubblePosition;
@@ -111,6 +113,7 @@ public class FrozenGame extends GameScreen {
   MalusBar         malusBar;
   HighscoreManager highscoreManager;
   NetworkManager   networkManager;
+  InputLog         inputLog;
 
   Vector<Sprite> falling;
   Vector<Sprite> goingUp;
@@ -118,6 +121,7 @@ public class FrozenGame extends GameScreen {
 
   BubbleSprite[][] bubblePlay;
   BubbleSprite[]   scrolling;
+  StaticLayer      staticLayer;
 
   BmpWrap gameWon, gameLost;
 
@@ -172,7 +176,47 @@ public class FrozenGame extends GameScreen {
                     HighscoreManager highscoreManager_arg,
                     NetworkManager networkManager_arg,
                     VirtualInput input_arg) {
-    random               = new Random(System.currentTimeMillis());
+    this(background_arg, bubbles_arg, bubblesBlind_arg, frozenBubbles_arg,
+         targetedBubbles_arg, bubbleBlink_arg, gameWon_arg, gameLost_arg,
+         gamePaused_arg, hurry_arg, pauseButton_arg, playButton_arg,
+         penguins_arg, compressorHead_arg, compressor_arg, malusBar_arg,
+         launcher_arg, soundManager_arg, levelManager_arg,
+         highscoreManager_arg, networkManager_arg, input_arg,
+         System.currentTimeMillis());
+  }
+
+  /**
+   * Game constructor that allows the random number generator seed to be
+   * specified, so that a recorded game may be replayed exactly.
+   * @param seed_arg - the seed used to generate the launch bubble
+   * colors, attack bubble lanes and penguin animations.
+   * @see InputLog
+   */
+  public FrozenGame(BmpWrap background_arg,
+                    BmpWrap[] bubbles_arg,
+                    BmpWrap[] bubblesBlind_arg,
+                    BmpWrap[] frozenBubbles_arg,
+                    BmpWrap[] targetedBubbles_arg,
+                    BmpWrap bubbleBlink_arg,
+                    BmpWrap gameWon_arg,
+                    BmpWrap gameLost_arg,
+                    BmpWrap gamePaused_arg,
+                    BmpWrap hurry_arg,
+                    BmpWrap pauseButton_arg,
+                    BmpWrap playButton_arg,
+                    BmpWrap penguins_arg,
+                    BmpWrap compressorHead_arg,
+                    BmpWrap compressor_arg,
+                    MalusBar malusBar_arg,
+                    Drawable launcher_arg,
+                    SoundManager soundManager_arg,
+                    LevelManager levelManager_arg,
+                    HighscoreManager highscoreManager_arg,
+                    NetworkManager networkManager_arg,
+                    VirtualInput input_arg,
+                    long seed_arg) {
+    randomSeed           = seed_arg;
+    random               = new Random(seed_arg);
     launcher             = launcher_arg;
     penguins             = penguins_arg;
     background           = background_arg;
@@ -327,6 +371,13 @@ public class FrozenGame extends GameScreen {
     sendToOpponent += attackBubbles;
   }
 
+  @Override
+  public void addDirtyArea(Rect dirty, double scale, int dx, int dy) {
+    updateNextBubbleImage();
+    super.addDirtyArea(dirty, scale, dx, dy);
+    compressor.addDirtyArea(dirty, scale, dx, dy);
+  }
+
   public void addFallingBubble(BubbleSprite sprite) {
     if (malusBar != null)
       malusBar.releaseTime = 0;
@@ -362,6 +413,42 @@ public class FrozenGame extends GameScreen {
     }
   }
 
+  /**
+   * Apply the game state portion of a remote player action: the
+   * launcher bubble colors, the aim position, a compressor lower
+   * request, and the attack bar contents.  The bubble launch and swap
+   * requests are player inputs, which are left to the caller.
+   * @param action - the remote player action.
+   */
+  public void applyAction(PlayerAction action) {
+    if ((action.launchBubbleColor  > -1) && (action.launchBubbleColor  < 8) &&
+        (action.nextBubbleColor    > -1) && (action.nextBubbleColor    < 8) &&
+        (action.newNextBubbleColor > -1) && (action.newNextBubbleColor < 8)) {
+      setLaunchBubbleColors(action.launchBubbleColor,
+                            action.nextBubbleColor,
+                            action.newNextBubbleColor);
+    }
+
+    setPosition(action.aimPosition);
+
+    /*
+     * Record the action after the aim position, which is recorded by
+     * setPosition().
+     */
+    if (inputLog != null) {
+      inputLog.logAction(action);
+    }
+
+    if (action.compress) {
+      lowerCompressor(true);
+    }
+
+    if ((action.attackBarBubbles > -1) && (malusBar != null)) {
+      malusBar.setAttackBubbles(action.attackBarBubbles,
+                                action.attackBubbles);
+    }
+  }
+
   private void blinkLine(int number) {
     int move = number%2;
     int column = (number+1) >> 1;
@@ -557,6 +644,10 @@ public class FrozenGame extends GameScreen {
     return random;
   }
 
+  public long getRandomSeed() {
+    return randomSeed;
+  }
+
   public int getRowOffset() {
     return levelManager.getRowOffset();
   }
@@ -585,6 +676,12 @@ public class FrozenGame extends GameScreen {
     frozenify  = true;
   }
 
+  @Override
+  public void invalidate() {
+    super.invalidate();
+    compressor.invalidate();
+  }
+
   /**
    * Lower the bubbles in play and drop the compressor a step.
    * @param playSound - <code>true</code> to play the compression sound.
@@ -669,14 +766,48 @@ public class FrozenGame extends GameScreen {
   }
 
   public void paint(Canvas c, double scale, int dx, int dy) {
-    if (FrozenBubble.getMode() == FrozenBubble.GAME_NORMAL) {
-      nextBubble.changeImage(bubbles[nextColor]);
+    updateNextBubbleImage();
+    super.paint(c, scale, dx, dy);
+    compressor.paint(c, scale, dx, dy);
+  }
+
+  /**
+   * Paint the game using the static layer, which caches the background
+   * behind the bubble grid, the fixed bubbles and the compressor.  The
+   * layer is rebuilt only when the grid changes, so usually only the
+   * moving bubbles and the interface sprites are drawn individually.
+   * @param c - the canvas to paint on.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset of the game field.
+   * @param dy - the vertical display offset of the game field.
+   * @param bgdx - the horizontal surface position of the background.
+   * @param bgdy - the vertical surface position of the background.
+   */
+  public void paint(Canvas c, double scale, int dx, int dy,
+                    int bgdx, int bgdy) {
+    if (staticLayer == null) {
+      staticLayer = new StaticLayer(new Rect(160, 0, 481, 430),
+                                    LevelManager.NUM_COLS *
+                                    LevelManager.NUM_ROWS);
+    }
+    updateNextBubbleImage();
+    if (staticLayer.checkGrid(bubblePlay, compressor.getSteps(), scale,
+                              dx, dy, bgdx, bgdy)) {
+      Canvas layerCanvas = staticLayer.beginRebuild(background);
+      if (layerCanvas != null) {
+        paintSprites(layerCanvas, scale, staticLayer.getDX(),
+                     staticLayer.getDY(), true);
+        compressor.paint(layerCanvas, scale, staticLayer.getDX(),
+                         staticLayer.getDY());
+      }
+    }
+    if (staticLayer.paint(c)) {
+      paintSprites(c, scale, dx, dy, false);
     }
     else {
-      nextBubble.changeImage(bubblesBlind[nextColor]);
+      super.paint(c, scale, dx, dy);
+      compressor.paint(c, scale, dx, dy);
     }
-    super.paint(c, scale, dx, dy);
-    compressor.paint(c, scale, dx, dy);
   }
 
   public void pause() {
@@ -710,6 +841,20 @@ public class FrozenGame extends GameScreen {
                        double trackball_dx,
                        boolean touch_fire, double touch_x, double touch_y,
                        boolean ats_touch_fire, double ats_touch_dx) {
+    if (inputLog != null) {
+      inputLog.logPlay(player, key_left, key_right, key_fire, key_swap,
+                       trackball_dx, touch_fire, touch_x, touch_y,
+                       ats_touch_fire, ats_touch_dx);
+    }
+
+    for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+      for (int j = 0; j < LevelManager.NUM_ROWS; j++) {
+        if (bubblePlay[i][j] != null) {
+          bubblePlay[i][j].animate();
+        }
+      }
+    }
+
     boolean ats = FrozenBubble.getAimThenShoot();
     boolean bubbleLaunched = false;
     boolean compressed = false;
@@ -981,6 +1126,9 @@ public class FrozenGame extends GameScreen {
       }
       else if ((gridChecksum == 0) && getOkToFire()) {
         calculateGridChecksum();
+        if (inputLog != null) {
+          inputLog.logChecksum(player, gridChecksum);
+        }
       }
     }
 
@@ -1136,6 +1284,20 @@ public class FrozenGame extends GameScreen {
     }
   }
 
+  /**
+   * Release the static layer and launcher bitmaps.  They are rendered
+   * again if the game is painted again.
+   */
+  public void recycle() {
+    if (staticLayer != null) {
+      staticLayer.invalidate();
+      staticLayer.recycle();
+    }
+    if (launchBubble != null) {
+      launchBubble.recycleFrames();
+    }
+  }
+
   public void restoreState(Bundle map, Vector<BmpWrap> imageList) {
     Vector<Sprite> savedSprites = new Vector<Sprite>();
     int numSavedSprites =
@@ -1206,6 +1368,9 @@ public class FrozenGame extends GameScreen {
     }
     int launchBubbleId =
         map.getInt(String.format("%d-launchBubbleId", player));
+    if (launchBubble != null) {
+      launchBubble.recycleFrames();
+    }
     launchBubble = (LaunchBubbleSprite)savedSprites.elementAt(launchBubbleId);
     launchBubblePosition =
         map.getDouble(String.format("%d-launchBubblePosition", player));
@@ -1435,6 +1600,15 @@ public class FrozenGame extends GameScreen {
     }
   }
 
+  /**
+   * Record all subsequent player input to this game in the supplied
+   * input log.
+   * @param log - the input log, or <code>null</code> to stop recording.
+   */
+  public void setInputLog(InputLog log) {
+    inputLog = log;
+  }
+
   public void setLaunchBubbleColors(int current, int next, int newNext) {
     currentColor = current;
     nextColor    = next;
@@ -1448,6 +1622,15 @@ public class FrozenGame extends GameScreen {
   }
 
   public void setPosition(double value) {
+    /*
+     * The launcher may be aimed asynchronously by the CPU opponent or a
+     * remote player, and aiming affects the penguin animation, which
+     * consumes random numbers.  Thus these calls must be recorded.
+     */
+    if (inputLog != null) {
+      inputLog.logPosition(player, value);
+    }
+
     if (!endOfGame) {
       double dx = value - launchBubblePosition;
       /*
@@ -1551,6 +1734,18 @@ public class FrozenGame extends GameScreen {
     }
   }
 
+  /**
+   * Display the next launch bubble in the current color mode.
+   */
+  private void updateNextBubbleImage() {
+    if (FrozenBubble.getMode() == FrozenBubble.GAME_NORMAL) {
+      nextBubble.changeImage(bubbles[nextColor]);
+    }
+    else {
+      nextBubble.changeImage(bubblesBlind[nextColor]);
+    }
+  }
+
   public void updatePenguinState(double dx) {
     if (dx < 0) {
       penguin.updateState(PenguinSprite.STATE_TURN_LEFT);
@@ -0,0 +1,448 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import org.gsanson.frozenbubble.MalusBar;
+import org.jfedor.frozenbubble.GameScreen.gameEnum;
+
+import com.efortin.frozenbubble.VirtualInput;
+
+/**
+ * This class replays a game recorded in an input log.
+ * <p>Each call to <code>step()</code> performs one game loop iteration,
+ * so a replay may be shown in real time by calling it from the game
+ * thread in place of the player inputs.  Alternatively, a replay can
+ * be run headless - without graphics or sound - as fast as the CPU
+ * permits via <code>runHeadless()</code>, which is useful to reproduce
+ * desynchronization bugs and to profile the game simulation.
+ * @see InputLog
+ */
+public class GameReplay {
+  /*
+   * Placeholder image for headless replays.  Images are only used to
+   * paint sprites, so their bitmaps may be null.
+   */
+  private static final BmpWrap PLACEHOLDER = new BmpWrap(0);
+
+  private int             checksumErrors;
+  private int             firstChecksumErrorTick;
+  private int             ticks;
+  private boolean         finished;
+  private DataInputStream records;
+  private FrozenGame[]    games;
+  private InputLog        log;
+  private MalusBar        malusBar1;
+  private MalusBar        malusBar2;
+  private byte[]          attackBubbles;
+  private byte[][]        grid;
+
+  /**
+   * This class provides the player ID and remote player flag to the
+   * games created for a replay.  Player input is read from the log.
+   */
+  public static class ReplayInput extends VirtualInput {
+    public ReplayInput(int id, boolean remote) {
+      configure(id, false, remote);
+    }
+
+    @Override
+    public boolean actionCenter() { return false; }
+    @Override
+    public boolean actionDown() { return false; }
+    @Override
+    public boolean actionLeft() { return false; }
+    @Override
+    public boolean actionRight() { return false; }
+    @Override
+    public boolean actionUp() { return false; }
+    @Override
+    public boolean checkNewActionKeyPress(int keyCode) { return false; }
+    @Override
+    public boolean setKeyDown(int keyCode) { return false; }
+    @Override
+    public boolean setKeyUp(int keyCode) { return false; }
+    @Override
+    public boolean setTouchEvent(int event, double x, double y) {
+      return false;
+    }
+    @Override
+    public void setTrackBallDx(double trackBallDX) {}
+  }
+
+  /**
+   * Create a replay of the supplied log.  The games must have been
+   * created with the log preferences applied, with a level manager
+   * created via <code>InputLog.newLevelManager()</code>, and with the
+   * random seeds, player IDs and remote player flags stored in the
+   * log.
+   * @param log - the input log to replay.
+   * @param game1 - the player 1 game.
+   * @param game2 - the player 2 game, or <code>null</code> for a single
+   * player game.
+   */
+  public GameReplay(InputLog log, FrozenGame game1, FrozenGame game2) {
+    this.log               = log;
+    records                = log.getRecords();
+    games                  = new FrozenGame[] { game1, game2 };
+    malusBar1              = (game2 != null) ? game2.malusBar : null;
+    malusBar2              = game1.malusBar;
+    attackBubbles          = new byte[15];
+    grid                   = new byte[LevelManager.NUM_COLS]
+                                     [LevelManager.NUM_ROWS];
+    checksumErrors         = 0;
+    firstChecksumErrorTick = -1;
+    ticks                  = 0;
+    finished               = false;
+  }
+
+  /**
+   * Create a game that will reproduce the recorded game of the
+   * specified player without graphics or sound.  The log preferences
+   * must be applied first.
+   * @param log - the input log to replay.
+   * @param player - the player ID, e.g.,
+   * <code>VirtualInput.PLAYER1</code>.
+   * @param levelManager - the level manager created via
+   * <code>InputLog.newLevelManager()</code>, which must be shared by
+   * both players' games.
+   * @param malusBar - the attack bar for this player's game, or
+   * <code>null</code> for a single player game.
+   * @return the new game.
+   */
+  private static FrozenGame newHeadlessGame(InputLog log, int player,
+                                            LevelManager levelManager,
+                                            MalusBar malusBar) {
+    /*
+     * Bubble colors are identified by their image, so each bubble image
+     * must be a unique placeholder.
+     */
+    BmpWrap[] bubbles         = newPlaceholders(8);
+    BmpWrap[] bubblesBlind    = newPlaceholders(8);
+    BmpWrap[] frozenBubbles   = newPlaceholders(8);
+    BmpWrap[] targetedBubbles = newPlaceholders(6);
+
+    return new FrozenGame(PLACEHOLDER, bubbles, bubblesBlind, frozenBubbles,
+                          targetedBubbles, PLACEHOLDER, PLACEHOLDER,
+                          PLACEHOLDER, PLACEHOLDER, PLACEHOLDER,
+                          null, null, PLACEHOLDER, PLACEHOLDER,
+                          PLACEHOLDER, malusBar, null, new SoundManager(),
+                          levelManager, null, null,
+                          new ReplayInput(player, log.isRemote[player - 1]),
+                          log.gameSeeds[player - 1]);
+  }
+
+  private static BmpWrap[] newPlaceholders(int count) {
+    BmpWrap[] images = new BmpWrap[count];
+    for (int index = 0; index < count; index++) {
+      images[index] = new BmpWrap(index);
+    }
+    return images;
+  }
+
+  /**
+   * Replay a recorded game without graphics or sound, as quickly as
+   * possible.
+   * <p>The preferences stored in the log are applied for the duration
+   * of the replay, then the preferences in effect beforehand are
+   * restored.  Thus a headless replay must not be run while a game is
+   * being played.
+   * @param log - the input log to replay.
+   * @return the finished replay, which can be queried for the results.
+   */
+  public static GameReplay runHeadless(InputLog log) {
+    InputLog saved = new InputLog();
+    saved.capturePreferences();
+    log.applyPreferences();
+
+    try {
+      LevelManager levelManager = log.newLevelManager();
+      MalusBar malusBar1 = null;
+      MalusBar malusBar2 = null;
+      if (log.numPlayers > 1) {
+        malusBar1 = new MalusBar(GameView.GAMEFIELD_WIDTH - 164, 40,
+                                 PLACEHOLDER, PLACEHOLDER);
+        malusBar2 = new MalusBar(GameView.GAMEFIELD_WIDTH + 134, 40,
+                                 PLACEHOLDER, PLACEHOLDER);
+      }
+      FrozenGame game1 = newHeadlessGame(log, VirtualInput.PLAYER1,
+                                         levelManager, malusBar2);
+      FrozenGame game2 = null;
+      if (log.numPlayers > 1) {
+        game2 = newHeadlessGame(log, VirtualInput.PLAYER2, levelManager,
+                                malusBar1);
+      }
+      GameReplay replay = new GameReplay(log, game1, game2);
+      while (replay.step());
+      return replay;
+    } finally {
+      saved.applyPreferences();
+    }
+  }
+
+  public int getChecksumErrors() {
+    return checksumErrors;
+  }
+
+  /**
+   * Obtain the first game loop iteration at which the replayed bubble
+   * grid did not match the recorded bubble grid checksum.
+   * @return the iteration, or -1 if all the checksums matched.
+   */
+  public int getFirstChecksumErrorTick() {
+    return firstChecksumErrorTick;
+  }
+
+  public FrozenGame getGame(int player) {
+    return games[player - 1];
+  }
+
+  public int getTicks() {
+    return ticks;
+  }
+
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /**
+   * Apply a remote player action.  This is equivalent to
+   * <code>GameView.GameThread.setPlayerAction()</code>, except that
+   * the launcher aim, bubble launch and swap requests are replayed via
+   * their own records.
+   */
+  private void readAction(FrozenGame game) throws IOException {
+    int   launchColor  = records.readByte();
+    int   nextColor    = records.readByte();
+    int   newNextColor = records.readByte();
+    boolean compress   = records.readBoolean();
+    short attackBar    = records.readShort();
+    if (attackBar > -1) {
+      records.readFully(attackBubbles);
+    }
+
+    if ((launchColor  > -1) && (launchColor  < 8) &&
+        (nextColor    > -1) && (nextColor    < 8) &&
+        (newNextColor > -1) && (newNextColor < 8)) {
+      game.setLaunchBubbleColors(launchColor, nextColor, newNextColor);
+    }
+
+    if (compress) {
+      game.lowerCompressor(true);
+    }
+
+    if ((attackBar > -1) && (game.malusBar != null)) {
+      game.malusBar.setAttackBubbles(attackBar, attackBubbles);
+    }
+  }
+
+  /**
+   * Apply a remote game field.  This is equivalent to
+   * <code>GameView.setPlayerGameField()</code>.
+   */
+  private void readField(FrozenGame game) throws IOException {
+    byte  steps      = records.readByte();
+    int   launchColor = records.readByte();
+    int   nextColor   = records.readByte();
+    short attackBar   = records.readShort();
+    for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+      records.readFully(grid[i]);
+    }
+
+    game.setGrid(grid, steps);
+    game.setLaunchBubbleColors(launchColor, nextColor,
+                               game.getNewNextColor());
+    if (game.malusBar != null) {
+      game.malusBar.setAttackBubbles(attackBar, null);
+    }
+  }
+
+  private void readPlay(FrozenGame game) throws IOException {
+    int    flags        = records.readUnsignedByte();
+    double trackball_dx = 0;
+    double touch_x      = 0;
+    double touch_y      = 0;
+    double ats_touch_dx = 0;
+
+    if ((flags & InputLog.FLAG_TRACKBALL) != 0)
+      trackball_dx = records.readDouble();
+    if ((flags & InputLog.FLAG_TOUCH_FIRE) != 0) {
+      touch_x = records.readDouble();
+      touch_y = records.readDouble();
+    }
+    if ((flags & InputLog.FLAG_ATS_DX) != 0)
+      ats_touch_dx = records.readDouble();
+
+    game.play((flags & InputLog.FLAG_LEFT) != 0,
+              (flags & InputLog.FLAG_RIGHT) != 0,
+              (flags & InputLog.FLAG_FIRE) != 0,
+              (flags & InputLog.FLAG_SWAP) != 0,
+              trackball_dx,
+              (flags & InputLog.FLAG_TOUCH_FIRE) != 0,
+              touch_x, touch_y,
+              (flags & InputLog.FLAG_ATS_FIRE) != 0,
+              ats_touch_dx);
+  }
+
+  /**
+   * Resolve the interactions between the games of a multiplayer game
+   * after both players have played.  This is equivalent to the
+   * corresponding portion of
+   * <code>GameView.GameThread.updateGameState()</code>.
+   * @param game1 - the player 1 game.
+   * @param game2 - the player 2 game.
+   * @param malusBar1 - the attack bar that receives the bubbles sent by
+   * player 1, which is the player 2 attack bar.
+   * @param malusBar2 - the attack bar that receives the bubbles sent by
+   * player 2, which is the player 1 attack bar.
+   */
+  static void resolveMultiplayer(FrozenGame game1, FrozenGame game2,
+                                 MalusBar malusBar1, MalusBar malusBar2) {
+    malusBar1.addBubbles(game1.getSendToOpponent());
+    malusBar2.addBubbles(game2.getSendToOpponent());
+
+    gameEnum game1Result = game1.getGameResult();
+    gameEnum game2Result = game2.getGameResult();
+
+    if (game1Result != gameEnum.PLAYING) {
+      if ((game1Result == gameEnum.WON) ||
+          (game1Result == gameEnum.NEXT_WON)) {
+        game2.setGameResult(gameEnum.LOST);
+      }
+      else {
+        game2.setGameResult(gameEnum.WON);
+      }
+    }
+    else if (game2Result != gameEnum.PLAYING) {
+      if ((game2Result == gameEnum.WON) ||
+          (game2Result == gameEnum.NEXT_WON)) {
+        game1.setGameResult(gameEnum.LOST);
+      }
+      else {
+        game1.setGameResult(gameEnum.WON);
+      }
+    }
+  }
+
+  /**
+   * Replay one game loop iteration.
+   * @return <code>false</code> once the end of the log is reached.
+   */
+  public boolean step() {
+    if (finished) {
+      return false;
+    }
+
+    try {
+      int tag;
+      while ((tag = records.read()) != -1) {
+        int player = tag & 0x0F;
+        if ((player < VirtualInput.PLAYER1) ||
+            (player > log.numPlayers)) {
+          break;
+        }
+        FrozenGame game = games[player - 1];
+
+        switch (tag >> 4) {
+          case InputLog.REC_PLAY:
+            readPlay(game);
+            if (player == log.numPlayers) {
+              if (log.numPlayers > 1) {
+                resolveMultiplayer(games[0], games[1],
+                                   malusBar1, malusBar2);
+              }
+              ticks++;
+              return true;
+            }
+            break;
+
+          case InputLog.REC_POSITION:
+            game.setPosition(records.readDouble());
+            break;
+
+          case InputLog.REC_ACTION:
+            readAction(game);
+            break;
+
+          case InputLog.REC_FIELD:
+            readField(game);
+            break;
+
+          case InputLog.REC_CHECKSUM:
+            short checksum = records.readShort();
+            game.calculateGridChecksum();
+            if (game.gridChecksum != checksum) {
+              if (checksumErrors == 0) {
+                firstChecksumErrorTick = ticks;
+              }
+              checksumErrors++;
+            }
+            break;
+
+          default:
+            finished = true;
+            return false;
+        }
+      }
+    } catch (IOException ioe) {
+      /*
+       * A truncated record marks the end of the log.
+       */
+    }
+
+    finished = true;
+    return false;
+  }
+}
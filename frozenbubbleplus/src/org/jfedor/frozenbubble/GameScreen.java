@@ -55,6 +55,7 @@ package org.jfedor.frozenbubble;
 import java.util.Vector;
 
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.os.Bundle;
 
 public abstract class GameScreen {
@@ -82,6 +83,11 @@ public abstract class GameScreen {
   }
 
   private Vector<Sprite> sprites;
+  /*
+   * The surface area vacated by sprites removed since the last time the
+   * dirty area was collected.
+   */
+  private Rect removedArea = new Rect();
 
   public final void saveSprites(Bundle map, Vector<Sprite> savedSprites,
                                 int id) {
@@ -96,6 +102,7 @@ public abstract class GameScreen {
   public final void restoreSprites(Bundle map, Vector<Sprite> savedSprites,
                                    int id) {
     sprites = new Vector<Sprite>();
+    removedArea.setEmpty();
     int numSprites = map.getInt(String.format("%d-numGameSprites", id));
     for (int i = 0; i < numSprites; i++) {
       int spriteIdx = map.getInt(String.format("%d-game-%d", id, i));
@@ -110,6 +117,33 @@ public abstract class GameScreen {
   public final void addSprite(Sprite sprite) {
     sprites.removeElement(sprite);
     sprites.addElement(sprite);
+    sprite.invalidate();
+  }
+
+  /**
+   * Add the surface area that has to be repainted since the last time the
+   * dirty area was collected to the supplied dirty rectangle.
+   * @param dirty - the dirty rectangle, in surface coordinates.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset.
+   * @param dy - the vertical display offset.
+   */
+  public void addDirtyArea(Rect dirty, double scale, int dx, int dy) {
+    dirty.union(removedArea);
+    removedArea.setEmpty();
+    for (int i = 0; i < sprites.size(); i++) {
+      ((Sprite)sprites.elementAt(i)).addDirtyArea(dirty, scale, dx, dy);
+    }
+  }
+
+  /**
+   * Force every sprite to be repainted the next time the dirty area is
+   * collected.
+   */
+  public void invalidate() {
+    for (int i = 0; i < sprites.size(); i++) {
+      ((Sprite)sprites.elementAt(i)).invalidate();
+    }
   }
 
   public final void removeAllBubbleSprites() {
@@ -124,17 +158,21 @@ public abstract class GameScreen {
   }
 
   public final void removeSprite(Sprite sprite) {
-    sprites.removeElement(sprite);
+    if (sprites.removeElement(sprite)) {
+      sprite.addPaintedArea(removedArea);
+    }
   }
 
   public final void spriteToBack(Sprite sprite) {
     sprites.removeElement(sprite);
     sprites.insertElementAt(sprite,0);
+    sprite.invalidate();
   }
 
   public final void spriteToFront(Sprite sprite) {
     sprites.removeElement(sprite);
     sprites.addElement(sprite);
+    sprite.invalidate();
   }
 
   public void paint(Canvas c, double scale, int dx, int dy) {
@@ -143,6 +181,25 @@ public abstract class GameScreen {
     }
   }
 
+  /**
+   * Paint either the sprites that are painted in a cached layer, or the
+   * sprites that are not, in drawing order.
+   * @param c - the canvas to paint on.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset.
+   * @param dy - the vertical display offset.
+   * @param cached - <code>true</code> to paint the cached sprites.
+   */
+  protected final void paintSprites(Canvas c, double scale, int dx, int dy,
+                                    boolean cached) {
+    for (int i = 0; i < sprites.size(); i++) {
+      Sprite sprite = (Sprite)sprites.elementAt(i);
+      if (sprite.isCached() == cached) {
+        sprite.paint(c, scale, dx, dy);
+      }
+    }
+  }
+
   public abstract gameEnum play(boolean key_left, boolean key_right,
                                 boolean key_fire, boolean key_swap,
                                 double trackball_dx,
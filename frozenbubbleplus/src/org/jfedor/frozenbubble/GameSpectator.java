@@ -0,0 +1,492 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.gsanson.frozenbubble.MalusBar;
+
+import android.content.Context;
+
+import com.efortin.frozenbubble.NetworkManager;
+import com.efortin.frozenbubble.NetworkManager.GameFieldData;
+import com.efortin.frozenbubble.NetworkManager.PlayerAction;
+import com.efortin.frozenbubble.NetworkManager.connectEnum;
+import com.efortin.frozenbubble.NetworkTransport;
+import com.efortin.frozenbubble.NetworkTransport.TransportListener;
+import com.efortin.frozenbubble.SpectatorCaster;
+import com.efortin.frozenbubble.UDPSocket;
+import com.efortin.frozenbubble.UDPSocket.UDPListener;
+
+/**
+ * This class reconstructs a network game from the spectator stream
+ * broadcast by one of its players.
+ * <p>The games are created from the match header exactly like the
+ * games of a replay, and both players' actions are then replayed
+ * through them as they would be on a remote player's device.  Nothing
+ * is sent back to the players.
+ * <p>A spectator waits for a keyframe before replaying any action, and
+ * applies a keyframe again whenever an action was lost, or the grid of
+ * a game at rest differs from the grid the player had at the same
+ * action.
+ * <p>Datagrams are received by the transport thread, while
+ * <code>step()</code> is called by the game thread once per game loop
+ * iteration.
+ * @see SpectatorCaster
+ */
+public class GameSpectator implements TransportListener, UDPListener {
+  private int            matchCount;
+  private int            resyncs;
+  private byte[]         matchHeader;
+  private InputLog       match;
+  private MalusBar       malusBar1;
+  private MalusBar       malusBar2;
+  private ByteBuffer     rxBuffer;
+  private FrozenGame[]   games;
+  private GameFieldData  gameField;
+  private NetworkTransport transport;
+
+  /*
+   * The actions received for each player that are yet to be executed,
+   * in action ID order, and the ID of the last action executed.
+   */
+  private final ArrayList<PlayerAction> actions1;
+  private final ArrayList<PlayerAction> actions2;
+  private final short[]   executedID;
+
+  /*
+   * The latest keyframe of each game, if it has not been examined yet.
+   */
+  private final GameFieldData[] keyframes;
+  private final double[]  keyframeAim;
+  private final byte[]    keyframeNewNext;
+  private final boolean[] keyframeAtRest;
+  private final boolean[] keyframePending;
+
+  /*
+   * Whether each game has been synchronized with a keyframe, and the
+   * launch and swap requests to apply in the next game loop iteration.
+   */
+  private final boolean[] synced;
+  private final boolean[] launch;
+  private final boolean[] swap;
+
+  /**
+   * Class constructor.  The spectator listens to the spectator stream
+   * multicast group on the local network.
+   * @param context - the context from which to obtain the application
+   * context to pass to the transport layer.
+   * @throws IOException if the socket could not be created.
+   */
+  public GameSpectator(Context context) throws IOException {
+    this();
+    UDPSocket socket = new UDPSocket(context, connectEnum.UDP_MULTICAST,
+                                     SpectatorCaster.HOST,
+                                     SpectatorCaster.PORT);
+    socket.setUDPListener(this);
+    transport = socket;
+  }
+
+  /**
+   * Class constructor for a spectator of a caller supplied transport,
+   * such as an emulated link.  The caller must register this spectator
+   * as the transport listener.
+   * @param transport - the transport that receives the stream.
+   */
+  public GameSpectator(NetworkTransport transport) {
+    this();
+    this.transport = transport;
+  }
+
+  private GameSpectator() {
+    actions1        = new ArrayList<PlayerAction>();
+    actions2        = new ArrayList<PlayerAction>();
+    executedID      = new short[2];
+    gameField       = new GameFieldData(null);
+    games           = new FrozenGame[2];
+    keyframes       = new GameFieldData[] { new GameFieldData(null),
+                                            new GameFieldData(null) };
+    keyframeAim     = new double[2];
+    keyframeNewNext = new byte[2];
+    keyframeAtRest  = new boolean[2];
+    keyframePending = new boolean[2];
+    launch          = new boolean[2];
+    swap            = new boolean[2];
+    synced          = new boolean[2];
+    matchCount      = 0;
+    matchHeader     = null;
+    match           = null;
+    resyncs         = 0;
+  }
+
+  /**
+   * Apply the pending keyframe of a game if the game is not
+   * synchronized with the player's game.
+   * @param index - the player index, 0 for player 1.
+   */
+  private void applyKeyframe(int index) {
+    FrozenGame    game     = games[index];
+    GameFieldData keyframe = keyframes[index];
+    keyframePending[index] = false;
+
+    boolean apply;
+    if (!synced[index]) {
+      apply = true;
+    }
+    else if (keyframe.localActionID > executedID[index]) {
+      /*
+       * The game is behind the keyframe.  Apply it if the next action
+       * was lost, since the game would otherwise never catch up.
+       */
+      apply = !hasAction(index, (short) (executedID[index] + 1));
+    }
+    else if ((keyframe.localActionID == executedID[index]) &&
+             keyframeAtRest[index] && game.getOkToFire()) {
+      /*
+       * The game should be identical to the keyframe.
+       */
+      gameField.copyFromGame(game);
+      apply = !Arrays.deepEquals(gameField.gameField, keyframe.gameField);
+      if (apply) {
+        resyncs++;
+      }
+    }
+    else {
+      apply = false;
+    }
+
+    if (apply) {
+      game.setGrid(keyframe.gameField, keyframe.compressorSteps);
+      game.setLaunchBubbleColors(keyframe.launchBubbleColor,
+                                 keyframe.nextBubbleColor,
+                                 keyframeNewNext[index]);
+      game.setPosition(keyframeAim[index]);
+      if (game.malusBar != null) {
+        game.malusBar.setAttackBubbles(keyframe.attackBarBubbles, null);
+      }
+      executedID[index] = keyframe.localActionID;
+      synced[index]     = true;
+      discardActions(index);
+    }
+  }
+
+  /**
+   * Apply a player action.  This is equivalent to
+   * <code>GameView.GameThread.setPlayerAction()</code>.
+   */
+  private void applyAction(int index, PlayerAction action) {
+    games[index].applyAction(action);
+    launch[index] |= action.launchBubble;
+    swap[index]   |= action.swapBubble;
+  }
+
+  /**
+   * Stop receiving the stream, and release the transport.
+   */
+  public void cleanUp() {
+    if (transport != null) {
+      transport.cleanUp();
+    }
+    transport = null;
+  }
+
+  /**
+   * Discard the received actions that were already executed.
+   * @param index - the player index, 0 for player 1.
+   */
+  private synchronized void discardActions(int index) {
+    ArrayList<PlayerAction> list = getActionList(index);
+    while (!list.isEmpty() &&
+           (list.get(0).localActionID <= executedID[index])) {
+      list.remove(0);
+    }
+  }
+
+  private ArrayList<PlayerAction> getActionList(int index) {
+    return (index == 0) ? actions1 : actions2;
+  }
+
+  /**
+   * Obtain the header of the match being broadcast.  The spectator
+   * games must be created from it like the games of a replay, with
+   * both players flagged as remote.
+   * @return the match header, or <code>null</code> if none has been
+   * received yet.
+   */
+  public synchronized InputLog getMatch() {
+    return match;
+  }
+
+  /**
+   * Obtain the number of matches received.  This changes whenever a
+   * new match begins, at which point new games must be created.
+   * @return the number of matches received.
+   */
+  public synchronized int getMatchCount() {
+    return matchCount;
+  }
+
+  /**
+   * Obtain the number of times a game had to be resynchronized because
+   * its grid differed from the player's.
+   * @return the number of resynchronizations.
+   */
+  public int getResyncs() {
+    return resyncs;
+  }
+
+  private synchronized boolean hasAction(int index, short actionID) {
+    ArrayList<PlayerAction> list = getActionList(index);
+    for (int position = 0; position < list.size(); position++) {
+      if (list.get(position).localActionID == actionID) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Determine whether both games have been synchronized with a
+   * keyframe, and are replaying the players' actions.
+   * @return <code>true</code> if both games are synchronized.
+   */
+  public boolean isSynchronized() {
+    return synced[0] && synced[1];
+  }
+
+  @Override
+  public void onTransportEvent(byte[] buffer, int length) {
+    if ((buffer == null) || (length < 2)) {
+      return;
+    }
+
+    /*
+     * The transport layer receives every datagram into the same array,
+     * so the buffer used to decode it is only wrapped once.
+     */
+    if ((rxBuffer == null) || (rxBuffer.array() != buffer)) {
+      rxBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    byte msgId = buffer[0];
+    if (msgId == NetworkManager.MSG_ID_MATCH) {
+      receiveMatch(buffer, length);
+    }
+    else if ((msgId == NetworkManager.MSG_ID_ACTION) &&
+             (length >= (NetworkManager.ACTION_BYTES + 1))) {
+      int actionBytes = NetworkManager.ACTION_BYTES;
+      int count       = 0;
+      if (length >= (actionBytes + 2)) {
+        count = Math.min(rxBuffer.get(actionBytes + 1),
+                         (length - actionBytes - 2) / actionBytes);
+      }
+      /*
+       * Queue the preceding actions first, oldest first.
+       */
+      for (int index = count - 1; index >= 0; index--) {
+        receiveAction(new PlayerAction(rxBuffer, actionBytes + 2 +
+                                       (index * actionBytes)));
+      }
+      receiveAction(new PlayerAction(rxBuffer, 1));
+    }
+    else if (msgId == NetworkManager.MSG_ID_KEYFRAME) {
+      receiveKeyframe(length);
+    }
+  }
+
+  @Override
+  public void onUDPEvent(InetAddress address, byte[] buffer, int length) {
+    onTransportEvent(buffer, length);
+  }
+
+  /**
+   * Queue a received action in action ID order, unless it was already
+   * received or executed.
+   */
+  private synchronized void receiveAction(PlayerAction action) {
+    int index = action.playerID - 1;
+    if ((index < 0) || (index > 1) ||
+        (action.localActionID <= executedID[index])) {
+      return;
+    }
+    ArrayList<PlayerAction> list = getActionList(index);
+    int position = list.size();
+    while ((position > 0) &&
+           (list.get(position - 1).localActionID >= action.localActionID)) {
+      if (list.get(position - 1).localActionID == action.localActionID) {
+        return;
+      }
+      position--;
+    }
+    list.add(position, action);
+  }
+
+  private synchronized void receiveKeyframe(int length) {
+    int count  = rxBuffer.get(1);
+    int offset = 2;
+    for (int index = 0; (index < count) && (index < 2); index++) {
+      if (offset + SpectatorCaster.GAME_BYTES > length) {
+        return;
+      }
+      int gameBytes = rxBuffer.get(offset) & 0xFF;
+      if ((gameBytes < SpectatorCaster.GAME_BYTES) ||
+          (offset + gameBytes > length) ||
+          !keyframes[index].copyFromBuffer(rxBuffer,
+              offset + SpectatorCaster.GAME_BYTES,
+              gameBytes - SpectatorCaster.GAME_BYTES)) {
+        return;
+      }
+      keyframeAim[index]     = rxBuffer.getDouble(offset + 1);
+      keyframeNewNext[index] = rxBuffer.get(offset + 9);
+      keyframeAtRest[index]  = rxBuffer.get(offset + 10) == 1;
+      keyframePending[index] = true;
+      offset += gameBytes;
+    }
+  }
+
+  /**
+   * Process a match header.  A header that differs from the current
+   * one begins a new match, and the queued actions and keyframes of the
+   * previous match are discarded.
+   */
+  private synchronized void receiveMatch(byte[] buffer, int length) {
+    byte[] header = Arrays.copyOfRange(buffer, 1, length);
+    if (Arrays.equals(header, matchHeader)) {
+      return;
+    }
+    try {
+      match = InputLog.readHeader(new DataInputStream(
+        new ByteArrayInputStream(header)));
+    } catch (IOException ioe) {
+      return;
+    }
+    matchHeader = header;
+    matchCount++;
+    for (int index = 0; index < 2; index++) {
+      getActionList(index).clear();
+      executedID[index]      = 0;
+      keyframePending[index] = false;
+      synced[index]          = false;
+    }
+  }
+
+  /**
+   * Attach the games of the current match.  The games must have been
+   * created from <code>getMatch()</code> with both players flagged as
+   * remote.
+   * @param game1 - the player 1 game.
+   * @param game2 - the player 2 game.
+   */
+  public synchronized void setGames(FrozenGame game1, FrozenGame game2) {
+    games[0]  = game1;
+    games[1]  = game2;
+    malusBar1 = game2.malusBar;
+    malusBar2 = game1.malusBar;
+    for (int index = 0; index < 2; index++) {
+      getActionList(index).clear();
+      executedID[index] = 0;
+      launch[index]     = false;
+      swap[index]       = false;
+      synced[index]     = false;
+    }
+  }
+
+  /**
+   * Perform one game loop iteration of the spectated games.
+   * @return <code>false</code> if there are no games to play.
+   */
+  public boolean step() {
+    if ((games[0] == null) || (games[1] == null)) {
+      return false;
+    }
+
+    for (int index = 0; index < 2; index++) {
+      PlayerAction action = null;
+      synchronized(this) {
+        if (keyframePending[index]) {
+          applyKeyframe(index);
+        }
+        /*
+         * Like the remote player's game on a player's device, execute
+         * at most one action per iteration, and only launch a bubble
+         * when the game is ready to.
+         */
+        ArrayList<PlayerAction> list = getActionList(index);
+        if (synced[index] && !list.isEmpty() &&
+            (list.get(0).localActionID == (executedID[index] + 1)) &&
+            (!list.get(0).launchBubble || games[index].getOkToFire())) {
+          action = list.remove(0);
+          executedID[index] = action.localActionID;
+        }
+      }
+      if (action != null) {
+        applyAction(index, action);
+      }
+    }
+
+    for (int index = 0; index < 2; index++) {
+      games[index].play(false, false, false, swap[index], 0,
+                        launch[index], 0, 0, false, 0);
+      launch[index] = false;
+      swap[index]   = false;
+    }
+    GameReplay.resolveMultiplayer(games[0], games[1], malusBar1, malusBar2);
+    return true;
+  }
+}
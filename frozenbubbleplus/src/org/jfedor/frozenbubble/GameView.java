@@ -74,9 +74,12 @@
 
 package org.jfedor.frozenbubble;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -93,12 +96,15 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
@@ -112,6 +118,7 @@ import com.efortin.frozenbubble.NetworkManager;
 import com.efortin.frozenbubble.NetworkManager.GameFieldData;
 import com.efortin.frozenbubble.NetworkManager.PlayerAction;
 import com.efortin.frozenbubble.NetworkManager.connectEnum;
+import com.efortin.frozenbubble.SpectatorCaster;
 import com.efortin.frozenbubble.VirtualInput;
 
 public class GameView extends SurfaceView
@@ -275,7 +282,17 @@ public class GameView extends SurfaceView
     private double  mTouchY;
     private boolean mTouchFireATS  = false;
     private double  mTouchDxATS    = 0;
+    private long    mTouchFireTime = 0;
+    private long    mTouchLastTime = 0;
     private double  mTouchLastX    = 0;
+    /*
+     * Aim-then-shoot launcher motion extrapolation.  The velocity is in
+     * launcher position units per millisecond, and the prediction is the
+     * extrapolated motion that has already been applied to the launcher.
+     */
+    private boolean mTouchAimATS   = false;
+    private double  mTouchPredATS  = 0;
+    private double  mTouchVelATS   = 0;
 
     /**
      * Construct and configure this player input instance.
@@ -381,11 +398,32 @@ public class GameView extends SurfaceView
 
     /**
      * Obtain the ATS (aim-then-shoot) touch horizontal position change.
+     * <p>While the player is dragging, the touch motion is extrapolated
+     * from the most recent touch sample to the current time, so that the
+     * launcher tracks the finger without lagging behind it.  The motion
+     * extrapolated in the previous call is replaced by the motion
+     * extrapolated in this call, so that it is not applied twice.
      * @return The horizontal touch change in position.
      */
     public double getTouchDxATS() {
-      double tempDx = mTouchDxATS;
-      mTouchDxATS = 0;
+      double prediction = 0;
+      long elapsed = SystemClock.uptimeMillis() - mTouchLastTime;
+      long maxElapsed = GameThread.ATS_MAX_PREDICTION;
+      /*
+       * Touch samples stop arriving when the finger stops moving, so
+       * fade out the extrapolation if no recent samples have arrived.
+       */
+      if (mTouchAimATS && (elapsed > 0)) {
+        if (elapsed <= maxElapsed) {
+          prediction = mTouchVelATS * elapsed;
+        }
+        else if (elapsed < (2 * maxElapsed)) {
+          prediction = mTouchVelATS * ((2 * maxElapsed) - elapsed);
+        }
+      }
+      double tempDx = mTouchDxATS + prediction - mTouchPredATS;
+      mTouchDxATS   = 0;
+      mTouchPredATS = prediction;
       return tempDx;
     }
 
@@ -417,11 +455,15 @@ public class GameView extends SurfaceView
 
     public void init() {
       this.init_vars();
-      mTrackballDx  = 0;
-      mTouchFire    = false;
-      mTouchSwap    = false;
-      mTouchFireATS = false;
-      mTouchDxATS   = 0;
+      mTrackballDx   = 0;
+      mTouchFire     = false;
+      mTouchSwap     = false;
+      mTouchFireATS  = false;
+      mTouchDxATS    = 0;
+      mTouchFireTime = 0;
+      mTouchAimATS   = false;
+      mTouchPredATS  = 0;
+      mTouchVelATS   = 0;
     }
 
     /**
@@ -498,12 +540,31 @@ public class GameView extends SurfaceView
     }
 
     public boolean setTouchEvent(int event, double x, double y) {
+      return setTouchEvent(event, x, y, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Process a touch event that occurred at the supplied time.
+     * <p>Each historical sample of a batched move event must be supplied
+     * as a separate move event, in the order they occurred, so that the
+     * aim-then-shoot launcher motion accounts for the entire path of
+     * the finger.
+     * @param event - the touch event action.
+     * @param x - the horizontal touch position.
+     * @param y - the vertical touch position.
+     * @param time - the event time, in the
+     * <code>SystemClock.uptimeMillis()</code> time base.
+     * @return True if the touch event was processed.
+     */
+    @Override
+    public boolean setTouchEvent(int event, double x, double y, long time) {
       boolean handled = false;
       if (mGameThread.mMode == stateEnum.RUNNING) {
         // Set the values used when Point To Shoot is on.
         if (event == MotionEvent.ACTION_DOWN) {
           if (y < GameThread.TOUCH_FIRE_Y_THRESHOLD) {
             mTouchFire = true;
+            mTouchFireTime = time;
             mTouchX = x;
             mTouchY = y;
           }
@@ -516,20 +577,56 @@ public class GameView extends SurfaceView
         if (event == MotionEvent.ACTION_DOWN) {
           if (y < GameThread.ATS_TOUCH_FIRE_Y_THRESHOLD) {
             mTouchFireATS = true;
+            mTouchFireTime = time;
           }
+          mTouchAimATS = false;
+          mTouchVelATS = 0;
           mTouchLastX = x;
+          mTouchLastTime = time;
         }
         else if (event == MotionEvent.ACTION_MOVE) {
           if (y >= GameThread.ATS_TOUCH_FIRE_Y_THRESHOLD) {
-            mTouchDxATS = (x - mTouchLastX) * GameThread.ATS_TOUCH_COEFFICIENT;
+            double dx = (x - mTouchLastX) * GameThread.ATS_TOUCH_COEFFICIENT;
+            long dt = time - mTouchLastTime;
+            /*
+             * Accumulate the motion of every sample since the last game
+             * loop iteration, and smooth the sample velocities.
+             */
+            mTouchDxATS += dx;
+            if (dt > 0) {
+              mTouchVelATS = (mTouchVelATS + (dx / dt)) / 2;
+            }
+            mTouchAimATS = true;
+          }
+          else {
+            mTouchAimATS = false;
+            mTouchVelATS = 0;
           }
           mTouchLastX = x;
+          mTouchLastTime = time;
+        }
+        else {
+          mTouchAimATS = false;
+          mTouchVelATS = 0;
         }
         handled = true;
       }
       return handled;
     }
 
+    /**
+     * Obtain the time of the touch that requested a bubble launch, and
+     * clear it.
+     * @return The touch event time in the
+     * <code>SystemClock.uptimeMillis()</code> time base, or 0 if there
+     * is no touch launch request.
+     */
+    public long takeTouchFireTime() {
+      long tempTime = mTouchFireTime;
+      mTouchFireTime = 0;
+      return tempTime;
+    }
+
     /**
      * Accumulate the change in trackball horizontal position.
      * @param trackBallDX
@@ -539,27 +636,113 @@ public class GameView extends SurfaceView
     }
   }
 
-  class GameThread extends Thread {
+  class GameThread extends Thread implements BitmapScaler.Listener {
 
     private static final int FRAME_DELAY = 40;
 
+    /*
+     * The game state is updated once per tick of FRAME_DELAY milliseconds.
+     * When a device cannot render a frame per tick, the frame rate is
+     * stepped down by rendering a frame only every second or third tick,
+     * so the game runs at the same speed.  The mean busy time of the game
+     * loop is evaluated every PACING_WINDOW frames.  The frame rate is
+     * stepped down when the busy time exceeds PACING_STEP_DOWN_LOAD
+     * percent of the frame interval, and stepped back up when the busy
+     * time would be under PACING_STEP_UP_LOAD percent of the shorter
+     * frame interval.
+     */
+    private static final long TICK_NANOS            = FRAME_DELAY * 1000000L;
+    private static final int  MAX_TICKS_PER_FRAME   = 3;
+    private static final int  PACING_WINDOW         = 25;
+    private static final int  PACING_STEP_DOWN_LOAD = 90;
+    private static final int  PACING_STEP_UP_LOAD   = 70;
+
+    /*
+     * While a static screen is shown, the game loop blocks until the
+     * scene is marked dirty by wakeUp().  The screen is nonetheless
+     * repainted every IDLE_TIMEOUT milliseconds, in case of a change that
+     * did not mark the scene dirty.
+     */
+    private static final long IDLE_TIMEOUT = 1000;
+
+    /*
+     * The maximum number of input events queued between game loop
+     * iterations.
+     */
+    private static final int INPUT_QUEUE_SIZE = 64;
+
+    /*
+     * The input log of the most recent game is saved to this file in
+     * the application's private storage.
+     */
+    public static final String INPUT_LOG_FILE = "lastgame.log";
+
+    /*
+     * The game loop phase timings are saved to this file in the
+     * application's private storage when the game is paused.
+     */
+    public static final String FRAME_STATS_FILE = "framestats.txt";
+
+    /*
+     * The names of the scaled images in the scaled image disk cache.
+     * The one and two player games use different backgrounds.
+     */
+    private static final String SCALED_ATLAS         = "atlas";
+    private static final String SCALED_BACKGROUND_1P = "background";
+    private static final String SCALED_BACKGROUND_2P = "background2";
+    private static final String SCALED_CACHE_DIR     = "scaled";
+
     public static final double TRACKBALL_COEFFICIENT      = 5;
     public static final double TOUCH_BUTTON_THRESHOLD     = 16;
     public static final double TOUCH_FIRE_Y_THRESHOLD     = 380;
     public static final double TOUCH_SWAP_X_THRESHOLD     = 14;
     public static final double ATS_TOUCH_COEFFICIENT      = 0.2;
     public static final double ATS_TOUCH_FIRE_Y_THRESHOLD = 350;
+    /*
+     * The maximum time in milliseconds to extrapolate aim-then-shoot
+     * launcher motion past the most recent touch sample.
+     */
+    public static final long   ATS_MAX_PREDICTION         = FRAME_DELAY;
 
+    private boolean mAtlasScaled      = false;
+    private boolean mBackgroundScaled = false;
+    private boolean mBitmapsReady     = false;
+    private boolean mFullRedraw  = true;
     private boolean mImagesReady = false;
     private boolean mRun         = false;
-    private boolean mShowNetwork = false;
-    private boolean mShowScores  = false;
+    private boolean mShowFrameStats = false;
+    private boolean mShowNetwork    = false;
+    private boolean mShowScores     = false;
     private boolean mSurfaceOK   = false;
 
     private int    mDisplayDX;
     private int    mDisplayDY;
     private double mDisplayScale;
-    private long   mLastTime;
+    private long   mLaunchTouchTime;
+    private long   mNextFrameTime;
+    private long   mPacingBusyNanos;
+    private int    mPacingFrames;
+    private int    mTicksPerFrame = 1;
+
+    private final Object mIdleLock   = new Object();
+    private boolean      mSceneDirty = true;
+
+    /*
+     * The frame is recorded into the snapshot with the surface holder
+     * locked, and painted from it with only the render lock held.  Any
+     * thread that recycles a bitmap the snapshot may refer to must first
+     * discard the snapshot with discardSnapshot().
+     */
+    private final Object         mRenderLock   = new Object();
+    private final RenderSnapshot mSnapshot     = new RenderSnapshot();
+    private final CanvasTarget   mCanvasTarget = new CanvasTarget();
+    /*
+     * The time to first frame is measured from the creation of the game
+     * thread until the first frame showing the game is posted.
+     */
+    private long    mCreateTime = System.nanoTime();
+    private boolean mFirstFrameDrawn;
+    private boolean mFirstFramePosted;
     private int    mPlayer1DX;
     private int    mPlayer2DX;
 
@@ -586,6 +769,15 @@ public class GameView extends SurfaceView
     private Bitmap mFontImageOrig;
     private Bitmap mBananaOrig;
     private Bitmap mTomatoOrig;
+    private Bitmap[] mDecodedImages;
+    /*
+     * The original images are released once the scaled images are
+     * installed, and obtained again to scale them for another display
+     * size.
+     */
+    private int     mBackgroundId;
+    private boolean mMultiplayerImages;
+    private boolean mOriginalsReleased;
     private BmpWrap mBackground;
     private BmpWrap[] mBubbles;
     private BmpWrap[] mBubblesBlind;
@@ -608,13 +800,42 @@ public class GameView extends SurfaceView
     private BmpWrap mTomato;
 
     private BubbleFont    mFont;
+    private String        mLevelString;
+    private int           mLevelStringNumber = -1;
+    private String        mWinTotalsString;
+    private int           mWinTotals1 = -1;
+    private int           mWinTotals2 = -1;
     private Drawable      mLauncher;  // drawable because we rotate it
+    private FrameStats    mFrameStats = new FrameStats();
+    private InputQueue    mInputQueue = new InputQueue(INPUT_QUEUE_SIZE);
     private FrozenGame    mFrozenGame1;
     private FrozenGame    mFrozenGame2;
+    /*
+     * The games shown the last time the dirty area was collected, and
+     * the area of the surface to repaint in the current frame.
+     */
+    private FrozenGame    mDirtyGame1;
+    private FrozenGame    mDirtyGame2;
+    private Rect          mDirtyRect = new Rect();
+    private GameReplay    mReplay;
+    private InputLog      mInputLog;
+    private InputLog      mReplayPrefs;
+    private GameSpectator mSpectator;
+    private int           mSpectatorMatch;
     private LevelManager  mLevelManager;
     private MalusBar      malusBar1;
     private MalusBar      malusBar2;
     private SoundManager  mSoundManager;
+    private SpriteAtlas   mSpriteAtlas = new SpriteAtlas();
+    /*
+     * The images are scaled by worker threads whenever the display scale
+     * changes.  Each request is tagged with a generation number, so that
+     * images scaled for a superseded display scale are discarded.
+     */
+    private BitmapScaler  mBitmapScaler;
+    private SpriteAtlas.Layout mAtlasLayout;
+    private double        mRequestedScale;
+    private int           mScaleGeneration;
     private SurfaceHolder mSurfaceHolder;
 
     private final HighscoreManager mHighScoreManager;
@@ -627,112 +848,7 @@ public class GameView extends SurfaceView
       Resources res = mContext.getResources();
       setState(stateEnum.PAUSED);
 
-      BitmapFactory.Options options = new BitmapFactory.Options();
-
-      /*
-       * The Options.inScaled field is only available starting at API 4.
-       */
-      try {
-        Field f = options.getClass().getField("inScaled");
-        f.set(options, Boolean.FALSE);
-      } catch (Exception ignore) {}
-
-      mBackgroundOrig = BitmapFactory.decodeResource(
-        res, R.drawable.background2, options);
-      mBubblesOrig = new Bitmap[8];
-      mBubblesOrig[0] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_1, options);
-      mBubblesOrig[1] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_2, options);
-      mBubblesOrig[2] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_3, options);
-      mBubblesOrig[3] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_4, options);
-      mBubblesOrig[4] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_5, options);
-      mBubblesOrig[5] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_6, options);
-      mBubblesOrig[6] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_7, options);
-      mBubblesOrig[7] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_8, options);
-      mBubblesBlindOrig = new Bitmap[8];
-      mBubblesBlindOrig[0] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_colourblind_1, options);
-      mBubblesBlindOrig[1] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_colourblind_2, options);
-      mBubblesBlindOrig[2] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_colourblind_3, options);
-      mBubblesBlindOrig[3] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_colourblind_4, options);
-      mBubblesBlindOrig[4] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_colourblind_5, options);
-      mBubblesBlindOrig[5] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_colourblind_6, options);
-      mBubblesBlindOrig[6] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_colourblind_7, options);
-      mBubblesBlindOrig[7] = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_colourblind_8, options);
-      mFrozenBubblesOrig = new Bitmap[8];
-      mFrozenBubblesOrig[0] = BitmapFactory.decodeResource(
-        res, R.drawable.frozen_1, options);
-      mFrozenBubblesOrig[1] = BitmapFactory.decodeResource(
-        res, R.drawable.frozen_2, options);
-      mFrozenBubblesOrig[2] = BitmapFactory.decodeResource(
-        res, R.drawable.frozen_3, options);
-      mFrozenBubblesOrig[3] = BitmapFactory.decodeResource(
-        res, R.drawable.frozen_4, options);
-      mFrozenBubblesOrig[4] = BitmapFactory.decodeResource(
-        res, R.drawable.frozen_5, options);
-      mFrozenBubblesOrig[5] = BitmapFactory.decodeResource(
-        res, R.drawable.frozen_6, options);
-      mFrozenBubblesOrig[6] = BitmapFactory.decodeResource(
-        res, R.drawable.frozen_7, options);
-      mFrozenBubblesOrig[7] = BitmapFactory.decodeResource(
-        res, R.drawable.frozen_8, options);
-      mTargetedBubblesOrig = new Bitmap[6];
-      mTargetedBubblesOrig[0] = BitmapFactory.decodeResource(
-        res, R.drawable.fixed_1, options);
-      mTargetedBubblesOrig[1] = BitmapFactory.decodeResource(
-        res, R.drawable.fixed_2, options);
-      mTargetedBubblesOrig[2] = BitmapFactory.decodeResource(
-        res, R.drawable.fixed_3, options);
-      mTargetedBubblesOrig[3] = BitmapFactory.decodeResource(
-        res, R.drawable.fixed_4, options);
-      mTargetedBubblesOrig[4] = BitmapFactory.decodeResource(
-        res, R.drawable.fixed_5, options);
-      mTargetedBubblesOrig[5] = BitmapFactory.decodeResource(
-        res, R.drawable.fixed_6, options);
-      mBubbleBlinkOrig = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_blink, options);
-      mGameWonOrig = BitmapFactory.decodeResource(
-        res, R.drawable.win_panel, options);
-      mGameLostOrig = BitmapFactory.decodeResource(
-        res, R.drawable.lose_panel, options);
-      mGamePausedOrig = BitmapFactory.decodeResource(
-        res, R.drawable.pause_panel, options);
-      mHurryOrig = BitmapFactory.decodeResource(
-        res, R.drawable.hurry, options);
-      mPauseButtonOrig = BitmapFactory.decodeResource(
-        res, R.drawable.pause_button, options);
-      mPlayButtonOrig = BitmapFactory.decodeResource(
-        res, R.drawable.play_button, options);
-      mPenguinsOrig = BitmapFactory.decodeResource(
-        res, R.drawable.penguins, options);
-      mPenguins2Orig = BitmapFactory.decodeResource(
-        res, R.drawable.penguins2, options);
-      mCompressorHeadOrig = BitmapFactory.decodeResource(
-        res, R.drawable.compressor, options);
-      mCompressorOrig = BitmapFactory.decodeResource(
-        res, R.drawable.compressor_body, options);
-      mLifeOrig = BitmapFactory.decodeResource(
-        res, R.drawable.life, options);
-      mFontImageOrig = BitmapFactory.decodeResource(
-        res, R.drawable.bubble_font, options);
-      mBananaOrig = BitmapFactory.decodeResource(
-        res, R.drawable.banana, options);
-      mTomatoOrig = BitmapFactory.decodeResource(
-        res, R.drawable.tomato, options);
+      decodeImages(res, R.drawable.background2, true);
 
       mImageList = new Vector<BmpWrap>();
 
@@ -772,6 +888,7 @@ public class GameView extends SurfaceView
       mFontImage      = NewBmpWrap();
       mBanana         = NewBmpWrap();
       mTomato         = NewBmpWrap();
+      addAtlasImages();
 
       mFont             = new BubbleFont(mFontImage);
       mLauncher         = res.getDrawable(R.drawable.launcher);
@@ -800,107 +917,7 @@ public class GameView extends SurfaceView
       Resources res = mContext.getResources();
       setState(stateEnum.PAUSED);
 
-      BitmapFactory.Options options = new BitmapFactory.Options();
-
-      /*
-       *  The Options.inScaled field is only available starting at API 4.
-       */
-      try {
-        Field f = options.getClass().getField("inScaled");
-        f.set(options, Boolean.FALSE);
-      } catch (Exception ignore) {}
-
-      mBackgroundOrig = BitmapFactory.decodeResource(
-          res, R.drawable.background, options);
-      mBubblesOrig = new Bitmap[8];
-      mBubblesOrig[0] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_1, options);
-      mBubblesOrig[1] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_2, options);
-      mBubblesOrig[2] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_3, options);
-      mBubblesOrig[3] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_4, options);
-      mBubblesOrig[4] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_5, options);
-      mBubblesOrig[5] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_6, options);
-      mBubblesOrig[6] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_7, options);
-      mBubblesOrig[7] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_8, options);
-      mBubblesBlindOrig = new Bitmap[8];
-      mBubblesBlindOrig[0] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_colourblind_1, options);
-      mBubblesBlindOrig[1] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_colourblind_2, options);
-      mBubblesBlindOrig[2] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_colourblind_3, options);
-      mBubblesBlindOrig[3] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_colourblind_4, options);
-      mBubblesBlindOrig[4] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_colourblind_5, options);
-      mBubblesBlindOrig[5] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_colourblind_6, options);
-      mBubblesBlindOrig[6] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_colourblind_7, options);
-      mBubblesBlindOrig[7] = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_colourblind_8, options);
-      mFrozenBubblesOrig = new Bitmap[8];
-      mFrozenBubblesOrig[0] = BitmapFactory.decodeResource(
-          res, R.drawable.frozen_1, options);
-      mFrozenBubblesOrig[1] = BitmapFactory.decodeResource(
-          res, R.drawable.frozen_2, options);
-      mFrozenBubblesOrig[2] = BitmapFactory.decodeResource(
-          res, R.drawable.frozen_3, options);
-      mFrozenBubblesOrig[3] = BitmapFactory.decodeResource(
-          res, R.drawable.frozen_4, options);
-      mFrozenBubblesOrig[4] = BitmapFactory.decodeResource(
-          res, R.drawable.frozen_5, options);
-      mFrozenBubblesOrig[5] = BitmapFactory.decodeResource(
-          res, R.drawable.frozen_6, options);
-      mFrozenBubblesOrig[6] = BitmapFactory.decodeResource(
-          res, R.drawable.frozen_7, options);
-      mFrozenBubblesOrig[7] = BitmapFactory.decodeResource(
-          res, R.drawable.frozen_8, options);
-      mTargetedBubblesOrig = new Bitmap[6];
-      mTargetedBubblesOrig[0] = BitmapFactory.decodeResource(
-          res, R.drawable.fixed_1, options);
-      mTargetedBubblesOrig[1] = BitmapFactory.decodeResource(
-          res, R.drawable.fixed_2, options);
-      mTargetedBubblesOrig[2] = BitmapFactory.decodeResource(
-          res, R.drawable.fixed_3, options);
-      mTargetedBubblesOrig[3] = BitmapFactory.decodeResource(
-          res, R.drawable.fixed_4, options);
-      mTargetedBubblesOrig[4] = BitmapFactory.decodeResource(
-          res, R.drawable.fixed_5, options);
-      mTargetedBubblesOrig[5] = BitmapFactory.decodeResource(
-          res, R.drawable.fixed_6, options);
-      mBubbleBlinkOrig = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_blink, options);
-      mGameWonOrig = BitmapFactory.decodeResource(
-          res, R.drawable.win_panel, options);
-      mGameLostOrig = BitmapFactory.decodeResource(
-          res, R.drawable.lose_panel, options);
-      mGamePausedOrig = BitmapFactory.decodeResource(
-          res, R.drawable.pause_panel, options);
-      mHurryOrig = BitmapFactory.decodeResource(
-          res, R.drawable.hurry, options);
-      mPauseButtonOrig = null;
-      mPlayButtonOrig = null;
-      mPenguinsOrig = BitmapFactory.decodeResource(
-          res, R.drawable.penguins, options);
-      mPenguins2Orig = null;
-      mCompressorHeadOrig = BitmapFactory.decodeResource(
-          res, R.drawable.compressor, options);
-      mCompressorOrig = BitmapFactory.decodeResource(
-          res, R.drawable.compressor_body, options);
-      mLifeOrig = BitmapFactory.decodeResource(
-           res, R.drawable.life, options);
-      mFontImageOrig = BitmapFactory.decodeResource(
-          res, R.drawable.bubble_font, options);
-      mBananaOrig = null;
-      mTomatoOrig = null;
+      decodeImages(res, R.drawable.background, false);
 
       mImageList = new Vector<BmpWrap>();
 
@@ -940,6 +957,7 @@ public class GameView extends SurfaceView
       mFontImage      = NewBmpWrap();
       mBanana         = null;
       mTomato         = null;
+      addAtlasImages();
 
       mFont             = new BubbleFont(mFontImage);
       mLauncher         = res.getDrawable(R.drawable.launcher);
@@ -985,8 +1003,65 @@ public class GameView extends SurfaceView
       newGame(false);
     }
 
+    /**
+     * Register every sprite image except the background with the sprite
+     * atlas, so that they are scaled into one shared bitmap.
+     */
+    private void addAtlasImages() {
+      for (int i = 0; i < mBubbles.length; i++) {
+        mSpriteAtlas.add(mBubbles[i], mBubblesOrig[i]);
+      }
+      for (int i = 0; i < mBubblesBlind.length; i++) {
+        mSpriteAtlas.add(mBubblesBlind[i], mBubblesBlindOrig[i]);
+      }
+      for (int i = 0; i < mFrozenBubbles.length; i++) {
+        mSpriteAtlas.add(mFrozenBubbles[i], mFrozenBubblesOrig[i]);
+      }
+      for (int i = 0; i < mTargetedBubbles.length; i++) {
+        mSpriteAtlas.add(mTargetedBubbles[i], mTargetedBubblesOrig[i]);
+      }
+      mSpriteAtlas.add(mBubbleBlink, mBubbleBlinkOrig);
+      mSpriteAtlas.add(mGameWon, mGameWonOrig);
+      mSpriteAtlas.add(mGameLost, mGameLostOrig);
+      mSpriteAtlas.add(mGamePaused, mGamePausedOrig);
+      mSpriteAtlas.add(mHurry, mHurryOrig);
+      if (mPauseButton != null) {
+        mSpriteAtlas.add(mPauseButton, mPauseButtonOrig);
+      }
+      if (mPlayButton != null) {
+        mSpriteAtlas.add(mPlayButton, mPlayButtonOrig);
+      }
+      mSpriteAtlas.add(mPenguins, mPenguinsOrig);
+      if (mPenguins2 != null) {
+        mSpriteAtlas.add(mPenguins2, mPenguins2Orig);
+      }
+      mSpriteAtlas.add(mCompressorHead, mCompressorHeadOrig);
+      mSpriteAtlas.add(mCompressor, mCompressorOrig);
+      mSpriteAtlas.add(mLife, mLifeOrig);
+      mSpriteAtlas.add(mFontImage, mFontImageOrig);
+      if (mBanana != null) {
+        mSpriteAtlas.add(mBanana, mBananaOrig);
+      }
+      if (mTomato != null) {
+        mSpriteAtlas.add(mTomato, mTomatoOrig);
+      }
+    }
+
     public void cleanUp() {
+      /*
+       * Stop scaling images before the source images are recycled.  The
+       * worker threads need the surface holder lock to deliver images.
+       */
+      if (mBitmapScaler != null) {
+        mBitmapScaler.shutdown();
+      }
       synchronized(mSurfaceHolder) {
+        discardSnapshot();
+        mScaleGeneration++;
+        saveInputLog();
+        stopReplay(false);
+        stopSpectating(false);
+
         /*
          * I don't really understand why all this is necessary.
          * I used to get a crash (an out-of-memory error) once every six or
@@ -996,76 +1071,31 @@ public class GameView extends SurfaceView
          * and the crashes went away.
          */
         mImagesReady = false;
+        releaseGames();
         mFrozenGame1 = null;
         mFrozenGame2 = null;
 
-        mBackgroundOrig.recycle();
+        /*
+         * The original images belong to the process-wide image cache, which
+         * keeps them for the next game view until memory runs low, so they
+         * are returned to the cache rather than recycled.  At a display
+         * scale of 1 the background image is the original image.
+         */
+        if (mBackground.bmp == mBackgroundOrig) {
+          mBackground.bmp = null;
+        }
+        if (mDecodedImages != null) {
+          BitmapCache.release(mDecodedImages);
+        }
+        mDecodedImages  = null;
         mBackgroundOrig = null;
+        clearOriginals();
 
-        for (int i = 0; i < mBubblesOrig.length; i++) {
-          mBubblesOrig[i].recycle();
-          mBubblesOrig[i] = null;
-        }
-        mBubblesOrig = null;
-
-        for (int i = 0; i < mBubblesBlindOrig.length; i++) {
-          mBubblesBlindOrig[i].recycle();
-          mBubblesBlindOrig[i] = null;
-        }
-        mBubblesBlindOrig = null;
-
-        for (int i = 0; i < mFrozenBubblesOrig.length; i++) {
-          mFrozenBubblesOrig[i].recycle();
-          mFrozenBubblesOrig[i] = null;
-        }
-        mFrozenBubblesOrig = null;
-
-        for (int i = 0; i < mTargetedBubblesOrig.length; i++) {
-          mTargetedBubblesOrig[i].recycle();
-          mTargetedBubblesOrig[i] = null;
-        }
-        mTargetedBubblesOrig = null;
-
-        mBubbleBlinkOrig.recycle();
-        mBubbleBlinkOrig = null;
-        mGameWonOrig.recycle();
-        mGameWonOrig = null;
-        mGameLostOrig.recycle();
-        mGameLostOrig = null;
-        mGamePausedOrig.recycle();
-        mGamePausedOrig = null;
-        mHurryOrig.recycle();
-        mHurryOrig = null;
-        if (mPauseButtonOrig != null) {
-          mPauseButtonOrig.recycle();
-        }
-        mPauseButtonOrig = null;
-        if (mPlayButtonOrig != null) {
-          mPlayButtonOrig.recycle();
-        }
-        mPlayButtonOrig = null;
-        mPenguinsOrig.recycle();
-        mPenguinsOrig = null;
-        if (mPenguins2Orig != null) {
-          mPenguins2Orig.recycle();
-        }
-        mPenguins2Orig = null;
-        mCompressorHeadOrig.recycle();
-        mCompressorHeadOrig = null;
-        mCompressorOrig.recycle();
-        mCompressorOrig = null;
-        mLifeOrig.recycle();
-        mLifeOrig = null;
-        mFontImageOrig.recycle();
-        mFontImageOrig = null;
-        if (mBananaOrig != null) {
-          mBananaOrig.recycle();
-        }
-        mBananaOrig = null;
-        if (mTomatoOrig != null) {
-          mTomatoOrig.recycle();
-        }
-        mTomatoOrig = null;
+        /*
+         * The sprite images share the atlas bitmap, and no longer refer
+         * to it once it has been recycled.
+         */
+        mSpriteAtlas.recycle();
 
         /*
          * All the scalable bitmaps are located within the image list,
@@ -1080,7 +1110,7 @@ public class GameView extends SurfaceView
            * been recycled.
            */
           if (bmpWrap.bmp != null) {
-            bmpWrap.bmp.recycle();
+            BitmapBudget.release(BitmapBudget.CATEGORY_SCALED, bmpWrap.bmp);
           }
           bmpWrap.bmp = null;
         }
@@ -1125,6 +1155,8 @@ public class GameView extends SurfaceView
         mBanana         = null;
         mTomato         = null;
 
+        mFont.recycle();
+
         mSoundManager.cleanUp();
         mSoundManager = null;
         mLevelManager = null;
@@ -1135,32 +1167,151 @@ public class GameView extends SurfaceView
       }
     }
 
+    /**
+     * Forget every original image except the background.
+     */
+    private void clearOriginals() {
+      mBubblesOrig         = null;
+      mBubblesBlindOrig    = null;
+      mFrozenBubblesOrig   = null;
+      mTargetedBubblesOrig = null;
+      mBubbleBlinkOrig     = null;
+      mGameWonOrig         = null;
+      mGameLostOrig        = null;
+      mGamePausedOrig      = null;
+      mHurryOrig           = null;
+      mPauseButtonOrig     = null;
+      mPlayButtonOrig      = null;
+      mPenguinsOrig        = null;
+      mPenguins2Orig       = null;
+      mCompressorHeadOrig  = null;
+      mCompressorOrig      = null;
+      mLifeOrig            = null;
+      mFontImageOrig       = null;
+      mBananaOrig          = null;
+      mTomatoOrig          = null;
+    }
+
+    /**
+     * Obtain the original images from the process-wide image cache.  The
+     * images not already cached are decoded in parallel.
+     * @param res - the application resources.
+     * @param backgroundId - the background image resource id.
+     * @param multiplayer - <code>true</code> to obtain the images only
+     * used in a multiplayer game.
+     */
+    private void decodeImages(Resources res, int backgroundId,
+                              boolean multiplayer) {
+      int[] ids = {
+        backgroundId,
+        R.drawable.bubble_1, R.drawable.bubble_2, R.drawable.bubble_3,
+        R.drawable.bubble_4, R.drawable.bubble_5, R.drawable.bubble_6,
+        R.drawable.bubble_7, R.drawable.bubble_8,
+        R.drawable.bubble_colourblind_1, R.drawable.bubble_colourblind_2,
+        R.drawable.bubble_colourblind_3, R.drawable.bubble_colourblind_4,
+        R.drawable.bubble_colourblind_5, R.drawable.bubble_colourblind_6,
+        R.drawable.bubble_colourblind_7, R.drawable.bubble_colourblind_8,
+        R.drawable.frozen_1, R.drawable.frozen_2, R.drawable.frozen_3,
+        R.drawable.frozen_4, R.drawable.frozen_5, R.drawable.frozen_6,
+        R.drawable.frozen_7, R.drawable.frozen_8,
+        R.drawable.fixed_1, R.drawable.fixed_2, R.drawable.fixed_3,
+        R.drawable.fixed_4, R.drawable.fixed_5, R.drawable.fixed_6,
+        R.drawable.bubble_blink,
+        R.drawable.win_panel,
+        R.drawable.lose_panel,
+        R.drawable.pause_panel,
+        R.drawable.hurry,
+        multiplayer ? R.drawable.pause_button : 0,
+        multiplayer ? R.drawable.play_button : 0,
+        R.drawable.penguins,
+        multiplayer ? R.drawable.penguins2 : 0,
+        R.drawable.compressor,
+        R.drawable.compressor_body,
+        R.drawable.life,
+        R.drawable.bubble_font,
+        multiplayer ? R.drawable.banana : 0,
+        multiplayer ? R.drawable.tomato : 0 };
+
+      /*
+       * The background is the only opaque image.
+       */
+      boolean[] opaque = new boolean[ids.length];
+      opaque[0] = true;
+      mDecodedImages     = BitmapCache.acquire(res, ids, opaque);
+      mBackgroundId      = backgroundId;
+      mMultiplayerImages = multiplayer;
+      mOriginalsReleased = false;
+
+      int index = 0;
+      mBackgroundOrig = mDecodedImages[index++];
+      mBubblesOrig = new Bitmap[8];
+      for (int i = 0; i < mBubblesOrig.length; i++) {
+        mBubblesOrig[i] = mDecodedImages[index++];
+      }
+      mBubblesBlindOrig = new Bitmap[8];
+      for (int i = 0; i < mBubblesBlindOrig.length; i++) {
+        mBubblesBlindOrig[i] = mDecodedImages[index++];
+      }
+      mFrozenBubblesOrig = new Bitmap[8];
+      for (int i = 0; i < mFrozenBubblesOrig.length; i++) {
+        mFrozenBubblesOrig[i] = mDecodedImages[index++];
+      }
+      mTargetedBubblesOrig = new Bitmap[6];
+      for (int i = 0; i < mTargetedBubblesOrig.length; i++) {
+        mTargetedBubblesOrig[i] = mDecodedImages[index++];
+      }
+      mBubbleBlinkOrig    = mDecodedImages[index++];
+      mGameWonOrig        = mDecodedImages[index++];
+      mGameLostOrig       = mDecodedImages[index++];
+      mGamePausedOrig     = mDecodedImages[index++];
+      mHurryOrig          = mDecodedImages[index++];
+      mPauseButtonOrig    = mDecodedImages[index++];
+      mPlayButtonOrig     = mDecodedImages[index++];
+      mPenguinsOrig       = mDecodedImages[index++];
+      mPenguins2Orig      = mDecodedImages[index++];
+      mCompressorHeadOrig = mDecodedImages[index++];
+      mCompressorOrig     = mDecodedImages[index++];
+      mLifeOrig           = mDecodedImages[index++];
+      mFontImageOrig      = mDecodedImages[index++];
+      mBananaOrig         = mDecodedImages[index++];
+      mTomatoOrig         = mDecodedImages[index++];
+    }
+
     private void doDraw(Canvas canvas) {
       //Log.i("frozen-bubble", "doDraw()");
-      if (!mImagesReady) {
+      if (!mImagesReady || !mBitmapsReady) {
         //Log.i("frozen-bubble", "!mImagesReady, returning");
         return;
       }
+      mFrameStats.begin(FrameStats.PHASE_DRAW);
+      mFirstFrameDrawn = true;
       if ((mDisplayDX > 0) || (mDisplayDY > 0)) {
         //Log.i("frozen-bubble", "Drawing black background.");
         canvas.drawRGB(0, 0, 0);
       }
       drawBackground(canvas);
       if (mFrozenGame1 != null) {
-        mFrozenGame1.paint(canvas, mDisplayScale, mPlayer1DX, mDisplayDY);
+        mFrozenGame1.paint(canvas, mDisplayScale, mPlayer1DX, mDisplayDY,
+                           mDisplayDX, mDisplayDY);
       }
       if (FrozenBubble.arcadeGame) {
         drawDifficulty(canvas);
       }
       else if (numPlayers > 1) {
         if (mFrozenGame2 != null) {
-          mFrozenGame2.paint(canvas, mDisplayScale, mPlayer2DX, mDisplayDY);
+          mFrozenGame2.paint(canvas, mDisplayScale, mPlayer2DX, mDisplayDY,
+                             mDisplayDX, mDisplayDY);
         }
         drawWinTotals(canvas);
       }
       else {
         drawLevelNumber(canvas);
       }
+      mFrameStats.end(FrameStats.PHASE_DRAW);
+      if (mShowFrameStats) {
+        mFrameStats.paint(mFont, canvas, mDisplayScale, mDisplayDX,
+                          mDisplayDY);
+      }
     }
 
     /**
@@ -1185,10 +1336,12 @@ public class GameView extends SurfaceView
       toggleKeyPress(keyCode, true, true);
 
       /*
-       * Process the key press if it is a game input key.
+       * Queue the key press for the game thread if it is a game input
+       * key.
        */
-      synchronized(mSurfaceHolder) {
-          handled = mLocalInput.setKeyDown(keyCode);
+      if (isInputKey(keyCode)) {
+        handled = mInputQueue.offer(InputQueue.KEY_DOWN, keyCode, 0, 0,
+                                    msg.getEventTime());
       }
       return handled;
     }
@@ -1203,10 +1356,12 @@ public class GameView extends SurfaceView
     boolean doKeyUp(int keyCode, KeyEvent msg) {
       boolean handled = false;
       /*
-       * Process the key release if it is a game input key.
+       * Queue the key release for the game thread if it is a game input
+       * key.
        */
-      synchronized(mSurfaceHolder) {
-        handled = mLocalInput.setKeyUp(keyCode);
+      if (isInputKey(keyCode)) {
+        handled = mInputQueue.offer(InputQueue.KEY_UP, keyCode, 0, 0,
+                                    msg.getEventTime());
       }
       return handled;
     }
@@ -1264,10 +1419,27 @@ public class GameView extends SurfaceView
       }
 
       /*
-       * Process the screen touch event.
+       * Queue the screen touch event for the game thread.  Touch events
+       * are only processed while the game is running.
+       *
+       * Move events may batch several historical touch samples that
+       * occurred since the previous move event.  Queue each of them as
+       * a separate move event, so that the game thread can follow the
+       * complete path of the finger.
        */
-      synchronized(mSurfaceHolder) {
-        handled = mLocalInput.setTouchEvent(event.getAction(), x + x_offset, y);
+      if (mMode == stateEnum.RUNNING) {
+        if (event.getAction() == MotionEvent.ACTION_MOVE) {
+          int historySize = event.getHistorySize();
+          for (int index = 0; index < historySize; index++) {
+            mInputQueue.offer(InputQueue.TOUCH, MotionEvent.ACTION_MOVE,
+                              xFromScr(event.getHistoricalX(index)) +
+                              x_offset,
+                              yFromScr(event.getHistoricalY(index)),
+                              event.getHistoricalEventTime(index));
+          }
+        }
+        handled = mInputQueue.offer(InputQueue.TOUCH, event.getAction(),
+                                    x + x_offset, y, event.getEventTime());
       }
       return handled;
     }
@@ -1287,15 +1459,44 @@ public class GameView extends SurfaceView
       boolean handled = false;
       if (mMode == stateEnum.RUNNING) {
         if (event.getAction() == MotionEvent.ACTION_MOVE) {
-          synchronized(mSurfaceHolder) {
-            mLocalInput.setTrackBallDx(event.getX() * TRACKBALL_COEFFICIENT);
-          }
+          mInputQueue.offer(InputQueue.TRACKBALL, event.getAction(),
+                            event.getX() * TRACKBALL_COEFFICIENT, 0,
+                            event.getEventTime());
           handled = true;
         }
       }
       return handled;
     }
 
+    /**
+     * Apply the input events queued by the UI thread to the local
+     * player input, in the order they occurred.  This must only be
+     * called by the game thread, with the surface holder locked.
+     */
+    private void drainInputQueue() {
+      while (mInputQueue.poll()) {
+        switch (mInputQueue.getType()) {
+          case InputQueue.KEY_DOWN:
+            mLocalInput.setKeyDown(mInputQueue.getCode());
+            break;
+          case InputQueue.KEY_UP:
+            mLocalInput.setKeyUp(mInputQueue.getCode());
+            break;
+          case InputQueue.TOUCH:
+            mLocalInput.setTouchEvent(mInputQueue.getCode(),
+                                      mInputQueue.getX(),
+                                      mInputQueue.getY(),
+                                      mInputQueue.getTime());
+            break;
+          case InputQueue.TRACKBALL:
+            mLocalInput.setTrackBallDx(mInputQueue.getX());
+            break;
+          default:
+            break;
+        }
+      }
+    }
+
     private void drawAboutScreen(Canvas canvas) {
       canvas.drawRGB(0, 0, 0);
       if (!mBlankScreen) {
@@ -1362,6 +1563,58 @@ public class GameView extends SurfaceView
                   mDisplayScale, mDisplayDX, mDisplayDY);
     }
 
+    /**
+     * Discard the recorded frame so that the bitmaps it refers to may be
+     * recycled.  If the frame is being painted, this waits until it is
+     * painted.  This must be called with the surface holder locked, so
+     * that no frame is recorded until the bitmaps are recycled.
+     */
+    private void discardSnapshot() {
+      synchronized(mRenderLock) {
+        mSnapshot.clear();
+        if (mFont != null) {
+          mFont.recycleDiscarded();
+        }
+      }
+    }
+
+    /**
+     * Paint the screen for the current game state.
+     * @param c - the canvas to paint onto.
+     */
+    private void drawFrame(Canvas c) {
+      if (!mBitmapsReady) {
+        drawScalingScreen(c);
+      }
+      else if (mMode == stateEnum.ABOUT) {
+        drawAboutScreen(c);
+      }
+      else if (mMode == stateEnum.PAUSED) {
+        if (mNetworkManager != null) {
+          if (mShowNetwork) {
+            drawNetworkScreen(c);
+          }
+          else {
+            doDraw(c);
+          }
+        }
+        else if ((mHighScoreManager != null) && mShowScores) {
+          if (FrozenBubble.arcadeGame || (numPlayers > 1)) {
+            drawLowScoreScreen(c, mHighScoreManager.getLevel());
+          }
+          else {
+            drawHighScoreScreen(c, mHighScoreManager.getLevel());
+          }
+        }
+        else {
+          doDraw(c);
+        }
+      }
+      else {
+        doDraw(c);
+      }
+    }
+
     /**
      * Draw the high score screen for puzzle game mode.
      * <p>The objective of puzzle game mode is efficiency - fire as few
@@ -1417,28 +1670,25 @@ public class GameView extends SurfaceView
       int y = 433;
       int x;
       int level = mLevelManager.getLevelIndex() + 1;
+      /*
+       * The level number string is only rebuilt when the level changes,
+       * and is painted from the font string cache.
+       */
+      if (level != mLevelStringNumber) {
+        mLevelString       = Integer.toString(level);
+        mLevelStringNumber = level;
+      }
       if (level < 10) {
         x = 185;
-        mFont.paintChar(Character.forDigit(level, 10), x, y, canvas,
-                        mDisplayScale, mDisplayDX, mDisplayDY);
       }
       else if (level < 100) {
         x = 178;
-        x += mFont.paintChar(Character.forDigit(level / 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        mFont.paintChar(Character.forDigit(level % 10, 10), x, y, canvas,
-                        mDisplayScale, mDisplayDX, mDisplayDY);
       }
       else {
         x = 173;
-        x += mFont.paintChar(Character.forDigit(level / 100, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        level -= 100 * (level / 100);
-        x += mFont.paintChar(Character.forDigit(level / 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        mFont.paintChar(Character.forDigit(level % 10, 10), x, y, canvas,
-                        mDisplayScale, mDisplayDX, mDisplayDY);
       }
+      mFont.print(mLevelString, x, y, canvas,
+                  mDisplayScale, mDisplayDX, mDisplayDY);
     }
 
     /**
@@ -1520,6 +1770,18 @@ public class GameView extends SurfaceView
           y += ysp;
         }
       }
+      else if (gameLocale == FrozenBubble.LOCALE_INTERNET) {
+        if (status.isConnected) {
+          mFont.print("internet status: ]", x, y, canvas,
+                      mDisplayScale, mDisplayDX, mDisplayDY);
+          y += ysp;
+        }
+        else {
+          mFont.print("internet status: _", x, y, canvas,
+                      mDisplayScale, mDisplayDX, mDisplayDY);
+          y += ysp;
+        }
+      }
       else if (gameLocale == FrozenBubble.LOCALE_BLUETOOTH) {
         if (status.isConnected) {
           mFont.print("bluetooth status: ]", x, y, canvas,
@@ -1591,6 +1853,18 @@ public class GameView extends SurfaceView
                   mDisplayScale, mDisplayDX, mDisplayDY);
     }
 
+    /**
+     * Draw the screen shown while the images are being scaled for a new
+     * display scale.  The background is shown as soon as it is ready.
+     * @param canvas - the drawing canvas.
+     */
+    private void drawScalingScreen(Canvas canvas) {
+      canvas.drawRGB(0, 0, 0);
+      if (mBackgroundScaled) {
+        drawBackground(canvas);
+      }
+    }
+
     /**
      * Obtain the horizontal offset to approximately center a line of
      * 20 characters in the screen for the current device orientation.
@@ -1618,53 +1892,27 @@ public class GameView extends SurfaceView
     private void drawWinTotals(Canvas canvas) {
       int y = 433;
       int x = GAMEFIELD_WIDTH - 40;
-      int gamesWon1 = numPlayer1GamesWon;
-      int gamesWon2 = numPlayer2GamesWon;
+      /*
+       * The win totals string is only rebuilt when a total changes, and
+       * is painted from the font string cache.  The space on each side
+       * of the dash is as wide as the gap between the totals and the
+       * dash.
+       */
+      if ((numPlayer1GamesWon != mWinTotals1) ||
+          (numPlayer2GamesWon != mWinTotals2)) {
+        mWinTotalsString = numPlayer1GamesWon + " - " + numPlayer2GamesWon;
+        mWinTotals1      = numPlayer1GamesWon;
+        mWinTotals2      = numPlayer2GamesWon;
+      }
 
       if (numPlayer1GamesWon < 10) {
         x += 12;
-        x += mFont.paintChar(Character.forDigit(gamesWon1, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
       }
       else if (numPlayer1GamesWon < 100) {
         x += 5;
-        x += mFont.paintChar(Character.forDigit(gamesWon1 / 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        x += mFont.paintChar(Character.forDigit(gamesWon1 % 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-      }
-      else {
-        x += mFont.paintChar(Character.forDigit(gamesWon1 / 100, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        gamesWon1 -= 100 * (gamesWon1 / 100);
-        x += mFont.paintChar(Character.forDigit(gamesWon1 / 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        x += mFont.paintChar(Character.forDigit(gamesWon1 % 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-      }
-      x += 7;
-      x += mFont.paintChar('-', x, y, canvas,
-                           mDisplayScale, mDisplayDX, mDisplayDY);
-      x += 7;
-      if (numPlayer2GamesWon < 10) {
-        x += mFont.paintChar(Character.forDigit(gamesWon2, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-      }
-      else if (numPlayer2GamesWon < 100) {
-        x += mFont.paintChar(Character.forDigit(gamesWon2 / 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        x += mFont.paintChar(Character.forDigit(gamesWon2 % 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-      }
-      else {
-        x += mFont.paintChar(Character.forDigit(gamesWon2 / 100, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        gamesWon1 -= 100 * (gamesWon2 / 100);
-        x += mFont.paintChar(Character.forDigit(gamesWon2 / 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
-        x += mFont.paintChar(Character.forDigit(gamesWon2 % 10, 10), x, y, canvas,
-                             mDisplayScale, mDisplayDX, mDisplayDY);
       }
+      mFont.print(mWinTotalsString, x, y, canvas,
+                  mDisplayScale, mDisplayDX, mDisplayDY);
     }
 
     public boolean gameInProgress() {
@@ -1675,11 +1923,95 @@ public class GameView extends SurfaceView
       return mLevelManager.getLevelIndex();
     }
 
+    /**
+     * Collect the area of the surface that changed since the previous
+     * frame.  Sprites report the areas they moved from and to, and the
+     * areas of both players' game fields are combined into a single
+     * rectangle, as a surface may only be locked with one dirty area.
+     * @return the dirty rectangle, or <code>null</code> if the whole
+     * surface must be repainted.
+     */
+    private Rect getDirtyRect() {
+      mDirtyRect.setEmpty();
+      if (mFrozenGame1 != null) {
+        mFrozenGame1.addDirtyArea(mDirtyRect, mDisplayScale, mPlayer1DX,
+                                  mDisplayDY);
+      }
+      if ((numPlayers > 1) && (mFrozenGame2 != null)) {
+        mFrozenGame2.addDirtyArea(mDirtyRect, mDisplayScale, mPlayer2DX,
+                                  mDisplayDY);
+      }
+      if (mShowFrameStats) {
+        mFrameStats.addDirtyArea(mDirtyRect, mDisplayScale, mDisplayDX,
+                                 mDisplayDY);
+      }
+      /*
+       * Repaint the whole surface when a new game was started, as the
+       * level and score displays may have changed, and whenever a menu
+       * or score screen is shown.
+       */
+      if ((mFrozenGame1 != mDirtyGame1) || (mFrozenGame2 != mDirtyGame2)) {
+        mDirtyGame1 = mFrozenGame1;
+        mDirtyGame2 = mFrozenGame2;
+        mFullRedraw = true;
+      }
+      if (mFullRedraw || !mImagesReady || !mBitmapsReady ||
+          (mMode != stateEnum.RUNNING)) {
+        mFullRedraw = false;
+        return null;
+      }
+      return mDirtyRect;
+    }
+
+    /**
+     * Obtain the directory of the scaled image disk cache.  The images
+     * are cached per application version, as the artwork may change.
+     * @return the cache directory, or <code>null</code> if there is none.
+     */
+    private File getScaledCacheDir() {
+      File cacheDir = mContext.getCacheDir();
+      if (cacheDir == null) {
+        return null;
+      }
+      int version = 0;
+      try {
+        version = mContext.getPackageManager().
+          getPackageInfo(mContext.getPackageName(), 0).versionCode;
+      } catch (NameNotFoundException nnfe) {}
+      return new File(cacheDir, SCALED_CACHE_DIR + "-" + version);
+    }
+
     private int getScreenOrientation() {
       return FrozenBubble.getScreenOrientation(((Activity) mContext).
                                                getWindowManager());
     }
 
+    /**
+     * Determine whether a static screen is shown.  This is the case when
+     * the game is paused or the about screen is shown, unless this is a
+     * network game, as the network status is polled by the game loop.
+     * @return <code>true</code> if a static screen is shown.
+     */
+    private boolean isIdle() {
+      synchronized(mSurfaceHolder) {
+        return mRun && mSurfaceOK && mImagesReady && mBitmapsReady &&
+               (mMode != stateEnum.RUNNING) && (mNetworkManager == null);
+      }
+    }
+
+    /**
+     * Check if the provided key is used for player input.
+     * @param keyCode
+     * @return True if the key is processed by the player input.
+     */
+    private boolean isInputKey(int keyCode) {
+      return (keyCode == KeyEvent.KEYCODE_DPAD_LEFT) ||
+             (keyCode == KeyEvent.KEYCODE_DPAD_RIGHT) ||
+             (keyCode == KeyEvent.KEYCODE_DPAD_CENTER) ||
+             (keyCode == KeyEvent.KEYCODE_DPAD_UP) ||
+             (keyCode == KeyEvent.KEYCODE_DPAD_DOWN);
+    }
+
     private BmpWrap NewBmpWrap() {
       int new_img_id = mImageList.size();
       BmpWrap new_img = new BmpWrap(new_img_id);
@@ -1695,6 +2027,10 @@ public class GameView extends SurfaceView
     public void newGame(boolean firstLevel) {
       game1Status = gameEnum.PLAYING;
       synchronized(mSurfaceHolder) {
+        saveInputLog();
+        stopReplay(false);
+        stopSpectating(false);
+
         if (numPlayers > 1) {
           malusBar1 = new MalusBar(GameView.GAMEFIELD_WIDTH - 164, 40,
                                    mBanana, mTomato);
@@ -1709,37 +2045,31 @@ public class GameView extends SurfaceView
           }
         }
 
+        releaseGames();
         mImagesReady = false;
+        mInputLog = new InputLog(numPlayers, mLevelManager);
         mPlayer1.setGameRef(null);
-        mFrozenGame1 = new FrozenGame(mBackground, mBubbles, mBubblesBlind,
-                                      mFrozenBubbles, mTargetedBubbles,
-                                      mBubbleBlink, mGameWon, mGameLost,
-                                      mGamePaused, mHurry,
-                                      mPauseButton, mPlayButton, mPenguins,
-                                      mCompressorHead, mCompressor,
-                                      malusBar2, mLauncher,
-                                      mSoundManager, mLevelManager,
-                                      mHighScoreManager, mNetworkManager,
-                                      mPlayer1);
+        mFrozenGame1 = newFrozenGame(mPlayer1, mLevelManager,
+                                     mHighScoreManager, mNetworkManager,
+                                     System.currentTimeMillis());
+        mInputLog.addGame(mFrozenGame1);
         mPlayer1.setGameRef(mFrozenGame1);
 
         if (numPlayers > 1) {
           mPlayer2.setGameRef(null);
-          mFrozenGame2 = new FrozenGame(mBackground, mBubbles, mBubblesBlind,
-                                        mFrozenBubbles, mTargetedBubbles,
-                                        mBubbleBlink, mGameWon, mGameLost,
-                                        mGamePaused, mHurry,
-                                        null, null, mPenguins2,
-                                        mCompressorHead, mCompressor,
-                                        malusBar1, mLauncher,
-                                        mSoundManager, mLevelManager,
-                                        null, mNetworkManager,
-                                        mPlayer2);
+          mFrozenGame2 = newFrozenGame(mPlayer2, mLevelManager, null,
+                                       mNetworkManager,
+                                       System.currentTimeMillis());
+          mInputLog.addGame(mFrozenGame2);
           mPlayer2.setGameRef(mFrozenGame2);
 
           if (mNetworkManager != null) {
             mNetworkManager.newGame();
             mShowNetwork = true;
+            SpectatorCaster caster = mNetworkManager.getSpectatorCaster();
+            if (caster != null) {
+              caster.newMatch(mInputLog);
+            }
           }
         }
 
@@ -1751,6 +2081,78 @@ public class GameView extends SurfaceView
       }
 
       startOpponent();
+      wakeUp();
+    }
+
+    /**
+     * Create the game for the specified player.
+     * @param input - the player input, which provides the player ID.
+     * @param levelManager - the level manager providing the level.
+     * @param highscoreManager - the high score manager, which is only
+     * used by player 1, or <code>null</code> to not record scores.
+     * @param networkManager - the network manager, or <code>null</code>
+     * if this is not a network game.
+     * @param seed - the random number generator seed.
+     * @return the new game.
+     */
+    private FrozenGame newFrozenGame(VirtualInput input,
+                                     LevelManager levelManager,
+                                     HighscoreManager highscoreManager,
+                                     NetworkManager networkManager,
+                                     long seed) {
+      if (input.playerID == VirtualInput.PLAYER1) {
+        return new FrozenGame(mBackground, mBubbles, mBubblesBlind,
+                              mFrozenBubbles, mTargetedBubbles,
+                              mBubbleBlink, mGameWon, mGameLost,
+                              mGamePaused, mHurry,
+                              mPauseButton, mPlayButton, mPenguins,
+                              mCompressorHead, mCompressor,
+                              malusBar2, mLauncher,
+                              mSoundManager, levelManager,
+                              highscoreManager, networkManager,
+                              input, seed);
+      }
+      else {
+        return new FrozenGame(mBackground, mBubbles, mBubblesBlind,
+                              mFrozenBubbles, mTargetedBubbles,
+                              mBubbleBlink, mGameWon, mGameLost,
+                              mGamePaused, mHurry,
+                              null, null, mPenguins2,
+                              mCompressorHead, mCompressor,
+                              malusBar1, mLauncher,
+                              mSoundManager, levelManager,
+                              null, networkManager,
+                              input, seed);
+      }
+    }
+
+    /**
+     * Create the games of the match being broadcast to the spectator.
+     * The games are created like the games of a replay, with both
+     * players flagged as remote so that only the broadcast actions are
+     * applied.
+     */
+    private void newSpectatorGames() {
+      InputLog log = mSpectator.getMatch();
+      mSpectatorMatch = mSpectator.getMatchCount();
+      log.applyPreferences();
+
+      malusBar1 = new MalusBar(GameView.GAMEFIELD_WIDTH - 164, 40,
+                               mBanana, mTomato);
+      malusBar2 = new MalusBar(GameView.GAMEFIELD_WIDTH + 134, 40,
+                               mBanana, mTomato);
+
+      releaseGames();
+      mImagesReady = false;
+      LevelManager levelManager = log.newLevelManager();
+      mFrozenGame1 = newFrozenGame(
+        new GameReplay.ReplayInput(VirtualInput.PLAYER1, true),
+        levelManager, null, null, log.gameSeeds[0]);
+      mFrozenGame2 = newFrozenGame(
+        new GameReplay.ReplayInput(VirtualInput.PLAYER2, true),
+        levelManager, null, null, log.gameSeeds[1]);
+      mSpectator.setGames(mFrozenGame1, mFrozenGame2);
+      mImagesReady = true;
     }
 
     private void nextLevel() {
@@ -1758,6 +2160,43 @@ public class GameView extends SurfaceView
       newGame(false);
     }
 
+    /**
+     * Install an image scaled by a worker thread, unless it was scaled
+     * for a display scale that has since been superseded.
+     * @param generation - the scaling request generation.
+     * @param name - the image name.
+     * @param bitmap - the scaled image.
+     */
+    public void onBitmapScaled(int generation, String name, Bitmap bitmap) {
+      synchronized(mSurfaceHolder) {
+        if (generation != mScaleGeneration) {
+          BitmapBudget.release(BitmapBudget.CATEGORY_SCALED, bitmap);
+          return;
+        }
+        discardSnapshot();
+        if (SCALED_BACKGROUND_1P.equals(name) ||
+            SCALED_BACKGROUND_2P.equals(name)) {
+          if ((mBackground.bmp != null) &&
+              (mBackground.bmp != mBackgroundOrig)) {
+            BitmapBudget.release(BitmapBudget.CATEGORY_SCALED,
+                                 mBackground.bmp);
+          }
+          mBackground.bmp   = bitmap;
+          mBackgroundScaled = true;
+        }
+        else {
+          mSpriteAtlas.install(bitmap, mAtlasLayout);
+          mAtlasScaled = true;
+        }
+        mBitmapsReady = mBackgroundScaled && mAtlasScaled;
+        mFullRedraw   = true;
+        if (mBitmapsReady) {
+          releaseOriginals();
+        }
+      }
+      wakeUp();
+    }
+
     public void pause() {
       synchronized(mSurfaceHolder) {
         if (mMode == stateEnum.RUNNING) {
@@ -1771,8 +2210,92 @@ public class GameView extends SurfaceView
             mFrozenGame2.pause();
           if (mHighScoreManager != null)
             mHighScoreManager.pauseLevel();
+          saveInputLog();
+          saveFrameStats();
+        }
+      }
+    }
+
+    /**
+     * Replay a recorded game in real time in place of the current game.
+     * <p>The current game is abandoned, and a new game is started when
+     * the replay is finished.  A replay can't be played during a network
+     * game, and the recorded game must have the same number of players
+     * as the current game.
+     * @param log - the input log of the game to replay.
+     * @return <code>true</code> if the replay was started.
+     */
+    public boolean playReplay(InputLog log) {
+      synchronized(mSurfaceHolder) {
+        if ((mNetworkManager != null) || (log.numPlayers != numPlayers)) {
+          return false;
         }
+
+        if (mOpponent != null) {
+          mOpponent.stopThread();
+          mOpponent = null;
+        }
+
+        saveInputLog();
+        mInputLog = null;
+
+        /*
+         * The recorded game preferences are in effect for the duration
+         * of the replay, after which the player preferences are
+         * restored.
+         */
+        if (mReplayPrefs == null) {
+          mReplayPrefs = new InputLog();
+          mReplayPrefs.capturePreferences();
+        }
+        log.applyPreferences();
+
+        if (numPlayers > 1) {
+          malusBar1 = new MalusBar(GameView.GAMEFIELD_WIDTH - 164, 40,
+                                   mBanana, mTomato);
+          malusBar2 = new MalusBar(GameView.GAMEFIELD_WIDTH + 134, 40,
+                                   mBanana, mTomato);
+        }
+
+        /*
+         * Detach the player inputs from the games, so that only the
+         * recorded inputs are applied.
+         */
+        releaseGames();
+        mImagesReady = false;
+        mPlayer1.setGameRef(null);
+        mPlayer2.setGameRef(null);
+        LevelManager levelManager = log.newLevelManager();
+        mFrozenGame1 = newFrozenGame(
+          new GameReplay.ReplayInput(VirtualInput.PLAYER1, log.isRemote[0]),
+          levelManager, null, null, log.gameSeeds[0]);
+        mFrozenGame2 = null;
+        if (numPlayers > 1) {
+          mFrozenGame2 = newFrozenGame(
+            new GameReplay.ReplayInput(VirtualInput.PLAYER2, log.isRemote[1]),
+            levelManager, null, null, log.gameSeeds[1]);
+        }
+        mReplay = new GameReplay(log, mFrozenGame1, mFrozenGame2);
+        mImagesReady = true;
+      }
+      return true;
+    }
+
+    /**
+     * Replay the game saved in <code>INPUT_LOG_FILE</code> in place of
+     * the current game.
+     * @return <code>true</code> if the replay was started.
+     * @see #playReplay(InputLog)
+     */
+    public boolean playSavedReplay() {
+      InputLog log;
+      try {
+        log = InputLog.loadFromFile(new File(mContext.getFilesDir(),
+                                             INPUT_LOG_FILE));
+      } catch (IOException ioe) {
+        return false;
       }
+      return playReplay(log);
     }
 
     public void pauseButtonPressed(boolean pauseKeyPressed) {
@@ -1781,46 +2304,129 @@ public class GameView extends SurfaceView
       }
     }
 
-    private void resizeBitmaps() {
-      //Log.i("frozen-bubble", "resizeBitmaps()");
-      scaleFrom(mBackground, mBackgroundOrig);
-      for (int i = 0; i < mBubblesOrig.length; i++) {
-        scaleFrom(mBubbles[i], mBubblesOrig[i]);
+    /**
+     * Release the bitmaps held by the current games before they are
+     * replaced, so that their allocations may be reused by the new games.
+     */
+    private void releaseGames() {
+      discardSnapshot();
+      if (mFrozenGame1 != null) {
+        mFrozenGame1.recycle();
       }
-      for (int i = 0; i < mBubblesBlind.length; i++) {
-        scaleFrom(mBubblesBlind[i], mBubblesBlindOrig[i]);
+      if (mFrozenGame2 != null) {
+        mFrozenGame2.recycle();
       }
-      for (int i = 0; i < mFrozenBubbles.length; i++) {
-        scaleFrom(mFrozenBubbles[i], mFrozenBubblesOrig[i]);
+    }
+
+    /**
+     * Evict the original images from the process-wide image cache once
+     * the scaled images are installed, since they are no longer drawn.
+     * Only the background image is kept at a display scale of 1, since
+     * it is then drawn directly.
+     */
+    private void releaseOriginals() {
+      if (mOriginalsReleased || (mDecodedImages == null)) {
+        return;
       }
-      for (int i = 0; i < mTargetedBubbles.length; i++) {
-        scaleFrom(mTargetedBubbles[i], mTargetedBubblesOrig[i]);
+      Bitmap[] released = mDecodedImages;
+      if (mBackground.bmp == mBackgroundOrig) {
+        released       = released.clone();
+        released[0]    = null;
+        mDecodedImages = new Bitmap[] { mBackgroundOrig };
       }
-      scaleFrom(mBubbleBlink, mBubbleBlinkOrig);
-      scaleFrom(mGameWon, mGameWonOrig);
-      scaleFrom(mGameLost, mGameLostOrig);
-      scaleFrom(mGamePaused, mGamePausedOrig);
-      scaleFrom(mHurry, mHurryOrig);
-      if ((mPauseButton != null) && (mPauseButtonOrig != null)) {
-        scaleFrom(mPauseButton, mPauseButtonOrig);
+      else {
+        mDecodedImages  = null;
+        mBackgroundOrig = null;
+      }
+      mSpriteAtlas.releaseSources();
+      clearOriginals();
+      BitmapCache.evict(released);
+      mOriginalsReleased = true;
+    }
+
+    /**
+     * Request the images scaled for the current display scale.  The
+     * background and the sprite atlas are scaled by worker threads, or
+     * loaded from the disk cache, and installed as each one completes.
+     * Nothing is done if the images for this scale are already installed
+     * or being scaled.
+     */
+    private void resizeBitmaps() {
+      //Log.i("frozen-bubble", "resizeBitmaps()");
+      if ((mScaleGeneration > 0) && (mRequestedScale == mDisplayScale)) {
+        return;
       }
-      if ((mPlayButton != null) && (mPlayButtonOrig != null)) {
-        scaleFrom(mPlayButton, mPlayButtonOrig);
+      if (mBitmapScaler == null) {
+        mBitmapScaler = new BitmapScaler(getScaledCacheDir(), this);
       }
-      scaleFrom(mPenguins, mPenguinsOrig);
-      if ((mPenguins2 != null) && (mPenguins2Orig != null)) {
-        scaleFrom(mPenguins2, mPenguins2Orig);
+      mRequestedScale = mDisplayScale;
+      mScaleGeneration++;
+      discardSnapshot();
+
+      /*
+       * Obtain the original images again if they were released.  They
+       * were evicted from the image cache, so apart from the background
+       * image kept at a display scale of 1 they are decoded again, which
+       * only happens when the display scale changes.  The images obtained
+       * previously are returned afterwards, so that the background image
+       * in use at a display scale of 1 is never evicted meanwhile.
+       */
+      if (mOriginalsReleased) {
+        Bitmap[] kept = mDecodedImages;
+        decodeImages(mContext.getResources(), mBackgroundId,
+                     mMultiplayerImages);
+        addAtlasImages();
+        if (kept != null) {
+          BitmapCache.release(kept);
+        }
       }
-      scaleFrom(mCompressorHead, mCompressorHeadOrig);
-      scaleFrom(mCompressor, mCompressorOrig);
-      scaleFrom(mLife, mLifeOrig);
-      scaleFrom(mFontImage, mFontImageOrig);
-      if ((mBanana != null) && (mBananaOrig != null)) {
-        scaleFrom(mBanana, mBananaOrig);
+      mAtlasScaled      = false;
+      mBackgroundScaled = false;
+      mBitmapsReady     = false;
+
+      final int    generation = mScaleGeneration;
+      final double scale      = mDisplayScale;
+      if ((scale > 0.99999) && (scale < 1.00001)) {
+        scaleFrom(mBackground, mBackgroundOrig);
+        mBackgroundScaled = true;
       }
-      if ((mTomato != null) && (mTomatoOrig != null)) {
-        scaleFrom(mTomato, mTomatoOrig);
+      else {
+        final Bitmap background = mBackgroundOrig;
+        final int    width  = (int)(background.getWidth()  * scale);
+        final int    height = (int)(background.getHeight() * scale);
+        Bitmap.Config config = background.getConfig();
+        if (config == null) {
+          config = Bitmap.Config.ARGB_8888;
+        }
+        String name = mMultiplayerImages ? SCALED_BACKGROUND_2P :
+                                           SCALED_BACKGROUND_1P;
+        mBitmapScaler.scale(generation, name, scale,
+                            width, height, config,
+                            new BitmapScaler.Renderer() {
+          public void render(Canvas canvas) {
+            Paint paint = new Paint();
+            paint.setFilterBitmap(true);
+            canvas.drawBitmap(background, null,
+                              new Rect(0, 0, width, height), paint);
+          }
+        });
       }
+
+      /*
+       * Every other image is scaled into the sprite atlas.  The region
+       * table only depends on the image sizes and the scale, so it is
+       * computed here even when the atlas comes from the cache.
+       */
+      final SpriteAtlas.Layout layout = mSpriteAtlas.layout(scale);
+      mAtlasLayout = layout;
+      mBitmapScaler.scale(generation, SCALED_ATLAS + layout.regions.length,
+                          scale, layout.width, layout.height,
+                          Bitmap.Config.ARGB_8888,
+                          new BitmapScaler.Renderer() {
+        public void render(Canvas canvas) {
+          mSpriteAtlas.render(canvas, layout);
+        }
+      });
       //Log.i("frozen-bubble", "resizeBitmaps done.");
       mImagesReady = true;
     }
@@ -1873,60 +2479,105 @@ public class GameView extends SurfaceView
     @Override
     public void run() {
       while (mRun) {
-        long now = System.currentTimeMillis();
-        long delay = FRAME_DELAY + mLastTime - now;
-        if (delay > 0) try {
-          sleep(delay);
-        } catch (InterruptedException e) {}
-        mLastTime = now;
+        /*
+         * If a static screen is shown and nothing changed since it was
+         * painted, block until something does.  The frame schedule is
+         * restarted afterwards.
+         */
+        if (waitForSceneChange(isIdle())) {
+          mFrameStats.idle();
+          mNextFrameTime = 0;
+        }
+        /*
+         * Frames are scheduled at fixed intervals of the monotonic clock
+         * rather than at a delay after the previous frame, so that the
+         * frame timing does not drift.  If the loop fell more than a
+         * frame behind, the schedule is restarted instead of rendering
+         * a burst of late frames.
+         */
+        long now = System.nanoTime();
+        long delay = mNextFrameTime - now;
+        if (delay > 0) {
+          try {
+            sleep(delay / 1000000L, (int)(delay % 1000000L));
+          } catch (InterruptedException e) {}
+        }
+        else if ((mNextFrameTime == 0) ||
+                 (-delay > TICK_NANOS * mTicksPerFrame)) {
+          mNextFrameTime = now;
+        }
+        mNextFrameTime += TICK_NANOS * mTicksPerFrame;
+        long frameStart = System.nanoTime();
+        mFrameStats.frame();
+        synchronized(mSurfaceHolder) {
+          drainInputQueue();
+        }
         Canvas c = null;
         try {
           if (surfaceOK()) {
-            c = mSurfaceHolder.lockCanvas(null);
-            if (c != null) {
-              synchronized(mSurfaceHolder) {
-                if (mRun) {
-                  monitorRemotePlayer();
-                  if (mMode == stateEnum.ABOUT) {
-                    drawAboutScreen(c);
-                  }
-                  else if (mMode == stateEnum.PAUSED) {
-                    if (mNetworkManager != null) {
-                      if (mShowNetwork) {
-                        drawNetworkScreen(c);
-                      }
-                      else {
-                        doDraw(c);
-                      }
-                    }
-                    else if ((mHighScoreManager != null) && mShowScores) {
-                      if (FrozenBubble.arcadeGame || (numPlayers > 1)) {
-                        drawLowScoreScreen(c, mHighScoreManager.getLevel());
-                      }
-                      else {
-                        drawHighScoreScreen(c, mHighScoreManager.getLevel());
-                      }
-                    }
-                    else {
-                      doDraw(c);
+            /*
+             * Update the game state before locking the canvas, so that
+             * only the area of the surface that changed is locked and
+             * repainted.
+             */
+            Rect    dirty  = null;
+            boolean record = false;
+            synchronized(mSurfaceHolder) {
+              if (mRun) {
+                mFrameStats.begin(FrameStats.PHASE_NETWORK);
+                monitorRemotePlayer();
+                mFrameStats.end(FrameStats.PHASE_NETWORK);
+                if (mMode == stateEnum.RUNNING) {
+                  if (mModeWas != stateEnum.RUNNING) {
+                    if (mGameListener != null) {
+                      mGameListener.onGameEvent(eventEnum.GAME_RESUME);
                     }
+                    mModeWas = stateEnum.RUNNING;
+                    resumeGame();
                   }
-                  else {
-                    if (mMode == stateEnum.RUNNING) {
-                      if (mModeWas != stateEnum.RUNNING) {
-                        if (mGameListener != null) {
-                          mGameListener.onGameEvent(eventEnum.GAME_RESUME);
-                        }
-                        mModeWas = stateEnum.RUNNING;
-                        resumeGame();
-                      }
-                      updateGameState();
+                  mFrameStats.begin(FrameStats.PHASE_UPDATE);
+                  for (int tick = 0; tick < mTicksPerFrame; tick++) {
+                    if (mMode != stateEnum.RUNNING) {
+                      break;
                     }
-                    doDraw(c);
+                    updateGameState();
                   }
+                  mFrameStats.end(FrameStats.PHASE_UPDATE);
+                }
+                dirty = getDirtyRect();
+                /*
+                 * Record the frame while the game state is locked.  It is
+                 * painted onto the surface after the lock is released, so
+                 * that input, state saving and network events are not
+                 * held up while the frame is painted.
+                 */
+                if ((dirty == null) || !dirty.isEmpty()) {
+                  mSnapshot.clear();
+                  mFont.recycleDiscarded();
+                  drawFrame(mSnapshot);
+                  record = true;
                 }
               }
             }
+            /*
+             * Nothing is repainted if no area of the game surface changed.
+             * An empty dirty rectangle would otherwise lock and repaint
+             * the whole surface.
+             */
+            if (record) {
+              mFrameStats.begin(FrameStats.PHASE_LOCK);
+              c = mSurfaceHolder.lockCanvas(dirty);
+              mFrameStats.end(FrameStats.PHASE_LOCK);
+            }
+            if (c != null) {
+              mFrameStats.begin(FrameStats.PHASE_RENDER);
+              synchronized(mRenderLock) {
+                mCanvasTarget.setCanvas(c);
+                mSnapshot.replay(mCanvasTarget);
+                mCanvasTarget.setCanvas(null);
+              }
+              mFrameStats.end(FrameStats.PHASE_RENDER);
+            }
           }
         } finally {
           /*
@@ -1935,6 +2586,7 @@ public class GameView extends SurfaceView
            * inconsistent state.
            */
           if (c != null) {
+            mFrameStats.begin(FrameStats.PHASE_POST);
             try {
               mSurfaceHolder.unlockCanvasAndPost(c);
             } catch (IllegalStateException ise) {
@@ -1942,11 +2594,78 @@ public class GameView extends SurfaceView
                * Surface has already been released.
                */
             }
+            mFrameStats.end(FrameStats.PHASE_POST);
+            /*
+             * If a bubble was launched by a screen touch, the frame
+             * showing it has now been posted.
+             */
+            if (mLaunchTouchTime != 0) {
+              mFrameStats.record(FrameStats.PHASE_TOUCH,
+                (SystemClock.uptimeMillis() - mLaunchTouchTime) * 1000000L);
+              mLaunchTouchTime = 0;
+            }
+            if (mFirstFrameDrawn && !mFirstFramePosted) {
+              mFrameStats.recordFirstFrame(System.nanoTime() - mCreateTime);
+              mFirstFramePosted = true;
+            }
           }
         }
+        updatePacing(System.nanoTime() - frameStart);
       }
     }
 
+    /**
+     * Save the game loop phase timings to private storage, so that the
+     * cause of dropped frames may be found on the reporting device.
+     * <p>This is called with the game state locked, so only a copy of
+     * the timings is made here.  The copy is written to storage by a
+     * background thread.
+     */
+    private void saveFrameStats() {
+      final StringWriter copy = new StringWriter();
+      try {
+        mFrameStats.writeTo(copy);
+        BitmapBudget.writeTo(copy);
+      } catch (IOException ioe) {
+        return;
+      }
+
+      final Context context = mContext;
+      InputLog.getFileThread().execute(new Runnable() {
+        public void run() {
+          Writer out = null;
+          try {
+            out = new OutputStreamWriter(
+              context.openFileOutput(FRAME_STATS_FILE, Context.MODE_PRIVATE));
+            out.write(copy.toString());
+          } catch (IOException ioe) {
+            //Log.i("frozen-bubble", "Unable to save the frame timings.");
+          } finally {
+            if (out != null) {
+              try {
+                out.close();
+              } catch (IOException ignore) {}
+            }
+          }
+        }
+      });
+    }
+
+    /**
+     * Save the input log of the current game to private storage, so
+     * that the game may be replayed to reproduce a reported problem.
+     * <p>This is called with the game state locked, so only a copy of
+     * the log is made here.  The copy is written to storage by a
+     * background thread.
+     */
+    private void saveInputLog() {
+      if ((mInputLog == null) || (mInputLog.getNumRecords() == 0)) {
+        return;
+      }
+
+      mInputLog.saveToFile(new File(mContext.getFilesDir(), INPUT_LOG_FILE));
+    }
+
     /**
      * Dump game state to the provided Bundle. Typically called when the
      * Activity is being suspended.
@@ -1982,7 +2701,7 @@ public class GameView extends SurfaceView
 
     private void scaleFrom(BmpWrap image, Bitmap bmp) {
       if ((image.bmp != null) && (image.bmp != bmp)) {
-        image.bmp.recycle();
+        BitmapBudget.release(BitmapBudget.CATEGORY_SCALED, image.bmp);
       }
 
       if ((mDisplayScale > 0.99999) && (mDisplayScale < 1.00001)) {
@@ -1993,6 +2712,7 @@ public class GameView extends SurfaceView
       int dstWidth  = (int)(bmp.getWidth()  * mDisplayScale);
       int dstHeight = (int)(bmp.getHeight() * mDisplayScale);
       image.bmp = Bitmap.createScaledBitmap(bmp, dstWidth, dstHeight, true);
+      BitmapBudget.track(BitmapBudget.CATEGORY_SCALED, image.bmp);
     }
 
     /**
@@ -2026,30 +2746,10 @@ public class GameView extends SurfaceView
 
       synchronized(mSurfaceHolder) {
         /*
-         * Set the launcher bubble colors.
-         */
-        if ((newAction.launchBubbleColor  > -1) &&
-            (newAction.launchBubbleColor  <  8) &&
-            (newAction.nextBubbleColor    > -1) &&
-            (newAction.nextBubbleColor    <  8) &&
-            (newAction.newNextBubbleColor > -1) &&
-            (newAction.newNextBubbleColor <  8)) {
-          gameRef.setLaunchBubbleColors(newAction.launchBubbleColor,
-                                        newAction.nextBubbleColor,
-                                        newAction.newNextBubbleColor);
-        }
-
-        /*
-         * Set the launcher aim position.
-         */
-        gameRef.setPosition(newAction.aimPosition);
-
-        /*
-         * Process a compressor lower request.
+         * Set the launcher bubble colors, aim position, compressor and
+         * attack bar.
          */
-        if (newAction.compress) {
-          gameRef.lowerCompressor(true);
-        }
+        gameRef.applyAction(newAction);
 
         /*
          * Process a bubble launch request.
@@ -2073,14 +2773,6 @@ public class GameView extends SurfaceView
             mGameThread.toggleKeyPress(KeyEvent.KEYCODE_P, true, false);
           }
         }
-
-        /*
-         * Set the current value of the attack bar.
-         */
-        if (newAction.attackBarBubbles > -1) {
-          gameRef.malusBar.setAttackBubbles(newAction.attackBarBubbles,
-                                            newAction.attackBubbles);
-        }
       }
     }
 
@@ -2092,6 +2784,17 @@ public class GameView extends SurfaceView
 
     public void setRunning(boolean b) {
       mRun = b;
+      wakeUp();
+    }
+
+    /**
+     * Show or hide the overlay that summarizes the game loop timings.
+     * @param show - <code>true</code> to show the overlay.
+     */
+    public void setShowFrameStats(boolean show) {
+      mShowFrameStats = show;
+      mFullRedraw     = true;
+      wakeUp();
     }
 
     public void setState(stateEnum newMode) {
@@ -2105,17 +2808,21 @@ public class GameView extends SurfaceView
          * a separate execution thread that checks for state transitions
          * does not get a chance to run between calls to this method.
          */
-        if (newMode != mMode)
-          mModeWas = mMode;
+        if (newMode != mMode) {
+          mModeWas    = mMode;
+          mFullRedraw = true;
+        }
 
         mMode = newMode;
       }
+      wakeUp();
     }
 
     public void setSurfaceOK(boolean ok) {
       synchronized(mSurfaceHolder) {
         mSurfaceOK = ok;
       }
+      wakeUp();
     }
 
     public void setSurfaceSize(int width, int height) {
@@ -2170,7 +2877,55 @@ public class GameView extends SurfaceView
         }
         mPlayer2DX = (int)(mDisplayDX + (mDisplayScale * (gameWidth / 2)));
         resizeBitmaps();
+        mFullRedraw = true;
+      }
+      wakeUp();
+    }
+
+    /**
+     * Watch the matches broadcast by a network game on the local
+     * network in place of the current game.
+     * <p>The current game is abandoned, and the games of each broadcast
+     * match are shown as soon as its header is received, until
+     * <code>stopSpectating()</code> is called.  A network game can't be
+     * spectated during a network game, and the current game must be a
+     * two player game.
+     * @param spectator - the spectator that receives the broadcast.
+     * @return <code>true</code> if spectating was started.
+     */
+    public boolean spectate(GameSpectator spectator) {
+      synchronized(mSurfaceHolder) {
+        if ((mNetworkManager != null) || (numPlayers != 2)) {
+          return false;
+        }
+
+        if (mOpponent != null) {
+          mOpponent.stopThread();
+          mOpponent = null;
+        }
+
+        saveInputLog();
+        mInputLog = null;
+        stopReplay(false);
+        stopSpectating(false);
+
+        /*
+         * The broadcast match preferences are in effect while
+         * spectating, after which the player preferences are restored.
+         */
+        mReplayPrefs = new InputLog();
+        mReplayPrefs.capturePreferences();
+
+        /*
+         * Detach the player inputs from the games, so that only the
+         * broadcast inputs are applied.
+         */
+        mPlayer1.setGameRef(null);
+        mPlayer2.setGameRef(null);
+        mSpectator      = spectator;
+        mSpectatorMatch = 0;
       }
+      return true;
     }
 
     /**
@@ -2190,6 +2945,41 @@ public class GameView extends SurfaceView
       }
     }
 
+    /**
+     * Stop the replay in progress, if any, and restore the player
+     * preferences.
+     * @param restart - if <code>true</code>, start a new game.
+     */
+    private void stopReplay(boolean restart) {
+      if (mReplay != null) {
+        mReplay = null;
+        mReplayPrefs.applyPreferences();
+        mReplayPrefs = null;
+        if (restart) {
+          newGame(false);
+        }
+      }
+    }
+
+    /**
+     * Stop spectating, if the games shown are those of a broadcast
+     * match, and restore the player preferences.
+     * @param restart - if <code>true</code>, start a new game.
+     */
+    public void stopSpectating(boolean restart) {
+      synchronized(mSurfaceHolder) {
+        if (mSpectator != null) {
+          mSpectator.cleanUp();
+          mSpectator = null;
+          mReplayPrefs.applyPreferences();
+          mReplayPrefs = null;
+          if (restart) {
+            newGame(false);
+          }
+        }
+      }
+    }
+
     public boolean surfaceOK() {
       synchronized(mSurfaceHolder) {
         return mSurfaceOK;
@@ -2328,12 +3118,39 @@ public class GameView extends SurfaceView
     }
 
     private void updateGameState() {
+      if (mReplay != null) {
+        if (!mReplay.step()) {
+          stopReplay(true);
+        }
+        return;
+      }
+
+      /*
+       * When spectating, the current games are replaced whenever a new
+       * match is broadcast.
+       */
+      if (mSpectator != null) {
+        if ((mSpectator.getMatchCount() != mSpectatorMatch) &&
+            (mSpectator.getMatch() != null)) {
+          newSpectatorGames();
+        }
+        mSpectator.step();
+        return;
+      }
+
       if ((mFrozenGame1 == null) ||
           ((mFrozenGame2 == null) && (numPlayers > 1)) ||
           ((mOpponent == null) && mRemoteInput.isCPU)) {
         return;
       }
 
+      /*
+       * Note the time of any touch launch request, to measure the
+       * latency until the launched bubble is displayed.
+       */
+      long touchTime1 = mPlayer1.takeTouchFireTime();
+      int  nbBubbles1 = mFrozenGame1.nbBubbles;
+      mFrameStats.begin(FrameStats.PHASE_PLAY1);
       gameEnum game1State = mFrozenGame1.play(mPlayer1.actionLeft(),
                                               mPlayer1.actionRight(),
                                               mPlayer1.actionUp(),
@@ -2344,8 +3161,15 @@ public class GameView extends SurfaceView
                                               mPlayer1.getTouchY(),
                                               mPlayer1.actionTouchFireATS(),
                                               mPlayer1.getTouchDxATS());
+      mFrameStats.end(FrameStats.PHASE_PLAY1);
+      if ((touchTime1 != 0) && (mFrozenGame1.nbBubbles != nbBubbles1)) {
+        mLaunchTouchTime = touchTime1;
+      }
 
       if (numPlayers > 1) {
+        long touchTime2 = mPlayer2.takeTouchFireTime();
+        int  nbBubbles2 = mFrozenGame2.nbBubbles;
+        mFrameStats.begin(FrameStats.PHASE_PLAY2);
         gameEnum game2State = mFrozenGame2.play(mPlayer2.actionLeft(),
                                                 mPlayer2.actionRight(),
                                                 mPlayer2.actionUp(),
@@ -2356,6 +3180,10 @@ public class GameView extends SurfaceView
                                                 mPlayer2.getTouchY(),
                                                 mPlayer2.actionTouchFireATS(),
                                                 mPlayer2.getTouchDxATS());
+        mFrameStats.end(FrameStats.PHASE_PLAY2);
+        if ((touchTime2 != 0) && (mFrozenGame2.nbBubbles != nbBubbles2)) {
+          mLaunchTouchTime = touchTime2;
+        }
 
         /*
          * If playing a network game, update the bubble grid checksums.
@@ -2363,6 +3191,10 @@ public class GameView extends SurfaceView
         if (mNetworkManager != null) {
           mNetworkManager.setLocalChecksum(mLocalInput.mGameRef.gridChecksum);
           mNetworkManager.setRemoteChecksum(mRemoteInput.mGameRef.gridChecksum);
+          SpectatorCaster caster = mNetworkManager.getSpectatorCaster();
+          if (caster != null) {
+            caster.update(mFrozenGame1, mFrozenGame2);
+          }
         }
 
         /*
@@ -2487,6 +3319,76 @@ public class GameView extends SurfaceView
       }
     }
 
+    /**
+     * Accumulate the busy time of a game loop iteration, and step the
+     * frame rate down or up once per pacing window if the mean busy time
+     * shows the device is overloaded or has headroom again.  Each
+     * decision is recorded in the frame statistics.
+     * @param busyNanos - the busy time of the game loop iteration, from
+     * the end of the frame delay until the frame was posted.
+     */
+    private void updatePacing(long busyNanos) {
+      mPacingBusyNanos += busyNanos;
+      if (++mPacingFrames < PACING_WINDOW) {
+        return;
+      }
+
+      long busy = mPacingBusyNanos / mPacingFrames;
+      int ticks = mTicksPerFrame;
+      mPacingBusyNanos = 0;
+      mPacingFrames    = 0;
+
+      if ((ticks < MAX_TICKS_PER_FRAME) &&
+          ((busy * 100) > (TICK_NANOS * ticks * PACING_STEP_DOWN_LOAD))) {
+        ticks++;
+      }
+      else if ((ticks > 1) &&
+               ((busy * 100) < (TICK_NANOS * (ticks - 1) *
+                                PACING_STEP_UP_LOAD))) {
+        ticks--;
+      }
+
+      if (ticks != mTicksPerFrame) {
+        mTicksPerFrame = ticks;
+        mFrameStats.recordPacing(ticks, busy);
+      }
+    }
+
+    /**
+     * Block the game loop until the scene is marked dirty, if a static
+     * screen is shown.  The dirty mark is cleared before the scene is
+     * painted, so that a change made while it is painted marks it dirty
+     * again.
+     * @param idle - <code>true</code> if a static screen is shown, and
+     * the game loop may block.
+     * @return <code>true</code> if the game loop blocked.
+     */
+    private boolean waitForSceneChange(boolean idle) {
+      boolean blocked = false;
+      synchronized(mIdleLock) {
+        if (idle && !mSceneDirty && mRun) {
+          try {
+            mIdleLock.wait(IDLE_TIMEOUT);
+          } catch (InterruptedException e) {}
+          blocked = true;
+        }
+        mSceneDirty = false;
+      }
+      return blocked;
+    }
+
+    /**
+     * Mark the scene dirty, so that a game loop blocked on a static
+     * screen paints it again.  This must be called after any change that
+     * affects what is shown while the game is not running.
+     */
+    public void wakeUp() {
+      synchronized(mIdleLock) {
+        mSceneDirty = true;
+        mIdleLock.notifyAll();
+      }
+    }
+
     /**
      * Use the player 1 horizontal screen offset to adjust the
      * playfield horizontal touch position.
@@ -2660,11 +3562,15 @@ public class GameView extends SurfaceView
      */
     mNetworkManager = null;
     if ((gameLocale == FrozenBubble.LOCALE_BLUETOOTH) ||
+        (gameLocale == FrozenBubble.LOCALE_INTERNET ) ||
         (gameLocale == FrozenBubble.LOCALE_WIFI     )) {
       connectEnum mode;
       if (gameLocale == FrozenBubble.LOCALE_BLUETOOTH) {
         mode = connectEnum.BLUETOOTH;
       }
+      else if (gameLocale == FrozenBubble.LOCALE_INTERNET) {
+        mode = connectEnum.UDP_RELAY;
+      }
       else {
         mode = connectEnum.UDP_MULTICAST;
       }
@@ -2741,30 +3647,34 @@ public class GameView extends SurfaceView
   @Override
   public boolean onKeyDown(int keyCode, KeyEvent event) {
     //Log.i("frozen-bubble", "GameView.onKeyDown()");
-    return mGameThread.doKeyDown(keyCode, event) ||
-           super.onKeyDown(keyCode, event);
+    boolean handled = mGameThread.doKeyDown(keyCode, event);
+    mGameThread.wakeUp();
+    return handled || super.onKeyDown(keyCode, event);
   }
 
   @Override
   public boolean onKeyUp(int keyCode, KeyEvent event) {
     //Log.i("frozen-bubble", "GameView.onKeyUp()");
-    return mGameThread.doKeyUp(keyCode, event) ||
-           super.onKeyUp(keyCode, event);
+    boolean handled = mGameThread.doKeyUp(keyCode, event);
+    mGameThread.wakeUp();
+    return handled || super.onKeyUp(keyCode, event);
   }
 
   @Override
   public boolean onTouchEvent(MotionEvent event) {
     //Log.i("frozen-bubble", "GameView.onTouchEvent()");
-    return mGameThread.doTouchEvent(event) ||
-           super.onTouchEvent(event);
+    boolean handled = mGameThread.doTouchEvent(event);
+    mGameThread.wakeUp();
+    return handled || super.onTouchEvent(event);
   }
 
   @Override
   public boolean onTrackballEvent(MotionEvent event) {
     //Log.i("frozen-bubble", "event.getX(): " + event.getX());
     //Log.i("frozen-bubble", "event.getY(): " + event.getY());
-    return mGameThread.doTrackballEvent(event) ||
-           super.onTrackballEvent(event);
+    boolean handled = mGameThread.doTrackballEvent(event);
+    mGameThread.wakeUp();
+    return handled || super.onTrackballEvent(event);
   }
 
   @Override
@@ -2793,6 +3703,9 @@ public class GameView extends SurfaceView
     @Override
     public void run() {
       mBlankScreen = false;
+      if (mGameThread != null) {
+        mGameThread.wakeUp();
+      }
       cancel();
     }
   };
@@ -2829,6 +3742,10 @@ public class GameView extends SurfaceView
       return;
     }
 
+    if ((mGameThread != null) && (mGameThread.mInputLog != null)) {
+      mGameThread.mInputLog.logField(newField);
+    }
+
     /*
      * Set the bubble grid, and lower the compressor and bubbles in play
      * to the required number of compressor steps.
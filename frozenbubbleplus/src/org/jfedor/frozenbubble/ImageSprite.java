@@ -84,6 +84,17 @@ public class ImageSprite extends Sprite {
     this.displayedImage = img;
   }
 
+  @Override
+  public void getPaintBounds(Rect bounds, double scale, int dx, int dy) {
+    Rect r = getSpriteArea();
+    getImageBounds(displayedImage, r.left, r.top, bounds, scale, dx, dy);
+  }
+
+  @Override
+  public long getPaintState() {
+    return displayedImage.id;
+  }
+
   public final void paint(Canvas c, double scale, int dx, int dy) {
     Point p = super.getSpritePosition();
     drawImage(displayedImage, p.x, p.y, c, scale, dx, dy);
@@ -0,0 +1,541 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.efortin.frozenbubble.NetworkManager.GameFieldData;
+import com.efortin.frozenbubble.NetworkManager.PlayerAction;
+
+/**
+ * This class records every input that affects the outcome of a game,
+ * so that the game may later be replayed exactly.
+ * <p>The log header holds the game preferences, the starting level
+ * and the random number generator seed of each player's game.  It is
+ * followed by a stream of records, one per call to
+ * <code>FrozenGame.play()</code> per player, interleaved with the
+ * asynchronous events that modify the game between calls to
+ * <code>play()</code>: launcher aim changes, remote player actions and
+ * remote game field updates.
+ * <p>Each record begins with a tag byte, where the upper nibble is the
+ * record type and the lower nibble is the player ID.  An idle player
+ * costs two bytes per game loop iteration.
+ * @see GameReplay
+ */
+public class InputLog {
+  public static final int VERSION = 1;
+
+  /*
+   * Record types.
+   */
+  public static final int REC_PLAY     = 0;
+  public static final int REC_POSITION = 1;
+  public static final int REC_ACTION   = 2;
+  public static final int REC_FIELD    = 3;
+  public static final int REC_CHECKSUM = 4;
+
+  /*
+   * Play record argument flags.  The trackball, touch and aim-then-
+   * shoot position values are only stored when their flag is set.
+   */
+  public static final int FLAG_LEFT       = 0x01;
+  public static final int FLAG_RIGHT      = 0x02;
+  public static final int FLAG_FIRE       = 0x04;
+  public static final int FLAG_SWAP       = 0x08;
+  public static final int FLAG_TRACKBALL  = 0x10;
+  public static final int FLAG_TOUCH_FIRE = 0x20;
+  public static final int FLAG_ATS_FIRE   = 0x40;
+  public static final int FLAG_ATS_DX     = 0x80;
+
+  /*
+   * Stop recording once the log reaches this size, which is roughly
+   * two hours of continuous two player game play.
+   */
+  public static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+  private static final int MAGIC = 0x46424C47;
+
+  /*
+   * Logs are saved to and loaded from files by a single background
+   * thread, in the order they were submitted, so that a log file is
+   * never read while it is being written.
+   */
+  private static ExecutorService fileThread = null;
+
+  /*
+   * Log header.
+   */
+  public int       numPlayers;
+  public boolean   arcadeGame;
+  public int       collision;
+  public boolean   compressor;
+  public int       difficulty;
+  public boolean   dontRushMe;
+  public int       gameMode;
+  public int       targetMode;
+  public long      levelSeed;
+  public int       levelDifficulty;
+  public byte[][]  level;
+  public long[]    gameSeeds = new long[2];
+  public boolean[] isRemote  = new boolean[2];
+
+  private boolean               truncated;
+  private int                   numRecords;
+  private ByteArrayOutputStream recordBytes;
+  private DataOutputStream      records;
+
+  InputLog() {
+    recordBytes = new ByteArrayOutputStream(4096);
+    records     = new DataOutputStream(recordBytes);
+    level       = new byte[LevelManager.NUM_COLS][LevelManager.NUM_ROWS - 1];
+    truncated   = false;
+    numRecords  = 0;
+  }
+
+  /**
+   * Create a new input log to record a game.  The game preferences and
+   * the current level are captured now, so the log must be created
+   * before any of the games that will be recorded.
+   * @param players - the number of players in the game.
+   * @param levelManager - the level manager the games will be created
+   * with.
+   */
+  public InputLog(int players, LevelManager levelManager) {
+    this();
+    numPlayers = players;
+    capturePreferences();
+    byte[][] currentLevel = levelManager.getCurrentLevel();
+    if (currentLevel != null) {
+      for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+        for (int j = 0; j < (LevelManager.NUM_ROWS - 1); j++) {
+          level[i][j] = currentLevel[i][j];
+        }
+      }
+    }
+    levelSeed       = levelManager.getRandomSeed();
+    levelDifficulty = levelManager.getLevelIndex();
+  }
+
+  /**
+   * Start recording the supplied game.
+   * @param game - the game to record, which must have been created
+   * with the level manager supplied to this log.
+   */
+  public void addGame(FrozenGame game) {
+    int index = game.player - 1;
+    if ((index >= 0) && (index < gameSeeds.length)) {
+      gameSeeds[index] = game.getRandomSeed();
+      isRemote[index]  = game.isRemote;
+      game.setInputLog(this);
+    }
+  }
+
+  /**
+   * Set the game preferences stored in this log to the values
+   * currently in use.
+   */
+  public void capturePreferences() {
+    arcadeGame = FrozenBubble.arcadeGame;
+    collision  = FrozenBubble.getCollision();
+    compressor = FrozenBubble.getCompressor();
+    difficulty = FrozenBubble.getDifficulty();
+    dontRushMe = FrozenBubble.getDontRushMe();
+    gameMode   = FrozenBubble.getMode();
+    targetMode = FrozenBubble.getTargetMode();
+  }
+
+  /**
+   * Apply the game preferences stored in this log.  These must be in
+   * effect while a recorded game is replayed.
+   */
+  public void applyPreferences() {
+    FrozenBubble.arcadeGame = arcadeGame;
+    FrozenBubble.setCollision(collision);
+    FrozenBubble.setCompressor(compressor);
+    FrozenBubble.setDifficulty(difficulty);
+    FrozenBubble.setDontRushMe(dontRushMe);
+    FrozenBubble.setMode(gameMode);
+    FrozenBubble.setTargetMode(targetMode);
+  }
+
+  /**
+   * Create a level manager that provides the recorded level.  The log
+   * preferences must be applied first.
+   * @return a new level manager for replaying the recorded game.
+   */
+  public LevelManager newLevelManager() {
+    byte[][] copy = new byte[LevelManager.NUM_COLS][];
+    for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+      copy[i] = level[i].clone();
+    }
+    return new LevelManager(copy, levelSeed, levelDifficulty);
+  }
+
+  /**
+   * Obtain the background thread that writes the game's diagnostic files,
+   * so that the game thread and the UI thread are not stalled by the file
+   * system.
+   * @return the file writing thread.
+   */
+  static synchronized ExecutorService getFileThread() {
+    if (fileThread == null) {
+      fileThread = Executors.newSingleThreadExecutor();
+    }
+    return fileThread;
+  }
+
+  public synchronized int getNumRecords() {
+    return numRecords;
+  }
+
+  /**
+   * Obtain a stream to read the records of this log.
+   * @return a stream positioned at the first record.
+   */
+  public synchronized DataInputStream getRecords() {
+    return new DataInputStream(
+      new ByteArrayInputStream(recordBytes.toByteArray()));
+  }
+
+  public synchronized boolean isTruncated() {
+    return truncated;
+  }
+
+  public synchronized int size() {
+    return recordBytes.size();
+  }
+
+  /**
+   * Begin a new record.
+   * @param type - the record type, e.g., <code>REC_PLAY</code>.
+   * @param player - the player ID associated with the record.
+   * @return <code>false</code> if the log is full.
+   */
+  private boolean startRecord(int type, int player) throws IOException {
+    if (truncated || (recordBytes.size() >= MAX_RECORD_BYTES)) {
+      truncated = true;
+      return false;
+    }
+    records.writeByte((type << 4) | (player & 0x0F));
+    numRecords++;
+    return true;
+  }
+
+  public synchronized void logAction(PlayerAction action) {
+    try {
+      if (startRecord(REC_ACTION, action.playerID)) {
+        records.writeByte(action.launchBubbleColor);
+        records.writeByte(action.nextBubbleColor);
+        records.writeByte(action.newNextBubbleColor);
+        records.writeBoolean(action.compress);
+        records.writeShort(action.attackBarBubbles);
+        if (action.attackBarBubbles > -1) {
+          records.write(action.attackBubbles, 0, 15);
+        }
+      }
+    } catch (IOException ioe) {
+      truncated = true;
+    }
+  }
+
+  public synchronized void logChecksum(int player, short checksum) {
+    try {
+      if (startRecord(REC_CHECKSUM, player)) {
+        records.writeShort(checksum);
+      }
+    } catch (IOException ioe) {
+      truncated = true;
+    }
+  }
+
+  public synchronized void logField(GameFieldData field) {
+    try {
+      if (startRecord(REC_FIELD, field.playerID)) {
+        records.writeByte(field.compressorSteps);
+        records.writeByte(field.launchBubbleColor);
+        records.writeByte(field.nextBubbleColor);
+        records.writeShort(field.attackBarBubbles);
+        for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+          records.write(field.gameField[i], 0, LevelManager.NUM_ROWS);
+        }
+      }
+    } catch (IOException ioe) {
+      truncated = true;
+    }
+  }
+
+  public synchronized void logPlay(int player,
+                                   boolean key_left, boolean key_right,
+                                   boolean key_fire, boolean key_swap,
+                                   double trackball_dx,
+                                   boolean touch_fire,
+                                   double touch_x, double touch_y,
+                                   boolean ats_touch_fire,
+                                   double ats_touch_dx) {
+    int flags = 0;
+    if (key_left)
+      flags |= FLAG_LEFT;
+    if (key_right)
+      flags |= FLAG_RIGHT;
+    if (key_fire)
+      flags |= FLAG_FIRE;
+    if (key_swap)
+      flags |= FLAG_SWAP;
+    if (trackball_dx != 0)
+      flags |= FLAG_TRACKBALL;
+    if (touch_fire)
+      flags |= FLAG_TOUCH_FIRE;
+    if (ats_touch_fire)
+      flags |= FLAG_ATS_FIRE;
+    if (ats_touch_dx != 0)
+      flags |= FLAG_ATS_DX;
+
+    try {
+      if (startRecord(REC_PLAY, player)) {
+        records.writeByte(flags);
+        if (trackball_dx != 0)
+          records.writeDouble(trackball_dx);
+        if (touch_fire) {
+          records.writeDouble(touch_x);
+          records.writeDouble(touch_y);
+        }
+        if (ats_touch_dx != 0)
+          records.writeDouble(ats_touch_dx);
+      }
+    } catch (IOException ioe) {
+      truncated = true;
+    }
+  }
+
+  public synchronized void logPosition(int player, double value) {
+    try {
+      if (startRecord(REC_POSITION, player)) {
+        records.writeDouble(value);
+      }
+    } catch (IOException ioe) {
+      truncated = true;
+    }
+  }
+
+  /**
+   * Load an input log previously saved via <code>saveToFile()</code>.
+   * The log is read once all the saves submitted beforehand are
+   * finished.
+   * @param file - the file to read the log from.
+   * @return the input log.
+   * @throws IOException if the file does not contain a valid log.
+   */
+  public static InputLog loadFromFile(final File file) throws IOException {
+    Future<InputLog> result = getFileThread().submit(new Callable<InputLog>() {
+      public InputLog call() throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+          return readFrom(in);
+        } finally {
+          in.close();
+        }
+      }
+    });
+    try {
+      return result.get();
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof IOException) {
+        throw (IOException) ee.getCause();
+      }
+      throw new IOException("Unable to read " + file + ".");
+    } catch (InterruptedException ie) {
+      throw new IOException("Interrupted reading " + file + ".");
+    }
+  }
+
+  /**
+   * Read an input log previously saved via <code>writeTo()</code>.
+   * @param in - the stream to read the log from.
+   * @return the input log.
+   * @throws IOException if the stream does not contain a valid log.
+   */
+  public static InputLog readFrom(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(in);
+    InputLog log = readHeader(data);
+    log.truncated  = data.readBoolean();
+    log.numRecords = data.readInt();
+    byte[] recordData = new byte[data.readInt()];
+    data.readFully(recordData);
+    log.records.write(recordData);
+    return log;
+  }
+
+  /**
+   * Read a log header previously saved via <code>writeHeader()</code>.
+   * @param data - the stream to read the header from.
+   * @return an input log holding the header, without any records.
+   * @throws IOException if the stream does not contain a valid header.
+   */
+  public static InputLog readHeader(DataInputStream data) throws IOException {
+    if ((data.readInt() != MAGIC) || (data.readInt() != VERSION)) {
+      throw new IOException("Not a version " + VERSION + " input log.");
+    }
+
+    InputLog log = new InputLog();
+    log.numPlayers      = data.readByte();
+    log.arcadeGame      = data.readBoolean();
+    log.collision       = data.readInt();
+    log.compressor      = data.readBoolean();
+    log.difficulty      = data.readInt();
+    log.dontRushMe      = data.readBoolean();
+    log.gameMode        = data.readInt();
+    log.targetMode      = data.readInt();
+    log.levelSeed       = data.readLong();
+    log.levelDifficulty = data.readInt();
+    for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+      data.readFully(log.level[i]);
+    }
+    for (int index = 0; index < log.gameSeeds.length; index++) {
+      log.gameSeeds[index] = data.readLong();
+      log.isRemote[index]  = data.readBoolean();
+    }
+    return log;
+  }
+
+  /**
+   * Save a copy of this log to a file.  The log is copied to memory
+   * immediately, and the copy is written to the file by a background
+   * thread, so that the caller is not stalled by the file system.
+   * @param file - the file to write the log to.
+   */
+  public void saveToFile(final File file) {
+    final ByteArrayOutputStream copy =
+      new ByteArrayOutputStream(size() + 256);
+    try {
+      writeTo(copy);
+    } catch (IOException ioe) {
+      return;
+    }
+
+    getFileThread().execute(new Runnable() {
+      public void run() {
+        OutputStream out = null;
+        try {
+          out = new FileOutputStream(file);
+          copy.writeTo(out);
+        } catch (IOException ioe) {
+          //Log.i("frozen-bubble", "Unable to save the input log.");
+        } finally {
+          if (out != null) {
+            try {
+              out.close();
+            } catch (IOException ignore) {}
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Save the log header, which holds everything needed to create the
+   * recorded games, but none of the records.
+   * @param data - the stream to write the header to.
+   * @throws IOException if the header could not be written.
+   */
+  public synchronized void writeHeader(DataOutputStream data)
+      throws IOException {
+    data.writeInt(MAGIC);
+    data.writeInt(VERSION);
+    data.writeByte(numPlayers);
+    data.writeBoolean(arcadeGame);
+    data.writeInt(collision);
+    data.writeBoolean(compressor);
+    data.writeInt(difficulty);
+    data.writeBoolean(dontRushMe);
+    data.writeInt(gameMode);
+    data.writeInt(targetMode);
+    data.writeLong(levelSeed);
+    data.writeInt(levelDifficulty);
+    for (int i = 0; i < LevelManager.NUM_COLS; i++) {
+      data.write(level[i]);
+    }
+    for (int index = 0; index < gameSeeds.length; index++) {
+      data.writeLong(gameSeeds[index]);
+      data.writeBoolean(isRemote[index]);
+    }
+  }
+
+  /**
+   * Save this input log.
+   * @param out - the stream to write the log to.
+   * @throws IOException if the log could not be written.
+   */
+  public synchronized void writeTo(OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(out);
+    writeHeader(data);
+    data.writeBoolean(truncated);
+    data.writeInt(numRecords);
+    data.writeInt(recordBytes.size());
+    recordBytes.writeTo(data);
+    data.flush();
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+/**
+ * This class is a fixed capacity queue of timestamped player input
+ * events, which passes input from the UI thread to the game thread
+ * without locking.
+ * <p>The queue supports exactly one producer thread and one consumer
+ * thread.  The producer only writes the head index, and the consumer
+ * only writes the tail index.  Both indexes are volatile, so the event
+ * data written by the producer before it advances the head is visible
+ * to the consumer after it reads the head.
+ * <p>Event data is stored in preallocated parallel arrays, so neither
+ * adding nor removing an event allocates memory.
+ */
+public class InputQueue {
+  /*
+   * Input event types.
+   */
+  public static final int KEY_DOWN  = 0;
+  public static final int KEY_UP    = 1;
+  public static final int TOUCH     = 2;
+  public static final int TRACKBALL = 3;
+
+  private final int      mask;
+  private final int[]    codes;
+  private final long[]   times;
+  private final int[]    types;
+  private final double[] xs;
+  private final double[] ys;
+
+  private volatile int head = 0;
+  private volatile int tail = 0;
+  private volatile int dropped = 0;
+
+  /*
+   * The event most recently removed by the consumer.
+   */
+  private int    code;
+  private long   time;
+  private int    type;
+  private double x;
+  private double y;
+
+  /**
+   * <code>InputQueue</code> class constructor.
+   * @param capacity - the maximum number of queued events, which is
+   * rounded up to a power of two.
+   */
+  public InputQueue(int capacity) {
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    mask  = size - 1;
+    codes = new int[size];
+    times = new long[size];
+    types = new int[size];
+    xs    = new double[size];
+    ys    = new double[size];
+  }
+
+  /**
+   * Add an event to the queue.  This must only be called by the
+   * producer thread.
+   * @param eventType - the input event type.
+   * @param eventCode - the key code of a key event, or the action of a
+   * motion event.
+   * @param eventX - the horizontal position or motion of a motion event.
+   * @param eventY - the vertical position or motion of a motion event.
+   * @param eventTime - the event time, in the
+   * <code>SystemClock.uptimeMillis()</code> time base.
+   * @return <code>false</code> if the queue is full, in which case the
+   * event is discarded.
+   */
+  public boolean offer(int eventType, int eventCode, double eventX,
+                       double eventY, long eventTime) {
+    int index = head;
+
+    if ((index - tail) > mask) {
+      dropped++;
+      return false;
+    }
+
+    int slot = index & mask;
+    types[slot] = eventType;
+    codes[slot] = eventCode;
+    xs[slot]    = eventX;
+    ys[slot]    = eventY;
+    times[slot] = eventTime;
+    /*
+     * Publish the event.
+     */
+    head = index + 1;
+    return true;
+  }
+
+  /**
+   * Remove the oldest event from the queue, which may then be examined
+   * via the <code>get</code> methods.  This must only be called by the
+   * consumer thread.
+   * @return <code>false</code> if the queue is empty.
+   */
+  public boolean poll() {
+    int index = tail;
+
+    if (index == head) {
+      return false;
+    }
+
+    int slot = index & mask;
+    type = types[slot];
+    code = codes[slot];
+    x    = xs[slot];
+    y    = ys[slot];
+    time = times[slot];
+    /*
+     * Release the slot to the producer.
+     */
+    tail = index + 1;
+    return true;
+  }
+
+  public int getCode() {
+    return code;
+  }
+
+  /**
+   * Obtain the number of events that were discarded because the queue
+   * was full.
+   * @return the number of discarded events.
+   */
+  public int getDropped() {
+    return dropped;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public int getType() {
+    return type;
+  }
+
+  public double getX() {
+    return x;
+  }
+
+  public double getY() {
+    return y;
+  }
+
+  public boolean isEmpty() {
+    return tail == head;
+  }
+}
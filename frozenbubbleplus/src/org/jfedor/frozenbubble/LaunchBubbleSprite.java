@@ -54,12 +54,32 @@ package org.jfedor.frozenbubble;
 
 import java.util.Vector;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 
 public class LaunchBubbleSprite extends Sprite {
+  /*
+   * The launcher is rotated in steps of half a launch direction unit,
+   * which is 2.25 degrees.  Each rotated launcher image is rendered once
+   * into a frame bitmap, and every frame is kept, so that sweeping the
+   * launcher across its whole range never renders a frame twice.  If the
+   * frames for the whole range do not fit in MAX_FRAME_BYTES at the
+   * current display scale, the launcher is drawn rotated instead.  Each
+   * launcher has its own frames.
+   */
+  private static final double FRAME_STEP = 0.5;
+  private static final int    NUM_FRAMES =
+    (int)Math.round((FrozenGame.MAX_LAUNCH_DIRECTION -
+                     FrozenGame.MIN_LAUNCH_DIRECTION) / FRAME_STEP) + 1;
+  private static final long   MAX_FRAME_BYTES =
+    Runtime.getRuntime().maxMemory() / 16;
+
+  private Bitmap[] frames;
+  private double   framesScale;
+
   private int currentColor;
   private double currentDirection;
 
@@ -102,6 +122,100 @@ public class LaunchBubbleSprite extends Sprite {
     currentDirection = newDirection;
   }
 
+  /**
+   * The launcher is rotated about its center, so its painted area is the
+   * square enclosing the launcher image at any rotation angle.
+   */
+  @Override
+  public void getPaintBounds(Rect bounds, double scale, int dx, int dy) {
+    getAreaBounds(318 - 71, 406 - 71, 318 + 71, 406 + 71,
+                  bounds, scale, dx, dy);
+  }
+
+  @Override
+  public long getPaintState() {
+    return ((long)getFrameIndex() * 31) + currentColor;
+  }
+
+  /**
+   * Obtain the launcher image rotated to the supplied frame index,
+   * rendering it if it is not cached.
+   * @return the rotated launcher image, or <code>null</code> if the
+   * frames do not fit at this display scale or it could not be rendered.
+   */
+  private Bitmap getFrame(int index, double scale) {
+    int size = (int)Math.ceil(142 * scale);
+    if (framesScale != scale) {
+      recycleFrames();
+      framesScale = scale;
+      if ((long)NUM_FRAMES * size * size * 4 <= MAX_FRAME_BYTES) {
+        frames = new Bitmap[NUM_FRAMES];
+      }
+    }
+    if (frames == null) {
+      return null;
+    }
+
+    Bitmap frame = frames[index];
+    if (frame != null) {
+      return frame;
+    }
+
+    try {
+      frame = BitmapBudget.createBitmap(BitmapBudget.CATEGORY_PRERENDERED,
+                                        size, size, Bitmap.Config.ARGB_8888);
+    } catch (OutOfMemoryError oome) {
+      return null;
+    }
+    Canvas canvas = new Canvas(frame);
+    float center  = size / 2.0f;
+    canvas.rotate(getFrameAngle(index), center, center);
+    launcher.setBounds((int)(center - 50 * scale),
+                       (int)(center - 50 * scale),
+                       (int)(center + 50 * scale),
+                       (int)(center + 50 * scale));
+    launcher.draw(canvas);
+    frames[index] = frame;
+    return frame;
+  }
+
+  /**
+   * Obtain the rotation angle of a launcher frame, in degrees.
+   */
+  private static float getFrameAngle(int index) {
+    return (float)(0.025 * 180 * ((FrozenGame.MIN_LAUNCH_DIRECTION +
+                                   (index * FRAME_STEP)) -
+                                  FrozenGame.START_LAUNCH_DIRECTION));
+  }
+
+  /**
+   * Obtain the index of the launcher frame nearest to the current launch
+   * direction.
+   */
+  private int getFrameIndex() {
+    int index = (int)Math.round((currentDirection -
+                                 FrozenGame.MIN_LAUNCH_DIRECTION) /
+                                FRAME_STEP);
+    return Math.max(0, Math.min(NUM_FRAMES - 1, index));
+  }
+
+  /**
+   * Discard the rendered launcher frames.  They are rendered again if
+   * the launcher is painted again.
+   */
+  public void recycleFrames() {
+    if (frames != null) {
+      for (int i = 0; i < frames.length; i++) {
+        if (frames[i] != null) {
+          BitmapBudget.release(BitmapBudget.CATEGORY_PRERENDERED,
+                               frames[i]);
+        }
+      }
+    }
+    frames      = null;
+    framesScale = 0;
+  }
+
   public final void paint(Canvas c, double scale, int dx, int dy) {
     if (FrozenBubble.getMode() == FrozenBubble.GAME_NORMAL) {
       drawImage(bubbles[currentColor], 302, 390, c, scale, dx, dy);
@@ -110,12 +224,21 @@ public class LaunchBubbleSprite extends Sprite {
       drawImage(colorblindBubbles[currentColor], 302, 390, c, scale, dx, dy);
     }
 
-    // Draw the scaled and rotated launcher.
-    c.save();
+    // Draw the scaled and rotated launcher, if there is one.
+    if (launcher == null) {
+      return;
+    }
     int xCenter = 318;
     int yCenter = 406;
-    c.rotate((float)(0.025 * 180 * (currentDirection -
-                                    FrozenGame.START_LAUNCH_DIRECTION)),
+    int index   = getFrameIndex();
+    Bitmap frame = getFrame(index, scale);
+    if (frame != null) {
+      c.drawBitmap(frame, (float)((xCenter - 71) * scale + dx),
+                   (float)((yCenter - 71) * scale + dy), null);
+      return;
+    }
+    c.save();
+    c.rotate(getFrameAngle(index),
              (float)(xCenter * scale + dx), (float)(yCenter * scale + dy));
     launcher.setBounds((int)((xCenter - 50) * scale + dx),
                        (int)((yCenter - 50) * scale + dy),
@@ -172,6 +172,23 @@ public class LevelManager {
     }
   }
 
+  /**
+   * Constructor used to replay a recorded game, which provides a single
+   * level whose bubble grid was captured when the game started.
+   * @param level - the bubble grid of the recorded level.
+   * @param seed - the random bubble generation seed in effect when the
+   * recorded game started, used to generate new arcade rows.
+   * @param difficulty - the number of different bubble colors to
+   * generate.
+   * @see InputLog
+   */
+  public LevelManager(byte[][] level, long seed, int difficulty) {
+    this(seed, difficulty);
+    levelList.clear();
+    levelList.addElement(level);
+    randomSeed = seed;
+  }
+
   private byte[][] getLevel(String data) {
     byte[][] temp = new byte[NUM_COLS][NUM_ROWS - 1];
 
@@ -236,6 +253,10 @@ public class LevelManager {
     return tempRow;
   }
 
+  public long getRandomSeed() {
+    return randomSeed;
+  }
+
   public int getRowOffset() {
     return rowOffset;
   }
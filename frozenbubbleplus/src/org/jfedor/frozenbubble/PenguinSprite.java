@@ -182,6 +182,11 @@ public class PenguinSprite extends Sprite {
     }
   }
 
+  @Override
+  public long getPaintState() {
+    return currentPenguin;
+  }
+
   public void paint(Canvas c, double scale, int dx, int dy) {
     Rect r = this.getSpriteArea();
     /*
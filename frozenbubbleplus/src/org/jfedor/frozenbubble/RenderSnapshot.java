@@ -0,0 +1,344 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+
+/**
+ * This class records the drawing operations of a frame, so that the
+ * frame may be painted later, without holding the game state lock.
+ * <p>The game thread paints the frame into the snapshot as if it were
+ * the surface canvas while the game state is locked, then replays the
+ * snapshot onto the surface once the lock is released.  Only the
+ * operations of <code>RenderTarget</code> are recorded - bitmap copies,
+ * fills, intersecting clips, translation, rotation and the save stack.
+ * Any other operation, and the paints supplied with bitmap copies, are
+ * silently ignored.
+ * <p>The operation buffers grow as needed and are reused for every
+ * frame, so recording a frame does not allocate memory once the buffers
+ * are large enough.  The bitmaps are recorded by reference, and every
+ * other argument by value.
+ */
+public class RenderSnapshot extends Canvas {
+  private static final int OP_BITMAP      = 0;
+  private static final int OP_BITMAP_RECT = 1;
+  private static final int OP_CLIP        = 2;
+  private static final int OP_RESTORE     = 3;
+  private static final int OP_RGB         = 4;
+  private static final int OP_ROTATE      = 5;
+  private static final int OP_SAVE        = 6;
+  private static final int OP_TRANSLATE   = 7;
+
+  /*
+   * The number of float arguments of each operation.
+   */
+  private static final int[] OP_ARGS = { 2, 8, 4, 0, 3, 1, 0, 2 };
+
+  private int[]    ops        = new int[256];
+  private float[]  args       = new float[1024];
+  private Bitmap[] bitmaps    = new Bitmap[256];
+  private int      numOps     = 0;
+  private int      numArgs    = 0;
+  private int      numBitmaps = 0;
+  private int      saveCount  = 1;
+
+  private final Rect  replaySrc = new Rect();
+  private final RectF replayDst = new RectF();
+
+  /**
+   * Discard the recorded operations, in order to record a new frame.
+   * The bitmaps previously recorded are no longer referenced.
+   */
+  public void clear() {
+    for (int i = 0; i < numBitmaps; i++) {
+      bitmaps[i] = null;
+    }
+    numOps     = 0;
+    numArgs    = 0;
+    numBitmaps = 0;
+    saveCount  = 1;
+  }
+
+  /**
+   * Paint the recorded operations onto a render target.  Missing
+   * bitmaps, and bitmaps that were recycled since they were recorded,
+   * are skipped.  The target save stack is restored to its initial
+   * depth afterwards.
+   * @param target - the target to paint the frame onto.
+   */
+  public void replay(RenderTarget target) {
+    int arg   = 0;
+    int index = 0;
+    int saves = 0;
+    for (int op = 0; op < numOps; op++) {
+      float[] a = args;
+      switch (ops[op]) {
+        case OP_BITMAP: {
+          Bitmap bitmap = bitmaps[index++];
+          if ((bitmap != null) && !bitmap.isRecycled()) {
+            target.drawBitmap(bitmap, a[arg], a[arg+1]);
+          }
+          break;
+        }
+        case OP_BITMAP_RECT: {
+          Bitmap bitmap = bitmaps[index++];
+          if ((bitmap != null) && !bitmap.isRecycled()) {
+            Rect src = null;
+            if (a[arg] <= a[arg+2]) {
+              replaySrc.set((int)a[arg], (int)a[arg+1],
+                            (int)a[arg+2], (int)a[arg+3]);
+              src = replaySrc;
+            }
+            replayDst.set(a[arg+4], a[arg+5], a[arg+6], a[arg+7]);
+            target.drawBitmap(bitmap, src, replayDst);
+          }
+          break;
+        }
+        case OP_CLIP:
+          target.clipRect(a[arg], a[arg+1], a[arg+2], a[arg+3]);
+          break;
+        case OP_RESTORE:
+          target.restore();
+          saves--;
+          break;
+        case OP_RGB:
+          target.drawRGB((int)a[arg], (int)a[arg+1], (int)a[arg+2]);
+          break;
+        case OP_ROTATE:
+          target.rotate(a[arg]);
+          break;
+        case OP_SAVE:
+          target.save();
+          saves++;
+          break;
+        case OP_TRANSLATE:
+          target.translate(a[arg], a[arg+1]);
+          break;
+        default:
+          break;
+      }
+      arg += OP_ARGS[ops[op]];
+    }
+    while (saves-- > 0) {
+      target.restore();
+    }
+  }
+
+  /*
+   * Append an operation to the buffers, growing them if needed.  The
+   * bitmap operations also record a bitmap.  The arguments are then
+   * stored by the caller, starting at the returned index.
+   */
+  private int record(int op, Bitmap bitmap) {
+    if (numOps == ops.length) {
+      int[] newOps = new int[ops.length * 2];
+      System.arraycopy(ops, 0, newOps, 0, numOps);
+      ops = newOps;
+    }
+    if (numArgs + 8 > args.length) {
+      float[] newArgs = new float[args.length * 2];
+      System.arraycopy(args, 0, newArgs, 0, numArgs);
+      args = newArgs;
+    }
+    if ((op == OP_BITMAP) || (op == OP_BITMAP_RECT)) {
+      if (numBitmaps == bitmaps.length) {
+        Bitmap[] newBitmaps = new Bitmap[bitmaps.length * 2];
+        System.arraycopy(bitmaps, 0, newBitmaps, 0, numBitmaps);
+        bitmaps = newBitmaps;
+      }
+      bitmaps[numBitmaps++] = bitmap;
+    }
+    ops[numOps++] = op;
+    int index = numArgs;
+    numArgs += OP_ARGS[op];
+    return index;
+  }
+
+  /*
+   * Record a scaled bitmap copy.  A missing source rectangle is recorded
+   * as an inverted rectangle.
+   */
+  private void recordBitmapRect(Bitmap bitmap, Rect src, float left,
+                                float top, float right, float bottom) {
+    int i = record(OP_BITMAP_RECT, bitmap);
+    if (src != null) {
+      args[i]   = src.left;
+      args[i+1] = src.top;
+      args[i+2] = src.right;
+      args[i+3] = src.bottom;
+    }
+    else {
+      args[i]   = 1;
+      args[i+2] = 0;
+    }
+    args[i+4] = left;
+    args[i+5] = top;
+    args[i+6] = right;
+    args[i+7] = bottom;
+  }
+
+  @Override
+  public boolean clipRect(float left, float top, float right, float bottom) {
+    int i = record(OP_CLIP, null);
+    args[i]   = left;
+    args[i+1] = top;
+    args[i+2] = right;
+    args[i+3] = bottom;
+    return true;
+  }
+
+  /**
+   * Only intersecting clips are supported.  Any other clip operation is
+   * ignored.
+   */
+  @Override
+  public boolean clipRect(float left, float top, float right, float bottom,
+                          Region.Op op) {
+    if (op == Region.Op.INTERSECT) {
+      return clipRect(left, top, right, bottom);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean clipRect(int left, int top, int right, int bottom) {
+    return clipRect((float)left, (float)top, (float)right, (float)bottom);
+  }
+
+  @Override
+  public boolean clipRect(Rect rect) {
+    return clipRect(rect.left, rect.top, rect.right, rect.bottom);
+  }
+
+  @Override
+  public boolean clipRect(RectF rect) {
+    return clipRect(rect.left, rect.top, rect.right, rect.bottom);
+  }
+
+  @Override
+  public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+    int i = record(OP_BITMAP, bitmap);
+    args[i]   = left;
+    args[i+1] = top;
+  }
+
+  @Override
+  public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+    recordBitmapRect(bitmap, src, dst.left, dst.top, dst.right, dst.bottom);
+  }
+
+  @Override
+  public void drawBitmap(Bitmap bitmap, Rect src, Rect dst, Paint paint) {
+    recordBitmapRect(bitmap, src, dst.left, dst.top, dst.right, dst.bottom);
+  }
+
+  @Override
+  public void drawRGB(int r, int g, int b) {
+    int i = record(OP_RGB, null);
+    args[i]   = r;
+    args[i+1] = g;
+    args[i+2] = b;
+  }
+
+  @Override
+  public int getSaveCount() {
+    return saveCount;
+  }
+
+  @Override
+  public void restore() {
+    if (saveCount > 1) {
+      record(OP_RESTORE, null);
+      saveCount--;
+    }
+  }
+
+  @Override
+  public void restoreToCount(int count) {
+    while (saveCount > Math.max(1, count)) {
+      restore();
+    }
+  }
+
+  @Override
+  public void rotate(float degrees) {
+    int i = record(OP_ROTATE, null);
+    args[i] = degrees;
+  }
+
+  @Override
+  public int save() {
+    record(OP_SAVE, null);
+    return saveCount++;
+  }
+
+  /**
+   * The transformation and clip are always saved together.
+   */
+  @Override
+  public int save(int saveFlags) {
+    return save();
+  }
+
+  @Override
+  public void translate(float dx, float dy) {
+    int i = record(OP_TRANSLATE, null);
+    args[i]   = dx;
+    args[i+1] = dy;
+  }
+}
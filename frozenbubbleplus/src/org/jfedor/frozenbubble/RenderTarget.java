@@ -0,0 +1,112 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * The drawing operations needed to paint a game frame.
+ * <p>Frames are recorded into a <code>RenderSnapshot</code>, which may be
+ * replayed onto any implementation of this interface - the Android
+ * canvas of the game surface via <code>CanvasTarget</code>, or a plain
+ * pixel array via <code>SoftwareTarget</code>, which does not require an
+ * Android device.
+ */
+public interface RenderTarget {
+  /**
+   * Intersect the clip with a rectangle.
+   */
+  public void clipRect(float left, float top, float right, float bottom);
+
+  /**
+   * Copy a bitmap, unscaled, to the supplied position.
+   */
+  public void drawBitmap(Bitmap bitmap, float left, float top);
+
+  /**
+   * Copy an area of a bitmap, scaled to fit the destination rectangle.
+   * @param src - the bitmap area, or <code>null</code> for the whole
+   * bitmap.
+   * @param dst - the destination rectangle.
+   */
+  public void drawBitmap(Bitmap bitmap, Rect src, RectF dst);
+
+  /**
+   * Fill the clip with an opaque color.
+   */
+  public void drawRGB(int r, int g, int b);
+
+  /**
+   * Restore the transformation and clip saved by the matching
+   * <code>save()</code>.
+   */
+  public void restore();
+
+  /**
+   * Rotate the coordinates clockwise about the origin.
+   * @param degrees - the rotation angle, in degrees.
+   */
+  public void rotate(float degrees);
+
+  /**
+   * Save the transformation and clip.
+   */
+  public void save();
+
+  /**
+   * Translate the coordinates.
+   */
+  public void translate(float dx, float dy);
+}
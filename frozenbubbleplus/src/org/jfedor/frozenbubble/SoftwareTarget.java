@@ -0,0 +1,350 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * This class paints into a plain array of ARGB pixels, entirely in Java,
+ * so that frames may be rendered without an Android device.  This allows
+ * the frames recorded by the game to be rendered on a desktop JVM, for
+ * instance to compare them against reference images, or to measure the
+ * cost of painting a frame.
+ * <p>Bitmaps are copied with nearest neighbour sampling and blended with
+ * the source over operator.  The clip is kept as a rectangle aligned to
+ * the pixel grid, so a clip set while the coordinates are rotated is
+ * widened to the rectangle enclosing it.
+ */
+public class SoftwareTarget implements RenderTarget {
+  private final int   width;
+  private final int   height;
+  private final int[] pixels;
+
+  /*
+   * The current transformation, which maps the point (x, y) to the pixel
+   * (a*x + c*y + tx, b*x + d*y + ty), and the current clip in pixels.
+   */
+  private float a  = 1;
+  private float b  = 0;
+  private float c  = 0;
+  private float d  = 1;
+  private float tx = 0;
+  private float ty = 0;
+  private int   clipLeft;
+  private int   clipTop;
+  private int   clipRight;
+  private int   clipBottom;
+
+  /*
+   * The saved transformations and clips.
+   */
+  private float[] savedMatrix = new float[6 * 8];
+  private int[]   savedClip   = new int[4 * 8];
+  private int     saveCount   = 0;
+
+  /*
+   * Reusable buffers for the source pixels of a bitmap copy, and for the
+   * area of a bitmap copy.
+   */
+  private int[]       source = new int[0];
+  private final Rect  srcRect = new Rect();
+  private final RectF dstRect = new RectF();
+
+  /**
+   * Create a target with the supplied dimensions.  The pixels are
+   * initially transparent black.
+   * @param width - the width of the target, in pixels.
+   * @param height - the height of the target, in pixels.
+   */
+  public SoftwareTarget(int width, int height) {
+    this.width  = width;
+    this.height = height;
+    this.pixels = new int[width * height];
+    reset();
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Obtain the pixels of the target.
+   * @return the pixels, row by row, in the same ARGB format used by
+   * <code>Bitmap.getPixels()</code>.  The array is not copied.
+   */
+  public int[] getPixels() {
+    return pixels;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Restore the identity transformation, a clip covering the entire
+   * target, and an empty save stack.  The pixels are left unchanged.
+   */
+  public void reset() {
+    a          = 1;
+    b          = 0;
+    c          = 0;
+    d          = 1;
+    tx         = 0;
+    ty         = 0;
+    clipLeft   = 0;
+    clipTop    = 0;
+    clipRight  = width;
+    clipBottom = height;
+    saveCount  = 0;
+  }
+
+  public void clipRect(float left, float top, float right, float bottom) {
+    float x0 = a * left  + c * top    + tx;
+    float y0 = b * left  + d * top    + ty;
+    float x1 = a * right + c * top    + tx;
+    float y1 = b * right + d * top    + ty;
+    float x2 = a * left  + c * bottom + tx;
+    float y2 = b * left  + d * bottom + ty;
+    float x3 = a * right + c * bottom + tx;
+    float y3 = b * right + d * bottom + ty;
+    clipLeft   = Math.max(clipLeft,
+                          Math.round(Math.min(Math.min(x0, x1),
+                                              Math.min(x2, x3))));
+    clipTop    = Math.max(clipTop,
+                          Math.round(Math.min(Math.min(y0, y1),
+                                              Math.min(y2, y3))));
+    clipRight  = Math.min(clipRight,
+                          Math.round(Math.max(Math.max(x0, x1),
+                                              Math.max(x2, x3))));
+    clipBottom = Math.min(clipBottom,
+                          Math.round(Math.max(Math.max(y0, y1),
+                                              Math.max(y2, y3))));
+  }
+
+  public void drawBitmap(Bitmap bitmap, float left, float top) {
+    dstRect.set(left, top, left + bitmap.getWidth(),
+                top + bitmap.getHeight());
+    drawBitmap(bitmap, null, dstRect);
+  }
+
+  public void drawBitmap(Bitmap bitmap, Rect src, RectF dst) {
+    if (src != null) {
+      srcRect.set(Math.max(src.left, 0), Math.max(src.top, 0),
+                  Math.min(src.right, bitmap.getWidth()),
+                  Math.min(src.bottom, bitmap.getHeight()));
+    }
+    else {
+      srcRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+    }
+    int srcWidth  = srcRect.right - srcRect.left;
+    int srcHeight = srcRect.bottom - srcRect.top;
+    float dstWidth  = dst.right - dst.left;
+    float dstHeight = dst.bottom - dst.top;
+    float det = a * d - b * c;
+    if ((srcWidth <= 0) || (srcHeight <= 0) ||
+        (dstWidth <= 0) || (dstHeight <= 0) || (det == 0)) {
+      return;
+    }
+
+    /*
+     * Find the pixels covered by the destination rectangle.
+     */
+    float x0 = a * dst.left  + c * dst.top    + tx;
+    float y0 = b * dst.left  + d * dst.top    + ty;
+    float x1 = a * dst.right + c * dst.top    + tx;
+    float y1 = b * dst.right + d * dst.top    + ty;
+    float x2 = a * dst.left  + c * dst.bottom + tx;
+    float y2 = b * dst.left  + d * dst.bottom + ty;
+    float x3 = a * dst.right + c * dst.bottom + tx;
+    float y3 = b * dst.right + d * dst.bottom + ty;
+    int left   = Math.max(clipLeft, (int)Math.floor(
+      Math.min(Math.min(x0, x1), Math.min(x2, x3))));
+    int top    = Math.max(clipTop, (int)Math.floor(
+      Math.min(Math.min(y0, y1), Math.min(y2, y3))));
+    int right  = Math.min(clipRight, (int)Math.ceil(
+      Math.max(Math.max(x0, x1), Math.max(x2, x3))));
+    int bottom = Math.min(clipBottom, (int)Math.ceil(
+      Math.max(Math.max(y0, y1), Math.max(y2, y3))));
+    if ((left >= right) || (top >= bottom)) {
+      return;
+    }
+
+    if (source.length < srcWidth * srcHeight) {
+      source = new int[srcWidth * srcHeight];
+    }
+    bitmap.getPixels(source, 0, srcWidth, srcRect.left, srcRect.top,
+                     srcWidth, srcHeight);
+
+    /*
+     * Map the center of each pixel back to the source bitmap with the
+     * inverse transformation, stepping along each row incrementally.
+     */
+    float scaleX = srcWidth / dstWidth;
+    float scaleY = srcHeight / dstHeight;
+    float ia =  d / det;
+    float ib = -b / det;
+    float ic = -c / det;
+    float id =  a / det;
+    for (int y = top; y < bottom; y++) {
+      float py = y + 0.5f - ty;
+      float px = left + 0.5f - tx;
+      float u  = (ia * px + ic * py - dst.left) * scaleX;
+      float v  = (ib * px + id * py - dst.top)  * scaleY;
+      float du = ia * scaleX;
+      float dv = ib * scaleY;
+      int offset = y * width + left;
+      for (int x = left; x < right; x++, offset++, u += du, v += dv) {
+        if ((u < 0) || (v < 0) || (u >= srcWidth) || (v >= srcHeight)) {
+          continue;
+        }
+        pixels[offset] = blend(source[(int)v * srcWidth + (int)u],
+                               pixels[offset]);
+      }
+    }
+  }
+
+  /*
+   * Blend a source pixel over a destination pixel.  The pixels are not
+   * premultiplied by their alpha.
+   */
+  private static int blend(int src, int dst) {
+    int srcAlpha = src >>> 24;
+    if (srcAlpha == 0xFF) {
+      return src;
+    }
+    if (srcAlpha == 0) {
+      return dst;
+    }
+    int dstAlpha = ((dst >>> 24) * (0xFF - srcAlpha)) / 0xFF;
+    int outAlpha = srcAlpha + dstAlpha;
+    int r = (((src >> 16) & 0xFF) * srcAlpha +
+             ((dst >> 16) & 0xFF) * dstAlpha) / outAlpha;
+    int g = (((src >> 8) & 0xFF) * srcAlpha +
+             ((dst >> 8) & 0xFF) * dstAlpha) / outAlpha;
+    int bl = ((src & 0xFF) * srcAlpha + (dst & 0xFF) * dstAlpha) / outAlpha;
+    return (outAlpha << 24) | (r << 16) | (g << 8) | bl;
+  }
+
+  public void drawRGB(int r, int g, int b) {
+    int color = 0xFF000000 | ((r & 0xFF) << 16) | ((g & 0xFF) << 8) |
+                (b & 0xFF);
+    for (int y = clipTop; y < clipBottom; y++) {
+      int offset = y * width;
+      for (int x = clipLeft; x < clipRight; x++) {
+        pixels[offset + x] = color;
+      }
+    }
+  }
+
+  public void restore() {
+    if (saveCount == 0) {
+      return;
+    }
+    saveCount--;
+    int m = saveCount * 6;
+    a  = savedMatrix[m];
+    b  = savedMatrix[m+1];
+    c  = savedMatrix[m+2];
+    d  = savedMatrix[m+3];
+    tx = savedMatrix[m+4];
+    ty = savedMatrix[m+5];
+    int r = saveCount * 4;
+    clipLeft   = savedClip[r];
+    clipTop    = savedClip[r+1];
+    clipRight  = savedClip[r+2];
+    clipBottom = savedClip[r+3];
+  }
+
+  public void rotate(float degrees) {
+    double radians = Math.toRadians(degrees);
+    float cos = (float)Math.cos(radians);
+    float sin = (float)Math.sin(radians);
+    float na = a * cos + c * sin;
+    float nb = b * cos + d * sin;
+    c = c * cos - a * sin;
+    d = d * cos - b * sin;
+    a = na;
+    b = nb;
+  }
+
+  public void save() {
+    if (saveCount * 6 == savedMatrix.length) {
+      float[] newMatrix = new float[savedMatrix.length * 2];
+      System.arraycopy(savedMatrix, 0, newMatrix, 0, savedMatrix.length);
+      savedMatrix = newMatrix;
+      int[] newClip = new int[savedClip.length * 2];
+      System.arraycopy(savedClip, 0, newClip, 0, savedClip.length);
+      savedClip = newClip;
+    }
+    int m = saveCount * 6;
+    savedMatrix[m]   = a;
+    savedMatrix[m+1] = b;
+    savedMatrix[m+2] = c;
+    savedMatrix[m+3] = d;
+    savedMatrix[m+4] = tx;
+    savedMatrix[m+5] = ty;
+    int r = saveCount * 4;
+    savedClip[r]   = clipLeft;
+    savedClip[r+1] = clipTop;
+    savedClip[r+2] = clipRight;
+    savedClip[r+3] = clipBottom;
+    saveCount++;
+  }
+
+  public void translate(float dx, float dy) {
+    tx += a * dx + c * dy;
+    ty += b * dx + d * dy;
+  }
+}
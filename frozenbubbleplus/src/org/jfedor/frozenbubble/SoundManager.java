@@ -81,8 +81,18 @@ public class SoundManager {
     sm[ FrozenBubble.SOUND_WHIP ] = soundPool.load(context, R.raw.whip, 1);
   }
 
+  /**
+   * Create a silent sound manager, used when a game is simulated
+   * without any audio or display output.
+   */
+  SoundManager() {
+    this.context = null;
+    soundPool    = null;
+    sm           = null;
+  }
+
   public final void playSound(int sound) {
-    if (FrozenBubble.getSoundOn()) {
+    if (FrozenBubble.getSoundOn() && (soundPool != null)) {
       AudioManager mgr =
         (AudioManager)context.getSystemService(Context.AUDIO_SERVICE);
       float volume    = mgr.getStreamVolume   (AudioManager.STREAM_MUSIC);
@@ -95,7 +105,9 @@ public class SoundManager {
   public final void cleanUp() {
     sm        = null;
     context   = null;
-    soundPool.release();
+    if (soundPool != null) {
+      soundPool.release();
+    }
     soundPool = null;
   }
 }
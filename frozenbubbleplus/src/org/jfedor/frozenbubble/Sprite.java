@@ -57,6 +57,7 @@ import java.util.Vector;
 import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.Region;
 import android.os.Bundle;
 
@@ -66,12 +67,38 @@ public abstract class Sprite {
   public static int TYPE_LAUNCH_BUBBLE = 3;
   public static int TYPE_PENGUIN = 4;
 
+  /*
+   * Destination rectangle used when drawing images packed in a sprite
+   * atlas.  Drawing is only performed by the game thread.
+   */
+  private static final RectF atlasDest = new RectF();
+
   private Rect spriteArea;
   private int saved_id;
 
+  /*
+   * The surface area covered and the appearance of the sprite the last
+   * time its dirty area was collected, used to determine which parts of
+   * the surface have to be repainted.
+   */
+  private Rect    paintedBounds;
+  private Rect    paintBounds;
+  private long    paintedState;
+  private boolean paintedValid;
+  /*
+   * Set when the sprite is painted in a cached layer rather than
+   * individually.
+   */
+  private boolean cached;
+
   public Sprite(Rect spriteArea) {
     this.spriteArea = spriteArea;
     saved_id = -1;
+    paintedBounds = new Rect();
+    paintBounds   = new Rect();
+    paintedState  = 0;
+    paintedValid  = false;
+    cached        = false;
   }
 
   public void saveState(Bundle map, Vector<Sprite> saved_sprites, int id) {
@@ -124,10 +151,122 @@ public abstract class Sprite {
     return spriteArea;
   }
 
+  public final boolean isCached() {
+    return cached;
+  }
+
+  public final void setCached(boolean cached) {
+    this.cached = cached;
+  }
+
+  /**
+   * Add the surface area this sprite has to repaint to the supplied dirty
+   * rectangle.  If the sprite moved or changed appearance since the last
+   * time its dirty area was collected, both the area it used to cover and
+   * the area it now covers are dirty.
+   * @param dirty - the dirty rectangle, in surface coordinates.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset.
+   * @param dy - the vertical display offset.
+   */
+  public final void addDirtyArea(Rect dirty, double scale, int dx, int dy) {
+    getPaintBounds(paintBounds, scale, dx, dy);
+    long state = getPaintState();
+    if (!paintedValid || (state != paintedState) ||
+        !paintBounds.equals(paintedBounds)) {
+      dirty.union(paintedBounds);
+      dirty.union(paintBounds);
+      paintedBounds.set(paintBounds);
+      paintedState = state;
+      paintedValid = true;
+    }
+  }
+
+  /**
+   * Add the surface area this sprite last covered to the supplied dirty
+   * rectangle, and forget it.  Used when the sprite is removed from
+   * the display.
+   * @param dirty - the dirty rectangle, in surface coordinates.
+   */
+  public final void addPaintedArea(Rect dirty) {
+    dirty.union(paintedBounds);
+    paintedBounds.setEmpty();
+    paintedValid = false;
+  }
+
+  /**
+   * Force the sprite area to be repainted the next time the dirty area is
+   * collected, e.g. when the sprite changes its drawing order.
+   */
+  public final void invalidate() {
+    paintedValid = false;
+  }
+
+  /**
+   * Obtain the surface area covered by this sprite when it is painted.
+   * The default implementation uses the sprite area.
+   * @param bounds - the rectangle to set to the painted area.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset.
+   * @param dy - the vertical display offset.
+   */
+  public void getPaintBounds(Rect bounds, double scale, int dx, int dy) {
+    getAreaBounds(spriteArea.left, spriteArea.top,
+                  spriteArea.right, spriteArea.bottom,
+                  bounds, scale, dx, dy);
+  }
+
+  /**
+   * Obtain a value that changes whenever the appearance of the sprite
+   * changes without the sprite moving, e.g. for animation frames.
+   * @return the current appearance of the sprite.
+   */
+  public long getPaintState() {
+    return 0;
+  }
+
+  /**
+   * Set the supplied rectangle to the surface area covered by the
+   * supplied game area, rounded outwards to whole pixels.
+   */
+  public static void getAreaBounds(int left, int top, int right, int bottom,
+                                   Rect bounds, double scale,
+                                   int dx, int dy) {
+    bounds.set((int)Math.floor(left * scale + dx),
+               (int)Math.floor(top * scale + dy),
+               (int)Math.ceil(right * scale + dx) + 1,
+               (int)Math.ceil(bottom * scale + dy) + 1);
+  }
+
+  /**
+   * Set the supplied rectangle to the surface area covered by the supplied
+   * image when it is drawn at the supplied position.
+   */
+  public static void getImageBounds(BmpWrap image, int x, int y, Rect bounds,
+                                    double scale, int dx, int dy) {
+    int left = (int)Math.floor(x * scale + dx);
+    int top  = (int)Math.floor(y * scale + dy);
+    if (image.bmp == null) {
+      bounds.set(left, top, left, top);
+    }
+    else {
+      bounds.set(left, top, left + image.getWidth() + 1,
+                 top + image.getHeight() + 1);
+    }
+  }
+
   public static void drawImage(BmpWrap image, int x, int y,
                                Canvas c, double scale, int dx, int dy) {
-    c.drawBitmap(image.bmp, (float)(x * scale + dx), (float)(y * scale + dy),
-                 null);
+    float left = (float)(x * scale + dx);
+    float top  = (float)(y * scale + dy);
+    if (image.region != null) {
+      atlasDest.set(left, top, left + image.region.width(),
+                    top + image.region.height());
+      c.drawBitmap(image.bmp, image.region, atlasDest, null);
+    }
+    else {
+      c.drawBitmap(image.bmp, left, top, null);
+    }
   }
 
   public static void drawImageClipped(BmpWrap image, int x, int y, Rect clipr,
@@ -137,9 +276,8 @@ public abstract class Sprite {
                (float)(clipr.top * scale + dy),
                (float)(clipr.right * scale + dx),
                (float)(clipr.bottom * scale + dy),
-               Region.Op.REPLACE);
-    c.drawBitmap(image.bmp, (float)(x * scale + dx), (float)(y * scale + dy),
-                 null);
+               Region.Op.INTERSECT);
+    drawImage(image, x, y, c, scale, dx, dy);
     c.restore();
   }
 
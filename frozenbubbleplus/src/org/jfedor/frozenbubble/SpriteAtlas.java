@@ -0,0 +1,251 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import java.util.Vector;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * This class packs the game sprite images into a single atlas bitmap.
+ * <p>Rather than keeping a separately scaled bitmap per image, every
+ * image registered with <code>add()</code> is scaled into a region of
+ * one shared bitmap when the atlas is built.  The image wrappers then
+ * refer to the atlas bitmap and the region table entry for their image,
+ * and are drawn by copying their region from the atlas.  This avoids
+ * dozens of small allocations each time the display is resized, and
+ * keeps the sprite pixels together in memory when drawing.
+ * <p>The regions are packed in shelves, tallest images first.  Laying
+ * out and drawing the atlas is separate from installing it, so that the
+ * atlas may be drawn by a worker thread or loaded from a cache.
+ * <p>The image dimensions are recorded when the images are registered,
+ * so the unscaled images may be released once the atlas is installed,
+ * and only have to be supplied again to draw an atlas for another
+ * display scale.
+ */
+public class SpriteAtlas {
+  /*
+   * The number of pixels left empty around each region, so that
+   * filtered drawing never samples a neighboring image.
+   */
+  private static final int PADDING = 1;
+
+  private Bitmap atlas;
+  private final Vector<BmpWrap> images;
+  private final Vector<Bitmap>  sources;
+  private final Vector<Rect>    sizes;
+
+  public SpriteAtlas() {
+    images  = new Vector<BmpWrap>();
+    sources = new Vector<Bitmap>();
+    sizes   = new Vector<Rect>();
+  }
+
+  /**
+   * Register an image to be packed in the atlas.  Registering an image
+   * again supplies its unscaled image after <code>releaseSources()</code>.
+   * @param image - the image wrapper that will refer to the atlas.
+   * @param source - the unscaled image.  If it is <code>null</code>, the
+   * image is not packed.
+   */
+  public void add(BmpWrap image, Bitmap source) {
+    if (source == null) {
+      return;
+    }
+    int index = images.indexOf(image);
+    if (index >= 0) {
+      sources.setElementAt(source, index);
+    }
+    else {
+      images.addElement(image);
+      sources.addElement(source);
+      sizes.addElement(new Rect(0, 0, source.getWidth(),
+                                source.getHeight()));
+    }
+  }
+
+  /**
+   * The region table of an atlas built for a given display scale.
+   */
+  public static class Layout {
+    public int    width;
+    public int    height;
+    public Rect[] regions;
+  }
+
+  /**
+   * Assign a region of the atlas to every registered image, sized for
+   * the supplied display scale.
+   * @param scale - the display scale factor.
+   * @return the atlas dimensions and region table.
+   */
+  public Layout layout(double scale) {
+    int count = images.size();
+    int[] width  = new int[count];
+    int[] height = new int[count];
+    int   maxWidth  = 0;
+    long  totalArea = 0;
+
+    for (int i = 0; i < count; i++) {
+      Rect size = sizes.elementAt(i);
+      width[i]  = Math.max(1, (int)(size.width()  * scale));
+      height[i] = Math.max(1, (int)(size.height() * scale));
+      maxWidth   = Math.max(maxWidth, width[i] + PADDING);
+      totalArea += (long)(width[i] + PADDING) * (height[i] + PADDING);
+    }
+
+    /*
+     * Sort the images by decreasing height, then fill shelves from
+     * left to right.  The atlas is roughly square unless an image is
+     * wider than that.
+     */
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    for (int i = 1; i < count; i++) {
+      int index = order[i];
+      int j = i - 1;
+      while ((j >= 0) && (height[order[j]] < height[index])) {
+        order[j + 1] = order[j];
+        j--;
+      }
+      order[j + 1] = index;
+    }
+
+    Layout layout  = new Layout();
+    layout.width   = Math.max(maxWidth, (int)Math.ceil(Math.sqrt(totalArea)));
+    layout.regions = new Rect[count];
+    int x = 0;
+    int y = 0;
+    int shelfHeight = 0;
+    for (int i = 0; i < count; i++) {
+      int index = order[i];
+      if (x + width[index] + PADDING > layout.width) {
+        x = 0;
+        y += shelfHeight;
+        shelfHeight = 0;
+      }
+      layout.regions[index] = new Rect(x, y, x + width[index],
+                                       y + height[index]);
+      x += width[index] + PADDING;
+      shelfHeight = Math.max(shelfHeight, height[index] + PADDING);
+    }
+    layout.height = Math.max(1, y + shelfHeight);
+    return layout;
+  }
+
+  /**
+   * Scale every registered image into its region of an atlas bitmap.
+   * This does not modify the image wrappers, so it may be performed by
+   * a worker thread.
+   * @param canvas - the canvas of the atlas bitmap.
+   * @param layout - the atlas region table.
+   * @throws IllegalStateException if the unscaled images were released.
+   */
+  public void render(Canvas canvas, Layout layout) {
+    Paint paint = new Paint();
+    paint.setFilterBitmap(true);
+    for (int i = 0; i < layout.regions.length; i++) {
+      Bitmap source = sources.elementAt(i);
+      if (source == null) {
+        throw new IllegalStateException("The atlas images were released.");
+      }
+      canvas.drawBitmap(source, null, layout.regions[i], paint);
+    }
+  }
+
+  /**
+   * Point the image wrappers to their regions in the supplied atlas
+   * bitmap.  The previous atlas bitmap, if any, is released.
+   * @param atlas - the atlas bitmap, drawn by <code>render()</code>.
+   * @param layout - the atlas region table.
+   */
+  public void install(Bitmap atlas, Layout layout) {
+    recycle();
+    this.atlas = atlas;
+    for (int i = 0; i < layout.regions.length; i++) {
+      BmpWrap image = images.elementAt(i);
+      image.bmp    = atlas;
+      image.region = layout.regions[i];
+    }
+  }
+
+  /**
+   * Release the atlas bitmap.  The image wrappers no longer refer to
+   * any bitmap afterwards.
+   */
+  public void recycle() {
+    if (atlas != null) {
+      BitmapBudget.release(BitmapBudget.CATEGORY_SCALED, atlas);
+      atlas = null;
+    }
+    for (int i = 0; i < images.size(); i++) {
+      images.elementAt(i).bmp    = null;
+      images.elementAt(i).region = null;
+    }
+  }
+
+  /**
+   * Forget the unscaled images, so that they may be released.  They
+   * have to be registered again before drawing another atlas.
+   */
+  public void releaseSources() {
+    for (int i = 0; i < sources.size(); i++) {
+      sources.setElementAt(null, i);
+    }
+  }
+}
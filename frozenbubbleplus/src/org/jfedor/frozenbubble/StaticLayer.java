@@ -0,0 +1,284 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package org.jfedor.frozenbubble;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * This class caches the parts of a game field that only change when the
+ * bubble grid changes - the background behind the grid, the fixed
+ * bubbles and the compressor - in an offscreen bitmap.
+ * <p>Each frame the grid is compared to the grid that was composited in
+ * the layer.  The layer is only rebuilt when a bubble sticks, pops,
+ * falls, moves or changes appearance, or when the compressor or the
+ * display geometry changes.  Otherwise the layer is drawn with a single
+ * bitmap copy, and only the moving and interface sprites have to be
+ * drawn on top of it.
+ * <p>The bubbles painted in the layer are flagged as cached, so that
+ * they are skipped when the remaining sprites are painted.
+ */
+public class StaticLayer {
+  /*
+   * The game field area covered by the layer, in game coordinates.
+   */
+  private final Rect area;
+
+  private Bitmap bitmap;
+  private Canvas canvas;
+  private int    left;
+  private int    top;
+  private boolean failed;
+  private boolean valid;
+
+  /*
+   * The grid and display geometry that were composited in the layer.
+   */
+  private final BubbleSprite[] layerBubbles;
+  private final int[]  layerX;
+  private final int[]  layerY;
+  private final long[] layerState;
+  private int    layerBubbleCount;
+  private int    layerMode;
+  private int    layerSteps;
+  private double layerScale;
+  private int    layerDX;
+  private int    layerDY;
+  private int    layerBgDX;
+  private int    layerBgDY;
+
+  /**
+   * Create a static layer.
+   * @param area - the game field area covered by the layer.
+   * @param capacity - the maximum number of bubbles in the grid.
+   */
+  public StaticLayer(Rect area, int capacity) {
+    this.area    = area;
+    layerBubbles = new BubbleSprite[capacity];
+    layerX       = new int[capacity];
+    layerY       = new int[capacity];
+    layerState   = new long[capacity];
+    failed       = false;
+    valid        = false;
+  }
+
+  /**
+   * Compare the supplied bubble grid and display geometry to the ones
+   * composited in the layer, and record them if they differ.  The cached
+   * flags of the grid bubbles are updated accordingly.
+   * @param grid - the bubble grid.
+   * @param steps - the number of compressor steps.
+   * @param scale - the display scale factor.
+   * @param dx - the horizontal display offset of the game field.
+   * @param dy - the vertical display offset of the game field.
+   * @param bgdx - the horizontal surface position of the background.
+   * @param bgdy - the vertical surface position of the background.
+   * @return <code>true</code> if the layer has to be rebuilt.
+   */
+  public boolean checkGrid(BubbleSprite[][] grid, int steps, double scale,
+                           int dx, int dy, int bgdx, int bgdy) {
+    if (failed) {
+      return false;
+    }
+    boolean changed = !valid ||
+                      (layerMode  != FrozenBubble.getMode()) ||
+                      (layerSteps != steps) ||
+                      (layerScale != scale) ||
+                      (layerDX    != dx) || (layerDY   != dy) ||
+                      (layerBgDX  != bgdx) || (layerBgDY != bgdy);
+    int count = 0;
+
+    for (int i = 0; (i < grid.length) && !changed; i++) {
+      for (int j = 0; (j < grid[i].length) && !changed; j++) {
+        BubbleSprite bubble = grid[i][j];
+        if (bubble != null) {
+          Rect r = bubble.getSpriteArea();
+          changed = (count >= layerBubbleCount) ||
+                    (layerBubbles[count] != bubble) ||
+                    (layerX[count] != r.left) || (layerY[count] != r.top) ||
+                    (layerState[count] != bubble.getPaintState());
+          count++;
+        }
+      }
+    }
+
+    if (!changed && (count == layerBubbleCount)) {
+      return false;
+    }
+
+    for (int index = 0; index < layerBubbleCount; index++) {
+      layerBubbles[index].setCached(false);
+      layerBubbles[index] = null;
+    }
+    count = 0;
+    for (int i = 0; i < grid.length; i++) {
+      for (int j = 0; j < grid[i].length; j++) {
+        BubbleSprite bubble = grid[i][j];
+        if ((bubble != null) && (count < layerBubbles.length)) {
+          Rect r = bubble.getSpriteArea();
+          bubble.setCached(true);
+          layerBubbles[count] = bubble;
+          layerX[count]       = r.left;
+          layerY[count]       = r.top;
+          layerState[count]   = bubble.getPaintState();
+          count++;
+        }
+      }
+    }
+    layerBubbleCount = count;
+    layerMode        = FrozenBubble.getMode();
+    layerSteps       = steps;
+    layerScale       = scale;
+    layerDX          = dx;
+    layerDY          = dy;
+    layerBgDX        = bgdx;
+    layerBgDY        = bgdy;
+    valid            = true;
+    return true;
+  }
+
+  /**
+   * Start rebuilding the layer.  The layer bitmap is (re)allocated to
+   * suit the display geometry, and the background is copied to it.
+   * @param background - the background image.
+   * @return the canvas to paint the layer contents on, or
+   * <code>null</code> if the layer bitmap could not be allocated, in
+   * which case the layer is disabled.
+   */
+  public Canvas beginRebuild(BmpWrap background) {
+    left = (int)Math.floor(area.left * layerScale + layerDX);
+    top  = (int)Math.floor(area.top  * layerScale + layerDY);
+    int width  = (int)Math.ceil(area.right  * layerScale + layerDX) - left;
+    int height = (int)Math.ceil(area.bottom * layerScale + layerDY) - top;
+
+    if ((bitmap == null) || (bitmap.getWidth()  != width) ||
+                            (bitmap.getHeight() != height)) {
+      recycle();
+      Bitmap.Config config = Bitmap.Config.ARGB_8888;
+      if ((background.bmp != null) && (background.bmp.getConfig() != null)) {
+        config = background.bmp.getConfig();
+      }
+      try {
+        bitmap = BitmapBudget.createBitmap(BitmapBudget.CATEGORY_LAYER,
+                                           width, height, config);
+      } catch (OutOfMemoryError oome) {
+        bitmap = null;
+        failed = true;
+        invalidate();
+        return null;
+      }
+      canvas = new Canvas(bitmap);
+    }
+
+    if (background.bmp != null) {
+      canvas.drawBitmap(background.bmp, layerBgDX - left, layerBgDY - top,
+                        null);
+    }
+    return canvas;
+  }
+
+  /**
+   * Obtain the horizontal offset to paint game field contents with on
+   * the layer canvas.
+   */
+  public int getDX() {
+    return layerDX - left;
+  }
+
+  /**
+   * Obtain the vertical offset to paint game field contents with on
+   * the layer canvas.
+   */
+  public int getDY() {
+    return layerDY - top;
+  }
+
+  /**
+   * Force the layer to be rebuilt the next time the grid is checked.
+   * The bubbles stop being flagged as cached until then.
+   */
+  public void invalidate() {
+    for (int index = 0; index < layerBubbleCount; index++) {
+      layerBubbles[index].setCached(false);
+      layerBubbles[index] = null;
+    }
+    layerBubbleCount = 0;
+    valid            = false;
+  }
+
+  /**
+   * Draw the layer on the supplied canvas.
+   * @param c - the canvas to draw on.
+   * @return <code>true</code> if the layer was drawn.
+   */
+  public boolean paint(Canvas c) {
+    if (!valid || (bitmap == null)) {
+      return false;
+    }
+    c.drawBitmap(bitmap, left, top, null);
+    return true;
+  }
+
+  /**
+   * Release the layer bitmap, so that its allocation may be reused by
+   * the layer of another game.
+   */
+  public void recycle() {
+    if (bitmap != null) {
+      BitmapBudget.release(BitmapBudget.CATEGORY_LAYER, bitmap);
+      bitmap = null;
+      canvas = null;
+    }
+  }
+}
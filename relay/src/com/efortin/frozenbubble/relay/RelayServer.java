@@ -0,0 +1,445 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble.relay;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * This class relays network game datagrams between players that cannot
+ * reach each other directly, such as players on different networks.
+ * <p>A client joins by sending join messages to the relay until its
+ * opponent's datagrams arrive.  A join message carries the player ID
+ * and a match ID.  The relay pairs a player 1 with a player 2 that
+ * joined with the same match ID, and from then on forwards every
+ * datagram one of them sends to the other, unmodified.  Match ID 0
+ * simply pairs any two players that are waiting.
+ * <p>All the clients are served by a single non-blocking datagram
+ * channel and one selector thread.  Forwarding a datagram is a hash
+ * lookup of the sender and a send, without any allocation besides the
+ * sender address NIO returns, so a single thread can relay thousands
+ * of concurrent matches.  For more, run several relays on different
+ * ports.
+ * <p>The datagrams of each match are rate limited by a token bucket,
+ * so that one misbehaving client cannot starve the other matches.
+ * Clients that send nothing for <code>CLIENT_TIMEOUT</code> are
+ * dropped, which ends their match.  Since join messages are easily
+ * sent from spoofed addresses, at most <code>MAX_CLIENTS</code> clients
+ * are tracked, and clients that are not paired within
+ * <code>WAITING_TIMEOUT</code> are dropped.
+ */
+public class RelayServer implements Runnable {
+  public static final int DEFAULT_PORT = 5500;
+
+  /*
+   * Message definitions, which must match the definitions in the
+   * NetworkManager class of the game.  The join message consists of the
+   * message ID, the player ID, and a 4 byte match ID.
+   */
+  public static final byte MSG_ID_JOIN = 5;
+  public static final int  JOIN_BYTES  = 6;
+  public static final byte PLAYER1     = 1;
+  public static final byte PLAYER2     = 2;
+
+  /*
+   * The largest datagram relayed.  This matches the receive buffer size
+   * of the game transports.
+   */
+  private static final int MAX_DATAGRAM_BYTES = 256;
+
+  /*
+   * The requested socket buffer sizes.  Datagrams that arrive while
+   * the relay thread is not running are queued in the receive buffer,
+   * so it must absorb the bursts of thousands of clients.  The system
+   * may limit the buffer to a smaller size.
+   */
+  private static final int SOCKET_BUFFER_BYTES = 4 * 1024 * 1024;
+
+  /*
+   * Timing definitions, in msec.
+   */
+  private static final long CLIENT_TIMEOUT   = 30000L;
+  private static final long EXPIRE_INTERVAL  = 1000L;
+  private static final long WAITING_TIMEOUT  = 10000L;
+
+  /*
+   * The largest number of clients tracked.  Join messages from new
+   * clients are ignored while the relay is full.
+   */
+  public static final int MAX_CLIENTS = 65536;
+
+  /*
+   * The sustained rate and burst size of the datagrams relayed per
+   * match, in both directions together.  A game normally sends far
+   * fewer datagrams than this.
+   */
+  public static final double MATCH_RATE  = 200.0;
+  public static final double MATCH_BURST = 100.0;
+
+  /*
+   * A relay client, identified by the address it sends from.
+   */
+  private static class Client {
+    public final SocketAddress address;
+    public byte  playerID;
+    public int   matchID;
+    public long  joinTime;
+    public long  lastSeen;
+    public Match match;
+    public Client peer;
+
+    public Client(SocketAddress address, long now) {
+      this.address = address;
+      joinTime     = now;
+      lastSeen     = now;
+    }
+  }
+
+  /*
+   * A pair of clients, and the token bucket of their datagrams.
+   */
+  private static class Match {
+    public double tokens;
+    public long   refillTime;
+
+    public Match(long now) {
+      tokens     = MATCH_BURST;
+      refillTime = now;
+    }
+
+    /**
+     * Take a token for a datagram, refilling the bucket first.
+     * @return <code>true</code> if the datagram may be relayed.
+     */
+    public boolean take(long now) {
+      if (now > refillTime) {
+        tokens = Math.min(MATCH_BURST,
+                          tokens + ((now - refillTime) * MATCH_RATE / 1000));
+        refillTime = now;
+      }
+      if (tokens < 1) {
+        return false;
+      }
+      tokens--;
+      return true;
+    }
+  }
+
+  private volatile boolean running;
+  private long expireTime;
+  private long dropped;
+  private long errors;
+  private long joined;
+  private long limited;
+  private long refused;
+  private long relayed;
+  private final DatagramChannel channel;
+  private final Selector        selector;
+  private final ByteBuffer      buffer;
+  private final HashMap<SocketAddress, Client> clients;
+  private final HashMap<Long, Client>          waiting;
+
+  /**
+   * Create a relay server bound to the supplied port on all
+   * interfaces.  Call <code>run()</code> to serve clients.
+   * @param port - the UDP port to listen on, or 0 for any free port.
+   * @throws IOException the channel could not be opened or bound.
+   */
+  public RelayServer(int port) throws IOException {
+    channel = DatagramChannel.open();
+    channel.socket().setReuseAddress(true);
+    channel.socket().setReceiveBufferSize(SOCKET_BUFFER_BYTES);
+    channel.socket().setSendBufferSize(SOCKET_BUFFER_BYTES);
+    channel.socket().bind(new InetSocketAddress(port));
+    channel.configureBlocking(false);
+    selector = Selector.open();
+    channel.register(selector, SelectionKey.OP_READ);
+    buffer   = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+    clients  = new HashMap<SocketAddress, Client>();
+    waiting  = new HashMap<Long, Client>();
+    running  = true;
+  }
+
+  /**
+   * Drop clients that have not sent anything for the client timeout,
+   * and end their matches.  Clients that are still waiting for their
+   * opponent after the waiting timeout are dropped too.
+   */
+  private void expireClients(long now) {
+    Iterator<Client> iterator = clients.values().iterator();
+    while (iterator.hasNext()) {
+      Client client = iterator.next();
+      if (((now - client.lastSeen) > CLIENT_TIMEOUT) ||
+          ((client.peer == null) &&
+           ((now - client.joinTime) > WAITING_TIMEOUT))) {
+        iterator.remove();
+        leave(client);
+      }
+    }
+  }
+
+  /**
+   * Obtain the port the relay is bound to.
+   * @return the local UDP port.
+   */
+  public int getPort() {
+    return channel.socket().getLocalPort();
+  }
+
+  /**
+   * Obtain the relay statistics.  Only consistent when read from the
+   * relay thread, or after it has stopped.
+   * @return the number of clients, paired clients, and the number of
+   * joins processed, joins refused because the relay was full,
+   * datagrams relayed, datagrams dropped because the sender was not
+   * paired, datagrams dropped by the rate limit, and socket errors.
+   */
+  public String getStatistics() {
+    int paired = 0;
+    Iterator<Client> iterator = clients.values().iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().peer != null) {
+        paired++;
+      }
+    }
+    return "clients " + clients.size() + " paired " + paired +
+           " joined " + joined + " refused " + refused +
+           " relayed " + relayed + " dropped " + dropped +
+           " limited " + limited + " errors " + errors;
+  }
+
+  private static long getWaitingKey(int matchID, byte playerID) {
+    return ((long) matchID << 8) | (playerID & 0xFF);
+  }
+
+  /**
+   * Process a join message.  The client is paired with a waiting client
+   * of the other player ID and the same match ID, if there is one, and
+   * otherwise waits for one.  A join from a client that is already in
+   * the requested match is ignored, since clients repeat their join
+   * until their opponent's datagrams arrive.
+   */
+  private void join(Client client, byte playerID, int matchID) {
+    if ((client.playerID == playerID) && (client.matchID == matchID) &&
+        ((client.peer != null) ||
+         (waiting.get(getWaitingKey(matchID, playerID)) == client))) {
+      return;
+    }
+    leave(client);
+    joined++;
+    client.joinTime = client.lastSeen;
+    client.playerID = playerID;
+    client.matchID  = matchID;
+    byte otherID    = (playerID == PLAYER1) ? PLAYER2 : PLAYER1;
+    Client peer     = waiting.remove(getWaitingKey(matchID, otherID));
+    if (peer != null) {
+      Match match  = new Match(client.lastSeen);
+      client.match = match;
+      client.peer  = peer;
+      peer.match   = match;
+      peer.peer    = client;
+    }
+    else {
+      /*
+       * This replaces any client already waiting with the same player
+       * and match ID, which most likely restarted from another address.
+       */
+      waiting.put(getWaitingKey(matchID, playerID), client);
+    }
+  }
+
+  /**
+   * Remove a client from its match, or from the clients waiting for a
+   * match.  The opponent of a paired client must join again.
+   */
+  private void leave(Client client) {
+    if (client.peer != null) {
+      client.peer.peer  = null;
+      client.peer.match = null;
+      client.peer       = null;
+      client.match      = null;
+    }
+    else {
+      Long key = getWaitingKey(client.matchID, client.playerID);
+      if (waiting.get(key) == client) {
+        waiting.remove(key);
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = DEFAULT_PORT;
+    if (args.length > 0) {
+      port = Integer.parseInt(args[0]);
+    }
+    RelayServer server = new RelayServer(port);
+    System.out.println("Relaying on UDP port " + server.getPort());
+    server.run();
+  }
+
+  /**
+   * Receive every pending datagram, and relay each to the opponent of
+   * its sender.  A datagram that can not be received or sent is
+   * counted as an error and skipped, so that one bad client address
+   * does not stop the relay.
+   */
+  private void receive(long now) {
+    while (true) {
+      buffer.clear();
+      SocketAddress address;
+      try {
+        address = channel.receive(buffer);
+      } catch (IOException ioe) {
+        /*
+         * Return to the selector rather than retry at once, in case the
+         * error persists.
+         */
+        errors++;
+        return;
+      }
+      if (address == null) {
+        return;
+      }
+      buffer.flip();
+      int length = buffer.remaining();
+      if (length < 2) {
+        continue;
+      }
+      Client client = clients.get(address);
+      if (client == null) {
+        if (buffer.get(0) != MSG_ID_JOIN) {
+          dropped++;
+          continue;
+        }
+        if (clients.size() >= MAX_CLIENTS) {
+          refused++;
+          continue;
+        }
+        client = new Client(address, now);
+        clients.put(address, client);
+      }
+      client.lastSeen = now;
+      if (buffer.get(0) == MSG_ID_JOIN) {
+        byte playerID = buffer.get(1);
+        if ((length >= JOIN_BYTES) &&
+            ((playerID == PLAYER1) || (playerID == PLAYER2))) {
+          join(client, playerID, buffer.getInt(2));
+        }
+        continue;
+      }
+      if (client.peer == null) {
+        dropped++;
+      }
+      else if (!client.match.take(now)) {
+        limited++;
+      }
+      else {
+        /*
+         * The datagram is dropped if the socket send buffer is full,
+         * as it would be by any other congested link.
+         */
+        try {
+          if (channel.send(buffer, client.peer.address) > 0) {
+            relayed++;
+          }
+          else {
+            dropped++;
+          }
+        } catch (IOException ioe) {
+          errors++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Serve clients until <code>stop()</code> is called.
+   */
+  public void run() {
+    try {
+      expireTime = System.currentTimeMillis() + EXPIRE_INTERVAL;
+      while (running) {
+        selector.select(EXPIRE_INTERVAL);
+        selector.selectedKeys().clear();
+        long now = System.currentTimeMillis();
+        receive(now);
+        if (now >= expireTime) {
+          expireClients(now);
+          expireTime = now + EXPIRE_INTERVAL;
+        }
+      }
+    } catch (IOException ioe) {
+      ioe.printStackTrace();
+    } finally {
+      try {
+        selector.close();
+        channel.close();
+      } catch (IOException ignore) {}
+    }
+  }
+
+  /**
+   * Stop serving clients.  May be called from any thread.
+   */
+  public void stop() {
+    running = false;
+    selector.wakeup();
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ *                 [[ Frozen-Bubble ]]
+ *
+ * Copyright (c) 2000-2003 Guillaume Cottenceau.
+ * Java sourcecode - Copyright (c) 2003 Glenn Sanson.
+ * Additional source - Copyright (c) 2013 Eric Fortin.
+ *
+ * This code is distributed under the GNU General Public License
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * version 2 or 3, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to:
+ * Free Software Foundation, Inc.
+ * 675 Mass Ave
+ * Cambridge, MA 02139, USA
+ *
+ * Artwork:
+ *    Alexis Younes <73lab at free.fr>
+ *      (everything but the bubbles)
+ *    Amaury Amblard-Ladurantie <amaury at linuxfr.org>
+ *      (the bubbles)
+ *
+ * Soundtrack:
+ *    Matthias Le Bidan <matthias.le_bidan at caramail.com>
+ *      (the three musics and all the sound effects)
+ *
+ * Design & Programming:
+ *    Guillaume Cottenceau <guillaume.cottenceau at free.fr>
+ *      (design and manage the project, whole Perl sourcecode)
+ *
+ * Java version:
+ *    Glenn Sanson <glenn.sanson at free.fr>
+ *      (whole Java sourcecode, including JIGA classes
+ *             http://glenn.sanson.free.fr/jiga/)
+ *
+ * Android port:
+ *    Pawel Aleksander Fedorynski <pfedor@fuw.edu.pl>
+ *    Eric Fortin <videogameboy76 at yahoo.com>
+ *    Copyright (c) Google Inc.
+ *
+ *          [[ http://glenn.sanson.free.fr/fb/ ]]
+ *          [[ http://www.frozen-bubble.org/   ]]
+ */
+
+package com.efortin.frozenbubble.relay;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+
+/**
+ * This class simulates many pairs of game clients playing through a
+ * relay server, to measure the relay throughput and latency locally.
+ * <p>Each simulated client joins the relay like the game does, by
+ * repeating a join message until its opponent's datagrams arrive.  Once
+ * paired, it sends status sized datagrams at a fixed rate, each holding
+ * its transmission time, and measures the latency of the datagrams its
+ * opponent sends.  All the clients are served by one selector thread.
+ * <p>Usage:
+ * <pre><code>
+ * RelaySimulator [matches [rate [seconds [host [port]]]]]
+ * </code></pre>
+ * <p>The rate is the number of datagrams per second sent by each
+ * client.  If no host is supplied, a relay server is started in the
+ * same process on a free port.
+ */
+public class RelaySimulator {
+  /*
+   * The simulated game datagram, which has the size of a player status
+   * message.
+   */
+  private static final byte MSG_ID_STATUS = 1;
+  private static final int  STATUS_BYTES  = 27;
+
+  private static final long JOIN_INTERVAL = 200L;
+
+  /*
+   * The latency histogram resolution and range, in microseconds.
+   */
+  private static final int BUCKET_MICROS = 50;
+  private static final int NUM_BUCKETS   = 4000;
+
+  private static class SimClient {
+    public DatagramChannel channel;
+    public byte            playerID;
+    public int             matchID;
+    public boolean         paired;
+    public long            nextJoin;
+    public long            nextSend;
+  }
+
+  private final ByteBuffer  buffer  = ByteBuffer.allocateDirect(256);
+  private final long[]      buckets = new long[NUM_BUCKETS + 1];
+  private final SimClient[] clients;
+  private final Selector    selector;
+  private final long        sendInterval;
+  private long received;
+  private long sent;
+  private long totalMicros;
+
+  public RelaySimulator(InetSocketAddress relay, int matches, int rate)
+    throws IOException {
+    selector     = Selector.open();
+    sendInterval = Math.max(1000000000L / Math.max(rate, 1), 1L);
+    clients      = new SimClient[matches * 2];
+    for (int index = 0; index < clients.length; index++) {
+      SimClient client = new SimClient();
+      client.playerID  = (index % 2 == 0) ? RelayServer.PLAYER1 :
+                                            RelayServer.PLAYER2;
+      client.matchID   = (index / 2) + 1;
+      client.paired    = false;
+      client.nextJoin  = 0;
+      client.nextSend  = 0;
+      client.channel   = DatagramChannel.open();
+      client.channel.socket().bind(new InetSocketAddress(0));
+      client.channel.connect(relay);
+      client.channel.configureBlocking(false);
+      client.channel.register(selector, SelectionKey.OP_READ, client);
+      clients[index] = client;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int    matches = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+    int    rate    = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+    int    seconds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+    String host    = (args.length > 3) ? args[3] : null;
+    int    port    = (args.length > 4) ? Integer.parseInt(args[4]) :
+                                         RelayServer.DEFAULT_PORT;
+
+    RelayServer server = null;
+    Thread      thread = null;
+    if (host == null) {
+      server = new RelayServer(0);
+      thread = new Thread(server, "RelayServer");
+      thread.start();
+      host = "127.0.0.1";
+      port = server.getPort();
+    }
+
+    System.out.println("Simulating " + matches + " matches at " + rate +
+                       " datagrams/s per client for " + seconds +
+                       " s via " + host + ":" + port);
+    RelaySimulator simulator =
+      new RelaySimulator(new InetSocketAddress(host, port), matches, rate);
+    simulator.simulate(seconds * 1000L);
+    simulator.report();
+
+    if (server != null) {
+      server.stop();
+      thread.join();
+      System.out.println("relay: " + server.getStatistics());
+    }
+  }
+
+  /**
+   * Receive the pending datagrams of a client, and record the latency
+   * of those sent by its opponent.
+   */
+  private void receive(SimClient client, long now) throws IOException {
+    while (true) {
+      buffer.clear();
+      if (client.channel.read(buffer) <= 0) {
+        return;
+      }
+      if ((buffer.position() >= 11) && (buffer.get(0) == MSG_ID_STATUS) &&
+          (buffer.get(1) != client.playerID)) {
+        client.paired = true;
+        if (buffer.get(10) == 0) {
+          continue;
+        }
+        long micros = (now - buffer.getLong(2)) / 1000;
+        received++;
+        totalMicros += micros;
+        buckets[(int) Math.min(micros / BUCKET_MICROS, NUM_BUCKETS)]++;
+      }
+    }
+  }
+
+  private void report() {
+    int paired = 0;
+    for (int index = 0; index < clients.length; index++) {
+      if (clients[index].paired) {
+        paired++;
+      }
+    }
+    System.out.println("paired clients " + paired + " of " +
+                       clients.length);
+    System.out.println("datagrams sent " + sent + " received " + received +
+                       " (" + ((sent > 0) ? (100.0 * received / sent) : 0) +
+                       "%)");
+    if (received > 0) {
+      System.out.println("latency avg " + (totalMicros / received) +
+                         " us, p50 " + percentile(0.50) +
+                         " us, p99 " + percentile(0.99) +
+                         " us, p99.9 " + percentile(0.999) + " us");
+    }
+  }
+
+  private long percentile(double fraction) {
+    long count = 0;
+    long target = (long) Math.ceil(received * fraction);
+    for (int index = 0; index <= NUM_BUCKETS; index++) {
+      count += buckets[index];
+      if (count >= target) {
+        return (long) (index + 1) * BUCKET_MICROS;
+      }
+    }
+    return (long) NUM_BUCKETS * BUCKET_MICROS;
+  }
+
+  /**
+   * Send the datagrams of a client that are due.  Like the game, a
+   * client sends timestamped status sized datagrams all along, and
+   * also repeats its join message until it hears from its opponent.
+   * Only the datagrams sent once paired are counted, and they are
+   * flagged so that the opponent only counts those as received.
+   * @return the time the client next has a datagram to send.
+   */
+  private long send(SimClient client, long now) throws IOException {
+    if (!client.paired && (now >= client.nextJoin)) {
+      buffer.clear();
+      buffer.put(RelayServer.MSG_ID_JOIN);
+      buffer.put(client.playerID);
+      buffer.putInt(client.matchID);
+      buffer.flip();
+      client.channel.write(buffer);
+      client.nextJoin = now + (JOIN_INTERVAL * 1000000L);
+    }
+    if (now >= client.nextSend) {
+      buffer.clear();
+      buffer.put(MSG_ID_STATUS);
+      buffer.put(client.playerID);
+      buffer.putLong(now);
+      buffer.put((byte) (client.paired ? 1 : 0));
+      while (buffer.position() < STATUS_BYTES) {
+        buffer.put((byte) 0);
+      }
+      buffer.flip();
+      client.channel.write(buffer);
+      client.nextSend = now + sendInterval;
+      if (client.paired) {
+        sent++;
+      }
+    }
+    return client.paired ? client.nextSend :
+                           Math.min(client.nextSend, client.nextJoin);
+  }
+
+  /**
+   * Run the simulated clients for the supplied duration.
+   */
+  private void simulate(long duration) throws IOException {
+    long end = System.nanoTime() + (duration * 1000000L);
+    long now = System.nanoTime();
+    /*
+     * Stagger the first transmissions over one send interval.
+     */
+    for (int index = 0; index < clients.length; index++) {
+      clients[index].nextJoin = now;
+      clients[index].nextSend = now + ((sendInterval * index) /
+                                       clients.length);
+    }
+    while ((now = System.nanoTime()) < end) {
+      long next = end;
+      for (int index = 0; index < clients.length; index++) {
+        next = Math.min(next, send(clients[index], now));
+      }
+      /*
+       * Wait for datagrams until the next transmission is due.
+       */
+      long wait = (next - System.nanoTime()) / 1000000L;
+      if (((wait > 0) ? selector.select(wait) : selector.selectNow()) > 0) {
+        now = System.nanoTime();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          receive((SimClient) key.attachment(), now);
+        }
+      }
+    }
+    for (int index = 0; index < clients.length; index++) {
+      clients[index].channel.close();
+    }
+    selector.close();
+  }
+}